@@ -49,6 +49,7 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.print.PageFormat;
 import java.io.File;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -82,6 +83,8 @@ import javax.swing.table.TableColumn;
 
 import mvplan.datamodel.DiveSegmentModel;
 import mvplan.datamodel.GasModel;
+import mvplan.dive.PlanCache;
+import mvplan.dive.PlanStore;
 import mvplan.dive.Profile;
 import mvplan.dive.TableGeneratorModel;
 import mvplan.gas.Gas;
@@ -103,6 +106,12 @@ public class MainFrame extends JFrame
 {       
         // Change this to enable text labels in Dive and Gas panel buttons
         private final static boolean BUTTON_ICONS_ONLY = true;
+        // Plans kept for reprinting and regenerating tables
+        private final static int PLAN_CACHE_SIZE = 200;
+        // Plans kept on disk between runs
+        private final static String PLAN_STORE_DIR = "plans";
+        private final static int PLAN_STORE_PLANS = 5000;
+        private final static long PLAN_STORE_BYTES = 50L*1024*1024;
         
         /** These are the data models for the main GUI
          *  currentProfile and currentTable cannot exist together.
@@ -110,6 +119,7 @@ public class MainFrame extends JFrame
         Profile currentProfile=null;    // Current Profile (Single Dive) model
         AbstractModel currentModel=null;        // Current tissue model
         TableGeneratorModel currentTable=null;  // Current multi-profile table model.         
+        final PlanCache planCache=new PlanCache(PLAN_CACHE_SIZE);   // Plans already calculated
         java.util.List <Gas> knownGases;           // Maintains known gases
         GasModel knownGasModel;         // For Gas table
         java.util.List <SegmentAbstract> knownSegments;        // Maintains known Dive Segments
@@ -225,6 +235,13 @@ public class MainFrame extends JFrame
         while(i.hasNext()) {
             knownSegments.add((mvplan.segments.SegmentAbstract)i.next());
         }
+        // Plans calculated by earlier runs
+        try {
+            planCache.setStore(new PlanStore(new File(new File(Mvplan.prefFile).getAbsoluteFile().getParentFile(),PLAN_STORE_DIR),
+                    PLAN_STORE_PLANS,PLAN_STORE_BYTES));
+        } catch (IOException e) {
+            if(Mvplan.DEBUG > 0) System.out.println("MainFrame: no plan store, "+e.getMessage());
+        }
         // Create GUI
         guiInit();
      
@@ -841,6 +858,8 @@ public class MainFrame extends JFrame
     /** Save Prefs, Close and exit */
     private void saveAndClose() {        
         savePrefs();
+        if(planCache.getStore() != null)
+            planCache.getStore().flush();
         setVisible(false);
         dispose();
         System.exit(0); 
@@ -1109,6 +1128,7 @@ public class MainFrame extends JFrame
         clearDive();    // Start with clear tissue model
         // Create a multiDive model with known segments, gases and modifiers
         TableGeneratorModel mp = new TableGeneratorModel(knownSegments, knownGases, modifiers);
+        mp.setPlanCache(planCache);
         // Create new multiDiveDialog and initialise it with the multiProfile model
         mdd = new TableGeneratorDialog(this, mp);
         // Show dialog. Returns with boolean true to continue. Modifiers may have been altered.
@@ -1157,11 +1177,14 @@ public class MainFrame extends JFrame
     {
         int returnCode;
         Profile p;
+        Profile previous=currentProfile;    // Unchanged segments are not processed again
         
         // Create model for dive
         if( !repetitiveMode || currentModel==null) {
             clearDive();
             p=new Profile(knownSegments,knownGases,null);
+            p.setSegmentCheckpoints(true);
+            p.setPlanCache(planCache);
         } else {
             p=new Profile(knownSegments,knownGases,currentModel);        
             if( p.isDiveSegments() || JOptionPane.showConfirmDialog(this,
@@ -1175,7 +1198,7 @@ public class MainFrame extends JFrame
             }
         }
         
-        returnCode=p.doDive();
+        returnCode=p.doDive(previous);
         if((Mvplan.DEBUG > 0)) System.out.println("doDive: return code="+returnCode);
         switch(returnCode) {
             case Profile.SUCCESS:
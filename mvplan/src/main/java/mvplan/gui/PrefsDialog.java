@@ -80,7 +80,7 @@ public class PrefsDialog extends JDialog implements ActionListener, FocusListene
     JCheckBox mvMultilevelModeCB = new JCheckBox();
     JRadioButton metricButton, imperialButton;
     // TODO use reflection ? i think it would be better to do it using annotations like @SelectableModel or just @Model
-    JComboBox cmbModel = new JComboBox(new String[] {"ZHL16B","ZHL16C"});
+    JComboBox cmbModel = new JComboBox(new String[] {"ZHL16B","ZHL16C","VpmB"});
 
     int outputStyle;    // For prefs checkbox
     int currentUnits;   // What units are we displaying ?
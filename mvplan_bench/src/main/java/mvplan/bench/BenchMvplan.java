@@ -0,0 +1,62 @@
+/*
+ * BenchMvplan.java
+ *
+ *  Minimal IMvplan for the benchmarks: default prefs, English strings and no debug output.
+ *  The planning code and printers still read some settings through MvplanInstance.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.bench;
+
+import java.util.Locale;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+
+import mvplan.main.IMvplan;
+import mvplan.main.MvplanInstance;
+import mvplan.prefs.Prefs;
+
+public class BenchMvplan implements IMvplan {
+    private Prefs prefs;
+    private ResourceBundle strings;
+
+    /** Installs a BenchMvplan as the MvplanInstance if there is none yet */
+    public static synchronized void install() {
+        if (MvplanInstance.getMvplan() == null)
+            MvplanInstance.setMvplan(new BenchMvplan());
+    }
+
+    public void init() {
+        strings = ResourceBundle.getBundle("mvplan/resources/strings", Locale.ENGLISH);
+        prefs = new Prefs();
+        prefs.setDefaultPrefs();
+        prefs.validatePrefs();
+    }
+
+    public String getResource(String res) {
+        try {
+            return strings.getString(res);
+        } catch (MissingResourceException e) {
+            return res;
+        }
+    }
+
+    public String getAppName()      { return MvplanInstance.NAME; }
+    public Prefs getPrefs()         { return prefs; }
+    public void setPrefs(Prefs p)   { prefs = p; }
+    public int getDebug()           { return 0; }
+}
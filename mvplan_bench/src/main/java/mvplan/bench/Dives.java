@@ -0,0 +1,73 @@
+/*
+ * Dives.java
+ *
+ *  Representative dive plans shared by the benchmarks.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mvplan.gas.Gas;
+import mvplan.segments.SegmentAbstract;
+import mvplan.segments.SegmentDive;
+
+class Dives {
+    final List<SegmentAbstract> segments = new ArrayList<SegmentAbstract>();
+    final List<Gas> gases = new ArrayList<Gas>();
+
+    /**
+     * Builds one of the benchmark dives
+     * @param name air, nitrox, trimix or ccr
+     * @return Dives with new segment and gas objects
+     */
+    static Dives create(String name) {
+        Dives d = new Dives();
+        if ("air".equals(name)) {
+            Gas air = d.gas(0.0, 0.21, 56.0);
+            d.segments.add(new SegmentDive(40.0, 30.0, air, 0.0));
+        } else if ("nitrox".equals(name)) {
+            Gas ean32 = d.gas(0.0, 0.32, 33.0);
+            d.segments.add(new SegmentDive(30.0, 50.0, ean32, 0.0));
+            d.gas(0.0, 0.5, 21.0);
+            d.gas(0.0, 1.0, 6.0);
+        } else if ("trimix".equals(name)) {
+            Gas tx1070 = d.gas(0.7, 0.10, 120.0);
+            d.segments.add(new SegmentDive(100.0, 20.0, tx1070, 0.0));
+            d.gas(0.35, 0.21, 57.0);
+            d.gas(0.0, 0.5, 21.0);
+            d.gas(0.0, 1.0, 6.0);
+        } else if ("ccr".equals(name)) {
+            Gas tx2135 = d.gas(0.35, 0.21, 57.0);
+            d.segments.add(new SegmentDive(60.0, 40.0, tx2135, 1.3));
+            d.segments.add(new SegmentDive(30.0, 20.0, tx2135, 1.3));
+            d.gas(0.0, 0.5, 21.0);
+            d.gas(0.0, 1.0, 6.0);
+        } else {
+            throw new IllegalArgumentException("Unknown dive: "+name);
+        }
+        return d;
+    }
+
+    private Gas gas(double fHe, double fO2, double mod) {
+        Gas g = new Gas(fHe, fO2, mod);
+        gases.add(g);
+        return g;
+    }
+}
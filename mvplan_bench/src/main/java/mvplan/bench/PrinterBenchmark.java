@@ -0,0 +1,77 @@
+/*
+ * PrinterBenchmark.java
+ *
+ *  Text output of a planned dive and a planned table.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import mvplan.dive.Profile;
+import mvplan.dive.TableGeneratorModel;
+import mvplan.dive.printer.TextProfilePrinter;
+import mvplan.dive.printer.TextTablePrinter;
+import mvplan.main.MvplanInstance;
+import mvplan.main.PlanningContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrinterBenchmark {
+    private Profile profile;
+    private TableGeneratorModel table;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchMvplan.install();
+        PlanningContext context = new PlanningContext(MvplanInstance.getPrefs());
+        Dives dives = Dives.create("trimix");
+        profile = new Profile(dives.segments, dives.gases, null, context);
+        profile.doDive();
+        profile.doGasCalcs();
+        dives = Dives.create("trimix");
+        table = new TableGeneratorModel(dives.segments, dives.gases, new int[] {0, 2, 4, 6, 8, 10}, context);
+        table.doMultiDive();
+    }
+
+    @Benchmark
+    public StringBuffer printProfile() {
+        return new TextProfilePrinter(profile, new StringBuffer()).print();
+    }
+
+    @Benchmark
+    public StringBuffer printTable() {
+        return new TextTablePrinter(table, new StringBuffer()).print();
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * ProfileBenchmark.java
+ *
+ *  Profile.doDive() for each of the benchmark dives, and the final ascent on its own.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import mvplan.dive.Profile;
+import mvplan.dive.ProfileCheckpoint;
+import mvplan.main.MvplanInstance;
+import mvplan.main.PlanningContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProfileBenchmark {
+    @Param({"air", "nitrox", "trimix", "ccr"})
+    public String dive;
+
+    private Dives dives;
+    private PlanningContext context;
+    private ProfileCheckpoint bottom;       // End of the last segment, before the ascent
+    private Profile ascending;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchMvplan.install();
+        context = new PlanningContext(MvplanInstance.getPrefs());
+        dives = Dives.create(dive);
+        Profile p = new Profile(dives.segments, dives.gases, null, context);
+        p.doDiveTo(dives.segments.size());
+        bottom = p.checkpoint();
+    }
+
+    @Setup(Level.Invocation)
+    public void restoreBottom() {
+        ascending = new Profile(dives.segments, dives.gases, null, context);
+        ascending.restore(bottom);
+    }
+
+    @Benchmark
+    public Profile doDive() {
+        Profile p = new Profile(dives.segments, dives.gases, null, context);
+        p.doDive();
+        return p;
+    }
+
+    /** With all segments done, continueDive() is ascend(0.0) with deco gas switching */
+    @Benchmark
+    public Profile ascend() {
+        ascending.continueDive();
+        return ascending;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * TableBenchmark.java
+ *
+ *  TableGeneratorModel.doMultiDive() for a trimix table, on one thread and on all processors.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import mvplan.dive.TableGeneratorModel;
+import mvplan.main.MvplanInstance;
+import mvplan.main.PlanningContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TableBenchmark {
+    private static final int[] MODIFIERS = {0, 2, 4, 6, 8, 10};
+
+    /** Worker threads, 0 for one per processor */
+    @Param({"1", "0"})
+    public int threads;
+
+    private Dives dives;
+    private PlanningContext context;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchMvplan.install();
+        context = new PlanningContext(MvplanInstance.getPrefs());
+        dives = Dives.create("trimix");
+    }
+
+    @Benchmark
+    public TableGeneratorModel doMultiDive() {
+        TableGeneratorModel t = new TableGeneratorModel(dives.segments, dives.gases, MODIFIERS, context);
+        if (threads > 0)
+            t.setThreads(threads);
+        t.doMultiDive();
+        return t;
+    }
+}
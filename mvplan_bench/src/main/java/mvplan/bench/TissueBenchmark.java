@@ -0,0 +1,89 @@
+/*
+ * TissueBenchmark.java
+ *
+ *  Tissue loading for a single step: Compartment and the ZHL16B model, at constant depth
+ *  and ascending.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import mvplan.main.MvplanInstance;
+import mvplan.main.PlanningContext;
+import mvplan.model.Compartment;
+import mvplan.model.ModelStateException;
+import mvplan.model.ZHL16B;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TissueBenchmark {
+    private Compartment compartment;
+    private ZHL16B model;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ModelStateException {
+        BenchMvplan.install();
+        compartment = new Compartment();
+        compartment.setCompartmentTimeConstants(1.51, 4.0, 1.7424, 0.4245, 1.2599, 0.5050);
+        compartment.setpp(0.0, 7.452);
+        model = new ZHL16B();
+        model.setContext(new PlanningContext(MvplanInstance.getPrefs()));
+        model.initModel();
+    }
+
+    @Benchmark
+    public Compartment compartmentConstDepth() throws ModelStateException {
+        compartment.constDepth(14.0, 25.0, 1.0);
+        return compartment;
+    }
+
+    @Benchmark
+    public Compartment compartmentAscDec() throws ModelStateException {
+        compartment.ascDec(14.0, 25.0, -3.0, -6.0, 1.0);
+        return compartment;
+    }
+
+    @Benchmark
+    public ZHL16B modelConstDepth() throws ModelStateException {
+        model.constDepth(40.0, 1.0, 0.35, 0.44, 0.0);
+        return model;
+    }
+
+    @Benchmark
+    public ZHL16B modelAscDec() throws ModelStateException {
+        model.ascDec(40.0, 30.0, -10.0, 0.35, 0.44, 0.0);
+        return model;
+    }
+}
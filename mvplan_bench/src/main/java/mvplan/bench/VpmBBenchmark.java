@@ -0,0 +1,57 @@
+/*
+ * VpmBBenchmark.java
+ *
+ *  BakerVpmB.calculate() for a single trimix dive.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import mvplan.model.BakerVpmB;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VpmBBenchmark {
+
+    @Benchmark
+    public BakerVpmB calculate() {
+        BakerVpmB vpm = new BakerVpmB();
+        vpm.addBottomMix(0.21, 0.35);
+        vpm.addDecoMix(0.5, 0.0, 21.0);
+        vpm.addDecoMix(1.0, 0.0, 6.0);
+        vpm.addProfilePoint(60.0, 3.0, 20.0, 0);
+        vpm.addProfilePoint(60.0, 25.0, 0.0, 0);
+        vpm.calculate();
+        return vpm;
+    }
+}
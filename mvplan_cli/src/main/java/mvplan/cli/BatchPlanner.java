@@ -0,0 +1,264 @@
+/*
+ * BatchPlanner.java
+ *
+ *  Plans a list of plan files on a number of worker threads and writes the printed plans in
+ *  the order of the files, as text or CSV, to one stream or to a file per plan. The TIMELINE
+ *  format writes the TTS and NDL timeline of each dive as CSV instead of its plan.
+ *
+ *  Only a few plans ahead of the one being written are started, so the output of thousands
+ *  of plans is streamed rather than held in memory. Each plan is planned and printed on one
+ *  thread with a PlanningContext holding its own prefs. A plan that fails is reported on the
+ *  error stream and the others carry on.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.cli;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import mvplan.dive.DiveTimeline;
+import mvplan.dive.PlanCache;
+import mvplan.dive.Profile;
+import mvplan.dive.TableGeneratorModel;
+import mvplan.dive.printer.CsvProfilePrinter;
+import mvplan.dive.printer.CsvTablePrinter;
+import mvplan.dive.printer.CsvTimelinePrinter;
+import mvplan.dive.printer.TextProfilePrinter;
+import mvplan.dive.printer.TextTablePrinter;
+import mvplan.main.PlanningContext;
+
+public class BatchPlanner {
+    public static final int TEXT = 0;       // Output formats
+    public static final int CSV = 1;
+    public static final int TIMELINE = 2;
+
+    private static final int PLANS_AHEAD = 4;   // Plans started per thread ahead of the output
+
+    private final CliMvplan mvplan;
+    private final PrintStream err;          // Failed plans and debug output
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int format = TEXT;
+    private PlanCache planCache;            // Finished plans, null if not used
+
+    /** Printed plan, or the reason it failed */
+    private static class Result {
+        String name;
+        StringBuffer text;
+        String error;
+    }
+
+    /**
+     * Constructor for BatchPlanner
+     * @param mvplan Installed CliMvplan, holding the base prefs
+     * @param err Stream for failed plans and debug output
+     */
+    public BatchPlanner(CliMvplan mvplan, PrintStream err) {
+        this.mvplan = mvplan;
+        this.err = err;
+    }
+
+    /**
+     * Sets the number of worker threads
+     * @param n Number of threads
+     */
+    public void setThreads(int n) {
+        threads = Math.max(1, n);
+    }
+
+    /**
+     * Sets the output format
+     * @param format TEXT, CSV or TIMELINE
+     */
+    public void setFormat(int format) {
+        this.format = format;
+    }
+
+    /**
+     * Sets the cache of finished plans, which may have a PlanStore behind it
+     * @param cache PlanCache, or null for none
+     */
+    public void setPlanCache(PlanCache cache) {
+        planCache = cache;
+    }
+
+    /**
+     * Plans the files and writes them to one stream, CSV with a single header
+     * @param files Plan files
+     * @param out Output, not closed
+     * @return Number of plans that failed
+     * @throws IOException if the output can not be written
+     */
+    public int run(List<File> files, Writer out) throws IOException {
+        return run(files, out, null);
+    }
+
+    /**
+     * Plans the files and writes each to its own file, named from the plan
+     * @param files Plan files
+     * @param dir Output directory
+     * @return Number of plans that failed
+     * @throws IOException if an output file can not be written
+     */
+    public int run(List<File> files, File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Can not create "+dir);
+        return run(files, null, dir);
+    }
+
+    private int run(final List<File> files, Writer out, File dir) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> results = new ArrayList<Future<Result>>();
+        Result r;
+        int failed = 0;
+        int next = 0;       // Next file to start
+
+        if (out != null && format != TEXT)
+            out.write(header()+'\n');
+        try {
+            for (int i=0; i<files.size(); i++) {
+                // Keep the workers busy a few plans ahead of the output
+                while (next < files.size() && next < i+threads*PLANS_AHEAD) {
+                    final File file = files.get(next++);
+                    results.add(executor.submit(new Callable<Result>() {
+                        public Result call() {
+                            return plan(file);
+                        }
+                    }));
+                }
+                r = get(results.get(i));
+                results.set(i, null);           // Let the printed plan be collected
+                if (r.error != null) {
+                    err.println(files.get(i)+": "+r.error);
+                    failed++;
+                } else if (out != null) {
+                    out.write(r.text.toString());
+                    if (format == TEXT)
+                        out.write('\n');
+                } else
+                    write(new File(dir, r.name+(format == TEXT ? ".txt" : ".csv")), r.text);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        if (out != null)
+            out.flush();
+        return failed;
+    }
+
+    private static Result get(Future<Result> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted");
+        } catch (ExecutionException e) {
+            Result r = new Result();
+            r.error = String.valueOf(e.getCause());
+            return r;
+        }
+    }
+
+    private void write(File file, StringBuffer text) throws IOException {
+        Writer w = new BufferedWriter(new FileWriter(file));
+        try {
+            if (format != TEXT)
+                w.write(header()+'\n');
+            w.write(text.toString());
+        } finally {
+            w.close();
+        }
+    }
+
+    private String header() {
+        return format == TIMELINE ? CsvTimelinePrinter.HEADER : CsvProfilePrinter.HEADER;
+    }
+
+    /** Reads, plans and prints one file on the current thread */
+    private Result plan(File file) {
+        Result r = new Result();
+        PlanFile plan;
+        PlanningContext context;
+        int returnCode;
+
+        try {
+            plan = PlanFile.read(file, mvplan.getPrefs());
+        } catch (PlanFileException e) {
+            r.error = e.getMessage();
+            return r;
+        }
+        r.name = plan.getName();
+        r.text = new StringBuffer();
+        context = new PlanningContext(plan.getPrefs(), mvplan.getDebug(), err);
+        if (format == TIMELINE) {
+            // The dive as planned, a table is followed without its modifiers
+            DiveTimeline t = new DiveTimeline(plan.getSegments(), plan.getGases(), context);
+            returnCode = t.calculate();
+            if (returnCode == Profile.SUCCESS)
+                new CsvTimelinePrinter(t, r.text, plan.getName()).print();
+        } else if (plan.isTable()) {
+            TableGeneratorModel tm = new TableGeneratorModel(plan.getSegments(), plan.getGases(), plan.getModifiers(), context);
+            tm.setThreads(1);      // The plans are already spread over the workers
+            tm.setPlanCache(planCache);
+            returnCode = tm.doMultiDive();
+            if (returnCode == Profile.SUCCESS) {
+                if (format == CSV)
+                    new CsvTablePrinter(tm, r.text, plan.getName()).print();
+                else
+                    new TextTablePrinter(tm, r.text).print();
+            }
+        } else {
+            Profile p = new Profile(plan.getSegments(), plan.getGases(), null, context);
+            p.setPlanCache(planCache);
+            returnCode = p.doDive();
+            if (returnCode == Profile.SUCCESS) {
+                p.doGasCalcs();
+                if (format == CSV)
+                    new CsvProfilePrinter(p, r.text, plan.getName()).print();
+                else
+                    new TextProfilePrinter(p, r.text, plan.getGases()).print();
+            }
+        }
+        if (returnCode != Profile.SUCCESS)
+            r.error = describe(returnCode);
+        return r;
+    }
+
+    /**
+     * Describes why a plan failed, for the batch planner and the planning service
+     * @param returnCode Return code of Profile.doDive() or TableGeneratorModel.doMultiDive()
+     * @return Short description of the return code
+     */
+    public static String describe(int returnCode) {
+        switch (returnCode) {
+            case Profile.CEILING_VIOLATION:     return "ceiling violation";
+            case Profile.NOTHING_TO_PROCESS:    return "nothing to process";
+            case Profile.INFINITE_DECO:         return "infinite deco";
+            default:                            return "processing error";
+        }
+    }
+}
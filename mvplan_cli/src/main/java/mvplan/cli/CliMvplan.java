@@ -0,0 +1,90 @@
+/*
+ * CliMvplan.java
+ *
+ *  Headless IMvplan for the batch planner. Loads no Swing or AWT classes.
+ *
+ *  The model, segments and printers take the settings of a plan from its PlanningContext, so
+ *  plans with different settings can run in parallel. getPrefs() returns the base prefs that
+ *  plan files are read on top of.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.cli;
+
+import java.util.Locale;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+
+import mvplan.main.IMvplan;
+import mvplan.main.MvplanInstance;
+import mvplan.prefs.Prefs;
+
+public class CliMvplan implements IMvplan {
+    private final Locale locale;
+    private final int debug;
+    private ResourceBundle strings;
+    private Prefs prefs;                // Base prefs
+    private String appName;
+
+    /**
+     * Constructor for CliMvplan
+     * @param locale Locale of the printed text
+     * @param debug Debug level, 0 for none
+     */
+    public CliMvplan(Locale locale, int debug) {
+        this.locale = locale;
+        this.debug = debug;
+    }
+
+    /**
+     * Installs a CliMvplan as the MvplanInstance with default prefs
+     * @param locale Locale of the printed text
+     * @param debug Debug level, 0 for none
+     * @return The installed CliMvplan
+     */
+    public static CliMvplan install(Locale locale, int debug) {
+        CliMvplan m = new CliMvplan(locale, debug);
+        MvplanInstance.setMvplan(m);
+        return m;
+    }
+
+    public void init() {
+        appName = MvplanInstance.NAME+" "+MvplanInstance.getVersion().toString();
+        strings = ResourceBundle.getBundle("mvplan/resources/strings", locale);
+        prefs = new Prefs();
+        prefs.setDefaultPrefs();
+        prefs.validatePrefs();
+    }
+
+    public String getResource(String key) {
+        try {
+            return strings.getString(key);
+        } catch (MissingResourceException e) {
+            if (debug > 0) System.err.println("Missing string resource: "+key);
+            return "<"+key+">";
+        }
+    }
+
+    public String getAppName()      { return appName; }
+    public int getDebug()           { return debug; }
+
+    /** @return Base prefs */
+    public Prefs getPrefs()         { return prefs; }
+
+    /** Sets the base prefs */
+    public void setPrefs(Prefs p)   { prefs = p; }
+}
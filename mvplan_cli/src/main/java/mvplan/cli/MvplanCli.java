@@ -0,0 +1,167 @@
+/*
+ * MvplanCli.java
+ *
+ *   Command line entry point of the headless batch planner, see PlanFile and BatchPlanner.
+ *   Starts no GUI, so it can run from scripts and scheduled jobs.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.cli;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import mvplan.dive.PlanCache;
+import mvplan.dive.PlanStore;
+import mvplan.prefs.PrefsException;
+import mvplan.prefs.PrefsXStreamDAO;
+
+public class MvplanCli {
+    private static final int PLAN_CACHE_SIZE = 200;             // Finished plans kept in memory
+    private static final int PLAN_STORE_SIZE = 50000;           // Finished plans kept on disk
+    private static final long PLAN_STORE_BYTES = 500L*1024*1024;
+
+    private static final String USAGE =
+        "Usage: mvplan_cli [options] file|directory ...\n"+
+        "Plans each plan file, or each *"+PlanFile.SUFFIX+" file in a directory.\n"+
+        "  -prefs file    base settings, an mvplan.xml saved by MV-Plan\n"+
+        "  -out dir       write each plan to dir/name.txt or .csv, not to stdout\n"+
+        "  -csv           write CSV instead of text\n"+
+        "  -timeline      write the TTS and NDL timeline of each dive as CSV\n"+
+        "  -threads n     plans in parallel, default one per processor\n"+
+        "  -cache dir     keep finished plans in dir and reuse them\n"+
+        "  -locale lang   language of the text, default English\n"+
+        "  -debug n       debug level, default 0\n";
+
+    /**
+     * @param args Options and plan files
+     */
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Runs the batch planner
+     * @param args Options and plan files
+     * @return Exit status: 0 if all plans were written, 1 if some failed, 2 on a usage or IO error
+     */
+    public static int run(String[] args) {
+        String prefsFile = null, cacheDir = null;
+        File outDir = null;
+        int format = BatchPlanner.TEXT, threads = 0, debug = 0;
+        Locale locale = Locale.ENGLISH;
+        List<File> files = new ArrayList<File>();
+        CliMvplan mvplan;
+        BatchPlanner planner;
+        PlanCache cache = null;
+        int i, failed;
+
+        try {
+            for (i=0; i<args.length; i++) {
+                if (args[i].equals("-prefs"))
+                    prefsFile = args[++i];
+                else if (args[i].equals("-out"))
+                    outDir = new File(args[++i]);
+                else if (args[i].equals("-csv"))
+                    format = BatchPlanner.CSV;
+                else if (args[i].equals("-timeline"))
+                    format = BatchPlanner.TIMELINE;
+                else if (args[i].equals("-threads"))
+                    threads = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-cache"))
+                    cacheDir = args[++i];
+                else if (args[i].equals("-locale"))
+                    locale = new Locale(args[++i]);
+                else if (args[i].equals("-debug"))
+                    debug = Integer.parseInt(args[++i]);
+                else if (args[i].startsWith("-"))
+                    return usage(args[i].equals("-help") ? null : "Unknown option "+args[i]);
+                else
+                    addFiles(new File(args[i]), files);
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return usage("Missing value for "+args[args.length-1]);
+        } catch (NumberFormatException e) {
+            return usage("Invalid number "+e.getMessage());
+        }
+        if (files.isEmpty())
+            return usage("No plan files");
+
+        mvplan = CliMvplan.install(locale, debug);
+        try {
+            if (prefsFile != null)
+                mvplan.setPrefs(new PrefsXStreamDAO(prefsFile).loadPrefs());
+            planner = new BatchPlanner(mvplan, System.err);
+            if (threads > 0)
+                planner.setThreads(threads);
+            planner.setFormat(format);
+            if (cacheDir != null) {
+                cache = new PlanCache(PLAN_CACHE_SIZE);
+                cache.setStore(new PlanStore(new File(cacheDir), PLAN_STORE_SIZE, PLAN_STORE_BYTES));
+                planner.setPlanCache(cache);
+            }
+            if (outDir != null)
+                failed = planner.run(files, outDir);
+            else {
+                Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+                failed = planner.run(files, out);
+            }
+            if (cache != null)
+                cache.getStore().flush();
+        } catch (PrefsException e) {
+            System.err.println("Can not load "+prefsFile+": "+e.getMessage());
+            return 2;
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return 2;
+        }
+        if (failed > 0)
+            System.err.println(failed+" of "+files.size()+" plans failed");
+        return failed > 0 ? 1 : 0;
+    }
+
+    /** Adds a file, or the plan files of a directory in name order */
+    private static void addFiles(File f, List<File> files) {
+        File[] list;
+
+        if (!f.isDirectory()) {
+            files.add(f);
+            return;
+        }
+        list = f.listFiles();
+        if (list == null)
+            return;
+        Arrays.sort(list);
+        for (int i=0; i<list.length; i++)
+            if (list[i].isFile() && list[i].getName().endsWith(PlanFile.SUFFIX))
+                files.add(list[i]);
+    }
+
+    private static int usage(String error) {
+        if (error != null)
+            System.err.println(error);
+        System.err.print(USAGE);
+        return 2;
+    }
+}
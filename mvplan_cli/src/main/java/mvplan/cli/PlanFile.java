@@ -0,0 +1,259 @@
+/*
+ * PlanFile.java
+ *
+ *  A dive to plan in batch, read from a properties file:
+ *
+ *      # 40m for 25 minutes on trimix, nitrox and oxygen deco
+ *      name=deep40
+ *      gases=18/45, 50@21, 100@6
+ *      segments=40:25:18/45
+ *      modifiers=0,5,10
+ *      gfLow=0.2
+ *
+ *  Gases are O2[/He][@MOD] in percent, the MOD defaulting to the maximum for the O2. Segments
+ *  are depth:time:gas[:setpoint], the gas being added to the gases if it is not one of them.
+ *  With modifiers a table is planned, one profile for each time added to the last timed
+ *  segment, otherwise a single dive. The name defaults to the file name. Any other key sets
+ *  the setting of the same name in a copy of the base prefs, e.g. gfLow calls Prefs.setGfLow().
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.cli;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import mvplan.gas.Gas;
+import mvplan.prefs.Prefs;
+import mvplan.segments.SegmentAbstract;
+import mvplan.segments.SegmentDive;
+import mvplan.util.GasUtils;
+
+public class PlanFile {
+    /** Suffix of plan files found in a directory */
+    public static final String SUFFIX=".dive";
+
+    private static final String NAME="name";
+    private static final String GASES="gases";
+    private static final String SEGMENTS="segments";
+    private static final String MODIFIERS="modifiers";
+
+    private final String name;
+    private final Prefs prefs;
+    private final List<Gas> gases = new ArrayList<Gas>();
+    private final List<SegmentAbstract> segments = new ArrayList<SegmentAbstract>();
+    private int[] modifiers;            // null for a single dive
+
+    /**
+     * Reads a plan file
+     * @param file File
+     * @param base Base prefs, not changed
+     * @return PlanFile
+     * @throws PlanFileException if the file can not be read or is not valid
+     */
+    public static PlanFile read(File file, Prefs base) throws PlanFileException {
+        Properties p = new Properties();
+        InputStream in = null;
+        String name = file.getName();
+
+        if (name.endsWith(SUFFIX))
+            name = name.substring(0, name.length()-SUFFIX.length());
+        try {
+            in = new BufferedInputStream(new FileInputStream(file));
+            p.load(in);
+        } catch (IOException e) {
+            throw new PlanFileException("Can not read "+file, e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return new PlanFile(name, p, base);
+    }
+
+    /**
+     * Constructor for PlanFile
+     * @param defaultName Name if the properties have none
+     * @param p Properties of the plan
+     * @param base Base prefs, not changed
+     * @throws PlanFileException if the plan is not valid
+     */
+    public PlanFile(String defaultName, Properties p, Prefs base) throws PlanFileException {
+        Iterator<Object> it;
+        String key;
+        String[] items;
+        int i;
+
+        name = p.getProperty(NAME, defaultName).trim();
+        prefs = copy(base);
+        for (it = p.keySet().iterator(); it.hasNext();) {
+            key = (String)it.next();
+            if (!key.equals(NAME) && !key.equals(GASES) && !key.equals(SEGMENTS) && !key.equals(MODIFIERS))
+                set(prefs, key, p.getProperty(key).trim());
+        }
+        prefs.validatePrefs();
+
+        // Gases first so that the MODs use the settings of the plan
+        items = split(p.getProperty(GASES));
+        for (i=0; i<items.length; i++)
+            gases.add(parseGas(items[i]));
+        items = split(p.getProperty(SEGMENTS));
+        if (items.length == 0)
+            throw new PlanFileException(name+": no segments");
+        for (i=0; i<items.length; i++)
+            segments.add(parseSegment(items[i]));
+        if (p.getProperty(MODIFIERS) != null) {
+            items = split(p.getProperty(MODIFIERS));
+            modifiers = new int[items.length];
+            for (i=0; i<items.length; i++)
+                modifiers[i] = (int)number(MODIFIERS, items[i]);
+        }
+    }
+
+    public String getName()                     { return name; }
+    /** @return Prefs of the plan, the base prefs with the settings of the file */
+    public Prefs getPrefs()                     { return prefs; }
+    public List<Gas> getGases()                 { return gases; }
+    public List<SegmentAbstract> getSegments()  { return segments; }
+    /** @return Time modifiers of a table, or null for a single dive */
+    public int[] getModifiers()                 { return modifiers; }
+    public boolean isTable()                    { return modifiers != null; }
+
+    /** Deep copy of prefs, so plans can not change each other's settings */
+    private static Prefs copy(Prefs p) throws PlanFileException {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(p);
+            out.close();
+            return (Prefs)new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        } catch (IOException e) {
+            throw new PlanFileException("Can not copy prefs", e);
+        } catch (ClassNotFoundException e) {
+            throw new PlanFileException("Can not copy prefs", e);
+        }
+    }
+
+    /** Calls the Prefs setter for a key, converting the value to its parameter type */
+    private void set(Prefs p, String key, String value) throws PlanFileException {
+        String setter = "set"+Character.toUpperCase(key.charAt(0))+key.substring(1);
+        Method[] methods = Prefs.class.getMethods();
+        Class<?> type;
+        Object arg;
+
+        for (int i=0; i<methods.length; i++) {
+            if (!methods[i].getName().equals(setter) || methods[i].getParameterTypes().length != 1)
+                continue;
+            type = methods[i].getParameterTypes()[0];
+            if (type == Double.TYPE)
+                arg = Double.valueOf(number(key, value));
+            else if (type == Integer.TYPE)
+                arg = Integer.valueOf((int)number(key, value));
+            else if (type == Boolean.TYPE)
+                arg = Boolean.valueOf(value);
+            else if (type == String.class)
+                arg = value;
+            else
+                continue;
+            try {
+                methods[i].invoke(p, new Object[] { arg });
+            } catch (IllegalAccessException e) {
+                throw new PlanFileException(name+": can not set "+key, e);
+            } catch (InvocationTargetException e) {
+                throw new PlanFileException(name+": can not set "+key, e.getCause());
+            }
+            return;
+        }
+        throw new PlanFileException(name+": unknown setting "+key);
+    }
+
+    /** Parses O2[/He][@MOD] in percent */
+    private Gas parseGas(String s) throws PlanFileException {
+        String[] mix;
+        double fO2, fHe = 0.0, mod;
+        int at = s.indexOf('@');
+
+        mix = (at < 0 ? s : s.substring(0, at)).split("/");
+        if (mix.length > 2)
+            throw new PlanFileException(name+": invalid gas "+s);
+        fO2 = number(GASES, mix[0])/100.0;
+        if (mix.length == 2)
+            fHe = number(GASES, mix[1])/100.0;
+        if (at < 0)
+            mod = Math.floor(GasUtils.getMaxMod(fO2, prefs));
+        else
+            mod = number(GASES, s.substring(at+1));
+        if (fO2 <= 0.0 || fO2+fHe > 1.0 || mod <= 0.0)
+            throw new PlanFileException(name+": invalid gas "+s);
+        return new Gas(fHe, fO2, mod);
+    }
+
+    /** Parses depth:time:gas[:setpoint], using a gas of the plan with the same mix */
+    private SegmentAbstract parseSegment(String s) throws PlanFileException {
+        String[] fields = s.split(":");
+        Gas g, mix;
+        int i;
+
+        if (fields.length < 3 || fields.length > 4)
+            throw new PlanFileException(name+": invalid segment "+s);
+        mix = parseGas(fields[2].trim());
+        g = null;
+        for (i=0; i<gases.size() && g == null; i++)
+            if (gases.get(i).getFO2() == mix.getFO2() && gases.get(i).getFHe() == mix.getFHe())
+                g = gases.get(i);
+        if (g == null) {
+            g = mix;
+            gases.add(g);
+        }
+        return new SegmentDive(number(SEGMENTS, fields[0]), number(SEGMENTS, fields[1]), g,
+                fields.length == 4 ? number(SEGMENTS, fields[3]) : 0.0);
+    }
+
+    private double number(String key, String value) throws PlanFileException {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new PlanFileException(name+": invalid "+key+" "+value);
+        }
+    }
+
+    /** Splits a comma separated list, an empty or missing list has no items */
+    private static String[] split(String list) {
+        if (list == null || list.trim().length() == 0)
+            return new String[0];
+        String[] items = list.split(",");
+        for (int i=0; i<items.length; i++)
+            items[i] = items[i].trim();
+        return items;
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * PlanFileException.java
+ *
+ * Indicates that a plan file can not be read or holds an invalid setting.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.cli;
+
+import mvplan.MVPlanException;
+
+public class PlanFileException extends MVPlanException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor wih String message
+     * @param desc Message
+     */
+    public PlanFileException(String desc) {
+        super(desc);
+    }
+
+    /**
+     * Constructor with message and cause
+     * @param desc Message
+     * @param e Cause
+     */
+    public PlanFileException(String desc, Throwable e) {
+        super(desc, e);
+    }
+}
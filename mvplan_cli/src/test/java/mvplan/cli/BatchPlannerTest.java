@@ -0,0 +1,123 @@
+package mvplan.cli;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import mvplan.dive.printer.CsvProfilePrinter;
+import mvplan.dive.printer.CsvTimelinePrinter;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BatchPlannerTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+	CliMvplan mvplan;
+	List<File> files;
+	ByteArrayOutputStream errors;
+
+	@Before
+	public void prepeare() throws IOException {
+		mvplan = CliMvplan.install(Locale.ENGLISH, 0);
+		files = new ArrayList<File>();
+		files.add(planFile("a.dive", "segments=40:30:21\n"));
+		files.add(planFile("b.dive", "name=conservative\ngfLow=0.2\ngfHigh=0.7\n"
+				+ "gases=18/45, 50@21, 100@6\nsegments=50:20:18/45\n"));
+		files.add(planFile("c.dive", "segments=40:20:21\nmodifiers=0,5,10\n"));
+		files.add(planFile("d.dive", "segments=40:20:air\n"));
+		errors = new ByteArrayOutputStream();
+	}
+
+	private File planFile(String name, String text) throws IOException {
+		File f = folder.newFile(name);
+		FileWriter w = new FileWriter(f);
+		w.write(text);
+		w.close();
+		return f;
+	}
+
+	private String run(int threads, int format) throws IOException {
+		BatchPlanner planner = new BatchPlanner(mvplan, new PrintStream(errors));
+		planner.setThreads(threads);
+		planner.setFormat(format);
+		StringWriter out = new StringWriter();
+		assertEquals(1, planner.run(files, out));
+		return out.toString();
+	}
+
+	@Test
+	public void testText() throws IOException {
+		String text = run(1, BatchPlanner.TEXT);
+
+		// Plans in file order, each with its own settings
+		int a = text.indexOf("Settings: GF=30-80");
+		int b = text.indexOf("Settings: GF=20-70");
+		assertTrue(a >= 0);
+		assertTrue(b > a);
+		assertTrue(text.indexOf("Settings: GF=30-80", b) > b);
+		assertEquals(0.3, mvplan.getPrefs().getGfLow(), 0.0);
+		assertTrue(errors.toString().indexOf("d.dive: ") >= 0);
+
+		// Same output from parallel plans
+		assertEquals(text, run(3, BatchPlanner.TEXT));
+	}
+
+	@Test
+	public void testCsv() throws IOException {
+		String[] rows = run(2, BatchPlanner.CSV).split("\n");
+
+		assertEquals(CsvProfilePrinter.HEADER, rows[0]);
+		assertTrue(rows[1].startsWith("a,,"));
+		boolean conservative = false, table = false;
+		for (int i = 1; i < rows.length; i++) {
+			assertEquals(8, rows[i].split(",").length);
+			conservative |= rows[i].startsWith("conservative,,");
+			table |= rows[i].startsWith("c,10,");
+		}
+		assertTrue(conservative);
+		assertTrue(table);
+	}
+
+	@Test
+	public void testTimeline() throws IOException {
+		String[] rows = run(2, BatchPlanner.TIMELINE).split("\n");
+
+		// A row per sample of each dive, the table without its modifiers
+		assertEquals(CsvTimelinePrinter.HEADER, rows[0]);
+		assertTrue(rows[1].startsWith("a,"));
+		int conservative = 0, table = 0, waypoints = 0;
+		for (int i = 1; i < rows.length; i++) {
+			String[] columns = rows[i].split(",");
+			assertEquals(7, columns.length);
+			conservative += rows[i].startsWith("conservative,") ? 1 : 0;
+			table += rows[i].startsWith("c,") ? 1 : 0;
+			waypoints += Integer.parseInt(columns[6]);
+		}
+		assertTrue(conservative > 1);
+		assertTrue(table > 1);
+		assertTrue(waypoints >= 3);
+		assertTrue(errors.toString().indexOf("d.dive: ") >= 0);
+	}
+
+	@Test
+	public void testOutputDirectory() throws IOException {
+		File dir = new File(folder.getRoot(), "out");
+		BatchPlanner planner = new BatchPlanner(mvplan, new PrintStream(errors));
+		assertEquals(1, planner.run(files, dir));
+		assertTrue(new File(dir, "a.txt").isFile());
+		assertTrue(new File(dir, "conservative.txt").isFile());
+		assertTrue(new File(dir, "c.txt").isFile());
+		assertEquals(3, dir.list().length);
+	}
+}
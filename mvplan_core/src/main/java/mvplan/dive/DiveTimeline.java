@@ -0,0 +1,219 @@
+/*
+ * DiveTimeline.java
+ *
+ *  Time to surface (TTS) and no decompression limit (NDL) along a dive, as a dive computer
+ *  would show them.
+ *
+ *  Follows the input segments with a Profile, and takes a sample on arrival at the depth of
+ *  each segment and at every whole minute of runtime at that depth. For each sample the
+ *  Profile works out the TTS for an ascent now and the TTS for an ascent after TTS_EXTRA_TIME
+ *  more minutes at the same depth with its own ascent, holding the model state in a
+ *  ModelSnapshot and putting the dive back afterwards, so the TTS is that of a plan ended
+ *  there. The NDL is worked out on a second model restored from the same snapshot. A sample
+ *  costs two ascents and at most MAX_NDL one minute steps.
+ *
+ *  The samples are held in arrays, indexed 0 to getNumSamples()-1, for printing and charting.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.dive;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import mvplan.gas.Gas;
+import mvplan.main.PlanningContext;
+import mvplan.model.AbstractModel;
+import mvplan.model.ModelSnapshot;
+import mvplan.model.ModelStateException;
+import mvplan.segments.SegmentAbstract;
+import mvplan.segments.SegmentDive;
+
+public class DiveTimeline
+{
+    /** Extra minutes at depth for getTtsPlus(), the TTS@+5 of a dive computer */
+    public static final double TTS_EXTRA_TIME=5.0;
+    /** Longest NDL worked out, longer NDLs are given as this */
+    public static final double MAX_NDL=99.0;
+
+    private final int debug;
+    private final PrintStream trace;
+    private final List<SegmentAbstract> inputSegments;  // Enabled segments
+    private final Profile profile;                      // Profile following the dive
+    private final AbstractModel scratch;                // Model for the NDL of each sample
+    private final ModelSnapshot snapshot;               // State of the model at the sample
+
+    // Samples
+    private int numSamples;
+    private double[] sampleRunTime = new double[64];
+    private double[] sampleDepth = new double[64];
+    private double[] tts = new double[64];
+    private double[] ttsPlus = new double[64];
+    private double[] ndl = new double[64];
+    private boolean[] waypoint = new boolean[64];
+
+    /**
+     * Constructor for DiveTimeline, using the application prefs
+     * @param segments Dive segments
+     * @param gases Dive gases
+     */
+    public DiveTimeline(List<SegmentAbstract> segments, List<Gas> gases)
+    {
+        this(segments,gases,PlanningContext.getDefault());
+    }
+
+    /**
+     * Constructor for DiveTimeline. Disabled segments and gases are ignored, as by Profile.
+     * @param segments Dive segments
+     * @param gases Dive gases
+     * @param context Settings and debug output for the dive
+     */
+    public DiveTimeline(List<SegmentAbstract> segments, List<Gas> gases, PlanningContext context)
+    {
+        int i;
+
+        debug=context.getDebug();
+        trace=context.getTrace();
+        profile=new Profile(segments,gases,null,context);
+        inputSegments = new ArrayList<SegmentAbstract>();
+        for(i=0;i<segments.size();i++)
+            if(segments.get(i).getEnable().booleanValue())
+                inputSegments.add(segments.get(i));
+        scratch=(AbstractModel)profile.getModel().clone();
+        snapshot=profile.getModel().newSnapshot();
+    }
+
+    /**
+     * Follows the dive through the input segments, taking the samples. Can be called once.
+     * @return Return code as defined in Profile
+     */
+    public int calculate()
+    {
+        SegmentAbstract s;
+        SegmentDive sd;
+        double end;
+        double step;
+        double t;
+        int i;
+
+        numSamples=0;
+        if(inputSegments.size()==0)
+            return Profile.NOTHING_TO_PROCESS;
+        profile.startDive();
+        try {
+            for(i=0;i<inputSegments.size();i++) {
+                s=inputSegments.get(i);
+                if(s.getType() != SegmentAbstract.CONST)
+                    continue;
+                sd=(SegmentDive)s;
+                if(profile.moveToSegment(sd) != Profile.SUCCESS)
+                    return Profile.PROCESSING_ERROR;
+                profile.arrive(sd);
+                sample(true);
+                if(sd.getTime() <= 0.0)
+                    continue;
+                // Sample at each whole minute of runtime
+                end=profile.segmentEndTime(sd);
+                t=profile.getRunTime();
+                while(t < end) {
+                    step=Math.min(end,Math.floor(t+1e-9)+1.0)-t;
+                    if(profile.stay(step) != Profile.SUCCESS)
+                        return Profile.PROCESSING_ERROR;
+                    t=profile.getRunTime();
+                    sample(false);
+                }
+            }
+        } catch (ModelStateException e) {
+            return Profile.PROCESSING_ERROR;
+        }
+        return Profile.SUCCESS;
+    }
+
+    /** Number of samples from calculate() */
+    public int getNumSamples()              { return numSamples; }
+    /** Runtime of a sample in minutes */
+    public double getRunTime(int i)         { return sampleRunTime[i]; }
+    /** Depth of a sample in msw (fsw) */
+    public double getDepth(int i)           { return sampleDepth[i]; }
+    /** Time to surface from a sample in minutes, Double.POSITIVE_INFINITY if deco is not possible */
+    public double getTts(int i)             { return tts[i]; }
+    /** Time to surface after TTS_EXTRA_TIME more minutes at the depth of a sample */
+    public double getTtsPlus(int i)         { return ttsPlus[i]; }
+    /** No decompression limit at a sample in minutes, 0.0 if in deco, at most MAX_NDL */
+    public double getNdl(int i)             { return ndl[i]; }
+    /** true if the sample is on arrival at the depth of an input segment */
+    public boolean isWaypoint(int i)        { return waypoint[i]; }
+
+    /**
+     * Takes a sample of the current state of the profile
+     * @param isWaypoint Sample is on arrival at a segment
+     */
+    private void sample(boolean isWaypoint) throws ModelStateException
+    {
+        double depth=profile.getDepth();
+        Gas gas=profile.getCurrentGas();
+        double pO2=profile.getPpO2();
+        double noDeco;
+
+        if(numSamples == sampleRunTime.length)
+            grow();
+        tts[numSamples]=profile.timeToSurface(0.0,snapshot);
+        ttsPlus[numSamples]=profile.timeToSurface(TTS_EXTRA_TIME,snapshot);
+        if(Double.isNaN(tts[numSamples]) || Double.isNaN(ttsPlus[numSamples]))
+            throw new ModelStateException("Ascent failed at "+depth);
+
+        // Time until the ceiling leaves the surface, a minute at a time
+        profile.getModel().snapshot(snapshot);
+        scratch.restore(snapshot);
+        noDeco=0.0;
+        while(noDeco < MAX_NDL && scratch.ceiling() <= 0.0) {
+            scratch.constDepth(depth,1.0,gas.getFHe(),gas.getFN2(),pO2);
+            if(scratch.ceiling() <= 0.0)
+                noDeco+=1.0;
+            else
+                break;
+        }
+        ndl[numSamples]=noDeco;
+
+        sampleRunTime[numSamples]=profile.getRunTime();
+        sampleDepth[numSamples]=depth;
+        waypoint[numSamples]=isWaypoint;
+        if(debug > 1) trace.println("Timeline: "+sampleRunTime[numSamples]+" "+depth+" TTS "+tts[numSamples]+" TTS+ "+ttsPlus[numSamples]+" NDL "+noDeco);
+        numSamples++;
+    }
+
+    private void grow()
+    {
+        int n=2*sampleRunTime.length;
+        sampleRunTime=grow(sampleRunTime,n);
+        sampleDepth=grow(sampleDepth,n);
+        tts=grow(tts,n);
+        ttsPlus=grow(ttsPlus,n);
+        ndl=grow(ndl,n);
+        boolean[] b=new boolean[n];
+        System.arraycopy(waypoint,0,b,0,numSamples);
+        waypoint=b;
+    }
+
+    private double[] grow(double[] a, int n)
+    {
+        double[] b=new double[n];
+        System.arraycopy(a,0,b,0,numSamples);
+        return b;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * PlanCache.java
+ *
+ *  In memory cache of finished dive plans.
+ *
+ *  Maps the PlanFingerprint of a new dive to the ProfileCheckpoint taken when its plan was
+ *  finished. A Profile or TableGeneratorModel given the cache restores a plan it has seen
+ *  before instead of calculating it again, e.g. when a plan is reprinted or a table is
+ *  generated again. Holds at most a fixed number of plans and drops the least recently used.
+ *  A cache can be shared by profiles on several threads. With a PlanStore behind it, plans not
+ *  in memory are looked for on disk and new plans are also written there.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.dive;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class PlanCache {
+    private final int maxPlans;
+    private final Map<PlanFingerprint,ProfileCheckpoint> plans;     // In order of use
+    private long hits;
+    private long misses;
+    private PlanStore store;            // Plans kept on disk, null if none
+
+    /**
+     * Constructor for PlanCache
+     * @param maxPlans Most plans to hold
+     */
+    public PlanCache(int maxPlans) {
+        if (maxPlans < 1)
+            throw new IllegalArgumentException("maxPlans must be > 0: "+maxPlans);
+        this.maxPlans = maxPlans;
+        plans = new LinkedHashMap<PlanFingerprint,ProfileCheckpoint>(16,0.75f,true) {
+            private static final long serialVersionUID = 1L;
+            protected boolean removeEldestEntry(Map.Entry<PlanFingerprint,ProfileCheckpoint> eldest) {
+                return size() > PlanCache.this.maxPlans;
+            }
+        };
+    }
+
+    /**
+     * Sets the disk store behind the cache
+     * @param store PlanStore, or null for none
+     */
+    public synchronized void setStore(PlanStore store) {
+        this.store = store;
+    }
+
+    /** @return Disk store behind the cache, or null if none */
+    public synchronized PlanStore getStore() {
+        return store;
+    }
+
+    /**
+     * Gets a finished plan and counts a hit or a miss. A plan found in the store counts as a
+     * miss here and a hit in the store, and is kept in memory from then on.
+     * @param fingerprint Fingerprint of the plan
+     * @return Checkpoint of the finished plan, or null if not held
+     */
+    public ProfileCheckpoint get(PlanFingerprint fingerprint) {
+        ProfileCheckpoint c;
+        PlanStore s;
+
+        synchronized (this) {
+            c = plans.get(fingerprint);
+            if (c != null) {
+                hits++;
+                return c;
+            }
+            misses++;
+            s = store;
+        }
+        // Disk is read outside the lock so other threads can use the memory cache
+        if (s == null)
+            return null;
+        c = s.get(fingerprint);
+        if (c != null) {
+            synchronized (this) {
+                plans.put(fingerprint,c);
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Adds a finished plan, dropping the least recently used plan if the cache is full. The
+     * plan is also written to the store.
+     * @param fingerprint Fingerprint of the plan
+     * @param c Checkpoint of the finished plan, not changed afterwards
+     */
+    public void put(PlanFingerprint fingerprint, ProfileCheckpoint c) {
+        PlanStore s;
+
+        synchronized (this) {
+            plans.put(fingerprint,c);
+            s = store;
+        }
+        if (s != null)
+            s.put(fingerprint,c);
+    }
+
+    /** Removes all plans. The counters are kept. */
+    public synchronized void clear() {
+        plans.clear();
+    }
+
+    /** @return Number of plans held */
+    public synchronized int size() {
+        return plans.size();
+    }
+
+    /** @return Most plans held */
+    public int getMaxPlans() {
+        return maxPlans;
+    }
+
+    /** @return Number of plans found by get() */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /** @return Number of plans not found by get() */
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * PlanFingerprint.java
+ *
+ *  Canonical description of everything that determines the result of a new dive plan.
+ *
+ *  Covers the enabled input segments in order, the enabled gases in the order Profile uses
+ *  them, the settings that affect the decompression and the model class. Gas consumption
+ *  settings are left out, as Profile.doGasCalcs() is always done on the result. Two plans
+ *  with equal fingerprints have the same schedule, so the fingerprint is the key of PlanCache.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.dive;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import mvplan.gas.Gas;
+import mvplan.prefs.PlanParameters;
+import mvplan.segments.SegmentAbstract;
+
+public final class PlanFingerprint implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String key;           // Canonical text of the plan
+
+    /**
+     * Constructor for PlanFingerprint
+     * @param segments Dive segments, disabled segments are ignored
+     * @param gases Dive gases, disabled gases are ignored
+     * @param params Settings that determine the plan
+     */
+    public PlanFingerprint(List<SegmentAbstract> segments, List<Gas> gases, PlanParameters params) {
+        StringBuffer sb = new StringBuffer();
+        List<Gas> sorted = new ArrayList<Gas>();
+        int i;
+
+        sb.append(params.getModelClass()).append('|');
+        sb.append(params.getGfLow()).append(',').append(params.getGfHigh()).append(',');
+        sb.append(params.getGfMultilevelMode()).append(',');
+        sb.append(params.getAscentRate()).append(',').append(params.getDescentRate()).append(',');
+        sb.append(params.getLastStopDepth()).append(',').append(params.getStopDepthIncrement()).append(',');
+        sb.append(params.getStopTimeIncrement()).append(',').append(params.getForceAllStops()).append(',');
+        sb.append(params.getRuntimeFlag()).append(',');
+        sb.append(params.getPAmb()).append(',').append(params.getPH2O()).append(',');
+        sb.append(params.getPConversion()).append(',');
+        sb.append(params.getFactorComp()).append(',').append(params.getFactorDecomp()).append(',');
+        sb.append(params.isOcMode()).append(',').append(params.getOcDeco()).append(',');
+        sb.append(params.getUnits()).append('|');
+        for (i=0;i<segments.size();i++)
+            if (segments.get(i).getEnable().booleanValue())
+                sb.append(describeSegment(segments.get(i))).append(';');
+        sb.append('|');
+        // Profile sorts its gases by MOD before it starts
+        for (i=0;i<gases.size();i++)
+            if (gases.get(i).getEnable())
+                sorted.add(gases.get(i));
+        Collections.sort(sorted);
+        for (i=0;i<sorted.size();i++)
+            sb.append(describeGas(sorted.get(i))).append(';');
+        key = sb.toString();
+    }
+
+    /**
+     * Content of an input segment that affects the plan
+     * @param s Segment
+     * @return Description of the segment
+     */
+    static String describeSegment(SegmentAbstract s) {
+        return s.getType()+","+s.getDepth()+","+s.getTime()+","+s.getSetpoint()+","+describeGas(s.getGas());
+    }
+
+    /**
+     * Content of a gas that affects the plan
+     * @param g Gas
+     * @return Description of the gas
+     */
+    static String describeGas(Gas g) {
+        return g.getFO2()+"/"+g.getFHe()+"@"+g.getMod();
+    }
+
+    /**
+     * Gets the canonical text of the plan
+     * @return Fingerprint text
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PlanFingerprint)) return false;
+        return key.equals(((PlanFingerprint)o).key);
+    }
+
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+    public String toString() {
+        return key;
+    }
+}
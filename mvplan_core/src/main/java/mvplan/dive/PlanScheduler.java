@@ -0,0 +1,289 @@
+/*
+ * PlanScheduler.java
+ *
+ *  Shared pool of planning threads with two priority classes, so that single dives planned
+ *  for a user are not kept waiting behind a large table or grid in the same process.
+ *
+ *  Each class has its own queue and a limit on how many of its plans run at once. A free
+ *  worker takes an INTERACTIVE plan before a BULK one, but after a burst of INTERACTIVE plans
+ *  it takes a waiting BULK plan, so bulk work still makes progress under a steady stream of
+ *  interactive plans. By default BULK may use all workers but one, which is kept for
+ *  INTERACTIVE plans. Queue depth, running plans and the time plans waited for a worker are
+ *  counted for each class.
+ *
+ *  A plan submitted from one of the workers, e.g. a TableGeneratorModel run as a task, is run
+ *  on that worker straight away as it can not wait for a worker itself. It is counted with the
+ *  other plans of its class, having waited no time.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.dive;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+public class PlanScheduler {
+    /** Priority classes */
+    public static final int INTERACTIVE = 0;
+    public static final int BULK = 1;
+    private static final int NUM_CLASSES = 2;
+    private static final int INTERACTIVE_BURST = 8;     // INTERACTIVE plans taken while BULK waits
+
+    private final Object lock = new Object();
+    private final Thread[] workers;
+    private final int[] limit = new int[NUM_CLASSES];
+    private final List<LinkedList<Task<?>>> queues = new ArrayList<LinkedList<Task<?>>>(NUM_CLASSES);
+    private final int[] running = new int[NUM_CLASSES];
+    private final long[] completed = new long[NUM_CLASSES];
+    private final long[] started = new long[NUM_CLASSES];
+    private final long[] waitNanos = new long[NUM_CLASSES];        // Total wait of started plans
+    private final long[] maxWaitNanos = new long[NUM_CLASSES];
+    private int burst;                  // INTERACTIVE plans taken since the last BULK plan
+    private boolean shutdown;
+
+    /** Plan waiting for or running on a worker */
+    private class Task<T> extends FutureTask<T> {
+        final int priority;
+        final long queuedAt;
+        boolean finished;               // Counted as completed, guarded by the lock
+
+        Task(int priority, Callable<T> c) {
+            super(c);
+            this.priority = priority;
+            queuedAt = System.nanoTime();
+        }
+
+        // Counted before the result is set, so callers woken by it see the counts
+        protected void set(T v) {
+            finish(this);
+            super.set(v);
+        }
+
+        protected void setException(Throwable t) {
+            finish(this);
+            super.setException(t);
+        }
+    }
+
+    /**
+     * Constructor for PlanScheduler, BULK plans using all workers but one
+     * @param threads Number of worker threads
+     */
+    public PlanScheduler(int threads) {
+        this(threads, threads, Math.max(1, threads-1));
+    }
+
+    /**
+     * Constructor for PlanScheduler
+     * @param threads Number of worker threads
+     * @param interactiveLimit Most INTERACTIVE plans running at once
+     * @param bulkLimit Most BULK plans running at once
+     */
+    public PlanScheduler(int threads, int interactiveLimit, int bulkLimit) {
+        if (threads < 1 || interactiveLimit < 1 || bulkLimit < 1)
+            throw new IllegalArgumentException("Invalid limits: "+threads+", "+interactiveLimit+", "+bulkLimit);
+        limit[INTERACTIVE] = interactiveLimit;
+        limit[BULK] = bulkLimit;
+        for (int i=0; i<NUM_CLASSES; i++)
+            queues.add(new LinkedList<Task<?>>());
+        workers = new Thread[threads];
+        for (int i=0; i<threads; i++) {
+            workers[i] = new Thread(new Runnable() {
+                public void run() {
+                    work();
+                }
+            }, "PlanScheduler-"+i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Queues a plan
+     * @param priority INTERACTIVE or BULK
+     * @param plan Plan to run on a worker
+     * @return Future result of the plan
+     * @throws RejectedExecutionException if the scheduler is shut down
+     */
+    public <T> Future<T> submit(int priority, Callable<T> plan) {
+        Task<T> task;
+
+        if (priority != INTERACTIVE && priority != BULK)
+            throw new IllegalArgumentException("Invalid priority: "+priority);
+        task = new Task<T>(priority, plan);
+        if (isWorker()) {
+            synchronized (lock) {
+                start(task);
+            }
+            task.run();
+            finish(task);
+            return task;
+        }
+        synchronized (lock) {
+            if (shutdown)
+                throw new RejectedExecutionException("PlanScheduler is shut down");
+            queues.get(priority).add(task);
+            lock.notifyAll();
+        }
+        return task;
+    }
+
+    /**
+     * Queues a dive
+     * @param priority INTERACTIVE or BULK
+     * @param profile Profile to conduct
+     * @return Future return code of Profile.doDive()
+     * @throws RejectedExecutionException if the scheduler is shut down
+     */
+    public Future<Integer> submitDive(int priority, final Profile profile) {
+        return submit(priority, new Callable<Integer>() {
+            public Integer call() {
+                return Integer.valueOf(profile.doDive());
+            }
+        });
+    }
+
+    /** Stops the workers once their running plans finish, queued plans are cancelled */
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            for (int i=0; i<NUM_CLASSES; i++) {
+                while (!queues.get(i).isEmpty())
+                    queues.get(i).removeFirst().cancel(false);
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /** @return True if called on one of the workers */
+    private boolean isWorker() {
+        Thread t = Thread.currentThread();
+        for (int i=0; i<workers.length; i++) {
+            if (workers[i] == t)
+                return true;
+        }
+        return false;
+    }
+
+    private void work() {
+        Task<?> task;
+
+        while (true) {
+            synchronized (lock) {
+                while ((task = next()) == null) {
+                    if (shutdown)
+                        return;
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                start(task);
+            }
+            task.run();
+            // Only needed if the plan was cancelled before it ran
+            finish(task);
+        }
+    }
+
+    /** Counts a plan as running. Called holding the lock. */
+    private void start(Task<?> task) {
+        long wait = System.nanoTime() - task.queuedAt;
+
+        running[task.priority]++;
+        started[task.priority]++;
+        waitNanos[task.priority] += wait;
+        if (wait > maxWaitNanos[task.priority])
+            maxWaitNanos[task.priority] = wait;
+    }
+
+    /** Counts a started plan as completed, once */
+    private void finish(Task<?> task) {
+        synchronized (lock) {
+            if (task.finished)
+                return;
+            task.finished = true;
+            running[task.priority]--;
+            completed[task.priority]++;
+            // A class below its limit again may have plans waiting
+            lock.notifyAll();
+        }
+    }
+
+    /** Takes the next plan a worker may run, or null if none. Called holding the lock. */
+    private Task<?> next() {
+        boolean interactive = !queues.get(INTERACTIVE).isEmpty() && running[INTERACTIVE] < limit[INTERACTIVE];
+        boolean bulk = !queues.get(BULK).isEmpty() && running[BULK] < limit[BULK];
+
+        if (interactive && (!bulk || burst < INTERACTIVE_BURST)) {
+            if (bulk)
+                burst++;
+            return queues.get(INTERACTIVE).removeFirst();
+        }
+        if (bulk) {
+            burst = 0;
+            return queues.get(BULK).removeFirst();
+        }
+        return null;
+    }
+
+    /** @return Number of worker threads */
+    public int getThreads() {
+        return workers.length;
+    }
+
+    /** @return Plans of a class waiting for a worker */
+    public int getQueued(int priority) {
+        synchronized (lock) {
+            return queues.get(priority).size();
+        }
+    }
+
+    /** @return Plans of a class running, including plans run for a plan on its worker */
+    public int getRunning(int priority) {
+        synchronized (lock) {
+            return running[priority];
+        }
+    }
+
+    /** @return Plans of a class finished, successfully or not */
+    public long getCompleted(int priority) {
+        synchronized (lock) {
+            return completed[priority];
+        }
+    }
+
+    /** @return Mean time plans of a class waited for a worker, in milliseconds */
+    public double getMeanWaitMillis(int priority) {
+        synchronized (lock) {
+            return started[priority] == 0 ? 0.0 : waitNanos[priority] / 1e6 / started[priority];
+        }
+    }
+
+    /** @return Longest time a plan of a class waited for a worker, in milliseconds */
+    public double getMaxWaitMillis(int priority) {
+        synchronized (lock) {
+            return maxWaitNanos[priority] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * PlanStore.java
+ *
+ *  Disk store of finished dive plans, kept between runs of the application.
+ *
+ *  Each plan is held in its own file, named by the SHA-1 digest of its PlanFingerprint, with the
+ *  fingerprint text and the deflated serialised ProfileCheckpoint. An index file lists the plans
+ *  in order of use with their sizes. It is written by flush(), not on every change, so when the
+ *  store is opened the index is checked against the plan files in the directory: plans put
+ *  since it was written are added in the order of their file times, and plans whose files are
+ *  gone are dropped. If the index is missing or damaged the order comes from the file times.
+ *
+ *  The store holds at most a fixed number of plans and bytes and drops the least recently used.
+ *  Each plan file also holds the version of the application that planned it. A plan of another
+ *  version, whose models may plan it differently, or a plan that can not be read is treated as
+ *  not held and deleted. A PlanCache can use a store behind its memory cache.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.dive;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import mvplan.main.MvplanInstance;
+
+public class PlanStore {
+    private static final String INDEX_FILE="plans.idx";
+    private static final String PLAN_SUFFIX=".plan";
+    private static final int INDEX_MAGIC=0x4d56504c;    // "MVPL"
+    private static final int PLAN_MAGIC=0x4d565050;     // "MVPP"
+    private static final int VERSION=2;                 // Format of the index and plan files
+
+    private final File dir;
+    private final int maxPlans;
+    private final long maxBytes;
+    private final String appVersion;    // Version of the application, held by each plan file
+    private final Map<String,Long> plans = new LinkedHashMap<String,Long>(16,0.75f,true);  // File sizes, in order of use
+    private long totalBytes;
+    private long hits;
+    private long misses;
+    private boolean indexChanged;       // Plans or their order of use have changed since the index was written
+
+    /**
+     * Opens a plan store, creating its directory if needed
+     * @param dir Directory of the store, used by no other store
+     * @param maxPlans Most plans to hold
+     * @param maxBytes Most bytes of plan files to hold
+     * @throws IOException if the directory can not be created
+     */
+    public PlanStore(File dir, int maxPlans, long maxBytes) throws IOException {
+        this(dir, maxPlans, maxBytes, MvplanInstance.getVersion()+" "+MvplanInstance.getVersion().getDateString());
+    }
+
+    /** Opens a plan store for plans of an application version, see PlanStore(File, int, long) */
+    PlanStore(File dir, int maxPlans, long maxBytes, String appVersion) throws IOException {
+        if (maxPlans < 1 || maxBytes < 1)
+            throw new IllegalArgumentException("Plan store limits must be > 0: "+maxPlans+", "+maxBytes);
+        this.dir = dir;
+        this.maxPlans = maxPlans;
+        this.maxBytes = maxBytes;
+        this.appVersion = appVersion;
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Can not create plan store "+dir);
+        readIndex();
+        scanDirectory();
+        evict();
+    }
+
+    /**
+     * Gets a finished plan and counts a hit or a miss
+     * @param fingerprint Fingerprint of the plan
+     * @return Checkpoint of the finished plan, or null if not held
+     */
+    public synchronized ProfileCheckpoint get(PlanFingerprint fingerprint) {
+        String name = fileName(fingerprint);
+        ProfileCheckpoint c = null;
+
+        if (plans.get(name) != null) {      // Also makes it the most recently used
+            c = readPlan(new File(dir,name),fingerprint);
+            if (c == null)
+                remove(name);
+            indexChanged = true;
+        }
+        if (c == null)
+            misses++;
+        else
+            hits++;
+        return c;
+    }
+
+    /**
+     * Adds a finished plan, dropping the least recently used plans if the store is full
+     * @param fingerprint Fingerprint of the plan
+     * @param c Checkpoint of the finished plan
+     * @return true if written, false if it could not be written
+     */
+    public synchronized boolean put(PlanFingerprint fingerprint, ProfileCheckpoint c) {
+        String name = fileName(fingerprint);
+        File file = new File(dir,name);
+        File temp = null;
+        Long old;
+
+        try {
+            // Write a temporary file first so that a plan file is never left half written
+            temp = File.createTempFile("plan",".tmp",dir);
+            writePlan(temp,fingerprint,c);
+            if (file.exists() && !file.delete())
+                throw new IOException("Can not replace "+file);
+            if (!temp.renameTo(file))
+                throw new IOException("Can not rename "+temp);
+        } catch (IOException e) {
+            if (temp != null)
+                temp.delete();
+            return false;
+        }
+        old = plans.put(name,Long.valueOf(file.length()));
+        if (old != null)
+            totalBytes -= old.longValue();
+        totalBytes += file.length();
+        indexChanged = true;
+        evict();
+        return true;
+    }
+
+    /**
+     * Writes the index, if it has changed. Call before closing the application, or the order of
+     * use of the plans put since the last flush is taken from their file times when next opened.
+     */
+    public synchronized void flush() {
+        if (indexChanged)
+            writeIndex();
+    }
+
+    /** Deletes all plans. The counters are kept. */
+    public synchronized void clear() {
+        while (!plans.isEmpty())
+            remove(plans.keySet().iterator().next());
+        indexChanged = true;
+    }
+
+    /** @return Number of plans held */
+    public synchronized int size() {
+        return plans.size();
+    }
+
+    /** @return Bytes of plan files held */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /** @return Number of plans found by get() */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /** @return Number of plans not found by get() */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /** File name of a plan, from the SHA-1 digest of its fingerprint */
+    private static String fileName(PlanFingerprint fingerprint) {
+        final char[] HEX = "0123456789abcdef".toCharArray();
+        StringBuffer sb = new StringBuffer();
+        byte[] digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(fingerprint.getKey().getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error("SHA-1 is always available");
+        } catch (IOException e) {
+            throw new Error("UTF-8 is always available");
+        }
+        for (int i=0; i<digest.length; i++)
+            sb.append(HEX[(digest[i]>>4) & 0x0f]).append(HEX[digest[i] & 0x0f]);
+        return sb.append(PLAN_SUFFIX).toString();
+    }
+
+    /** Drops least recently used plans until the store is within its limits */
+    private void evict() {
+        while (!plans.isEmpty() && (plans.size() > maxPlans || totalBytes > maxBytes)) {
+            remove(plans.keySet().iterator().next());
+            indexChanged = true;
+        }
+    }
+
+    private void remove(String name) {
+        Long size = plans.remove(name);
+        if (size != null)
+            totalBytes -= size.longValue();
+        new File(dir,name).delete();
+    }
+
+    private void writePlan(File file, PlanFingerprint fingerprint, ProfileCheckpoint c) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            byte[] key = fingerprint.getKey().getBytes("UTF-8");
+            out.writeInt(PLAN_MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(appVersion);
+            out.writeInt(key.length);
+            out.write(key);
+            DeflaterOutputStream deflater = new DeflaterOutputStream(out);
+            ObjectOutputStream objects = new ObjectOutputStream(deflater);
+            objects.writeObject(c);
+            objects.flush();
+            deflater.finish();
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads a plan file
+     * @return Checkpoint, or null if the file can not be read or is for another version or fingerprint
+     */
+    private ProfileCheckpoint readPlan(File file, PlanFingerprint fingerprint) {
+        DataInputStream in = null;
+
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != PLAN_MAGIC || in.readInt() != VERSION || !in.readUTF().equals(appVersion))
+                return null;
+            byte[] key = new byte[in.readInt()];
+            in.readFully(key);
+            if (!fingerprint.getKey().equals(new String(key,"UTF-8")))
+                return null;
+            return (ProfileCheckpoint)new ObjectInputStream(new InflaterInputStream(in)).readObject();
+        } catch (IOException e) {
+            return null;
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (ClassCastException e) {
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /** Loads the plans from the index file, if it can be read, for scanDirectory() to check */
+    private void readIndex() {
+        File file = new File(dir,INDEX_FILE);
+        DataInputStream in = null;
+        int n;
+
+        if (!file.exists())
+            return;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != VERSION)
+                return;
+            n = in.readInt();
+            for (int i=0; i<n; i++)
+                plans.put(in.readUTF(),Long.valueOf(in.readLong()));
+        } catch (IOException e) {
+            plans.clear();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the plans of the index against the plan files. Plans without a file are dropped,
+     * files not in the index are added as the most recently used in order of their file times,
+     * and temporary files left by a run stopped while writing are deleted.
+     */
+    private void scanDirectory() {
+        File[] files = dir.listFiles();
+        Map<String,Long> found = new LinkedHashMap<String,Long>();
+        Entry<String,Long> e;
+        Long size;
+
+        if (files == null)
+            files = new File[0];
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File a, File b) {
+                return a.lastModified() < b.lastModified() ? -1 : (a.lastModified() > b.lastModified() ? 1 : 0);
+            }
+        });
+        for (int i=0; i<files.length; i++) {
+            String name = files[i].getName();
+            if (name.endsWith(PLAN_SUFFIX))
+                found.put(name,Long.valueOf(files[i].length()));
+            else if (name.endsWith(".tmp"))
+                files[i].delete();
+        }
+        totalBytes = 0;
+        for (Iterator<Entry<String,Long>> it = plans.entrySet().iterator(); it.hasNext();) {
+            e = it.next();
+            size = found.remove(e.getKey());
+            if (size == null) {
+                it.remove();
+                indexChanged = true;
+                continue;
+            }
+            if (!size.equals(e.getValue())) {
+                e.setValue(size);
+                indexChanged = true;
+            }
+            totalBytes += size.longValue();
+        }
+        for (Iterator<Entry<String,Long>> it = found.entrySet().iterator(); it.hasNext();) {
+            e = it.next();
+            plans.put(e.getKey(),e.getValue());
+            totalBytes += e.getValue().longValue();
+            indexChanged = true;
+        }
+    }
+
+    /** Writes the index file. A store without an index still works, so errors are ignored. */
+    private void writeIndex() {
+        File file = new File(dir,INDEX_FILE);
+        File temp = new File(dir,INDEX_FILE+".tmp");
+        DataOutputStream out = null;
+        Entry<String,Long> e;
+
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(plans.size());
+            for (Iterator<Entry<String,Long>> it = plans.entrySet().iterator(); it.hasNext();) {
+                e = it.next();
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue().longValue());
+            }
+            out.close();
+            out = null;
+            if (file.exists() && !file.delete())
+                throw new IOException("Can not replace "+file);
+            if (!temp.renameTo(file))
+                throw new IOException("Can not rename "+temp);
+            indexChanged = false;
+        } catch (IOException ex) {
+            temp.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
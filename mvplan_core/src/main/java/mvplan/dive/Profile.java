@@ -34,14 +34,16 @@
 package mvplan.dive;
 
 
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
 import mvplan.gas.Gas;
-import mvplan.main.MvplanInstance;
+import mvplan.main.PlanningContext;
 import mvplan.model.*;
+import mvplan.prefs.PlanParameters;
 import mvplan.prefs.Prefs;
 import mvplan.segments.SegmentAscDec;
 import mvplan.segments.SegmentDive;
@@ -53,8 +55,11 @@ import mvplan.segments.SegmentAbstract;
 
 public class Profile
 {
-    private final int debug = MvplanInstance.getMvplan().getDebug();
-    private Prefs prefs = MvplanInstance.getMvplan().getPrefs();
+    private final PlanningContext context;  // Settings and debug output for this profile
+    private final int debug;
+    private final PrintStream trace;
+    private Prefs prefs;
+    private PlanParameters params;          // Settings that determine the plan
     
     private List<SegmentAbstract> inputSegments;    // Stores input dive segment objects passed from GUI and enabled
     private List<SegmentAbstract> outputSegments;   // Stores output segments produced by theis class
@@ -65,6 +70,7 @@ public class Profile
     //private double fHe,fN2,fO2;     // Current gas fractions
     private Gas currentGas;         // Current gas
     private AbstractModel model;            // Buhlmann model for this dive
+    private DecoLimits decoLimits = new DecoLimits();   // Reused result of model.decoLimits()
     private double runTime;         // Runtime
     private double ppO2;            // CCR ppO2 or zero for OC
     private boolean closedCircuit;  // Flag to store closed circuit / open circuit state
@@ -72,6 +78,13 @@ public class Profile
     private boolean isRepetativeDive;   // For repetative dives
     private int surfaceInterval;        // For surface interval
     private String metaData;            // Description of the dive for model persistance
+    private boolean runtimeFlag;        // First segment time represents runtime
+    private int nextSegment;            // Index of next input segment to process
+    private boolean atSegmentDepth;     // Already moved to the depth of the next input segment
+    private List<ProfileCheckpoint> segmentCheckpoints; // Checkpoint after each input segment, null if not recorded
+    private String gasKey;              // Content of the sorted gases when the dive started
+    private int reusedSegments;         // Input segments restored from a previous profile
+    private PlanCache planCache;        // Finished plans of new dives, null if not used
     
     // Return flags
     public static final int SUCCESS=0;      
@@ -80,13 +93,32 @@ public class Profile
     public static final int PROCESSING_ERROR=3;
     public static final int INFINITE_DECO=4;
 
-    /** Constructor for objects of class Profile */
+    private static final double MAX_DECO_STOP_TIME=5000.0;     // Longest deco stop before INFINITE_DECO
+
+    /** Constructor for objects of class Profile, using the application prefs */
     public Profile(List<SegmentAbstract> list, List<Gas> list2, AbstractModel m)
+    {
+        this(list,list2,m,PlanningContext.getDefault());
+    }
+
+    /**
+     * Constructor for objects of class Profile
+     * @param list Dive segments
+     * @param list2 Dive gases
+     * @param m Model for a repetitive dive, or null for a new model
+     * @param context Settings and debug output for this profile
+     */
+    public Profile(List<SegmentAbstract> list, List<Gas> list2, AbstractModel m, PlanningContext context)
     {
         Gas g;                  // Used for constructing arraylists of gases and segments   
         SegmentAbstract s;      // as above
         Class<? extends AbstractModel> modelClass;
 
+        this.context=context;
+        debug=context.getDebug();
+        trace=context.getTrace();
+        prefs=context.getPrefs();
+        params=context.getParameters();
 
 
         inputSegments = new ArrayList <SegmentAbstract>();
@@ -98,20 +130,22 @@ public class Profile
             isRepetativeDive=false;
             // TODO Define which concrete model to use
              try {                
-                if (debug>0) System.out.println("Loading model class:"+prefs.getModelClass());
-                modelClass = Class.forName(prefs.getModelClass()).asSubclass(AbstractModel.class);
+                if (debug>0) trace.println("Loading model class:"+params.getModelClass());
+                modelClass = Class.forName(params.getModelClass()).asSubclass(AbstractModel.class);
                 model = modelClass.newInstance();
             } catch (Exception ex) {
                 model = new ZHL16B();
-                if (debug>0) System.out.println("Model instantiation exception for: "+ex.getMessage());
+                if (debug>0) trace.println("Model instantiation exception for: "+ex.getMessage());
             }
 
             //model = new ZHL16B();
+            model.setContext(context);
             model.initModel();
             metaData="";
         } else {
             // ZHL16B exists
             model=m; 
+            model.setContext(context);
             // TODO - Resources
             metaData = model.getMetaData()+" *PLUS* ";
             isRepetativeDive=true;
@@ -134,7 +168,7 @@ public class Profile
             g.setVolume(0.0);   // Reset the gas volume to zero
             if (g.getEnable()==true) {
                 // Add enabled gases only to gas arraylist
-                if(debug >1) System.out.println("Adding gas "+g);
+                if(debug >1) trace.println("Adding gas "+g);
                 gases.add(g);            
             }
         }
@@ -173,96 +207,421 @@ public class Profile
         return true;
     }
     
+    /**
+     * Records a checkpoint after each input segment as the dive is processed, so that a later
+     * plan of the same dive can restart from its last unchanged segment with doDive(Profile).
+     * Off by default, as each checkpoint holds a copy of the model.
+     * @param record true to record the checkpoints
+     */
+    public void setSegmentCheckpoints(boolean record)
+    {
+        segmentCheckpoints = record ? new ArrayList<ProfileCheckpoint>() : null;
+    }
+
+    /**
+     * Gets the number of input segments that doDive(Profile) restored from the previous profile
+     * instead of processing them again
+     * @return Number of input segments
+     */
+    public int getReusedSegments()  { return reusedSegments; }
+
+    /**
+     * Sets the cache of finished plans. A new dive found in the cache is restored from it by
+     * doDive() instead of being processed, and a new dive that is processed is added to it.
+     * @param cache PlanCache, or null for none
+     */
+    public void setPlanCache(PlanCache cache)
+    {
+        planCache=cache;
+    }
+
+    /**
+     * Gets the fingerprint of this dive, the key of the plan cache
+     * @return PlanFingerprint
+     */
+    public PlanFingerprint getFingerprint()
+    {
+        return new PlanFingerprint(inputSegments,gases,params);
+    }
+
+    /**
+     * Restores the finished plan of this dive from the plan cache
+     * @return true if restored, false if the dive has to be processed
+     */
+    public boolean restoreCachedDive()
+    {
+        ProfileCheckpoint c;
+
+        if(planCache==null || isRepetativeDive || !isDiveSegments())
+            return false;
+        c=planCache.get(getFingerprint());
+        if(c==null)
+            return false;
+        if (debug>0) trace.println("Dive restored from the plan cache");
+        restore(c);
+        return true;
+    }
+
     /** Process the dive */
     public int doDive()
+    {
+        // Check that there are segments to process
+        if (!isDiveSegments()) 
+            return NOTHING_TO_PROCESS;
+        if (restoreCachedDive())
+            return SUCCESS;
+        return processDive();
+    }
+
+    /** Process the whole dive from the surface */
+    private int processDive()
     {
         int returnCode;
+
+        startDive();
+        returnCode=processSegments(inputSegments.size());
+        if(returnCode != SUCCESS)
+            return returnCode;
+        return finishDive();
+    }
+
+    /**
+     * Process the dive, restarting from the checkpoint of a previous plan after the last input
+     * segment that has not changed. Segments are compared by content, so segments edited in
+     * place are seen as changed. Only a new dive with the same settings and gases as the previous
+     * one is restarted, anything else is processed from the surface as by doDive().
+     * @param previous Profile planned with setSegmentCheckpoints(true), or null
+     * @return Return code
+     */
+    public int doDive(Profile previous)
+    {
+        int n;
+
+        if (!isDiveSegments()) 
+            return NOTHING_TO_PROCESS;
+        if (restoreCachedDive())
+            return SUCCESS;
+
+        n = previous==null ? 0 : previous.unchangedSegments(this);
+        if(n==0)
+            return processDive();
+        if (debug>0) trace.println("Restarting dive after segment "+n);
+        restore(previous.segmentCheckpoints.get(n-1));
+        if(segmentCheckpoints != null)
+            segmentCheckpoints.addAll(previous.segmentCheckpoints.subList(0,n));
+        reusedSegments=n;
+        return continueDive();
+    }
+
+    /**
+     * Counts the leading input segments of a profile that are the same as those of this one, with
+     * a checkpoint recorded after each of them
+     * @param p Profile to be planned
+     * @return Number of input segments
+     */
+    private int unchangedSegments(Profile p)
+    {
+        int i;
+
+        if(segmentCheckpoints==null || gasKey==null || isRepetativeDive || p.isRepetativeDive || !params.equals(p.params))
+            return 0;
+        Collections.sort(p.gases);  // As in startDive()
+        if(!gasKey.equals(p.describeGases()))
+            return 0;
+        for(i=0;i<segmentCheckpoints.size() && i<p.inputSegments.size();i++)
+            if(!segmentCheckpoints.get(i).segmentKey.equals(PlanFingerprint.describeSegment(p.inputSegments.get(i))))
+                break;
+        return i;
+    }
+
+    /** Content of the gases that affects the plan */
+    private String describeGases()
+    {
+        StringBuffer sb = new StringBuffer();
+        int i;
+
+        for(i=0;i<gases.size();i++)
+            sb.append(PlanFingerprint.describeGas(gases.get(i))).append(';');
+        return sb.toString();
+    }
+
+    /**
+     * Process the dive up to, but not including, the dive time of a segment. The model
+     * descends or ascends to the depth of that segment, ready for its time to be applied
+     * by continueDive(). Used with checkpoint() to share a common start between dives.
+     * @param index Index of the enabled input segment to stop at
+     * @return Return code
+     */
+    public int doDiveTo(int index)
+    {
         SegmentAbstract s;
-        SegmentDive sd;
-        double t;
-        double deltaDepth;
-        boolean runtimeFlag=prefs.getRuntimeFlag();      // Used to decide if segment represents runtime or segtime
-    
-        // Check that there are segments to process
+
         if (!isDiveSegments()) 
             return NOTHING_TO_PROCESS;
-        
+
+        startDive();
+        if(processSegments(index) != SUCCESS)
+            return PROCESSING_ERROR;
+        if(index < inputSegments.size()) {
+            s=inputSegments.get(index);
+            if(s.getType() == SegmentAbstract.CONST && moveToSegment((SegmentDive)s) != SUCCESS)
+                return PROCESSING_ERROR;
+            atSegmentDepth=true;
+        }
+        return SUCCESS;
+    }
+
+    /**
+     * Complete a dive started by doDiveTo() or restored from a checkpoint.
+     * @return Return code
+     */
+    public int continueDive()
+    {
+        int returnCode;
+
+        returnCode=processSegments(inputSegments.size());
+        if(returnCode != SUCCESS)
+            return returnCode;
+        return finishDive();
+    }
+
+    /** Set initial state of the dive */
+    void startDive()
+    {
+        SegmentAbstract s;
+
         // Set initial state
         s = (SegmentAbstract)inputSegments.get(0);  // Set the first segment and set initial gas from it
         currentGas = s.getGas();
         Collections.sort(gases);    // Sort gases based on MOD, the Gas natural order
         currentDepth=0.0;                               
-        ppO2= prefs.isOcMode()?0.0:s.getSetpoint();       // Set initial ppO2 based on first segment
+        ppO2= params.isOcMode()?0.0:s.getSetpoint();       // Set initial ppO2 based on first segment
         //Determine if we are Open or Closed circuit
         if (ppO2==0.0)
             closedCircuit=false;
         else
             closedCircuit=true;
         inFinalAscent=false;    // Flag used to work out when all segments are complete and are in flnal ascent  
-        
-        // Process segment list of user defined segments through model
-        Iterator<SegmentAbstract> it=inputSegments.iterator();        
-        while(it.hasNext()) {
-            s=(SegmentAbstract)it.next();   // Get segment
-            if (debug >1) System.out.println("Processing: "+s);
+        runtimeFlag=params.getRuntimeFlag();      // Used to decide if segment represents runtime or segtime
+        nextSegment=0;
+        atSegmentDepth=false;
+        gasKey=describeGases();
+        reusedSegments=0;
+        if(segmentCheckpoints != null)
+            segmentCheckpoints.clear();
+    }
+
+    /**
+     * Process list of user defined segments through model
+     * @param end Index of the segment to stop before
+     * @return Return code
+     */
+    private int processSegments(int end)
+    {
+        SegmentAbstract s;
+        SegmentDive sd;
+        ProfileCheckpoint c;
+
+        while(nextSegment < end) {
+            s=inputSegments.get(nextSegment);   // Get segment
+            if (debug >1) trace.println("Processing: "+s);
             if(s.getType() == SegmentAbstract.CONST) {      // Should be constant depth segments only
                 sd=(SegmentDive)s;      
-                deltaDepth=sd.getDepth()-currentDepth;  // Has depth changed ?
-                // Ascend or descend to dive segment, using existing gas and ppO2 settings
-                if(deltaDepth>0.0) {  // Segment causes a descent
-                    try {
-                        model.ascDec(currentDepth,sd.getDepth(),prefs.getDescentRate(),currentGas.getFHe(),currentGas.getFN2(),ppO2);
-                    } catch (ModelStateException e) { 
-                        return PROCESSING_ERROR;  
-                    }
-                    // Add segment to output segments
-                    outputSegments.add(new SegmentAscDec(currentDepth,sd.getDepth(),prefs.getDescentRate(),currentGas,ppO2));
-                    runTime+=deltaDepth/prefs.getDescentRate();
-
-                } else if (deltaDepth < 0.0) { // Segment causes an ascent. 
-                    // Call ascend() to process this as it can require decompression
-                    ascend( sd.getDepth());
-                } 
-                                                                
-                // Now at desired depth so process dive segments.                 
-                currentDepth=sd.getDepth();     			// Reset current depth
-                ppO2=prefs.isOcMode()?0.0:sd.getSetpoint(); // Set ppO2
-                currentGas=s.getGas();          			// Set gas used
-                // Process segment. 
-                if (sd.getTime() > 0) { // Only do this if it is not a waypoint.
-                    // Interpret first segment time as runtime or segment time depending on runtimeFlag
-                    if (runtimeFlag) {
-                        runtimeFlag=false;  // Do this once only. Make segment == runtime
-                        try {
-                            model.constDepth(sd.getDepth(),sd.getTime()-runTime,currentGas.getFHe(),currentGas.getFN2(),ppO2);
-                        } catch (ModelStateException e){ 
-                            return PROCESSING_ERROR;  
-                        }
-                        // Add segment to output segments
-                        outputSegments.add(new SegmentDive(sd.getDepth(),sd.getTime()-runTime,currentGas,ppO2));
-                        runTime=sd.getTime();   // Reset runTime to segment end time    
-                        // Update metadata
-                        // TODO - resources
-                        metaData=metaData+"Dive to "+sd.getDepth()+" for "+sd.getTime();
-                    } else {    // Segtime is segtime
-                        try {
-                            model.constDepth(sd.getDepth(),sd.getTime(),currentGas.getFHe(),currentGas.getFN2(),ppO2);
-                        } catch (ModelStateException e) { 
-                            return PROCESSING_ERROR; 
-                        }
-                        // Add segment to output segments
-                        outputSegments.add(new SegmentDive(sd.getDepth(),sd.getTime(),currentGas,ppO2));
-                        runTime+=sd.getTime();  // update runtime
-                    }
-                } else {  // Process waypoint
-                    // Add waypoint to output segments
-                    outputSegments.add(new SegmentDive(sd.getDepth(),sd.getTime(),currentGas,ppO2));
+                if(!atSegmentDepth && moveToSegment(sd) != SUCCESS)
+                    return PROCESSING_ERROR;
+                if(doSegment(sd) != SUCCESS)
+                    return PROCESSING_ERROR;
+            }
+            atSegmentDepth=false;
+            nextSegment++;
+            // Only a run of checkpoints from the first segment can be reused
+            if(segmentCheckpoints != null && segmentCheckpoints.size() == nextSegment-1) {
+                c=checkpoint();
+                c.segmentKey=PlanFingerprint.describeSegment(s);
+                segmentCheckpoints.add(c);
+            }
+        }
+        return SUCCESS;
+    }
+
+    /**
+     * Ascend or descend to dive segment, using existing gas and ppO2 settings
+     * @param sd Dive segment
+     * @return Return code
+     */
+    int moveToSegment(SegmentDive sd)
+    {
+        double deltaDepth=sd.getDepth()-currentDepth;  // Has depth changed ?
+
+        if(deltaDepth>0.0) {  // Segment causes a descent
+            try {
+                model.ascDec(currentDepth,sd.getDepth(),params.getDescentRate(),currentGas.getFHe(),currentGas.getFN2(),ppO2);
+            } catch (ModelStateException e) { 
+                return PROCESSING_ERROR;  
+            }
+            // Add segment to output segments
+            outputSegments.add(new SegmentAscDec(currentDepth,sd.getDepth(),params.getDescentRate(),currentGas,ppO2));
+            runTime+=deltaDepth/params.getDescentRate();
+
+        } else if (deltaDepth < 0.0) { // Segment causes an ascent. 
+            // Call ascend() to process this as it can require decompression
+            ascend( sd.getDepth());
+        } 
+        return SUCCESS;
+    }
+
+    /**
+     * Process a dive segment at its depth
+     * @param sd Dive segment
+     * @return Return code
+     */
+    private int doSegment(SegmentDive sd)
+    {
+        // Now at desired depth so process dive segments.                 
+        arrive(sd);
+        // Process segment. 
+        if (sd.getTime() > 0) { // Only do this if it is not a waypoint.
+            // Interpret first segment time as runtime or segment time depending on runtimeFlag
+            if (runtimeFlag) {
+                runtimeFlag=false;  // Do this once only. Make segment == runtime
+                try {
+                    model.constDepth(sd.getDepth(),sd.getTime()-runTime,currentGas.getFHe(),currentGas.getFN2(),ppO2);
+                } catch (ModelStateException e){ 
+                    return PROCESSING_ERROR;  
                 }
+                // Add segment to output segments
+                outputSegments.add(new SegmentDive(sd.getDepth(),sd.getTime()-runTime,currentGas,ppO2));
+                runTime=sd.getTime();   // Reset runTime to segment end time    
+                // Update metadata
+                // TODO - resources
+                metaData=metaData+"Dive to "+sd.getDepth()+" for "+sd.getTime();
+            } else {    // Segtime is segtime
+                try {
+                    model.constDepth(sd.getDepth(),sd.getTime(),currentGas.getFHe(),currentGas.getFN2(),ppO2);
+                } catch (ModelStateException e) { 
+                    return PROCESSING_ERROR; 
+                }
+                // Add segment to output segments
+                outputSegments.add(new SegmentDive(sd.getDepth(),sd.getTime(),currentGas,ppO2));
+                runTime+=sd.getTime();  // update runtime
             }
+        } else {  // Process waypoint
+            // Add waypoint to output segments
+            outputSegments.add(new SegmentDive(sd.getDepth(),sd.getTime(),currentGas,ppO2));
         }
+        return SUCCESS;
+    }
+
+    /**
+     * Takes the depth, ppO2 and gas of a dive segment on arriving at its depth
+     * @param sd Dive segment
+     */
+    void arrive(SegmentDive sd)
+    {
+        currentDepth=sd.getDepth();     			// Reset current depth
+        ppO2=params.isOcMode()?0.0:sd.getSetpoint(); // Set ppO2
+        currentGas=sd.getGas();          			// Set gas used
+    }
+
+    /**
+     * Gets the runtime at the end of a dive segment with a time, reached with arrive(), as
+     * doSegment() interprets the time of the first segment as runtime or segment time
+     * @param sd Dive segment
+     * @return Runtime in minutes
+     */
+    double segmentEndTime(SegmentDive sd)
+    {
+        if (runtimeFlag) {
+            runtimeFlag=false;
+            return sd.getTime();
+        }
+        return runTime+sd.getTime();
+    }
+
+    /**
+     * Stays at the current depth on the current gas, without output segments. Used by
+     * DiveTimeline to follow a segment a part at a time.
+     * @param time Time in minutes
+     * @return Return code
+     */
+    int stay(double time)
+    {
+        try {
+            model.constDepth(currentDepth,time,currentGas.getFHe(),currentGas.getFN2(),ppO2);
+        } catch (ModelStateException e) { 
+            return PROCESSING_ERROR; 
+        }
+        runTime+=time;
+        return SUCCESS;
+    }
+
+    /**
+     * Works out the final ascent from the current depth, as finishDive(), and then puts the
+     * dive back as it was. Used by DiveTimeline for the time to surface along the dive.
+     * @param extraTime Minutes to stay at the current depth before the ascent
+     * @param s ModelSnapshot of the model, from model.newSnapshot(), to hold its state
+     * @return Time to surface in minutes after extraTime, Double.POSITIVE_INFINITY if deco is
+     *         not possible or Double.NaN on a processing error
+     */
+    double timeToSurface(double extraTime, ModelSnapshot s)
+    {
+        Gas gas=currentGas;
+        int gasIndex=currentGasIndex;
+        double depth=currentDepth;
+        double startTime=runTime;
+        double pO2=ppO2;
+        boolean cc=closedCircuit;
+        int segments=outputSegments.size();
+        int returnCode;
+        double t;
+
+        model.snapshot(s);
+        returnCode= extraTime > 0.0 ? stay(extraTime) : SUCCESS;
+        if(returnCode == SUCCESS) {
+            inFinalAscent=true;
+            if(!closedCircuit || params.getOcDeco())
+                model.startAscent(currentDepth,getAscentGases());
+            returnCode=ascend(0.0);
+        }
+        if(returnCode == SUCCESS)
+            t=runTime-startTime-extraTime;
+        else if(returnCode == INFINITE_DECO)
+            t=Double.POSITIVE_INFINITY;
+        else
+            t=Double.NaN;
+        model.restore(s);
+        inFinalAscent=false;
+        outputSegments.subList(segments,outputSegments.size()).clear();
+        currentGas=gas;
+        currentGasIndex=gasIndex;
+        currentDepth=depth;
+        runTime=startTime;
+        ppO2=pO2;
+        closedCircuit=cc;
+        return t;
+    }
+
+    /** Runtime of the dive so far in minutes */
+    double getRunTime()                     { return runTime; }
+    /** Current depth in msw (fsw) */
+    double getDepth()                       { return currentDepth; }
+    /** Gas being breathed */
+    Gas getCurrentGas()                     { return currentGas; }
+    /** CCR ppO2 or zero for OC */
+    double getPpO2()                        { return ppO2; }
+
+    /** Get back to the surface and finalise the output segments */
+    private int finishDive()
+    {
+        int returnCode;
+        SegmentAbstract s;
+        double t;
 
         // Processed all specified segments, now get back to surface
         inFinalAscent=true; // Enables automatic gas selection in ascend() method
+        // Let the model plan the ascent, unless it is closed circuit all the way
+        if(!closedCircuit || params.getOcDeco())
+            model.startAscent(currentDepth,getAscentGases());
         // Call ascend to move to the surface
         returnCode=ascend(0.0);
         // Was there an error ?
@@ -278,9 +637,130 @@ public class Profile
         }
         // Write metadata into the model
         model.setMetaData(metaData);    
+        if(planCache != null && !isRepetativeDive)
+            planCache.put(getFingerprint(),checkpoint());
         return SUCCESS;
     }
 
+    /**
+     * Records the state of a dive stopped by doDiveTo(). Other profiles built from equivalent
+     * segments and gases can restore() it and continue from there.
+     * @return ProfileCheckpoint
+     */
+    public ProfileCheckpoint checkpoint()
+    {
+        ProfileCheckpoint c = new ProfileCheckpoint();
+        int i;
+
+        c.model=(AbstractModel)model.clone();
+        c.outputSegments=new SegmentAbstract[outputSegments.size()];
+        c.outputGases=new int[outputSegments.size()];
+        for(i=0;i<outputSegments.size();i++) {
+            c.outputSegments[i]=(SegmentAbstract)outputSegments.get(i).clone();
+            c.outputGases[i]=gasRef(outputSegments.get(i).getGas());
+        }
+        c.currentGas=gasRef(currentGas);
+        c.currentGasIndex=currentGasIndex;
+        c.currentDepth=currentDepth;
+        c.runTime=runTime;
+        c.ppO2=ppO2;
+        c.closedCircuit=closedCircuit;
+        c.runtimeFlag=runtimeFlag;
+        c.metaData=metaData;
+        c.nextSegment=nextSegment;
+        c.atSegmentDepth=atSegmentDepth;
+        return c;
+    }
+
+    /**
+     * Restores the state of a checkpoint into this profile. The profile must have been created
+     * with segments and gases equivalent to those of the checkpointed profile, up to the
+     * checkpoint, and must not have been used for a dive. Continue with continueDive().
+     * @param c ProfileCheckpoint
+     */
+    public void restore(ProfileCheckpoint c)
+    {
+        SegmentAbstract s;
+        int i;
+
+        Collections.sort(gases);    // As in startDive()
+        gasKey=describeGases();
+        reusedSegments=0;
+        if(segmentCheckpoints != null)
+            segmentCheckpoints.clear();
+        inFinalAscent=false;
+        model=(AbstractModel)c.model.clone();
+        model.setContext(context);
+        outputSegments.clear();
+        for(i=0;i<c.outputSegments.length;i++) {
+            s=(SegmentAbstract)c.outputSegments[i].clone();
+            s.setGas(gasAt(c.outputGases[i],s.getGas()));
+            outputSegments.add(s);
+        }
+        currentGas=gasAt(c.currentGas,currentGas);
+        currentGasIndex=c.currentGasIndex;
+        currentDepth=c.currentDepth;
+        runTime=c.runTime;
+        ppO2=c.ppO2;
+        closedCircuit=c.closedCircuit;
+        runtimeFlag=c.runtimeFlag;
+        metaData=c.metaData;
+        nextSegment=c.nextSegment;
+        atSegmentDepth=c.atSegmentDepth;
+    }
+
+    /**
+     * Gets a reference to a gas of this profile that is independent of object identity.
+     * @return Index into gases, or -(index+1) of the input segment using the gas, or
+     *         Integer.MIN_VALUE if not found
+     */
+    private int gasRef(Gas g)
+    {
+        int i;
+
+        for(i=0;i<gases.size();i++)
+            if(gases.get(i)==g) return i;
+        for(i=0;i<inputSegments.size();i++)
+            if(inputSegments.get(i).getGas()==g) return -(i+1);
+        return Integer.MIN_VALUE;
+    }
+
+    /**
+     * Gets the gas of this profile for a reference from gasRef()
+     * @param ref Reference
+     * @param g Gas to use if not found
+     */
+    private Gas gasAt(int ref, Gas g)
+    {
+        if(ref>=0 && ref<gases.size())
+            return gases.get(ref);
+        if(ref<0 && ref!=Integer.MIN_VALUE && -(ref+1)<inputSegments.size())
+            return inputSegments.get(-(ref+1)).getGas();
+        return g;
+    }
+
+
+    /**
+     * Gets the gases that ascend() will use to the surface, in the order it will switch to them.
+     * Follows setDecoGas(): the first gas is the one breathed from the current depth.
+     */
+    private List<Gas> getAscentGases()
+    {
+        List<Gas> ascentGases = new ArrayList<Gas>();
+        int i;
+
+        if(!params.getOcDeco() || gases.size()==0) {
+            ascentGases.add(currentGas);
+            return ascentGases;
+        }
+        i = closedCircuit ? 0 : -1;
+        while(i+1 < gases.size() && gases.get(i+1).getMod() >= currentDepth)
+            i++;
+        ascentGases.add(i<0 ? currentGas : gases.get(i));
+        for (i=i+1; i<gases.size(); i++)
+            ascentGases.add(gases.get(i));
+        return ascentGases;
+    }
 
     /** 
      * Ascend to target depth, decompressing if necessary. 
@@ -303,15 +783,15 @@ public class Profile
         Gas tempGas;        
         SegmentDeco decoSegment;        // Use for adding deco segments
         
-        if (debug > 1) System.out.println("\nASCEND: started ascent to: "+target);
-        if (debug > 1) System.out.println("RT: "+runTime+" ppO2: "+ppO2);        
+        if (debug > 1) trace.println("\nASCEND: started ascent to: "+target);
+        if (debug > 1) trace.println("RT: "+runTime+" ppO2: "+ppO2);        
         /*
          * Set up some initial stuff:
          *      Are we surfacing
          *      Are we open circuit deco == bailing out     
          */
             
-        if(inFinalAscent && (prefs.getOcDeco()))  {      // Switch to Open circuit deco  
+        if(inFinalAscent && (params.getOcDeco()))  {      // Switch to Open circuit deco  
             currentGasIndex=-1;
             setDecoGas(currentDepth);   // Or pick a better gas. Also sets OC mode
         }
@@ -320,19 +800,19 @@ public class Profile
             return PROCESSING_ERROR;
         
         // Set initial stop to be the next integral stop depth
-        if ((currentDepth%(int)prefs.getStopDepthIncrement()) > 0)   // Are we on a stop depth already ?
+        if ((currentDepth%(int)params.getStopDepthIncrement()) > 0)   // Are we on a stop depth already ?
             // If not, go to next stop depth
-            nextStopDepth= (int)(currentDepth /  prefs.getStopDepthIncrement()) * (int)prefs.getStopDepthIncrement();
+            nextStopDepth= (int)(currentDepth /  params.getStopDepthIncrement()) * (int)params.getStopDepthIncrement();
         else
-            nextStopDepth = (int)(currentDepth - prefs.getStopDepthIncrement());           
+            nextStopDepth = (int)(currentDepth - params.getStopDepthIncrement());           
            
         // Check in case we are overshooting or hit last stop or any of the other bizzar combinations ...
-        if((nextStopDepth < target) || (currentDepth < prefs.getLastStopDepth()))
+        if((nextStopDepth < target) || (currentDepth < params.getLastStopDepth()))
             nextStopDepth=target;
-        else if(currentDepth==prefs.getLastStopDepth()) 
+        else if(currentDepth==params.getLastStopDepth()) 
             nextStopDepth=target;
-        else if(nextStopDepth < prefs.getLastStopDepth()) 
-            nextStopDepth=prefs.getLastStopDepth();
+        else if(nextStopDepth < params.getLastStopDepth()) 
+            nextStopDepth=params.getLastStopDepth();
                 
         startDepth=currentDepth;    // Initialise ascent segment start depth
         inAscentCycle=true;         // Start in free ascent
@@ -341,24 +821,25 @@ public class Profile
         model.getGradient().setGfAtDepth(nextStopDepth);
 
         // Remember maxM-Value and controlling compartment
-        maxMV=model.mValue(currentDepth);
-        control = model.controlCompartment();
+        model.decoLimits(currentDepth,decoLimits);
+        maxMV=decoLimits.getMValue();
+        control = decoLimits.getControlCompartment();
         
-        if (debug > 1) System.out.println("Initial stop depth: "+nextStopDepth);        
-        if (debug > 1) System.out.println(" ... ceiling is now:"+model.ceiling());
-        if (debug > 1) System.out.println(" ... set m-value gradient for: "+nextStopDepth);
+        if (debug > 1) trace.println("Initial stop depth: "+nextStopDepth);        
+        if (debug > 1) trace.println(" ... ceiling is now:"+model.ceiling());
+        if (debug > 1) trace.println(" ... set m-value gradient for: "+nextStopDepth);
         
         while (currentDepth > target) {              
             // Can we move to the proposed next stop depth ?
             while (forceDecoStop || (nextStopDepth < model.ceiling())) {
                 // Need to decompress .... enter decompression loop
-                if (debug > 1) System.out.println(" ... entering decompression loop ...");
+                if (debug > 1) trace.println(" ... entering decompression loop ...");
                 inDecoCycle=true;
                 forceDecoStop=false;    // Only used for first entry into deco stop
                 if(inAscentCycle) {     // Finalise last ascent cycle as we are now decompressing
                     if(startDepth > currentDepth)   // Did we ascend at all ?
                         // Add ascent segment 
-                        outputSegments.add(new SegmentAscDec(startDepth,currentDepth,prefs.getAscentRate(),currentGas,ppO2));  
+                        outputSegments.add(new SegmentAscDec(startDepth,currentDepth,params.getAscentRate(),currentGas,ppO2));  
                     inAscentCycle=false;
                     // TODO - start depth is not re-initialised after first use
                 }
@@ -366,33 +847,35 @@ public class Profile
                 // set m-value gradient under the following conditions:
                 //      if not in multilevel mode, then set it as soon as we do a decompression cycle
                 //      otherwise wait until we are finally surfacing before setting it
-                if ((!prefs.getGfMultilevelMode() || inFinalAscent) && !model.getGradient().isGfSet()) { 
+                if ((!params.getGfMultilevelMode() || inFinalAscent) && !model.getGradient().isGfSet()) { 
                     model.getGradient().setGfSlopeAtDepth(currentDepth);
-                    if (debug > 1) System.out.println(" ... m-Value gradient slope set at: "+currentDepth+" GF is:"+ model.getGradient().getGf());                      
+                    if (debug > 1) trace.println(" ... m-Value gradient slope set at: "+currentDepth+" GF is:"+ model.getGradient().getGf());                      
                     model.getGradient().setGfAtDepth(nextStopDepth);
-                    if (debug > 1) System.out.println(" ... set m-value gradient for: "+nextStopDepth+" to:"+model.getGradient().getGf());                                        
+                    if (debug > 1) trace.println(" ... set m-value gradient for: "+nextStopDepth+" to:"+model.getGradient().getGf());                                        
                 }
                 
                 // Round up runtime to integral number of minutes - only first time through on this cycle
-                if( decoStopTime==0 && (runTime%prefs.getStopTimeIncrement() > 0))  // Is this not an integral time
-                    stopTime=(int)(runTime/prefs.getStopTimeIncrement())*prefs.getStopTimeIncrement() +
-                            prefs.getStopTimeIncrement()-runTime;
+                if( decoStopTime==0 && (runTime%params.getStopTimeIncrement() > 0))  // Is this not an integral time
+                    stopTime=(int)(runTime/params.getStopTimeIncrement())*params.getStopTimeIncrement() +
+                            params.getStopTimeIncrement()-runTime;
                 else 
-                    stopTime=prefs.getStopTimeIncrement();
+                    stopTime=params.getStopTimeIncrement();
                 
                 // Sanity check the rounding
-                if(stopTime==0) stopTime=prefs.getStopTimeIncrement();
+                if(stopTime==0) stopTime=params.getStopTimeIncrement();
+                // Extend the stop by the whole increments that the model shows are needed
+                stopTime+=getStopTimeAhead(stopTime,decoStopTime,nextStopDepth);
                 
-                if (debug > 1) System.out.println(" ... decompressing at depth: "+
+                if (debug > 1) trace.println(" ... decompressing at depth: "+
                         currentDepth+" for next depth :"+nextStopDepth+" Stop: "+stopTime+" ppO2: "+ppO2);   
                 // Execute stop
                 try {
                     model.constDepth(currentDepth,stopTime,currentGas.getFHe(),currentGas.getFN2(),ppO2);
                 } catch (ModelStateException e) { return PROCESSING_ERROR; }
                 decoStopTime+=stopTime;                
-                if (debug > 1) System.out.println(" ... ceiling is now:"+model.ceiling());
+                if (debug > 1) trace.println(" ... ceiling is now:"+model.ceiling());
                 // Sanity check decoStopTime for infinite loop
-                if(decoStopTime > 5000) {
+                if(decoStopTime > MAX_DECO_STOP_TIME) {
                     if (debug > 0) System.err.println("Infinite loop on deco stop at "+currentDepth);
                     return INFINITE_DECO;
                 }
@@ -401,7 +884,7 @@ public class Profile
             if(inDecoCycle) {
                 // Finalise last deco cycle ...
                 runTime+=decoStopTime;                
-                if(prefs.getForceAllStops())     // Reset for next depth
+                if(params.getForceAllStops())     // Reset for next depth
                     forceDecoStop=true;                 // ALWAYS TRUE AT THIS POINT
                     
                 // write deco segment
@@ -410,61 +893,90 @@ public class Profile
                 decoSegment.setGfUsed(model.getGradient().getGf());                
                 decoSegment.setControlCompartment(control);
                 outputSegments.add(decoSegment);
-                if (debug > 1) System.out.println(decoSegment);
+                if (debug > 1) trace.println(decoSegment);
                 inDecoCycle=false;    
                 decoStopTime=0;            
             } else if (inAscentCycle) {  
                 // Did not decompress, just ascend
                 // TODO - if we enable this code always (remove else if) then model will ascend between deco stops, but ... this causes collateral damage to runtim calculations
                 try {
-                    model.ascDec(currentDepth,(double)nextStopDepth,prefs.getAscentRate(),currentGas.getFHe(),currentGas.getFN2(),ppO2);
+                    model.ascDec(currentDepth,(double)nextStopDepth,params.getAscentRate(),currentGas.getFHe(),currentGas.getFN2(),ppO2);
                 } catch (ModelStateException e) { return PROCESSING_ERROR; }
-                runTime+=(currentDepth-nextStopDepth)/(-1.0*prefs.getAscentRate());
+                runTime+=(currentDepth-nextStopDepth)/(-1.0*params.getAscentRate());
                 // TODO - Issue here is that this ascent time is not accounted for in any segments unless it was in an ascent cycle            
             } 
             
             // Moved up to next depth ...
-            if (debug > 1) System.out.println("Now at next stop depth: "+nextStopDepth+" runtime: "+runTime);     
+            if (debug > 1) trace.println("Now at next stop depth: "+nextStopDepth+" runtime: "+runTime);     
 
             currentDepth=nextStopDepth;
-            maxMV=model.mValue(currentDepth);
-            control = model.controlCompartment();
+            model.decoLimits(currentDepth,decoLimits);
+            maxMV=decoLimits.getMValue();
+            control = decoLimits.getControlCompartment();
   
             // Check and switch deco gases
             tempGas=currentGas;                     // Remember this in case we switch
             if (setDecoGas(currentDepth) == true) { // If true we have changed gases
                 if (inAscentCycle) {                // To switch gases during ascent need to force a waypoint
                     if(debug > 1) ;
-                    if (debug > 1) System.out.println(" ... forcing waypoint for gas switch");
-                    outputSegments.add(new SegmentAscDec(startDepth,currentDepth,prefs.getAscentRate(),tempGas,ppO2));  
+                    if (debug > 1) trace.println(" ... forcing waypoint for gas switch");
+                    outputSegments.add(new SegmentAscDec(startDepth,currentDepth,params.getAscentRate(),tempGas,ppO2));  
                     startDepth=currentDepth;
                 }
             }
             
             // Set next rounded stop depth
-            nextStopDepth = (int)currentDepth - (int)prefs.getStopDepthIncrement(); 
+            nextStopDepth = (int)currentDepth - (int)params.getStopDepthIncrement(); 
             
             // Check in case we are overshooting or hit last stop
-            if((nextStopDepth < target) || (currentDepth < prefs.getLastStopDepth()))
+            if((nextStopDepth < target) || (currentDepth < params.getLastStopDepth()))
                 nextStopDepth=target;
-            else if(currentDepth==prefs.getLastStopDepth()) 
+            else if(currentDepth==params.getLastStopDepth()) 
                 nextStopDepth=target;
-            else if(nextStopDepth < prefs.getLastStopDepth())
-                nextStopDepth=prefs.getLastStopDepth();
+            else if(nextStopDepth < params.getLastStopDepth())
+                nextStopDepth=params.getLastStopDepth();
             
             if(model.getGradient().isGfSet()) {   // Update GF for next stop                         
                 model.getGradient().setGfAtDepth(nextStopDepth);
-                if (debug > 1) System.out.println(" ... set m-value gradient for: "+nextStopDepth+" to:"+model.getGradient().getGf());                 
+                if (debug > 1) trace.println(" ... set m-value gradient for: "+nextStopDepth+" to:"+model.getGradient().getGf());                 
             }  
         }  
         // Are we still in an ascent segment ?
         if (inAscentCycle) {
-            outputSegments.add(new SegmentAscDec(startDepth,currentDepth,prefs.getAscentRate(),currentGas,ppO2));                  
+            outputSegments.add(new SegmentAscDec(startDepth,currentDepth,params.getAscentRate(),currentGas,ppO2));                  
         }
         if(debug > 1) model.printModel();        
         return SUCCESS;        
     } // ascend
 
+    /**
+     * Uses the model's stop time solver to work out how much of the current deco stop can be
+     * done as one constant depth segment. The final increment is always left to be confirmed
+     * against model.ceiling() so the schedule is the same as stepping one increment at a time.
+     * Not used with conservatism factors as they are applied per step.
+     * @param stopTime Stop time already proposed for this step
+     * @param decoStopTime Stop time accumulated at this depth so far
+     * @param nextStopDepth Next proposed stop depth
+     * @return Additional stop time in whole stop increments
+     */
+    private double getStopTimeAhead(double stopTime, double decoStopTime, double nextStopDepth)
+    {
+        double increment=params.getStopTimeIncrement();
+        double t;
+        int n;
+
+        if(params.isUsingFactors()) return 0.0;
+        t=model.timeToCeiling(currentDepth,nextStopDepth,currentGas.getFHe(),currentGas.getFN2(),ppO2,
+                MAX_DECO_STOP_TIME-decoStopTime);
+        if(Double.isInfinite(t))
+            // Stop will never clear so go straight to the infinite deco check
+            n=(int)((MAX_DECO_STOP_TIME-decoStopTime-stopTime)/increment)+1;
+        else
+            n=(int)Math.ceil((t-stopTime)/increment)-1;
+        if (debug > 1 && n > 0) trace.println(" ... stop time solver estimate: "+t+" extending by "+n*increment);
+        return n>0 ? n*increment : 0.0;
+    }
+
     // Estimate gas consumption for all output segments and set this into the respective gas objects
     public void doGasCalcs()
     {
@@ -473,8 +985,8 @@ public class Profile
         
         while(it.hasNext()) {
             s=(SegmentAbstract)it.next();
-            s.getGas().setVolume( s.getGas().getVolume()+s.gasUsed());
-            if(debug > 1) System.out.println(" ... gas used: "+s.getGas()+" - "+(int)s.gasUsed()+" ("+(int)s.getGas().getVolume()+")");
+            s.getGas().setVolume( s.getGas().getVolume()+s.gasUsed(params));
+            if(debug > 1) trace.println(" ... gas used: "+s.getGas()+" - "+(int)s.gasUsed(params)+" ("+(int)s.getGas().getVolume()+")");
         }     
     }
     
@@ -488,10 +1000,10 @@ public class Profile
         boolean finished=false;
         boolean gasSwitch=false;
 
-        if(debug > 1) System.out.println("Evaluating deco gas at "+depth); 
+        if(debug > 1) trace.println("Evaluating deco gas at "+depth); 
         // Check to see if we should be changing gases at all ... if so just return doing nothing
         if(!inFinalAscent)               return false;   // Not ascending yet so no gas switching
-        if (!prefs.getOcDeco())   return false;   // No OC deco so no bailout
+        if (!params.getOcDeco())   return false;   // No OC deco so no bailout
         if(gases.size() ==0 )            return false ;  // No gases to change to
         
         // If this is the first time that this method is called we need to change to Open Circuit bailout
@@ -509,13 +1021,22 @@ public class Profile
                 currentGasIndex+=1;                 // Yes !
                 currentGas=g;  
                 gasSwitch=true;
-                if(debug > 1) System.out.println(" ... changing gas to "+currentGas);                    
+                if(debug > 1) trace.println(" ... changing gas to "+currentGas);                    
             } else
                 finished=true;     // Look no more
         }                    
         return gasSwitch;
     }
 
+	/**
+	 * Gets the planning context used for this profile calculation.
+	 *
+	 * @return the context
+	 */
+	public PlanningContext getContext() {
+		return context;
+	}
+
 	/**
 	 * Gets the prefs used for this profile calculation.
 	 *
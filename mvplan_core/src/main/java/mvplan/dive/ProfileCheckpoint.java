@@ -0,0 +1,66 @@
+/*
+ * ProfileCheckpoint.java
+ *
+ *  State of a Profile part way through a dive, from Profile.checkpoint().
+ *
+ *  Holds its own copy of the model and output segments so that any number of profiles can
+ *  restore() it and continue independently. Gases are held as references by position in the
+ *  profile's gas and segment lists, as each profile has its own Gas objects. Serializable so
+ *  that PlanStore can keep finished plans on disk.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.dive;
+
+import java.io.Serializable;
+
+import mvplan.model.AbstractModel;
+import mvplan.segments.SegmentAbstract;
+
+public class ProfileCheckpoint implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    AbstractModel model;                // Copy of the model
+    SegmentAbstract[] outputSegments;   // Copies of the output segments so far
+    int[] outputGases;                  // Gas reference of each output segment
+    int currentGas;                     // Gas reference of the current gas
+    int currentGasIndex;
+    double currentDepth;
+    double runTime;
+    double ppO2;
+    boolean closedCircuit;
+    boolean runtimeFlag;
+    String metaData;
+    int nextSegment;                    // Index of next input segment to process
+    boolean atSegmentDepth;
+    String segmentKey;                  // Content of the input segment before, for Profile.doDive(Profile)
+
+    /** Package only, created by Profile.checkpoint() */
+    ProfileCheckpoint() {
+    }
+
+    /**
+     * Gets the runtime at the checkpoint
+     * @return Runtime in minutes
+     */
+    public double getRunTime()      { return runTime; }
+    /**
+     * Gets the depth at the checkpoint
+     * @return Depth in msw (fsw)
+     */
+    public double getDepth()        { return currentDepth; }
+}
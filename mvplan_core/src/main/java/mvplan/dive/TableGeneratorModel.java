@@ -31,9 +31,14 @@ package mvplan.dive;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import mvplan.gas.Gas;
-import mvplan.main.MvplanInstance;
+import mvplan.main.PlanningContext;
 import mvplan.segments.SegmentAbstract;
 
 
@@ -51,6 +56,10 @@ public class TableGeneratorModel {
     private int longestProfile;                   // Index of longest profile
     private int rows;                             // Number of rows (== segments) in longest profile
     private int ascentRow;                        // Row (== segment) of the start of ascent
+    private PlanningContext context;              // Settings and debug output for the profiles
+    private int threads = Runtime.getRuntime().availableProcessors();   // Profiles conducted at the same time
+    private PlanCache planCache;                  // Finished plans of the profiles, null if not used
+    private PlanScheduler scheduler;              // Shared workers for the profiles, null for own threads
     
     /**
      * TableGeneratorModel() - Creates a new instance of TableGeneratorModel 
@@ -60,6 +69,19 @@ public class TableGeneratorModel {
      * @param modifiers int[] of profile time modifiers
      */
     public TableGeneratorModel(List<SegmentAbstract> s, List<Gas> g, int[] modifiers) {
+        this(s,g,modifiers,PlanningContext.getDefault());
+    }
+
+    /**
+     * TableGeneratorModel() - Creates a new instance of TableGeneratorModel 
+     *                 Initialises by cloning known segments and gases from those passed
+     * @param s Arrayist of known segments
+     * @param g ArrayList of known gases
+     * @param modifiers int[] of profile time modifiers
+     * @param context Settings and debug output for the profiles
+     */
+    public TableGeneratorModel(List<SegmentAbstract> s, List<Gas> g, int[] modifiers, PlanningContext context) {
+        this.context=context;
         // Create new clean ArrayLists
         knownSegments = new ArrayList<SegmentAbstract>();
         knownGases = new ArrayList<Gas>();
@@ -102,7 +124,14 @@ public class TableGeneratorModel {
         if(multiProfile.length>0)
             return multiProfile[0].getModel().getModelName();
         else
-            return MvplanInstance.getMvplan().getPrefs().getModelClassName();
+            return context.getPrefs().getModelClassName();
+    }
+
+    /** getContext - gets the settings the table is planned with
+     *  @return PlanningContext
+     */
+    public PlanningContext getContext() {
+        return context;
     }
 
 
@@ -192,6 +221,129 @@ public class TableGeneratorModel {
         controlSegmentIndex = knownSegments.indexOf(obj);
     }
         
+    /**
+     * Sets the maximum number of profiles conducted at the same time by doMultiDive()
+     * @param threads Number of threads, 1 to conduct the profiles one after another
+     */
+    public void setThreads(int threads) {
+        this.threads = threads < 1 ? 1 : threads;
+    }
+
+    /**
+     * Sets a shared scheduler to conduct the profiles on as BULK plans, in place of threads of
+     * their own, so that interactive plans on the same scheduler go first
+     * @param scheduler PlanScheduler, or null for threads of their own
+     */
+    public void setScheduler(PlanScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Sets the cache of finished plans. Profiles found in the cache are restored from it instead
+     * of being conducted, and conducted profiles are added to it.
+     * @param cache PlanCache, or null for none
+     */
+    public void setPlanCache(PlanCache cache) {
+        planCache = cache;
+    }
+
+    /**
+     * Creates the profile for one column from private copies of the known segments and gases
+     * @param modifier Time modifier for the controlling segment
+     * @return Profile
+     */
+    private Profile createProfile(int modifier) {
+        List<SegmentAbstract> a=new ArrayList<SegmentAbstract>();
+        List<Gas> g=new ArrayList<Gas>();
+        SegmentAbstract s;
+
+        // Clone from knownSegments into a new ArrayList
+        Iterator<SegmentAbstract> is=knownSegments.iterator();
+        while(is.hasNext())
+            a.add((SegmentAbstract) is.next().clone());   // Need to clone s !
+        // Gases are cloned too as profiles running together must not share them
+        Iterator<Gas> ig=knownGases.iterator();
+        while(ig.hasNext())
+            g.add((Gas) ig.next().clone());
+        // Adjust LAST segment for modified time
+        s = a.get(controlSegmentIndex);
+        s.setTime(s.getTime()+modifier);
+        Profile p = new Profile(a,g,null,context);
+        p.setPlanCache(planCache);
+        return p;
+    }
+
+    /**
+     * Completes the dive on every profile in multiProfile. Profiles are independent so up to
+     * threads of them run at the same time, or they are queued on the scheduler. Results are checked in column order, so the return
+     * code is that of the first column that failed, as if they had been run one after another.
+     * @param cached Columns restored from the plan cache, which are already complete
+     * @return returnCodes as defined in Profile()
+     */
+    private int runProfiles(boolean[] cached) {
+        int i;
+        int returnCode;
+        int n = Math.min(threads,numProfiles);
+
+        if (n <= 1 && scheduler == null) {
+            for(i=0;i<numProfiles;i++) {
+                if (cached[i])
+                    continue;
+                returnCode = multiProfile[i].continueDive();
+                if (returnCode != Profile.SUCCESS) {
+                    // Houston, we have a problem !
+                    if(context.getDebug()>0) context.getTrace().println("MultiProfile: error conducting dive. Return code:"+returnCode);
+                    return returnCode;
+                }
+            }
+            return Profile.SUCCESS;
+        }
+
+        ExecutorService executor = scheduler == null ? Executors.newFixedThreadPool(n) : null;
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>(numProfiles);
+        try {
+            for(i=0;i<numProfiles;i++) {
+                if (cached[i]) {
+                    results.add(null);
+                    continue;
+                }
+                final Profile profile = multiProfile[i];
+                Callable<Integer> dive = new Callable<Integer>() {
+                    public Integer call() {
+                        return Integer.valueOf(profile.continueDive());
+                    }
+                };
+                results.add(executor != null ? executor.submit(dive) : scheduler.submit(PlanScheduler.BULK, dive));
+            }
+            for(i=0;i<numProfiles;i++) {
+                if (cached[i])
+                    continue;
+                returnCode = results.get(i).get().intValue();
+                if (returnCode != Profile.SUCCESS) {
+                    if(context.getDebug()>0) context.getTrace().println("MultiProfile: error conducting dive. Return code:"+returnCode);
+                    return returnCode;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Profile.PROCESSING_ERROR;
+        } catch (ExecutionException e) {
+            if(context.getDebug()>0) context.getTrace().println("MultiProfile: error conducting dive. "+e.getCause());
+            return Profile.PROCESSING_ERROR;
+        } finally {
+            if (executor != null)
+                executor.shutdownNow();
+            else {
+                // Drop the profiles not yet started after a failure
+                for (Future<Integer> f : results) {
+                    if (f != null)
+                        f.cancel(false);
+                }
+            }
+        }
+        return Profile.SUCCESS;
+    }
+
     /**
      * void doMultiDiveProfile() - Execute the multi-dive profile.
      * @return returnCodes as defined in Profile()
@@ -202,6 +354,10 @@ public class TableGeneratorModel {
 
         int i,j;            // Counters
         int returnCode;     // Saves return code from dive profile
+        Profile base;       // Profile for the common start of the dives
+        ProfileCheckpoint checkpoint;
+        boolean[] cached;   // Profiles restored from the plan cache
+        boolean conduct=false;
 
         // If there is no controlling segment then can't proceed.
         if(controlSegmentIndex <0)   return Profile.NOTHING_TO_PROCESS;
@@ -216,7 +372,7 @@ public class TableGeneratorModel {
             }
         }
         
-        if(MvplanInstance.getMvplan().getDebug()>0) System.out.println("Creating "+numProfiles+" profiles.");
+        if(context.getDebug()>0) context.getTrace().println("Creating "+numProfiles+" profiles.");
             
         // Create profile array
         multiProfile = new Profile [numProfiles];
@@ -225,30 +381,35 @@ public class TableGeneratorModel {
         maxPO2=0.0;
         maxCNS=0.0;
         
-        // Process the  profiles 
+        // Create the profiles, taking those already planned from the plan cache
+        cached = new boolean[numProfiles];
         for(i=0;i<=numProfiles-1;i++) {     // For each profile ...
-            // Clone from knownSegments into a new ArrayList
-            a=new ArrayList<SegmentAbstract>();            
-            Iterator<SegmentAbstract> is=knownSegments.iterator();
-            while(is.hasNext()) {
-                s=is.next();
-                a.add((SegmentAbstract) s.clone());   // Need to clone s !
-            }
-            // Adjust LAST segment for modified time
-            s = a.get(controlSegmentIndex);
-            double time = s.getTime();
-            time = time+modifiers[i];
-            s.setTime(time);
-            a.set(controlSegmentIndex, s);
-            // Put new profile into array
-            multiProfile[i]=new Profile(a,knownGases,null);
-            // Conduct the dive on this profile         
-            returnCode = multiProfile[i].doDive(); 
-            if (returnCode != Profile.SUCCESS) {
-                // Houston, we have a problem !
-                if(MvplanInstance.getMvplan().getDebug()>0) System.err.println("MultiProfile: error conducting dive. Return code:"+returnCode);
+            multiProfile[i]=createProfile(modifiers[i]);
+            cached[i]=multiProfile[i].restoreCachedDive();
+            if (!cached[i])
+                conduct=true;
+        }
+
+        if (conduct) {
+            // All profiles are the same until the controlling segment, so conduct that part once
+            base=createProfile(0);
+            base.setPlanCache(null);
+            returnCode=base.doDiveTo(controlSegmentIndex);
+            if (returnCode != Profile.SUCCESS)
+                return returnCode;
+            checkpoint=base.checkpoint();
+
+            // Complete the profiles from there, in parallel if more than one thread is allowed
+            for(i=0;i<=numProfiles-1;i++)
+                if (!cached[i])
+                    multiProfile[i].restore(checkpoint);
+            returnCode=runProfiles(cached);
+            if (returnCode != Profile.SUCCESS)
                 return returnCode;
-            }   
+        }
+
+        // Collect the profiles in column order
+        for(i=0;i<=numProfiles-1;i++) {     // For each profile ...
             // Check conditions of dive and save maximums
             if (multiProfile[i].getModel().getOxTox().getMaxOx() > maxPO2)
                 maxPO2=multiProfile[i].getModel().getOxTox().getMaxOx();
@@ -289,7 +450,7 @@ public class TableGeneratorModel {
             }                        
         }
                 
-        if(MvplanInstance.getMvplan().getDebug()>0) System.out.println("Row count: "+rows+" in column "+longestProfile+" deco starts row "+ascentRow+'\n');
+        if(context.getDebug()>0) context.getTrace().println("Row count: "+rows+" in column "+longestProfile+" deco starts row "+ascentRow+'\n');
        
         // Adjust dive profiles if shorter than longestProfile by inserting null deep segments
         for( i=0;i<=numProfiles-1;i++) {
@@ -0,0 +1,358 @@
+/*
+ * GridEngine.java
+ *
+ *  Plans every dive of a GridSpec on a number of worker threads and collects the results into
+ *  a GridResult. Each cell is planned on its own Profile, which is discarded once its results
+ *  are recorded.
+ *
+ *  Cells are sorted longest first, using depth x time as an estimate of the work, and dealt out
+ *  to one queue per worker. A worker that empties its own queue steals from the back of the
+ *  others so that all workers finish at about the same time. Given a PlanScheduler, the cells
+ *  are queued on it longest first as BULK plans instead. Given a journal file, finished cells
+ *  are recorded in a GridJournal and a run started again after being stopped skips them.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.dive.grid;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import mvplan.dive.PlanCache;
+import mvplan.dive.PlanScheduler;
+import mvplan.dive.Profile;
+import mvplan.gas.Gas;
+import mvplan.main.PlanningContext;
+import mvplan.prefs.PlanParameters;
+import mvplan.segments.SegmentAbstract;
+import mvplan.segments.SegmentDive;
+
+public class GridEngine {
+    private PlanningContext context;        // Settings other than gradient factors, and debug output
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private PlanCache planCache;            // Finished plans, null if not used
+    private PlanScheduler scheduler;        // Shared workers for the cells, null for own threads
+    private File journalFile;               // Journal of finished cells, null if not used
+
+    /**
+     * Constructor for GridEngine
+     * @param context Settings and debug output for the dives
+     */
+    public GridEngine(PlanningContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Constructor for GridEngine using the application prefs
+     */
+    public GridEngine() {
+        this(PlanningContext.getDefault());
+    }
+
+    /**
+     * Sets the number of worker threads
+     * @param n Number of threads, 1 to plan on the calling thread
+     */
+    public void setThreads(int n) {
+        threads = Math.max(1, n);
+    }
+
+    /**
+     * Sets the cache of finished plans, which may have a PlanStore behind it. Cells planned
+     * before are restored from it instead of being planned again.
+     * @param cache PlanCache, or null for none
+     */
+    public void setPlanCache(PlanCache cache) {
+        planCache = cache;
+    }
+
+    /**
+     * Sets a shared scheduler to plan the cells on as BULK plans, in place of threads of their
+     * own, so that interactive plans on the same scheduler go first
+     * @param scheduler PlanScheduler, or null for threads of their own
+     */
+    public void setScheduler(PlanScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Sets a journal of the finished cells. Cells found in it from an earlier run of the same
+     * grid with the same settings are not planned again, and newly planned cells are added.
+     * @param file Journal file, or null for none
+     */
+    public void setJournal(File file) {
+        journalFile = file;
+    }
+
+    /**
+     * Plans all dives of the grid
+     * @param spec Dives to plan
+     * @return GridResult, with the Profile return code of each cell
+     */
+    public GridResult run(GridSpec spec) {
+        GridResult result = new GridResult(spec);
+        GridJournal journal = null;
+
+        if (journalFile != null) {
+            try {
+                journal = new GridJournal(journalFile, journalKey(spec), result);
+            } catch (IOException e) {
+                if (context.getDebug() > 0) context.getTrace().println("GridEngine: can not open journal: "+e);
+            }
+        }
+        planCells(spec, result, journal);
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                if (context.getDebug() > 0) context.getTrace().println("GridEngine: can not write journal: "+e);
+            }
+        }
+        result.compact();
+        return result;
+    }
+
+    /** Plans the cells not restored from the journal */
+    private void planCells(GridSpec spec, final GridResult result, final GridJournal journal) {
+        final GridSpec s = spec;
+        List<Integer> todo = new ArrayList<Integer>();
+        int numCells;
+        int n;
+        int i;
+
+        for (i=0; i<spec.getNumCells(); i++) {
+            if (journal == null || !journal.isDone(i))
+                todo.add(Integer.valueOf(i));
+        }
+        numCells = todo.size();
+        n = Math.min(threads, numCells);
+        if (n <= 1 && scheduler == null) {
+            for (i=0; i<numCells; i++)
+                planCell(s, todo.get(i).intValue(), result, journal);
+            return;
+        }
+
+        Integer[] order = todo.toArray(new Integer[numCells]);
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(cost(s, b.intValue()), cost(s, a.intValue()));
+            }
+        });
+        if (scheduler != null) {
+            runScheduled(s, order, result, journal);
+            return;
+        }
+
+        // Deal cells out longest first so each queue starts with its longest dives
+        final WorkQueue[] queues = new WorkQueue[n];
+        for (i=0; i<n; i++)
+            queues[i] = new WorkQueue(numCells/n + 1);
+        for (i=0; i<numCells; i++)
+            queues[i%n].add(order[i].intValue());
+
+        Thread[] workers = new Thread[n];
+        for (i=0; i<n; i++) {
+            final int self = i;
+            workers[i] = new Thread(new Runnable() {
+                public void run() {
+                    int cell;
+                    while ((cell = next(queues, self)) >= 0 && !Thread.currentThread().isInterrupted())
+                        planCell(s, cell, result, journal);
+                }
+            }, "GridEngine-"+i);
+            workers[i].start();
+        }
+        try {
+            for (i=0; i<n; i++)
+                workers[i].join();
+        } catch (InterruptedException e) {
+            // Stop the workers, unplanned cells are left as NOT_RUN
+            for (i=0; i<n; i++)
+                workers[i].interrupt();
+            Thread.currentThread().interrupt();
+            for (i=0; i<n; i++) {
+                while (workers[i].isAlive()) {
+                    try {
+                        workers[i].join();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            }
+        }
+    }
+
+    /** Queues the cells on the scheduler in the given order and waits for them */
+    private void runScheduled(final GridSpec spec, Integer[] order, final GridResult result, final GridJournal journal) {
+        List<Future<Object>> cells = new ArrayList<Future<Object>>(order.length);
+        int i;
+
+        try {
+            for (i=0; i<order.length; i++) {
+                final int cell = order[i].intValue();
+                cells.add(scheduler.submit(PlanScheduler.BULK, new Callable<Object>() {
+                    public Object call() {
+                        planCell(spec, cell, result, journal);
+                        return null;
+                    }
+                }));
+            }
+            for (i=0; i<cells.size(); i++) {
+                try {
+                    cells.get(i).get();
+                } catch (ExecutionException e) {
+                    // planCell() records runtime exceptions itself, this is an Error
+                    if (context.getDebug() > 0) context.getTrace().println("GridEngine: error planning cell "+order[i]+": "+e.getCause());
+                    set(result, journal, order[i].intValue(), Profile.PROCESSING_ERROR, 0.0, 0.0, 0.0, 0.0, null, null);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Unplanned cells are left as NOT_RUN
+            Thread.currentThread().interrupt();
+        } finally {
+            for (i=0; i<cells.size(); i++)
+                cells.get(i).cancel(false);
+        }
+    }
+
+    /** Gets the next cell for a worker, from its own queue or stolen from another */
+    private static int next(WorkQueue[] queues, int self) {
+        int cell = queues[self].take();
+        for (int i=1; cell < 0 && i<queues.length; i++)
+            cell = queues[(self+i)%queues.length].steal();
+        return cell;
+    }
+
+    /** Estimate of the work to plan a cell */
+    private static double cost(GridSpec spec, int cell) {
+        int t = cell / (spec.getBottomGases().size()*spec.getNumGradientFactors());
+        return spec.getDepths()[t / spec.getTimes().length] * spec.getTimes()[t % spec.getTimes().length];
+    }
+
+    /** Describes the grid and the settings its cells are planned with */
+    private String journalKey(GridSpec spec) {
+        StringBuffer sb = new StringBuffer();
+        int i;
+
+        sb.append(context.getParameters()).append('|');
+        for (i=0; i<spec.getDepths().length; i++)
+            sb.append(spec.getDepths()[i]).append(',');
+        sb.append('|');
+        for (i=0; i<spec.getTimes().length; i++)
+            sb.append(spec.getTimes()[i]).append(',');
+        sb.append('|');
+        for (i=0; i<spec.getBottomGases().size(); i++)
+            sb.append(describeGas(spec.getBottomGases().get(i))).append(';');
+        sb.append('|');
+        for (i=0; i<spec.getDecoGases().size(); i++)
+            sb.append(describeGas(spec.getDecoGases().get(i))).append(';');
+        sb.append('|');
+        for (i=0; i<spec.getNumGradientFactors(); i++)
+            sb.append(spec.getGfLow(i)).append('/').append(spec.getGfHigh(i)).append(',');
+        return sb.toString();
+    }
+
+    private static String describeGas(Gas g) {
+        return g.getFO2()+"/"+g.getFHe()+"@"+g.getMod();
+    }
+
+    /** Sets the results of a cell, and adds them to the journal */
+    private static void set(GridResult result, GridJournal journal, int cell, int code, double runTime,
+            double tts, double cns, double otu, double[] volumes, double[] stops) {
+        result.set(cell, code, runTime, tts, cns, otu, volumes, stops);
+        if (journal != null)
+            journal.record(cell, code, runTime, tts, cns, otu, volumes, stops);
+    }
+
+    /** Plans one cell and records its results */
+    private void planCell(GridSpec spec, int cell, GridResult result, GridJournal journal) {
+        int nGf = spec.getNumGradientFactors();
+        int nGases = spec.getBottomGases().size();
+        int nTimes = spec.getTimes().length;
+        int f = cell % nGf;
+        int g = (cell / nGf) % nGases;
+        int t = (cell / (nGf*nGases)) % nTimes;
+        int d = cell / (nGf*nGases*nTimes);
+        double depth = spec.getDepths()[d];
+
+        try {
+            // Each cell has its own gases as Profile records gas volumes in them
+            Gas bottomGas = (Gas)spec.getBottomGases().get(g).clone();
+            Gas[] decoGases = new Gas[spec.getDecoGases().size()];
+            List<Gas> gases = new ArrayList<Gas>();
+            gases.add(bottomGas);
+            for (int i=0; i<decoGases.length; i++) {
+                decoGases[i] = (Gas)spec.getDecoGases().get(i).clone();
+                gases.add(decoGases[i]);
+            }
+            Collections.sort(gases);
+            List<SegmentAbstract> segments = new ArrayList<SegmentAbstract>();
+            segments.add(new SegmentDive(depth, spec.getTimes()[t], bottomGas, 0.0));
+
+            PlanParameters params = context.getParameters().withGradientFactors(spec.getGfLow(f), spec.getGfHigh(f));
+            Profile p = new Profile(segments, gases, null,
+                    new PlanningContext(context.getPrefs(), params, context.getDebug(), context.getTrace()));
+            p.setPlanCache(planCache);
+            int returnCode = p.doDive();
+            if (returnCode != Profile.SUCCESS) {
+                set(result, journal, cell, returnCode, 0.0, 0.0, 0.0, 0.0, null, null);
+                return;
+            }
+            p.doGasCalcs();
+
+            // Bottom time ends with the last segment before the ascent starts
+            List<SegmentAbstract> out = p.getProfile();
+            double bottomEnd = 0.0;
+            int numStops = 0;
+            boolean ascending = false;
+            for (SegmentAbstract sa : out) {
+                if (sa.getType() == SegmentAbstract.ASCENT || sa.getType() == SegmentAbstract.DECO)
+                    ascending = true;
+                if (!ascending)
+                    bottomEnd = sa.getRunTime();
+                if (sa.getType() == SegmentAbstract.DECO)
+                    numStops++;
+            }
+            double[] stops = new double[2*numStops];
+            int j = 0;
+            for (SegmentAbstract sa : out) {
+                if (sa.getType() == SegmentAbstract.DECO) {
+                    stops[j++] = sa.getDepth();
+                    stops[j++] = sa.getTime();
+                }
+            }
+            double[] volumes = new double[1+decoGases.length];
+            volumes[0] = bottomGas.getVolume();
+            for (int i=0; i<decoGases.length; i++)
+                volumes[i+1] = decoGases[i].getVolume();
+            double runTime = out.get(out.size()-1).getRunTime();
+
+            set(result, journal, cell, Profile.SUCCESS, runTime, runTime-bottomEnd,
+                    p.getModel().getOxTox().getCns(), p.getModel().getOxTox().getOtu(), volumes, stops);
+        } catch (RuntimeException e) {
+            if (context.getDebug() > 0) context.getTrace().println("GridEngine: error planning cell "+cell+": "+e);
+            set(result, journal, cell, Profile.PROCESSING_ERROR, 0.0, 0.0, 0.0, 0.0, null, null);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * GridJournal.java
+ *
+ *  Journal of the cells of a GridEngine run, so that a run stopped part way, e.g. by the JVM
+ *  being killed, can be started again without planning the finished cells again.
+ *
+ *  The file starts with a key describing the grid and its settings, followed by one record per
+ *  finished cell with its results and a CRC. When opened for the same grid the recorded cells
+ *  are restored into the GridResult; a journal of a different grid is started afresh. A record
+ *  cut short when the run stopped fails its CRC and is dropped with anything after it.
+ *
+ *  Workers only add their records to a buffer. A writer thread appends the buffer to the file
+ *  and forces it to disk at most once a second, or sooner when a lot has built up, so planning
+ *  does not wait for the disk. At most the last second of cells is lost.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.dive.grid;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+class GridJournal {
+    private static final int MAGIC=0x4d56474a;          // "MVGJ"
+    private static final int VERSION=1;
+    private static final int BATCH_BYTES=64*1024;       // Written before the interval once this much waits
+    private static final long SYNC_MILLIS=1000;         // Longest a record waits to be forced to disk
+
+    private final Object lock = new Object();
+    private final boolean[] done;       // Cells restored from the file
+    private final FileOutputStream out;
+    private final Thread writer;
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();    // Records not yet written
+    private boolean closed;
+    private IOException error;          // First write that failed
+
+    /**
+     * Opens a journal, restoring the cells it holds into the result
+     * @param file Journal file, created if it does not exist
+     * @param key Description of the grid and its settings
+     * @param result Result of the run, not yet planned
+     * @throws IOException if the file can not be written
+     */
+    GridJournal(File file, String key, GridResult result) throws IOException {
+        FileOutputStream header;
+        long length;
+
+        done = new boolean[result.getNumCells()];
+        length = file.exists() ? restore(file, key, result) : 0;
+        if (length == 0) {
+            header = new FileOutputStream(file);
+            try {
+                header.write(header(key));
+            } finally {
+                header.close();
+            }
+        } else if (length < file.length()) {
+            // Drop a record cut short so new records follow the last good one
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(length);
+            } finally {
+                raf.close();
+            }
+        }
+        out = new FileOutputStream(file, true);
+        writer = new Thread(new Runnable() {
+            public void run() {
+                write();
+            }
+        }, "GridJournal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Start of the file, identifying the grid */
+    private static byte[] header(String key) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+
+        try {
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeUTF(key);
+        } catch (IOException e) {
+            throw new Error("ByteArrayOutputStream does not throw");
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the records of a journal into the result
+     * @return Length of the file up to the last good record, 0 if it is not a journal of the grid
+     */
+    private long restore(File file, String key, GridResult result) {
+        DataInputStream in = null;
+        CRC32 crc = new CRC32();
+        byte[] header = header(key);
+        byte[] start = new byte[header.length];
+        long length;
+        byte[] record;
+        int size;
+
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            in.readFully(start);
+            if (!Arrays.equals(start, header))
+                return 0;
+            length = header.length;
+            while (true) {
+                try {
+                    size = in.readInt();
+                    if (size < 0 || size > 1024*1024)
+                        break;
+                    record = new byte[size];
+                    in.readFully(record);
+                    crc.reset();
+                    crc.update(record);
+                    if (in.readInt() != (int)crc.getValue() || !restoreCell(record, result))
+                        break;
+                } catch (IOException e) {
+                    break;      // Cut short
+                }
+                length += 4 + size + 4;
+            }
+            return length;
+        } catch (IOException e) {
+            return 0;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /** Sets the results of the cell in a record, false if the record does not fit the grid */
+    private boolean restoreCell(byte[] record, GridResult result) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        int cell = in.readInt();
+        int code = in.readInt();
+        double runTime = in.readDouble();
+        double tts = in.readDouble();
+        double cns = in.readDouble();
+        double otu = in.readDouble();
+        double[] volumes = null;
+        double[] stops;
+        int i, n;
+
+        if (cell < 0 || cell >= done.length)
+            return false;
+        n = in.readInt();
+        if (n > 0) {
+            if (n != result.getNumGases())
+                return false;
+            volumes = new double[n];
+            for (i=0; i<n; i++)
+                volumes[i] = in.readDouble();
+        }
+        n = in.readInt();
+        if (n < 0 || n % 2 != 0 || n*8 > in.available())
+            return false;
+        stops = new double[n];
+        for (i=0; i<n; i++)
+            stops[i] = in.readDouble();
+        result.set(cell, code, runTime, tts, cns, otu, volumes, stops);
+        done[cell] = true;
+        return true;
+    }
+
+    /** @return True if the cell was restored from the journal */
+    boolean isDone(int cell) {
+        return done[cell];
+    }
+
+    /**
+     * Adds the results of a cell, as passed to GridResult.set(), called from the worker threads
+     */
+    void record(int cell, int code, double runTime, double tts, double cns, double otu,
+            double[] volumes, double[] stops) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream record = new DataOutputStream(bytes);
+        CRC32 crc = new CRC32();
+        int i;
+
+        try {
+            record.writeInt(cell);
+            record.writeInt(code);
+            record.writeDouble(runTime);
+            record.writeDouble(tts);
+            record.writeDouble(cns);
+            record.writeDouble(otu);
+            record.writeInt(volumes == null ? 0 : volumes.length);
+            for (i=0; volumes != null && i<volumes.length; i++)
+                record.writeDouble(volumes[i]);
+            record.writeInt(stops == null ? 0 : stops.length);
+            for (i=0; stops != null && i<stops.length; i++)
+                record.writeDouble(stops[i]);
+            crc.update(bytes.toByteArray());
+            synchronized (lock) {
+                if (closed)
+                    throw new IllegalStateException("Journal is closed");
+                record = new DataOutputStream(pending);
+                record.writeInt(bytes.size());
+                bytes.writeTo(pending);
+                record.writeInt((int)crc.getValue());
+                if (pending.size() >= BATCH_BYTES)
+                    lock.notifyAll();
+            }
+        } catch (IOException e) {
+            throw new Error("ByteArrayOutputStream does not throw");
+        }
+    }
+
+    /** Writes waiting records in batches, forcing each batch to disk */
+    private void write() {
+        ByteArrayOutputStream batch;
+        boolean last;
+
+        while (true) {
+            synchronized (lock) {
+                if (!closed && pending.size() < BATCH_BYTES) {
+                    try {
+                        lock.wait(SYNC_MILLIS);
+                    } catch (InterruptedException e) {
+                        closed = true;
+                    }
+                }
+                batch = pending;
+                pending = new ByteArrayOutputStream();
+                last = closed;
+            }
+            if (batch.size() > 0 && error == null) {
+                try {
+                    batch.writeTo(out);
+                    out.getChannel().force(false);
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+            if (last)
+                return;
+        }
+    }
+
+    /**
+     * Writes the remaining records and closes the file
+     * @throws IOException if any record could not be written
+     */
+    void close() throws IOException {
+        boolean interrupted = false;
+
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        // Finish writing, then pass an interrupt on
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        out.close();
+        if (error != null)
+            throw error;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * GridResult.java
+ *
+ *  Results of a GridEngine run. Held as one array per value, indexed by the cell index from
+ *  GridSpec.cellIndex(), rather than as a Profile per cell, so that large grids stay small.
+ *  Deco stops of all cells are held end to end; the stops of cell i are stopOffset[i] up to
+ *  stopOffset[i+1].
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.dive.grid;
+
+import java.util.Arrays;
+
+public class GridResult {
+    /** Return code of a cell that was not planned, e.g. when the run was interrupted */
+    public static final int NOT_RUN=-1;
+
+    private final GridSpec spec;
+    private final int numCells;
+    private final int numGases;         // Bottom gas + deco gases
+    private final int[] returnCode;     // Profile return codes
+    private final double[] runTime;     // Total runtime
+    private final double[] tts;         // Time to surface from the end of the bottom segment
+    private final double[] cns;         // Oxygen toxicity
+    private final double[] otu;
+    private final double[] gasVolume;   // [cell*numGases + gas]
+    private double[][] cellStops;       // Stops of each cell until compact()
+    private int[] stopOffset;
+    private double[] stopDepth;
+    private double[] stopTime;
+
+    /** Package only, created by GridEngine */
+    GridResult(GridSpec spec) {
+        this.spec = spec;
+        numCells = spec.getNumCells();
+        numGases = 1 + spec.getDecoGases().size();
+        returnCode = new int[numCells];
+        runTime = new double[numCells];
+        tts = new double[numCells];
+        cns = new double[numCells];
+        otu = new double[numCells];
+        gasVolume = new double[numCells*numGases];
+        cellStops = new double[numCells][];
+        Arrays.fill(returnCode, NOT_RUN);
+    }
+
+    /** Sets the results of one cell, called once per cell from the worker threads */
+    void set(int cell, int code, double runTime, double tts, double cns, double otu,
+            double[] volumes, double[] stops) {
+        returnCode[cell] = code;
+        this.runTime[cell] = runTime;
+        this.tts[cell] = tts;
+        this.cns[cell] = cns;
+        this.otu[cell] = otu;
+        if (volumes != null)
+            System.arraycopy(volumes, 0, gasVolume, cell*numGases, numGases);
+        cellStops[cell] = stops;
+    }
+
+    /** Moves the stops of each cell into the shared stop arrays, called after all workers finish */
+    void compact() {
+        int i, j, n = 0;
+        stopOffset = new int[numCells+1];
+        for (i=0; i<numCells; i++) {
+            stopOffset[i] = n;
+            if (cellStops[i] != null)
+                n += cellStops[i].length/2;
+        }
+        stopOffset[numCells] = n;
+        stopDepth = new double[n];
+        stopTime = new double[n];
+        for (i=0; i<numCells; i++) {
+            double[] s = cellStops[i];
+            if (s == null) continue;
+            for (j=0; j<s.length/2; j++) {
+                stopDepth[stopOffset[i]+j] = s[2*j];
+                stopTime[stopOffset[i]+j] = s[2*j+1];
+            }
+        }
+        cellStops = null;
+    }
+
+    /*************** ACCESSORS ****************/
+    public GridSpec getSpec()               { return spec; }
+    public int getNumCells()                { return numCells; }
+    /** @return Number of gas volumes per cell, the bottom gas followed by the deco gases */
+    public int getNumGases()                { return numGases; }
+    public int getReturnCode(int cell)      { return returnCode[cell]; }
+    public double getRunTime(int cell)      { return runTime[cell]; }
+    public double getTts(int cell)          { return tts[cell]; }
+    public double getCns(int cell)          { return cns[cell]; }
+    public double getOtu(int cell)          { return otu[cell]; }
+    /**
+     * Gets the gas used by a cell
+     * @param cell Cell index
+     * @param gas 0 for the bottom gas, 1.. for the deco gases in GridSpec order
+     * @return Volume in litres (cuft)
+     */
+    public double getGasVolume(int cell, int gas) { return gasVolume[cell*numGases + gas]; }
+    public int getNumStops(int cell)        { return stopOffset[cell+1] - stopOffset[cell]; }
+    public double getStopDepth(int cell, int stop) { return stopDepth[stopOffset[cell]+stop]; }
+    public double getStopTime(int cell, int stop)  { return stopTime[stopOffset[cell]+stop]; }
+}
@@ -0,0 +1,109 @@
+/*
+ * GridSpec.java
+ *
+ *  Describes a set of dive plans for GridEngine. Every combination of bottom depth, bottom time,
+ *  bottom gas and gradient factor pair is planned as a single level dive, with the same deco
+ *  gases for all of them.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.dive.grid;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mvplan.gas.Gas;
+
+public class GridSpec {
+    private double[] depths = new double[0];        // Bottom depths in msw (fsw)
+    private double[] times = new double[0];         // Bottom times in minutes
+    private List<Gas> bottomGases = new ArrayList<Gas>();
+    private List<Gas> decoGases = new ArrayList<Gas>();
+    private double[] gfLow = new double[0];         // Gradient factor pairs
+    private double[] gfHigh = new double[0];
+
+    /** Creates an empty GridSpec */
+    public GridSpec() {
+    }
+
+    /**
+     * Gets evenly spaced values for depths or times
+     * @param from First value
+     * @param to Last value, included if it falls on a step
+     * @param step Increment, > 0
+     * @return double[] of values
+     */
+    public static double[] range(double from, double to, double step) {
+        if (step <= 0.0)
+            throw new IllegalArgumentException("Step must be > 0: "+step);
+        int n = to < from ? 0 : (int)Math.floor((to-from)/step + 1e-9) + 1;
+        double[] values = new double[n];
+        for (int i=0; i<n; i++)
+            values[i] = from + i*step;
+        return values;
+    }
+
+    /**
+     * Adds a gradient factor pair
+     * @param low Low gradient factor (0.0 - 1.0)
+     * @param high High gradient factor (0.0 - 1.0)
+     */
+    public void addGradientFactors(double low, double high) {
+        int n = gfLow.length;
+        double[] l = new double[n+1];
+        double[] h = new double[n+1];
+        System.arraycopy(gfLow,0,l,0,n);
+        System.arraycopy(gfHigh,0,h,0,n);
+        l[n] = low;
+        h[n] = high;
+        gfLow = l;
+        gfHigh = h;
+    }
+
+    /**
+     * Gets the number of dive plans in the grid
+     * @return Depths x times x bottom gases x gradient factor pairs
+     */
+    public int getNumCells() {
+        return depths.length * times.length * bottomGases.size() * gfLow.length;
+    }
+
+    /**
+     * Gets the index of a dive plan in GridResult
+     * @param depth Index of bottom depth
+     * @param time Index of bottom time
+     * @param gas Index of bottom gas
+     * @param gf Index of gradient factor pair
+     * @return Cell index
+     */
+    public int cellIndex(int depth, int time, int gas, int gf) {
+        return ((depth*times.length + time)*bottomGases.size() + gas)*gfLow.length + gf;
+    }
+
+    /*************** ACCESSORS ****************/
+    public double[] getDepths()             { return depths; }
+    public void setDepths(double[] d)       { depths = d; }
+    public double[] getTimes()              { return times; }
+    public void setTimes(double[] t)        { times = t; }
+    public List<Gas> getBottomGases()       { return bottomGases; }
+    public void addBottomGas(Gas g)         { bottomGases.add(g); }
+    public List<Gas> getDecoGases()         { return decoGases; }
+    public void addDecoGas(Gas g)           { decoGases.add(g); }
+    public int getNumGradientFactors()      { return gfLow.length; }
+    public double getGfLow(int i)           { return gfLow[i]; }
+    public double getGfHigh(int i)          { return gfHigh[i]; }
+}
@@ -0,0 +1,48 @@
+/*
+ * WorkQueue.java
+ *
+ *  Queue of grid cells owned by one GridEngine worker. The owner takes cells from the front,
+ *  other workers that have run out of cells steal from the back.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.dive.grid;
+
+class WorkQueue {
+    private final int[] cells;
+    private int head;           // Next cell for the owner
+    private int tail;           // One past the next cell for a thief
+
+    WorkQueue(int capacity) {
+        cells = new int[capacity];
+    }
+
+    /** Adds a cell at the back, only used before the workers start */
+    void add(int cell) {
+        cells[tail++] = cell;
+    }
+
+    /** Takes a cell from the front, or -1 if empty */
+    synchronized int take() {
+        return head < tail ? cells[head++] : -1;
+    }
+
+    /** Takes a cell from the back, or -1 if empty */
+    synchronized int steal() {
+        return head < tail ? cells[--tail] : -1;
+    }
+}
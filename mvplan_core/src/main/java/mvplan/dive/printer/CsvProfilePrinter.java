@@ -0,0 +1,77 @@
+/*
+ * CsvProfilePrinter.java
+ *
+ * Prints the segments of a single dive as comma separated values, one row per segment.
+ * The rows have the columns of HEADER, which is shared with CsvTablePrinter so that the
+ * output of many plans can be written to one file.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.dive.printer;
+
+import java.util.Locale;
+
+import mvplan.dive.Profile;
+import mvplan.segments.SegmentAbstract;
+
+public class CsvProfilePrinter extends ProfilePrinter <StringBuffer>{
+    /** Column names of the rows */
+    public static final String HEADER="plan,modifier,type,depth,time,runtime,gas,setpoint";
+
+    private StringBuffer textArea;
+    private Profile profile;
+    private String label;
+
+    /**
+     * Creates a new instance of CsvProfilePrinter
+     * @param p Profile, after doDive()
+     * @param text Buffer for the rows
+     * @param label Name of the plan for the first column
+     */
+    public CsvProfilePrinter(Profile p, StringBuffer text, String label) {
+        super(p, text, p.getGases());
+        this.profile=p;
+        this.textArea=text;
+        this.label=label;
+    }
+
+    /*
+     * Prints the segments, without a header
+     */
+    public StringBuffer print() {
+        for (SegmentAbstract s : profile.getProfile())
+            appendRow(textArea,label,"",s);
+        return textArea;
+    }
+
+    /**
+     * Appends one segment row. Numbers are always written with a decimal point.
+     */
+    static void appendRow(StringBuffer text, String label, String modifier, SegmentAbstract s) {
+        text.append(quote(label)).append(',').append(modifier).append(',');
+        text.append(String.format(Locale.ENGLISH,"%1$s,%2$.1f,%3$.2f,%4$.2f,%5$s,%6$.1f\n",
+                s.getTypeString(), s.getDepth(), s.getTime(), s.getRunTime(),
+                s.getGas().getShortName().trim(), s.getSetpoint()));
+    }
+
+    /** Quotes a value if it holds a comma or a quote */
+    static String quote(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0)
+            return value;
+        return '"'+value.replaceAll("\"","\"\"")+'"';
+    }
+}
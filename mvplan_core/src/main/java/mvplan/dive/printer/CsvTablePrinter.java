@@ -0,0 +1,61 @@
+/*
+ * CsvTablePrinter.java
+ *
+ * Prints a multi profile table as comma separated values, one row per segment of each
+ * profile with the time modifier of the profile. Uses the columns of CsvProfilePrinter.HEADER.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.dive.printer;
+
+import mvplan.dive.TableGeneratorModel;
+import mvplan.segments.SegmentAbstract;
+
+public class CsvTablePrinter extends TablePrinter<StringBuffer> {
+
+    private StringBuffer textArea;
+    private TableGeneratorModel tm;
+    private String label;
+
+    /**
+     * Creates a new instance of CsvTablePrinter
+     * @param tm Table, after doMultiDive()
+     * @param textArea Buffer for the rows
+     * @param label Name of the plan for the first column
+     */
+    public CsvTablePrinter(TableGeneratorModel tm, StringBuffer textArea, String label) {
+        super(tm, textArea);
+        this.tm=tm;
+        this.textArea=textArea;
+        this.label=label;
+    }
+
+    /** Prints the segments of each profile in turn, without a header */
+    public StringBuffer print() {
+        SegmentAbstract [][] segmentArray = tm.getSegmentArray();
+        int i,j;
+
+        if(segmentArray==null) return textArea;
+        for (i=0;i<tm.getNumProfiles();i++) {
+            String modifier=String.valueOf(tm.getModifiers()[i]);
+            for (j=0;j<tm.getNumSegments();j++)
+                if (segmentArray[i][j] != null)     // Short profiles are padded with nulls
+                    CsvProfilePrinter.appendRow(textArea,label,modifier,segmentArray[i][j]);
+        }
+        return textArea;
+    }
+}
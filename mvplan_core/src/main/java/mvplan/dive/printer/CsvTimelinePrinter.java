@@ -0,0 +1,66 @@
+/*
+ * CsvTimelinePrinter.java
+ *
+ * Prints the samples of a DiveTimeline as comma separated values, one row per sample, with
+ * the columns of HEADER. A TTS that can not be reached, as deco is not possible, is left empty.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.dive.printer;
+
+import java.util.Locale;
+
+import mvplan.dive.DiveTimeline;
+
+public class CsvTimelinePrinter {
+    /** Column names of the rows */
+    public static final String HEADER="plan,runtime,depth,tts,ttsplus,ndl,waypoint";
+
+    private StringBuffer textArea;
+    private DiveTimeline timeline;
+    private String label;
+
+    /**
+     * Creates a new instance of CsvTimelinePrinter
+     * @param t DiveTimeline, after calculate()
+     * @param text Buffer for the rows
+     * @param label Name of the plan for the first column
+     */
+    public CsvTimelinePrinter(DiveTimeline t, StringBuffer text, String label) {
+        this.timeline=t;
+        this.textArea=text;
+        this.label=label;
+    }
+
+    /*
+     * Prints the samples, without a header
+     */
+    public StringBuffer print() {
+        for (int i=0; i<timeline.getNumSamples(); i++) {
+            textArea.append(CsvProfilePrinter.quote(label)).append(',');
+            textArea.append(String.format(Locale.ENGLISH,"%1$.2f,%2$.1f,%3$s,%4$s,%5$.0f,%6$d\n",
+                    timeline.getRunTime(i), timeline.getDepth(i), time(timeline.getTts(i)),
+                    time(timeline.getTtsPlus(i)), timeline.getNdl(i), timeline.isWaypoint(i) ? 1 : 0));
+        }
+        return textArea;
+    }
+
+    /** Formats a TTS, empty if it is infinite */
+    private static String time(double t) {
+        return Double.isInfinite(t) ? "" : String.format(Locale.ENGLISH,"%1$.2f",t);
+    }
+}
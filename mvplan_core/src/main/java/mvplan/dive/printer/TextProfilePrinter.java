@@ -30,6 +30,8 @@ import mvplan.dive.Profile;
 import mvplan.gas.Gas;
 import mvplan.main.IMvplan;
 import mvplan.main.MvplanInstance;
+import mvplan.main.PlanningContext;
+import mvplan.prefs.Prefs;
 import mvplan.segments.SegmentAbstract;
 //import java.util.MissingResourceException;
 
@@ -38,7 +40,9 @@ public class TextProfilePrinter extends ProfilePrinter <StringBuffer>{
    
     private StringBuffer textArea;
     private Profile profile;
-    //private boolean showStopTime = MvplanInstance.getPrefs().isShowStopTime();
+    private PlanningContext context;    // Settings the profile was planned with
+    private Prefs prefs;
+    //private boolean showStopTime = prefs.isShowStopTime();
     private String disclaimer;
     private List<Gas> knownGases;
     
@@ -46,6 +50,8 @@ public class TextProfilePrinter extends ProfilePrinter <StringBuffer>{
     public TextProfilePrinter(Profile p, StringBuffer text, List<Gas> knownGases) {
         super(p, text, knownGases);
         this.profile=p;
+        this.context=p.getContext();
+        this.prefs=context.getPrefs();
         this.textArea=text;
         this.knownGases = knownGases;
         disclaimer = mvplan.getResource("mvplan.disclaimer.text");            
@@ -54,6 +60,8 @@ public class TextProfilePrinter extends ProfilePrinter <StringBuffer>{
     public TextProfilePrinter(Profile p, StringBuffer text) {
         super(p, text, p.getGases());
         this.profile=p;
+        this.context=p.getContext();
+        this.prefs=context.getPrefs();
         this.textArea=text;
         this.knownGases = p.getGases();
         disclaimer = mvplan.getResource("mvplan.disclaimer.text");            
@@ -62,7 +70,7 @@ public class TextProfilePrinter extends ProfilePrinter <StringBuffer>{
      * Prints the dive table
      */
     public StringBuffer print() {
-        if(MvplanInstance.getPrefs().getOutputStyle()==MvplanInstance.getPrefs().BRIEF)
+        if(prefs.getOutputStyle()==Prefs.BRIEF)
             doPrintShortTable();
         else
             doPrintExtendedTable();
@@ -84,12 +92,12 @@ public class TextProfilePrinter extends ProfilePrinter <StringBuffer>{
 
         // Print settings heading
         textArea.append(mvplan.getResource("mvplan.gui.text.ProfilePrinter.settings.text")+"="+
-                        (int)Math.round(MvplanInstance.getPrefs().getGfLow()*100.)+"-"+(int)Math.round(MvplanInstance.getPrefs().getGfHigh()*100.));
-        textArea.append(" "+ mvplan.getResource("mvplan.gui.text.ProfilePrinter.factors.text") + MvplanInstance.getPrefs().getFactorComp() + "/"+ MvplanInstance.getPrefs().getFactorDecomp());
-        if (MvplanInstance.getPrefs().getGfMultilevelMode())
+                        (int)Math.round(prefs.getGfLow()*100.)+"-"+(int)Math.round(prefs.getGfHigh()*100.));
+        textArea.append(" "+ mvplan.getResource("mvplan.gui.text.ProfilePrinter.factors.text") + prefs.getFactorComp() + "/"+ prefs.getFactorDecomp());
+        if (prefs.getGfMultilevelMode())
             textArea.append(" "+mvplan.getResource("mvplan.gui.text.ProfilePrinter.multilevel.text"));
         textArea.append(" "+mvplan.getResource("mvplan.gui.text.ProfilePrinter.pph2o.text")+"="+
-                        MvplanInstance.getPrefs().getPH2O()+" "+MvplanInstance.getPrefs().getDepthShortString()+
+                        prefs.getPH2O()+" "+prefs.getDepthShortString()+
                         mvplan.getResource("mvplan.gui.text.ProfilePrinter.seaWater.shortText"));
         textArea.append(" "+profile.getModel().getModelName());
         textArea.append("\n");
@@ -97,7 +105,7 @@ public class TextProfilePrinter extends ProfilePrinter <StringBuffer>{
         
         textArea.append("========================================================="+'\n');
         for(SegmentAbstract s : profile.getProfile()) {
-            textArea.append(s.toStringLong()+'\n');
+            textArea.append(s.toStringLong(context)+'\n');
         }
         doGasUsage();        
     }
@@ -110,12 +118,12 @@ public class TextProfilePrinter extends ProfilePrinter <StringBuffer>{
         // Display gas usage
         // GW - Modified Mar-2009 to display all knaown gases with volumes > 0 so as to pick up open circuit bottom gas
         List<Gas> gases=knownGases; //profile.getGases();
-        String volumeUnits = MvplanInstance.getPrefs().getVolumeShortString();
+        String volumeUnits = prefs.getVolumeShortString();
         
         // Gas usage heading
         textArea.append('\n'+mvplan.getResource("mvplan.gui.text.ProfilePrinter.gasEstimate.text")+" ="+
-                        MvplanInstance.getPrefs().getDiveRMV()+", "+mvplan.getResource("mvplan.gui.text.ProfilePrinter.decoRmv.text")+
-                        " ="+MvplanInstance.getPrefs().getDecoRMV()+volumeUnits+"/"+ mvplan.getResource("mvplan.minutes.shortText") + '\n');
+                        prefs.getDiveRMV()+", "+mvplan.getResource("mvplan.gui.text.ProfilePrinter.decoRmv.text")+
+                        " ="+prefs.getDecoRMV()+volumeUnits+"/"+ mvplan.getResource("mvplan.minutes.shortText") + '\n');
         for (Gas g : gases){
             if(g.getVolume()> 0.0d)
                 textArea.append(g+" : "+ roundDouble(1, g.getVolume())+volumeUnits+'\n');
@@ -123,7 +131,7 @@ public class TextProfilePrinter extends ProfilePrinter <StringBuffer>{
         textArea.append(mvplan.getResource("mvplan.gui.text.ProfilePrinter.oxygenToxcicity.text")+" "+
                         (int)profile.getModel().getOxTox().getOtu()+ " "+mvplan.getResource("mvplan.gui.text.ProfilePrinter.cns.text")+
                         ": "+(int)(profile.getModel().getOxTox().getCns()*100.)+"%"+'\n');
-        if (profile.getModel().getOxTox().getMaxOx() > MvplanInstance.getPrefs().getMaxPO2() )
+        if (profile.getModel().getOxTox().getMaxOx() > prefs.getMaxPO2() )
             textArea.append(mvplan.getResource("mvplan.gui.text.ProfilePrinter.warningPpO2.text")+": "+ ((int)(profile.getModel().getOxTox().getMaxOx()*100)/100.0)+
                     " "+mvplan.getResource("mvplan.gui.text.ProfilePrinter.atmCnsEstimate.text")+'\n');
         textArea.append(disclaimer+'\n');        
@@ -147,19 +155,19 @@ public class TextProfilePrinter extends ProfilePrinter <StringBuffer>{
 
         // Print settings heading
         textArea.append(mvplan.getResource("mvplan.gui.text.ProfilePrinter.settings.text")+"="+
-                        (int)Math.round(MvplanInstance.getPrefs().getGfLow()*100.)+"-"+(int)Math.round(MvplanInstance.getPrefs().getGfHigh()*100.));
-        if( MvplanInstance.getPrefs().isUsingFactors())
-            textArea.append(" "+ mvplan.getResource("mvplan.gui.text.ProfilePrinter.factors.text") + MvplanInstance.getPrefs().getFactorComp() + "/"+ MvplanInstance.getPrefs().getFactorDecomp());
-        if (MvplanInstance.getPrefs().getGfMultilevelMode())
+                        (int)Math.round(prefs.getGfLow()*100.)+"-"+(int)Math.round(prefs.getGfHigh()*100.));
+        if( prefs.isUsingFactors())
+            textArea.append(" "+ mvplan.getResource("mvplan.gui.text.ProfilePrinter.factors.text") + prefs.getFactorComp() + "/"+ prefs.getFactorDecomp());
+        if (prefs.getGfMultilevelMode())
             textArea.append(" "+mvplan.getResource("mvplan.gui.text.ProfilePrinter.multilevel.text"));
         textArea.append(" "+profile.getModel().getModelName());
         textArea.append("\n");        
         printAltitude();        
-        boolean ocMode = profile.getPrefs().isOcMode();
+        boolean ocMode = prefs.isOcMode();
         if (ocMode){
-        	textArea.append("    "+MvplanInstance.getPrefs().getDepthShortString()+"   "+mvplan.getResource("mvplan.gui.text.ProfilePrinter.heading.textNoSP")+'\n');
+        	textArea.append("    "+prefs.getDepthShortString()+"   "+mvplan.getResource("mvplan.gui.text.ProfilePrinter.heading.textNoSP")+'\n');
         }else{
-        	textArea.append("    "+MvplanInstance.getPrefs().getDepthShortString()+"   "+mvplan.getResource("mvplan.gui.text.ProfilePrinter.heading.text")+'\n');
+        	textArea.append("    "+prefs.getDepthShortString()+"   "+mvplan.getResource("mvplan.gui.text.ProfilePrinter.heading.text")+'\n');
         }
         if (ocMode){
         textArea.append("========================"+'\n');
@@ -215,14 +223,14 @@ public class TextProfilePrinter extends ProfilePrinter <StringBuffer>{
      */
     private void printAltitude() {
         // Is this an altitude dive ?
-        if(MvplanInstance.getPrefs().getAltitude()>0.0) {
+        if(prefs.getAltitude()>0.0) {
             textArea.append(String.format("%1$s %2$4.0f%6$s (%4$1.2f%3$s) %5$s\n",
                     mvplan.getResource("mvplan.gui.text.altitude.text"),
-                    MvplanInstance.getPrefs().getAltitude(), 
+                    prefs.getAltitude(), 
                     mvplan.getResource("mvplan.bar.text"),
-                    MvplanInstance.getPrefs().getPAmb()/MvplanInstance.getPrefs().getPConversion(),
+                    prefs.getPAmb()/prefs.getPConversion(),
                     mvplan.getResource("mvplan.gui.text.altitudeCalibration.text"),
-                    MvplanInstance.getPrefs().getDepthShortString() ) );                        
+                    prefs.getDepthShortString() ) );                        
         }        
     }
     
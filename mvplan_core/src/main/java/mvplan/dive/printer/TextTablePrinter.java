@@ -27,12 +27,14 @@ import mvplan.dive.TableGeneratorModel;
 import mvplan.segments.SegmentAbstract;
 
 import mvplan.main.MvplanInstance;
+import mvplan.prefs.Prefs;
         
 public class TextTablePrinter extends TablePrinter<StringBuffer> {
     
     private StringBuffer textArea;
     private TableGeneratorModel tm;
-    private boolean showStopTime = MvplanInstance.getPrefs().isShowStopTime();  
+    private Prefs prefs;                // Settings the table was planned with
+    private boolean showStopTime;
     
     /** Creates a new instance of TablePrinter */
     public TextTablePrinter(TableGeneratorModel tm, StringBuffer textArea) {
@@ -40,6 +42,8 @@ public class TextTablePrinter extends TablePrinter<StringBuffer> {
         // Store locally
         this.tm=tm;
         this.textArea=textArea;             
+        prefs=tm.getContext().getPrefs();
+        showStopTime=prefs.isShowStopTime();
                    
     }
 
@@ -70,8 +74,8 @@ public class TextTablePrinter extends TablePrinter<StringBuffer> {
         
         // Create heading
         textArea.append(MvplanInstance.getMvplan().getAppName()+'\n');
-        textArea.append(MvplanInstance.getMvplan().getResource("mvplan.gui.text.ProfilePrinter.settings.text")+"="+(int)Math.round(MvplanInstance.getPrefs().getGfLow()*100.)+"-"+(int)Math.round(MvplanInstance.getPrefs().getGfHigh()*100.));
-        textArea.append(" "+ MvplanInstance.getMvplan().getResource("mvplan.gui.text.ProfilePrinter.multilevel.text")+"="+MvplanInstance.getPrefs().getGfMultilevelMode());
+        textArea.append(MvplanInstance.getMvplan().getResource("mvplan.gui.text.ProfilePrinter.settings.text")+"="+(int)Math.round(prefs.getGfLow()*100.)+"-"+(int)Math.round(prefs.getGfHigh()*100.));
+        textArea.append(" "+ MvplanInstance.getMvplan().getResource("mvplan.gui.text.ProfilePrinter.multilevel.text")+"="+prefs.getGfMultilevelMode());
         textArea.append(" "+tm.getModelName());
         textArea.append("\n");
         printAltitude();
@@ -82,7 +86,7 @@ public class TextTablePrinter extends TablePrinter<StringBuffer> {
         separator=separator+"-----------------\n";
         
         // Create table heading row
-        String result = "   "+MvplanInstance.getPrefs().getDepthShortString()+" ";
+        String result = "   "+prefs.getDepthShortString()+" ";
         for (i=0;i<numProfiles;i++) 
             //result = showStopTime ? result+"  S   R ": result+"   R "; 
             result = showStopTime ? result+"  "+stopChar+"   "+runChar+" ": result+"   "+runChar+" ";
@@ -121,7 +125,7 @@ public class TextTablePrinter extends TablePrinter<StringBuffer> {
         textArea.append(result);
         
         // Check oxygen limits
-        if (tm.getMaxPO2() > MvplanInstance.getPrefs().getMaxPO2()) {
+        if (tm.getMaxPO2() > prefs.getMaxPO2()) {
             textArea.append(MvplanInstance.getMvplan().getResource("mvplan.gui.text.tablePrinter.maxPp02.text")+" "+ ((int)Math.round(tm.getMaxPO2()*100)/100.0)+" "+
                     MvplanInstance.getMvplan().getResource("mvplan.gui.text.tablePrinter.cnsEstimated.text")+'\n');
         }
@@ -133,12 +137,12 @@ public class TextTablePrinter extends TablePrinter<StringBuffer> {
     /* Print altitude message */
     private void printAltitude() {
         // Is this an altitude dive ?
-        if(MvplanInstance.getPrefs().getAltitude()>0.0) {
+        if(prefs.getAltitude()>0.0) {
             textArea.append(String.format("%1$s %2$4.0f%3$s (%4$2.1f%3$ssw) %5$s\n",
                     MvplanInstance.getMvplan().getResource("mvplan.gui.text.altitude.text"),
-                    MvplanInstance.getPrefs().getAltitude(), 
-                    MvplanInstance.getPrefs().getDepthShortString(),
-                    MvplanInstance.getPrefs().getPAmb(),
+                    prefs.getAltitude(), 
+                    prefs.getDepthShortString(),
+                    prefs.getPAmb(),
                     MvplanInstance.getMvplan().getResource("mvplan.gui.text.altitudeCalibration.text")));                        
         }        
     }    
@@ -0,0 +1,105 @@
+/*
+ * PlanningContext.java
+ *
+ * Settings and debug output used by one dive plan calculation.
+ *
+ * Profile, the models and the segments take their settings from a PlanningContext rather than
+ * from the MvplanInstance singleton, so that plans with different settings can be calculated
+ * on different threads at the same time. The settings that determine the plan are copied into
+ * PlanParameters when the context is created, so later edits of Prefs do not affect it.
+ */
+
+package mvplan.main;
+
+import java.io.PrintStream;
+
+import mvplan.prefs.PlanParameters;
+import mvplan.prefs.Prefs;
+
+public class PlanningContext {
+	private final Prefs prefs;			// Settings for the plan
+	private final PlanParameters parameters;	// Copy of the settings that determine the plan
+	private final int debug;			// Debug level, 0 = none
+	private final PrintStream trace;	// Debug output
+
+	/**
+	 * Constructor for PlanningContext
+	 * @param prefs Settings for the plan
+	 * @param debug Debug level, 0 for none
+	 * @param trace Stream for debug output
+	 */
+	public PlanningContext(Prefs prefs, int debug, PrintStream trace) {
+		this(prefs, new PlanParameters(prefs), debug, trace);
+	}
+
+	/**
+	 * Constructor for PlanningContext with settings that differ from prefs
+	 * @param prefs Settings for the plan
+	 * @param parameters Settings that determine the plan
+	 * @param debug Debug level, 0 for none
+	 * @param trace Stream for debug output
+	 */
+	public PlanningContext(Prefs prefs, PlanParameters parameters, int debug, PrintStream trace) {
+		this.prefs = prefs;
+		this.parameters = parameters;
+		this.debug = debug;
+		this.trace = trace;
+	}
+
+	/**
+	 * Constructor for PlanningContext without debug output
+	 * @param prefs Settings for the plan
+	 */
+	public PlanningContext(Prefs prefs) {
+		this(prefs, 0, System.out);
+	}
+
+	/**
+	 * Gets a context for the application prefs and debug level held by MvplanInstance
+	 * @return PlanningContext
+	 */
+	public static PlanningContext getDefault() {
+		IMvplan mvplan = MvplanInstance.getMvplan();
+		return new PlanningContext(mvplan.getPrefs(), mvplan.getDebug(), System.out);
+	}
+
+	/**
+	 * Gets the settings for the plan
+	 * @return Prefs
+	 */
+	public Prefs getPrefs() {
+		return prefs;
+	}
+
+	/**
+	 * Gets the settings that determine the plan, as they were when the context was created
+	 * @return PlanParameters
+	 */
+	public PlanParameters getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * Gets units of the plan
+	 * @return Prefs.METRIC or Prefs.IMPERIAL
+	 */
+	public int getUnits() {
+		return parameters.getUnits();
+	}
+
+	/**
+	 * Gets debug level
+	 * @return Debug level, 0 for none
+	 */
+	public int getDebug() {
+		return debug;
+	}
+
+	/**
+	 * Gets stream for debug output
+	 * @return PrintStream
+	 */
+	public PrintStream getTrace() {
+		return trace;
+	}
+}
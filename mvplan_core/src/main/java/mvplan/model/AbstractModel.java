@@ -2,7 +2,7 @@
  * AbstractModel.java <br/>
  *
  * Base class for dive models.<br/>
- * Composed of a tissue array of Compartment[]<br/>
+ * Exposes its tissues as an array of Compartment[]<br/>
  * Has an OxTox and Gradient object <br/>
  * Can throw a ModelStateException propagated from a Compartment if pressures or time is out of bounds.<br/>
  *
@@ -34,21 +34,23 @@
 
 package mvplan.model;
 import java.io.Serializable;
-import mvplan.main.MvplanInstance;
+import java.util.List;
+import mvplan.gas.Gas;
+import mvplan.main.PlanningContext;
 
 
 /**
  *
  * @author guy
  */
-public abstract class AbstractModel implements Serializable {
+public abstract class AbstractModel implements Serializable, Cloneable {
 
-    Compartment[] tissues;          // Buhlmann tissues == array of compartments
     Gradient gradient;              // Gradient factor object
     OxTox oxTox;                    // Oxygen toxicity model
     String metaData;                // Stores information about where the model was created
     int units;                      // Metric or imperial units
     String modelName;        // Contains model name
+    transient PlanningContext context;  // Settings and debug output for calculations
 
 
      /** Return value - ZHL16BModel validated correctly */
@@ -71,11 +73,143 @@ public abstract class AbstractModel implements Serializable {
     public abstract void printModel();
 
 
+    /**
+     * Estimates the time at constant depth until the ceiling rises to the specified depth.
+     * Used to size deco stops without stepping the model one stop increment at a time.
+     * Models that cannot make an estimate return 0.0 so that the caller steps as before.
+     * @param depth Depth of stop in msw (fsw)
+     * @param ceilingDepth Target ceiling, typically the next stop depth, in msw (fsw)
+     * @param fHe Fraction of inert gas Helium in inspired gas mix
+     * @param fN2 Fraction of inert gas Nitrogen in inspired gas mix
+     * @param pO2 For CCR mode, partial pressure of oxygen in bar. If == 0.0, then open circuit
+     * @param maxTime Longest time to consider in minutes
+     * @return Time in minutes, 0.0 if no estimate is available or Double.POSITIVE_INFINITY if
+     *         the ceiling is not reached within maxTime
+     */
+    public double timeToCeiling(double depth, double ceilingDepth, double fHe, double fN2, double pO2, double maxTime) {
+        return 0.0;
+    }
+
+    /**
+     * Called at the start of the final ascent to the surface, before any stops are made.
+     * Models that plan the whole ascent up front, such as the VPM-B, override this.
+     * @param depth Depth at the start of the ascent in msw (fsw)
+     * @param gases Open circuit gases in order of use: the first is breathed from the start
+     *        of the ascent and each of the others from its MOD
+     */
+    public void startAscent(double depth, List<Gas> gases) {
+    }
+
      /**
+     * Determines ceiling, maximum M-Value and controlling compartment in one call.
+     * Models that can compute these in a single pass over their tissues should override this.
+     * @param depth Depth in msw (fsw) for the M-Value
+     * @param limits Result holder, overwritten with the current limits
+     */
+    public void decoLimits(double depth, DecoLimits limits) {
+        limits.set(ceiling(),mValue(depth),controlCompartment());
+    }
+
+    /**
+     * Override the clone method due to the need for deep cloning. The copy shares the
+     * planning context but has its own tissues, Gradient and OxTox, so that it can continue
+     * a calculation independently of the original.
+     * @return AbstractModel object
+     */
+    public Object clone(){
+        try {
+            AbstractModel copy = (AbstractModel)super.clone();  // Shallow clone
+            if (gradient != null) copy.gradient = (Gradient)gradient.clone();
+            if (oxTox != null) copy.oxTox = (OxTox)oxTox.clone();
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new Error("Never happens");
+        }
+    }
+
+    /**
+     * Creates a snapshot sized for this model and copies the current state into it. Keep it
+     * and reuse it with snapshot() and restore(), which do not allocate.
+     * @return ModelSnapshot
+     */
+    public ModelSnapshot newSnapshot() {
+        ModelSnapshot s = new ModelSnapshot(getClass(),snapshotSize());
+        snapshot(s);
+        return s;
+    }
+
+    /**
+     * Copies the changing state of the model into a snapshot: tissues, gradient factors,
+     * oxygen toxicity and any state a model adds. The model must have been initialised.
+     * @param s ModelSnapshot from newSnapshot() of a model of the same class
+     */
+    public void snapshot(ModelSnapshot s) {
+        s.start(this,false);
+        saveState(s);
+        s.end();
+    }
+
+    /**
+     * Returns the model to the state held by a snapshot. The gradient and oxygen toxicity
+     * objects are updated in place.
+     * @param s ModelSnapshot of a model of the same class
+     */
+    public void restore(ModelSnapshot s) {
+        s.start(this,true);
+        loadState(s);
+        s.end();
+    }
+
+    /**
+     * Number of values copied by saveState(). Models that add state extend it.
+     * @return Number of values
+     */
+    protected int snapshotSize() {
+        return Gradient.SNAPSHOT_SIZE+OxTox.SNAPSHOT_SIZE;
+    }
+
+    /**
+     * Copies the changing state into a snapshot. Models that add state extend it.
+     * @param s ModelSnapshot
+     */
+    protected void saveState(ModelSnapshot s) {
+        gradient.snapshot(s);
+        oxTox.snapshot(s);
+    }
+
+    /**
+     * Copies the changing state from a snapshot, in the order of saveState()
+     * @param s ModelSnapshot
+     */
+    protected void loadState(ModelSnapshot s) {
+        gradient.restore(s);
+        oxTox.restore(s);
+    }
+
+    /**
      * Initialises the model's gradient factor object
      */
     public void initGradient() {
-        gradient = new Gradient(MvplanInstance.getMvplan().getPrefs().getGfLow(),MvplanInstance.getMvplan().getPrefs().getGfHigh());        // Default Gradient factors
+        gradient = new Gradient(context().getParameters().getGfLow(),context().getParameters().getGfHigh());        // Default Gradient factors
+    }
+
+    /**
+     * Sets the planning context used by this model's calculations.
+     * Not persisted, a model loaded from XML uses PlanningContext.getDefault() until this is called.
+     * @param context PlanningContext
+     */
+    public void setContext(PlanningContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Gets the planning context, defaulting to the application prefs
+     * @return PlanningContext
+     */
+    protected PlanningContext context() {
+        if (context == null)
+            context = PlanningContext.getDefault();
+        return context;
     }
 
     /**
@@ -111,12 +245,12 @@ public abstract class AbstractModel implements Serializable {
      * Gets tissues as Array of Compartment[] for this model
      * @return tissues - Array of Compartment[]
      */
-    public Compartment[] getTissues()       { return tissues; }
+    public abstract Compartment[] getTissues();
     /**
      * Sets tissues array of Compartment[]
      * @param t Tissue array of Compartment
      */
-    public void setTissues(Compartment[] t) { tissues=t; }
+    public abstract void setTissues(Compartment[] t);
     /**
      * Gets metadata string for this model
      * @return Metadata String
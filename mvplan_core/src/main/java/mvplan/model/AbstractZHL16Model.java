@@ -2,7 +2,9 @@
  * AbstractZHL16Model.java <br/>
  *
  * Represents a Buhlmann model.<br/>
- * Composed of a tissue array of Compartment[]<br/>
+ * Tissue pressures and coefficients are held in flat arrays indexed by compartment so that the<br/>
+ * update loops run over primitive data. getTissues()/setTissues() provide a Compartment[] bean view<br/>
+ * of those arrays for XML persistence and display.<br/>
  * Has an OxTox and Gradient object <br/>
  * Can throw a ModelStateException propagated from a Compartment if pressures or time is out of bounds.<br/>
  *
@@ -10,8 +12,8 @@
  * Models are initialised by initModel() if they are new models, or<br/>
  * validated by validateModel() if they are rebuild from a saved model.<br/>
  *
- * The model is capable of ascending or descending via ascDec() using the ascDec() method of Compartment,<br/>
- * or accounting for a constant depth using the constDepth() method of Compartment.<br/>
+ * The model is capable of ascending or descending via ascDec(), or accounting for a constant depth<br/>
+ * using constDepth(). These apply the same equations as Compartment to all compartments at once.<br/>
  *
  *   @author Guy Wittig
  *   @version 17-Apr-2010
@@ -35,12 +37,31 @@
 package mvplan.model;
 
 import java.io.Serializable;
-import mvplan.main.MvplanInstance;
+import mvplan.prefs.PlanParameters;
 
 
 public abstract class AbstractZHL16Model extends AbstractModel implements Serializable {
     static int COMPS=16;            // Number of compartments
 
+    // Tissue state and Buhlmann constants, indexed by compartment
+    double[] ppHe = new double[COMPS];      // Partial pressures msw (fsw)
+    double[] ppN2 = new double[COMPS];
+    double[] kHe = new double[COMPS];       // Time constants - calculated from halftimes
+    double[] kN2 = new double[COMPS];
+    double[] aHe = new double[COMPS];       // A and b co-efficients
+    double[] bHe = new double[COMPS];
+    double[] aN2 = new double[COMPS];
+    double[] bN2 = new double[COMPS];
+    double factorComp=1.0;                  // Conservatism factors
+    double factorDecomp=1.0;
+
+    // Blended He/N2 co-efficients, valid until the tissue pressures next change
+    private double[] aHeN2 = new double[COMPS];
+    private double[] bHeN2 = new double[COMPS];
+    private boolean blendValid=false;
+    // Decay factors e^-kt for recent segment times
+    private DecayCache decay = new DecayCache(COMPS);
+
     protected abstract void setTimeConstants();
 
     /**
@@ -49,23 +70,100 @@ public abstract class AbstractZHL16Model extends AbstractModel implements Serial
     public void initModel()
     {
         int c;  // counter
-        units = MvplanInstance.getMvplan().getPrefs().getUnits();
-        tissues = new Compartment[COMPS];
+        PlanParameters prefs = context().getParameters();
+        units = prefs.getUnits();
+        factorComp = prefs.getFactorComp();
+        factorDecomp = prefs.getFactorDecomp();
         initGradient();         // Initialise gradient factor object
         initOxTox();
 
         //pAmb = surface pressure msw absolute
         for (c=0; c<COMPS; c++) {
-            // create and initialise compartments
-            tissues[c] = new Compartment();
-            tissues[c].setPpHe(0.0);                // Set initial ppH2 = 0.0
-            tissues[c].setPpN2(0.79*(MvplanInstance.getMvplan().getPrefs().getPAmb()-MvplanInstance.getMvplan().getPrefs().getPH2O()));     // Set ppN2 = Ambient - ppH2O
-            if(MvplanInstance.getMvplan().getDebug()>1) System.out.println("Initialising compartment "+c+" ppN2="+tissues[c].getPpN2());
+            // initialise compartments
+            ppHe[c] = 0.0;                          // Set initial ppH2 = 0.0
+            ppN2[c] = 0.79*(prefs.getPAmb()-prefs.getPH2O());     // Set ppN2 = Ambient - ppH2O
+            if(context().getDebug()>1) context().getTrace().println("Initialising compartment "+c+" ppN2="+ppN2[c]);
         }
         setTimeConstants(); // Set all the Buhlmann timeconstants
+        blendValid=false;
         metaData="(none)";
     }
 
+    /**
+     * Override the clone method due to the need for deep cloning of the tissue arrays
+     * @return AbstractZHL16Model object
+     */
+    public Object clone(){
+        AbstractZHL16Model copy = (AbstractZHL16Model)super.clone();
+        copy.ppHe = ppHe.clone();
+        copy.ppN2 = ppN2.clone();
+        copy.kHe = kHe.clone();
+        copy.kN2 = kN2.clone();
+        copy.aHe = aHe.clone();
+        copy.bHe = bHe.clone();
+        copy.aN2 = aN2.clone();
+        copy.bN2 = bN2.clone();
+        copy.aHeN2 = aHeN2.clone();
+        copy.bHeN2 = bHeN2.clone();
+        copy.decay = new DecayCache(COMPS);
+        return copy;
+    }
+
+    /**
+     * Adds the tissue tensions to the snapshot size
+     * @return Number of values
+     */
+    @Override
+    protected int snapshotSize() {
+        return super.snapshotSize()+2*COMPS;
+    }
+
+    /**
+     * Copies the tissue tensions into a snapshot. The time constants and coefficients do not
+     * change and are not copied.
+     * @param s ModelSnapshot
+     */
+    @Override
+    protected void saveState(ModelSnapshot s) {
+        super.saveState(s);
+        s.put(ppHe);
+        s.put(ppN2);
+    }
+
+    /**
+     * Copies the tissue tensions from a snapshot
+     * @param s ModelSnapshot
+     */
+    @Override
+    protected void loadState(ModelSnapshot s) {
+        super.loadState(s);
+        s.get(ppHe);
+        s.get(ppN2);
+        blendValid=false;
+    }
+
+    /**
+     * Sets a compartment's time constants
+     * @param c Compartment (0-15)
+     * @param hHe Halftime, helium
+     * @param hN2 Halftime, Nitrogen
+     * @param aHe a coefficient, Helium
+     * @param bHe b coefficient, Helium
+     * @param aN2 a coefficient, Nitrogen
+     * @param bN2 b coefficient, Nitrogen
+     */
+    protected void setCompartmentTimeConstants(int c, double hHe, double hN2, double aHe, double bHe, double aN2, double bN2)
+    {
+        kHe[c]=Compartment.LOG2/hHe;    // Time constants
+        kN2[c]=Compartment.LOG2/hN2;
+        this.aHe[c]=aHe;                // Co-efficients
+        this.bHe[c]=bHe;
+        this.aN2[c]=aN2;
+        this.bN2[c]=bN2;
+        blendValid=false;
+        decay.clear();
+    }
+
     /**
      * Validate model - checks over the model and looks for corruption.
      * This is needed to chack a model that has been loaded from XML.
@@ -77,16 +175,20 @@ public abstract class AbstractZHL16Model extends AbstractModel implements Serial
         boolean timeConstantZero=false;
         int c;  // Counter
 
+        // Conservatism factors are not persisted, take them from the current prefs
+        PlanParameters prefs = context().getParameters();
+        factorComp = prefs.getFactorComp();
+        factorDecomp = prefs.getFactorDecomp();
         for (c=0;c<COMPS;c++){
-            if(tissues[c].getPpN2()<=0.0)   fail=true;      // N2 must always be +ve
-            if(tissues[c].getPpHe()< 0.0)   fail=true;      // He may be zero
+            if(ppN2[c]<=0.0)   fail=true;      // N2 must always be +ve
+            if(ppHe[c]< 0.0)   fail=true;      // He may be zero
             // TODO - do we need this or remove all accessors / mutators for timeconstants and always set them ?
-            if(tissues[c].getKHe()==0.0)    timeConstantZero=true;
-            if(tissues[c].getKN2()==0.0)    timeConstantZero=true;
-            if(tissues[c].getAHe()==0.0)    timeConstantZero=true;
-            if(tissues[c].getBHe()==0.0)    timeConstantZero=true;
-            if(tissues[c].getAN2()==0.0)    timeConstantZero=true;
-            if(tissues[c].getBN2()==0.0)    timeConstantZero=true;
+            if(kHe[c]==0.0)    timeConstantZero=true;
+            if(kN2[c]==0.0)    timeConstantZero=true;
+            if(aHe[c]==0.0)    timeConstantZero=true;
+            if(bHe[c]==0.0)    timeConstantZero=true;
+            if(aN2[c]==0.0)    timeConstantZero=true;
+            if(bN2[c]==0.0)    timeConstantZero=true;
        }
        if(timeConstantZero)   setTimeConstants();
        if(!fail)
@@ -95,7 +197,53 @@ public abstract class AbstractZHL16Model extends AbstractModel implements Serial
            return MODEL_VALIDATION_FAILED;
     }
 
+    /**
+     * Gets tissues as a Compartment[] bean view of the tissue arrays.
+     * The Compartments are copies; changing them does not change the model.
+     * @return tissues - Array of Compartment[]
+     */
+    @Override
+    public Compartment[] getTissues()
+    {
+        Compartment[] tissues = new Compartment[COMPS];
+        int c;
+
+        for (c=0;c<COMPS;c++) {
+            tissues[c] = new Compartment(factorComp,factorDecomp);
+            tissues[c].setPpHe(ppHe[c]);
+            tissues[c].setPpN2(ppN2[c]);
+            tissues[c].setKHe(kHe[c]);
+            tissues[c].setKN2(kN2[c]);
+            tissues[c].setAHe(aHe[c]);
+            tissues[c].setBHe(bHe[c]);
+            tissues[c].setAN2(aN2[c]);
+            tissues[c].setBN2(bN2[c]);
+        }
+        return tissues;
+    }
+
+    /**
+     * Sets tissue arrays from a Compartment[], typically when rebuilding a saved model from XML
+     * @param tissues Tissue array of Compartment
+     */
+    @Override
+    public void setTissues(Compartment[] tissues)
+    {
+        int c;
 
+        for (c=0;c<COMPS && c<tissues.length;c++) {
+            ppHe[c]=tissues[c].getPpHe();
+            ppN2[c]=tissues[c].getPpN2();
+            kHe[c]=tissues[c].getKHe();
+            kN2[c]=tissues[c].getKN2();
+            aHe[c]=tissues[c].getAHe();
+            bHe[c]=tissues[c].getBHe();
+            aN2[c]=tissues[c].getAN2();
+            bN2[c]=tissues[c].getBN2();
+        }
+        blendValid=false;
+        decay.clear();
+    }
 
     /**
      * Determine the controlling compartment at ceiling (1-16)
@@ -107,9 +255,12 @@ public abstract class AbstractZHL16Model extends AbstractModel implements Serial
         int control=0;
         double depth=0.0;
         double p=0.0;
+        double gf=gradient.getGradientFactor();
+        double pAmb=context().getParameters().getPAmb();
 
+        blend();
         for (c=0;c<COMPS;c++) {
-            p=tissues[c].getMaxAmb(gradient.getGradientFactor())-MvplanInstance.getMvplan().getPrefs().getPAmb();      // Get compartment max pressure
+            p=maxAmb(c,gf)-pAmb;      // Get compartment max pressure
             if(p>depth) {
                 control=c;
                 depth=p;
@@ -128,10 +279,13 @@ public abstract class AbstractZHL16Model extends AbstractModel implements Serial
         int c;
         double depth=0.0;       // depth in msw
         double p=0.0;           // compartment pressure in msw
+        double gf=gradient.getGradientFactor();
+        double pAmb=context().getParameters().getPAmb();
 
+        blend();
         for (c=0;c<COMPS;c++) {     // For all compartments ...
             // Get compartment tolerated ambient pressure and convert from absolute pressure to depth
-            p=tissues[c].getMaxAmb(gradient.getGradientFactor()) - MvplanInstance.getMvplan().getPrefs().getPAmb();
+            p=maxAmb(c,gf) - pAmb;
             // Save max depth
             if(p>depth)
                 depth=p;
@@ -147,35 +301,166 @@ public abstract class AbstractZHL16Model extends AbstractModel implements Serial
     public double mValue(double depth)
     {
         int c;
-        double pAbsolute = depth+MvplanInstance.getMvplan().getPrefs().getPAmb();             // derive ambient pressure for the given depth
+        double pAbsolute = depth+context().getParameters().getPAmb();             // derive ambient pressure for the given depth
         double compartmentMV=0.0;
         double maxMV=0.0;
 
+        blend();
         for (c=0;c<COMPS;c++) {
-            compartmentMV=tissues[c].getMV(pAbsolute);
+            // See Compartment.getMV()
+            compartmentMV=(ppHe[c] + ppN2[c]) / (pAbsolute/bHeN2[c] + aHeN2[c]);
             if(compartmentMV>maxMV)
                 maxMV=compartmentMV;
         }
         return maxMV;
     }
 
+    /**
+     * Determines ceiling, maximum M-Value and controlling compartment in a single pass
+     * over the compartments. Gives the same results as ceiling(), mValue() and controlCompartment().
+     * @param depth Depth in msw (fsw) for the M-Value
+     * @param limits Result holder, overwritten with the current limits
+     */
+    @Override
+    public void decoLimits(double depth, DecoLimits limits)
+    {
+        int c;
+        int control=0;
+        double ceiling=0.0;
+        double p;
+        double pHeN2;
+        double compartmentMV;
+        double maxMV=0.0;
+        double gf=gradient.getGradientFactor();
+        double pAmb=context().getParameters().getPAmb();
+        double pAbsolute=depth+pAmb;
+
+        blend();
+        for (c=0;c<COMPS;c++) {
+            pHeN2 = ppHe[c] + ppN2[c];
+            p=(pHeN2 - aHeN2[c]*gf)/(gf/bHeN2[c]-gf+1.0) - pAmb;
+            if(p>ceiling) {
+                control=c;
+                ceiling=p;
+            }
+            compartmentMV=pHeN2 / (pAbsolute/bHeN2[c] + aHeN2[c]);
+            if(compartmentMV>maxMV)
+                maxMV=compartmentMV;
+        }
+        limits.set(ceiling,maxMV,control+1);
+    }
+
+    /**
+     * Gets Tolerated Absolute Pressure for a compartment. See Compartment.getMaxAmb()
+     * Call blend() first.
+     */
+    private double maxAmb(int c, double gf)
+    {
+        return (ppHe[c] + ppN2[c] - aHeN2[c]*gf)/(gf/bHeN2[c]-gf+1.0);
+    }
 
     /**
-     * Constant depth profile. Calls Compartment.constDepth for each compartment to update the model.
+     * Calculates adjusted a, b coefficients based on those of He and N2, unless they are still
+     * valid for the current tissue pressures. See Compartment.getMaxAmb()
+     */
+    private void blend()
+    {
+        int c;
+        double pHeN2;
+
+        if(blendValid)
+            return;
+        for (c=0;c<COMPS;c++) {
+            pHeN2 = ppHe[c] + ppN2[c];    // Sum partial pressures
+            aHeN2[c] = ((aHe[c] * ppHe[c]) + (aN2[c] * ppN2[c])) / pHeN2;
+            bHeN2[c] = ((bHe[c] * ppHe[c]) + (bN2[c] * ppN2[c])) / pHeN2;
+        }
+        blendValid=true;
+    }
+
+    /**
+     * Estimates the time at constant depth until the ceiling rises to the specified depth.
+     * Solves Compartment.getTimeToMaxAmb() for each compartment using the current gradient factor,
+     * which Profile sets for the next stop depth.
+     * @param depth Depth of stop in msw (fsw)
+     * @param ceilingDepth Target ceiling, typically the next stop depth, in msw (fsw)
+     * @param fHe Fraction of inert gas Helium in inspired gas mix
+     * @param fN2 Fraction of inert gas Nitrogen in inspired gas mix
+     * @param pO2 For CCR mode, partial pressure of oxygen in bar. If == 0.0, then open circuit
+     * @param maxTime Longest time to consider in minutes
+     * @return Time in minutes, 0.0 if no estimate is available or Double.POSITIVE_INFINITY if
+     *         the ceiling is not reached within maxTime
+     */
+    @Override
+    public double timeToCeiling(double depth, double ceilingDepth, double fHe, double fN2, double pO2, double maxTime)
+    {
+        PlanParameters prefs = context().getParameters();
+        double ppHeInspired;        // inspired gas pp
+        double ppN2Inspired;
+        double pInert;              // Total inert gas pressure (msw)
+        double pAmb = depth+prefs.getPAmb();     // Total ambient pressure  (msw)
+        double pTarget = ceilingDepth+prefs.getPAmb();
+        double gf = gradient.getGradientFactor();
+        double t;
+        double maxT=0.0;
+        int c;
+
+        // Set inspired gas fractions as per constDepth()
+        if(pO2 > 0.0) {
+            if ((fHe+fN2)>0.0)
+                pInert = pAmb - pO2*prefs.getPConversion()-prefs.getPH2O();
+            else
+                pInert=0.0;
+            if ( pInert>0.0) {
+                ppHeInspired = (pInert * fHe)/(fHe+fN2);
+                ppN2Inspired = (pInert * fN2)/(fHe+fN2);
+            } else {
+                ppHeInspired =0.0;
+                ppN2Inspired =0.0;
+            }
+        } else {
+            ppHeInspired = (pAmb-prefs.getPH2O())*fHe;
+            ppN2Inspired = (pAmb-prefs.getPH2O())*fN2;
+        }
+
+        if(factorComp != 1.0 || factorDecomp != 1.0)
+            return 0.0;
+        // Slowest compartment controls
+        for (c=0;c<COMPS;c++) {
+            t=Compartment.timeToMaxAmb(ppHe[c],ppN2[c],kHe[c],kN2[c],aHe[c],bHe[c],aN2[c],bN2[c],
+                    ppHeInspired,ppN2Inspired,pTarget,gf,maxTime);
+            if(Double.isNaN(t))
+                return 0.0;
+            if(t>maxT)
+                maxT=t;
+        }
+        return maxT;
+    }
+
+    /**
+     * Constant depth profile. Updates all compartments using the instantaneous equation
+     * P = Po + (Pi - Po)(1-e^-kt), with conservatism factors on Compression and Decompression.
      * @param depth Depth of segment in metres
      * @param segTime Time of segment in minutes
      * @param fHe Fraction of inert gas Helium in inspired gas mix
      * @param fN2 Fraction of inert gas Nitrogen in inspired gas mix
      * @param pO2 For CCR mode, partial pressure of oxygen in bar. If == 0.0, then open circuit
-     * @throws mvplan.model.ModelStateException Propagates ModelStateException
+     * @throws mvplan.model.ModelStateException Throws ModelStateException if partial pressures are < 0.0 or time < 0.0
      */
     public void constDepth(double depth, double segTime, double fHe, double fN2, double pO2) throws ModelStateException
     {
+        PlanParameters prefs = context().getParameters();
+        double pSurface = prefs.getPAmb();
+        double pH2O = prefs.getPH2O();
+        double pConversion = prefs.getPConversion();
         double ppHeInspired;        // inspired gas pp
         double ppN2Inspired;
         double ppO2Inspired;
         double pInert;              // Total inert gas pressure (msw)
-        double pAmb = depth+MvplanInstance.getMvplan().getPrefs().getPAmb();     // Total ambient pressure  (msw)
+        double pAmb = depth+pSurface;     // Total ambient pressure  (msw)
+        double deltaHe, deltaN2;
+        double[] expHe, expN2;      // e^-kt for segTime
+        int slot;
         int c;
 
         // Set inspired gas fractions.
@@ -184,7 +469,7 @@ public abstract class AbstractZHL16Model extends AbstractModel implements Serial
             // Determine pInert by subtracting absolute oxygen pressure (msw) and pH20 (msw)
             // Note that if fHe and fN2 == 0.0 then need to force pp's to zero
             if ((fHe+fN2)>0.0)
-                pInert = pAmb - pO2*MvplanInstance.getMvplan().getPrefs().getPConversion()-MvplanInstance.getMvplan().getPrefs().getPH2O();
+                pInert = pAmb - pO2*pConversion-pH2O;
             else
                 pInert=0.0;
 
@@ -198,69 +483,89 @@ public abstract class AbstractZHL16Model extends AbstractModel implements Serial
                 ppN2Inspired =0.0;
             }
             // Update OxTox model - pO2 in atm NOT msw
-            ppO2Inspired = pO2*MvplanInstance.getMvplan().getPrefs().getPConversion();  // Determine ppO2Inspired in msw
+            ppO2Inspired = pO2*pConversion;  // Determine ppO2Inspired in msw
             // Check that ppO2Inspired is not greater than the depth. This occurs in shallow deco when the
             // setpoint specified is > depth in msw.
-            if( (ppO2Inspired <= depth+MvplanInstance.getMvplan().getPrefs().getPAmb()) && (pInert > 0.0) )
+            if( (ppO2Inspired <= depth+pSurface) && (pInert > 0.0) )
                 // pO2 is as per the setpoint
                 oxTox.addO2(segTime,pO2);
             else
                 // pO2 is equal to the depth in atm. Also true if there is no inert gas in the gas
-                oxTox.addO2(segTime, (depth+MvplanInstance.getMvplan().getPrefs().getPAmb()-MvplanInstance.getMvplan().getPrefs().getPH2O())/MvplanInstance.getMvplan().getPrefs().getPConversion() );
+                oxTox.addO2(segTime, (depth+pSurface-pH2O)/pConversion );
 
         } else {
             // Open circuit mode
-            ppHeInspired = (pAmb-MvplanInstance.getMvplan().getPrefs().getPH2O())*fHe;
-            ppN2Inspired = (pAmb-MvplanInstance.getMvplan().getPrefs().getPH2O())*fN2;
+            ppHeInspired = (pAmb-pH2O)*fHe;
+            ppN2Inspired = (pAmb-pH2O)*fN2;
             // Update OxTox model - pO2 in atm NOT msw
             if( depth==0.0)  // Surface
                 oxTox.removeO2(segTime);
             else
-                oxTox.addO2(segTime, ((pAmb-MvplanInstance.getMvplan().getPrefs().getPH2O()) * (1.0-fHe-fN2) )/MvplanInstance.getMvplan().getPrefs().getPConversion() );
+                oxTox.addO2(segTime, ((pAmb-pH2O) * (1.0-fHe-fN2) )/pConversion );
         }
 
-        // public void constDepth(double ppHeInspired, double ppN2Inspired, double segTime)
         if(segTime>0) {
+            if(ppHeInspired<0.0 || ppN2Inspired <0.0){
+                if((context().getDebug() > 0)) context().getTrace().println("ERROR: constDepth() is throwing exception, ppHe="+ppHeInspired+" ppN2="+ppN2Inspired);
+                throw new ModelStateException("Error in argument: AbstractZHL16Model.constDepth()");
+            }
+            slot=decay.find(segTime,kHe,kN2);
+            expHe=decay.he[slot];
+            expN2=decay.n2[slot];
             for (c=0;c<COMPS;c++) {
-                tissues[c].constDepth(ppHeInspired,ppN2Inspired,segTime);
+                // Calculate change in pp
+                deltaHe= ((ppHeInspired-ppHe[c]) * (1-expHe[c]));
+                deltaN2= ((ppN2Inspired-ppN2[c]) * (1-expN2[c]));
+                // Apply conservatism factors
+                deltaHe = (deltaHe > 0.0d ) ? deltaHe * factorComp : deltaHe * factorDecomp;
+                deltaN2 = (deltaN2 > 0.0d ) ? deltaN2 * factorComp : deltaN2 * factorDecomp;
+                // Apply to compartment
+                ppHe[c] = ppHe[c] + deltaHe;
+                ppN2[c] = ppN2[c] + deltaN2;
             }
+            blendValid=false;
         }
-        if((MvplanInstance.getMvplan().getDebug() > 1))
-            System.out.println("-->CONST: "+depth+"m, t:"+segTime+" fHe:"+fHe+" fN2:"+fN2+" ppO2:"+pO2+" ppHei:"+ppHeInspired+" ppN2i:"+ppN2Inspired);
+        if((context().getDebug() > 1))
+            context().getTrace().println("-->CONST: "+depth+"m, t:"+segTime+" fHe:"+fHe+" fN2:"+fN2+" ppO2:"+pO2+" ppHei:"+ppHeInspired+" ppN2i:"+ppN2Inspired);
 
     }
 
     /**
-     * Ascend/Descend in profile. Calls model.ascDec to update compartments
+     * Ascend/Descend in profile. Updates all compartments using P=Pio+R(t -1/k)-[Pio-Po-(R/k)]e^-kt
      * @param start - Start depth of segment in metres
      * @param finish - Finish depth of segment in metres
      * @param rate - Rate of ascent (-ve) or descent (+ve) in m/min
      * @param fHe Fraction of inert gas Helium in inspired gas mix
      * @param fN2 Fraction of inert gas Nitrogen in inspired gas mix
      * @param pO2 For CCR mode, partial pressure of oxygen in bar. If == 0.0, then open circuit
-     * @throws mvplan.model.ModelStateException Propogates ModelStateException
+     * @throws mvplan.model.ModelStateException Throws ModelStateException if partial pressures are < 0.0 or time < 0.0
      */
     public void ascDec(double start, double finish, double rate, double fHe, double fN2,double pO2 ) throws ModelStateException
     {
+        PlanParameters prefs = context().getParameters();
+        double pSurface = prefs.getPAmb();
+        double pH2O = prefs.getPH2O();
+        double pConversion = prefs.getPConversion();
         int c;
         double ppHeInspired;                        // Initial inspired gas pp
         double ppN2Inspired;
-        double ppO2Inspired;
         double pO2InspiredAverage;                  // For oxtox calculations
         double segTime = (finish-start)/rate;       // derive segment time (mins)
         double rateHe;                              // Rate of change for each inert gas (msw/min)
         double rateN2;
+        double[] expHe, expN2;                      // e^-kt for segTime
+        int slot;
 
-        double pAmbStart = start+MvplanInstance.getMvplan().getPrefs().getPAmb();                // Starting ambient pressure (msw)
-        double pAmbFinish = finish+MvplanInstance.getMvplan().getPrefs().getPAmb();
+        double pAmbStart = start+pSurface;                // Starting ambient pressure (msw)
+        double pAmbFinish = finish+pSurface;
         double pInertStart,pInertFinish;            //
 
         // Set inspired gas fractions.
         if(pO2 > 0.0) {
             // Rebreather mode
             // Calculate inert gas partial pressure (msw) == pAmb - pO2 - pH2O
-            pInertStart = pAmbStart - pO2*MvplanInstance.getMvplan().getPrefs().getPConversion()-MvplanInstance.getMvplan().getPrefs().getPH2O();
-            pInertFinish = pAmbFinish -pO2*MvplanInstance.getMvplan().getPrefs().getPConversion()-MvplanInstance.getMvplan().getPrefs().getPH2O();
+            pInertStart = pAmbStart - pO2*pConversion-pH2O;
+            pInertFinish = pAmbFinish -pO2*pConversion-pH2O;
             // Check that it doesn't go less than zero. Could be due to shallow deco or starting on high setpoint
             if (pInertStart<0.0) pInertStart=0.0;
             if (pInertFinish<0.0) pInertFinish=0.0;
@@ -285,21 +590,31 @@ public abstract class AbstractZHL16Model extends AbstractModel implements Serial
         } else {
             // Open circuit mode
             // Calculate He and N2 components
-            ppHeInspired = (pAmbStart-MvplanInstance.getMvplan().getPrefs().getPH2O())*fHe;
-            ppN2Inspired = (pAmbStart-MvplanInstance.getMvplan().getPrefs().getPH2O())*fN2;
+            ppHeInspired = (pAmbStart-pH2O)*fHe;
+            ppN2Inspired = (pAmbStart-pH2O)*fN2;
             // Calculate rate of change of each inert gas
             rateHe=rate * fHe;
             rateN2=rate * fN2;
             // Update OxTox model, use average ppO2
-            pO2InspiredAverage=( (pAmbStart-pAmbFinish)/2 + pAmbFinish -MvplanInstance.getMvplan().getPrefs().getPH2O())*(1.0-fHe-fN2)/MvplanInstance.getMvplan().getPrefs().getPConversion();
+            pO2InspiredAverage=( (pAmbStart-pAmbFinish)/2 + pAmbFinish -pH2O)*(1.0-fHe-fN2)/pConversion;
             oxTox.addO2(segTime,pO2InspiredAverage);
         }
 
+        if(ppHeInspired<0.0 || ppN2Inspired<0.0 || segTime < 0.0) {
+            if((context().getDebug() > 0)) context().getTrace().println("ERROR: ascDec() is throwing exception, ppHe="+ppHeInspired+" ppN2="+ppN2Inspired);
+            throw new ModelStateException("Error in argument: AbstractZHL16Model.ascDec()");
+        }
+
+        slot=decay.find(segTime,kHe,kN2);
+        expHe=decay.he[slot];
+        expN2=decay.n2[slot];
         for (c=0;c<COMPS;c++) {
-            tissues[c].ascDec(ppHeInspired,ppN2Inspired,rateHe,rateN2,segTime);
+            ppHe[c] = ppHeInspired + rateHe * (segTime - (1.0/kHe[c])) - (ppHeInspired - ppHe[c] - (rateHe/kHe[c])) * expHe[c];
+            ppN2[c] = ppN2Inspired + rateN2 * (segTime - (1.0/kN2[c])) - (ppN2Inspired - ppN2[c] - (rateN2/kN2[c])) * expN2[c];
         }
-        if((MvplanInstance.getMvplan().getDebug() > 1))
-            System.out.println("--> ASC (to): "+finish+"m, fHe:"+fHe+" fN2:"+fN2+" ppO2:"+pO2);
+        blendValid=false;
+        if((context().getDebug() > 1))
+            context().getTrace().println("--> ASC (to): "+finish+"m, fHe:"+fHe+" fN2:"+fN2+" ppO2:"+pO2);
 
     }
 
@@ -309,6 +624,7 @@ public abstract class AbstractZHL16Model extends AbstractModel implements Serial
     public void printModel()
     {
         int c;  // counter
+        Compartment[] tissues = getTissues();
         //System.out.println("Current depth: "+currentDepth);
         System.out.println("Model: "+modelName);
         System.out.println("Compartment pressures (msw)");
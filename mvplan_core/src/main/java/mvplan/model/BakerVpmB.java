@@ -74,45 +74,59 @@ private double    hours_at_altitude_before_dive=5.0;
 
 public final int MAX_DECO_MIXES=5; // maximal number of deco mixes that can be used
 public final int MAX_BOTTOM_MIXES=5;
-public final int MAX_PROFILE_POINTS=10;
-public final int MAX_OUTPUT_POINTS=70;
-public final int MAX_DIVES=10; // Must be defined same as in Vpm.java
+/* Dives, profile points and output points the arrays below hold. They are sized for one short */
+/* dive and grown by the add methods and calculate() as a mission needs more. */
+private int maxDives=1;
+private int maxProfilePoints=4;
+private int maxOutputPoints=32;
+static final int RADIUS_ROOT_NOT_BRACKETED=-1;  // radius_root_finder() failure codes
+static final int RADIUS_ROOT_NOT_CONVERGED=-2;
 
 private int dive_no=0;
 
 /* Deco Mixes */
-private double decoMixfO2[][]=new double[MAX_DECO_MIXES+1][MAX_DIVES+1];
-private double decoMixfHe[][]=new double[MAX_DECO_MIXES][MAX_DIVES];
-private double decoMOD[][]=new double[MAX_DECO_MIXES][MAX_DIVES];
+private double decoMixfO2[][]=new double[MAX_DECO_MIXES+1][maxDives+1];
+private double decoMixfHe[][]=new double[MAX_DECO_MIXES][maxDives];
+private double decoMOD[][]=new double[MAX_DECO_MIXES][maxDives];
 
 /* Bottom Mixes */
-private double bottomMixfO2[][]=new double[MAX_BOTTOM_MIXES+1][MAX_DIVES+1];
-private double bottomMixfHe[][]=new double[MAX_BOTTOM_MIXES][MAX_DIVES];
+private double bottomMixfO2[][]=new double[MAX_BOTTOM_MIXES+1][maxDives+1];
+private double bottomMixfHe[][]=new double[MAX_BOTTOM_MIXES][maxDives];
 
 /* Profile */
-private double profileDepth[][]=new double[MAX_PROFILE_POINTS+1][MAX_DIVES+1];
-private double profileTime[][]=new double[MAX_PROFILE_POINTS][MAX_DIVES];
-private int profileMix[][]=new int[MAX_PROFILE_POINTS][MAX_DIVES];
-private double profileDecAccSpeed[][]=new double[MAX_PROFILE_POINTS][MAX_DIVES];
-
-private double surfaceIntervals[]=new double[MAX_DIVES];
+private double profileDepth[][]=new double[maxProfilePoints+1][maxDives+1];
+private double profileTime[][]=new double[maxProfilePoints][maxDives];
+private int profileMix[][]=new int[maxProfilePoints][maxDives];
+private double profileDecAccSpeed[][]=new double[maxProfilePoints][maxDives];
+
+private double surfaceIntervals[]=new double[maxDives];
+/* Profile points of the dive being calculated, ended by a depth of -1 */
+private double diveProfileDepth[]=new double[maxProfilePoints+1];
+private double diveProfileTime[]=new double[maxProfilePoints+1];
+private int diveProfileMix[]=new int[maxProfilePoints+1];
+private double diveProfileDecAccSpeed[]=new double[maxProfilePoints+1];
 
 /* Final ascent data */
 private double decoStepSize=3;
 
 /* Output Data */
-private double outputProfileDepth[][]=new double[MAX_OUTPUT_POINTS+1][MAX_DIVES+1];
-private double outputProfileTime[][]=new double[MAX_OUTPUT_POINTS][MAX_DIVES];
-private double outputProfileSegmentTime[][]=new double[MAX_OUTPUT_POINTS][MAX_DIVES];
-private double outputProfileMixO2[][]=new double[MAX_OUTPUT_POINTS][MAX_DIVES];
-private double outputProfileMixHe[][]=new double[MAX_OUTPUT_POINTS][MAX_DIVES];
-private int    outputProfileGas[][]=new int[MAX_OUTPUT_POINTS][MAX_DIVES];
+private double outputProfileDepth[][]=new double[maxOutputPoints+1][maxDives+1];
+private double outputProfileTime[][]=new double[maxOutputPoints][maxDives];
+private double outputProfileSegmentTime[][]=new double[maxOutputPoints][maxDives];
+private double outputProfileMixO2[][]=new double[maxOutputPoints][maxDives];
+private double outputProfileMixHe[][]=new double[maxOutputPoints][maxDives];
+private int    outputProfileGas[][]=new int[maxOutputPoints][maxDives];
 private int outputProfileCounter;
+private int outputPointsUsed;        /* highest output point written since the output was cleared */
 private boolean decoProfileCalculated=false;
-public double otputStartOfDecoDepth[]=new double[MAX_DIVES];
+public double otputStartOfDecoDepth[]=new double[maxDives];
 public int firstDecoProfilePoint=0;
 
+/* Passes through the critical volume loop for each dive */
+private int cvIterations[]=new int[maxDives];
+
 private double    deco_ceiling_depth;
+private boolean   critical_volume_algorithm_off;
 private double    ascent_ceiling_depth;
 private double    deco_stop_depth, next_deco_stop_depth;
 private int     err;
@@ -164,8 +178,30 @@ private double    initial_allowable_gradient_he[]=new double[16],
         initial_allowable_gradient_n2[]=new double[16];
 private double constant_pressure_other_gases;
 
+/* Half-times of the Buhlmann compartments */
+private static final double helium_half_time[] = 
+        {  1.88,   3.02,   4.72,   6.99,
+          10.21,  14.48,  20.53,  29.11,
+          41.2,   55.19,  70.69,  90.34,
+         115.29, 147.42, 188.24, 240.03 };
+private static final double nitrogen_half_time[] = 
+        { 5.,    8.,  12.5, 18.5,
+          27.,  38.3, 54.3, 77.,
+          109.,146., 187.,  239.,
+          305.,390., 498.,  635. };
+
+/* Scratch arrays, reused by every calculation */
+private final VpmBWorkspace ws;
+
 public BakerVpmB() 
 {
+this(new VpmBWorkspace());
+}
+
+/* Uses the scratch arrays of an existing workspace, which must not be in use by another BakerVpmB at the same time */
+public BakerVpmB(VpmBWorkspace workspace) 
+{
+ws=workspace;
 newMission();
 }
 
@@ -174,30 +210,157 @@ public void newMission()
     int i,j;
 
     for (i=0;i<=MAX_DECO_MIXES;i++)
-        for (j=0;j<=MAX_DIVES;j++)
+        for (j=0;j<=maxDives;j++)
             decoMixfO2[i][j]=-1;
     for (i=0;i<=MAX_BOTTOM_MIXES;i++)
-        for (j=0;j<=MAX_DIVES;j++)
+        for (j=0;j<=maxDives;j++)
+            bottomMixfO2[i][j]=-1;
+    for (i=0;i<=maxProfilePoints;i++)
+        for (j=0;j<=maxDives;j++)
+            profileDepth[i][j]=-1;
+    for (i=0;i<=maxOutputPoints;i++)
+        for (j=0;j<=maxDives;j++)
+            outputProfileDepth[i][j]=-1;
+    outputPointsUsed=0;
+    for (j=0;j<maxDives;j++)
+        cvIterations[j]=-1;
+    dive_no=0;
+    decoProfileCalculated=false;
+}
+
+public void reset()
+{
+// same as newMission() for an engine that has been used before, but only clears the dives,
+//          mixes, profile points and output points the last mission used
+    int i,j;
+
+    for (j=0;j<=dive_no;j++) {
+        for (i=0;(i<=MAX_DECO_MIXES) && (decoMixfO2[i][j]!=-1);i++)
+            decoMixfO2[i][j]=-1;
+        for (i=0;(i<=MAX_BOTTOM_MIXES) && (bottomMixfO2[i][j]!=-1);i++)
             bottomMixfO2[i][j]=-1;
-    for (i=0;i<=MAX_PROFILE_POINTS;i++)
-        for (j=0;j<=MAX_DIVES;j++)
+        for (i=0;(i<=maxProfilePoints) && (profileDepth[i][j]!=-1);i++)
             profileDepth[i][j]=-1;
-    for (i=0;i<=MAX_OUTPUT_POINTS;i++)
-        for (j=0;j<=MAX_DIVES;j++)
+        for (i=0;(i<=outputPointsUsed) && (i<=maxOutputPoints);i++)
             outputProfileDepth[i][j]=-1;
+        cvIterations[j]=-1;
+    }
+    outputPointsUsed=0;
     dive_no=0;
     decoProfileCalculated=false;
 }
 
 public int addSurfaceInterval(double interval)
 {
-	  if (dive_no<MAX_DIVES-1)
-	  {
-	  	  dive_no++;
-	  	  surfaceIntervals[dive_no]=interval;
-	  	  return dive_no;
-	  }
-	  return -1;
+// starts the next dive of the mission after a surface interval and returns its number
+	  ensureDives(dive_no+2);
+	  dive_no++;
+	  surfaceIntervals[dive_no]=interval;
+	  return dive_no;
+}
+
+private void ensureDives(int dives)
+{
+// grows the arrays of the mission to hold a number of dives, new entries are empty
+    int n;
+
+    if (dives<=maxDives)
+        return;
+    n=Math.max(dives, 2*maxDives);
+    decoMixfO2=grow(decoMixfO2, MAX_DECO_MIXES+1, n+1, -1);
+    decoMixfHe=grow(decoMixfHe, MAX_DECO_MIXES, n, 0);
+    decoMOD=grow(decoMOD, MAX_DECO_MIXES, n, 0);
+    bottomMixfO2=grow(bottomMixfO2, MAX_BOTTOM_MIXES+1, n+1, -1);
+    bottomMixfHe=grow(bottomMixfHe, MAX_BOTTOM_MIXES, n, 0);
+    profileDepth=grow(profileDepth, maxProfilePoints+1, n+1, -1);
+    profileTime=grow(profileTime, maxProfilePoints, n, 0);
+    profileMix=grow(profileMix, maxProfilePoints, n);
+    profileDecAccSpeed=grow(profileDecAccSpeed, maxProfilePoints, n, 0);
+    surfaceIntervals=grow(surfaceIntervals, n, 0);
+    outputProfileDepth=grow(outputProfileDepth, maxOutputPoints+1, n+1, -1);
+    outputProfileTime=grow(outputProfileTime, maxOutputPoints, n, 0);
+    outputProfileSegmentTime=grow(outputProfileSegmentTime, maxOutputPoints, n, 0);
+    outputProfileMixO2=grow(outputProfileMixO2, maxOutputPoints, n, 0);
+    outputProfileMixHe=grow(outputProfileMixHe, maxOutputPoints, n, 0);
+    outputProfileGas=grow(outputProfileGas, maxOutputPoints, n);
+    otputStartOfDecoDepth=grow(otputStartOfDecoDepth, n, 0);
+    cvIterations=grow(cvIterations, n, -1);
+    maxDives=n;
+}
+
+private void ensureProfilePoints(int points)
+{
+// grows the profile point arrays to hold a number of points for each dive
+    int n;
+
+    if (points<=maxProfilePoints)
+        return;
+    n=Math.max(points, 2*maxProfilePoints);
+    profileDepth=grow(profileDepth, n+1, maxDives+1, -1);
+    profileTime=grow(profileTime, n, maxDives, 0);
+    profileMix=grow(profileMix, n, maxDives);
+    profileDecAccSpeed=grow(profileDecAccSpeed, n, maxDives, 0);
+    diveProfileDepth=grow(diveProfileDepth, n+1, -1);
+    diveProfileTime=grow(diveProfileTime, n+1, 0);
+    diveProfileMix=grow(diveProfileMix, n+1, 0);
+    diveProfileDecAccSpeed=grow(diveProfileDecAccSpeed, n+1, 0);
+    maxProfilePoints=n;
+}
+
+private void ensureOutputPoints(int points)
+{
+// grows the output arrays to hold a number of points for each dive
+    int n;
+
+    if (points<=maxOutputPoints)
+        return;
+    n=Math.max(points, 2*maxOutputPoints);
+    outputProfileDepth=grow(outputProfileDepth, n+1, maxDives+1, -1);
+    outputProfileTime=grow(outputProfileTime, n, maxDives, 0);
+    outputProfileSegmentTime=grow(outputProfileSegmentTime, n, maxDives, 0);
+    outputProfileMixO2=grow(outputProfileMixO2, n, maxDives, 0);
+    outputProfileMixHe=grow(outputProfileMixHe, n, maxDives, 0);
+    outputProfileGas=grow(outputProfileGas, n, maxDives);
+    maxOutputPoints=n;
+}
+
+/* Copies an array into a larger one, filling the new entries */
+private static double[][] grow(double a[][], int rows, int columns, double fill)
+{
+    double b[][]=new double[rows][];
+    int i;
+
+    for (i=0;i<rows;i++)
+        b[i]=grow(i<a.length ? a[i] : new double[0], columns, fill);
+    return b;
+}
+
+private static int[][] grow(int a[][], int rows, int columns)
+{
+    int b[][]=new int[rows][];
+    int i;
+
+    for (i=0;i<rows;i++)
+        b[i]=grow(i<a.length ? a[i] : new int[0], columns, 0);
+    return b;
+}
+
+private static double[] grow(double a[], int n, double fill)
+{
+    double b[]=new double[n];
+
+    System.arraycopy(a, 0, b, 0, a.length);
+    java.util.Arrays.fill(b, a.length, n, fill);
+    return b;
+}
+
+private static int[] grow(int a[], int n, int fill)
+{
+    int b[]=new int[n];
+
+    System.arraycopy(a, 0, b, 0, a.length);
+    java.util.Arrays.fill(b, a.length, n, fill);
+    return b;
 }
 
 public int addBottomMix(double fO2, double fHe)
@@ -271,32 +434,44 @@ public int addProfilePoint(double depth, double time, double speed, int mix)
 //         mix not existent
 //         speed is 0 or wrong signed
 //         later time point already exists in dive profile
-//         no emty spot left
     int i;
 
     if ((depth<0) || (mix<0) || (mix>=MAX_DECO_MIXES))
         return -1;
 
-    for (i=0;i<MAX_PROFILE_POINTS;i++)
+    for (i=0;profileDepth[i][dive_no]!=-1;i++) // find empty spot
+        ;
+//    if ((i!=0) && (time <= profileTime[i-1][dive_no]))
+//        return -1;
+    if ((i!=0) && (depth < profileDepth[i-1][dive_no]) && (speed>=0))
+        return -1;
+    if ((i!=0) && (depth > profileDepth[i-1][dive_no]) && (speed<=0))
+        return -1;
+    if ((i==0) && (speed<=0))
+        return -1;
+    ensureProfilePoints(i+1);
+    profileDepth[i][dive_no]=depth;
+    profileTime[i][dive_no]=time;
+    profileMix[i][dive_no]=mix;
+    profileDecAccSpeed[i][dive_no]=speed;
+    return i;
+}
+
+private void loadDiveProfile(int dive)
+{
+// copies the profile points of a dive of the mission for calculate()
+    int i;
+
+    for (i=0;i<maxProfilePoints;i++)
     {
-        if(profileDepth[i][dive_no]==-1) // found empty spot
-        {
-//            if ((i!=0) && (time <= profileTime[i-1][dive_no]))
-//                return -1;
-            if ((i!=0) && (depth < profileDepth[i-1][dive_no]) && (speed>=0))
-                return -1;
-            if ((i!=0) && (depth > profileDepth[i-1][dive_no]) && (speed<=0))
-                return -1;
-            if ((i==0) && (speed<=0))
-                return -1;
-            profileDepth[i][dive_no]=depth;
-            profileTime[i][dive_no]=time;
-            profileMix[i][dive_no]=mix;
-            profileDecAccSpeed[i][dive_no]=speed;
-            return i;                              
-        }
+        diveProfileDepth[i]=profileDepth[i][dive];
+        if (diveProfileDepth[i]<0)
+            break;
+        diveProfileTime[i]=profileTime[i][dive];
+        diveProfileMix[i]=profileMix[i][dive];
+        diveProfileDecAccSpeed[i]=profileDecAccSpeed[i][dive];
     }
-    return 1;//-1;
+    diveProfileDepth[i]=-1;
 }
 
 public double getProfilePoint(int index, int parameter, int dive)
@@ -307,7 +482,7 @@ public double getProfilePoint(int index, int parameter, int dive)
 //          index too big
 //          wrong parameter
 //          dive-deco profile not yet calculated
-    if ((decoProfileCalculated==false) || (index>=MAX_OUTPUT_POINTS) || (dive>=MAX_DIVES))
+    if ((decoProfileCalculated==false) || (index>=maxOutputPoints) || (dive>=maxDives))
         return -1;
     if (outputProfileDepth[index][dive]==-1)
         return -1;
@@ -340,7 +515,7 @@ public double getProfilePoint(int index, int parameter)
 //          dive-deco profile not yet calculated
     int dive=0;
     
-    if ((decoProfileCalculated==false) || (index>=MAX_OUTPUT_POINTS) || (dive>=MAX_DIVES))
+    if ((decoProfileCalculated==false) || (index>=maxOutputPoints) || (dive>=maxDives))
         return -1;
     if (outputProfileDepth[index][dive]==-1)
         return -1;
@@ -370,7 +545,7 @@ public int getProfileGasIndex(int index, int dive)
 //          index too big
 //          wrong parameter
 //          dive-deco profile not yet calculated
-    if ((decoProfileCalculated==false) || (index>=MAX_OUTPUT_POINTS) || (dive>=MAX_DIVES))
+    if ((decoProfileCalculated==false) || (index>=maxOutputPoints) || (dive>=maxDives))
         return -1;
     if (outputProfileDepth[index][dive]==-1)
         return -1;
@@ -388,84 +563,40 @@ public int getProfileGasIndex(int index)
 //          dive-deco profile not yet calculated
     int dive=0;
     
-    if ((decoProfileCalculated==false) || (index>=MAX_OUTPUT_POINTS) || (dive>=MAX_DIVES))
+    if ((decoProfileCalculated==false) || (index>=maxOutputPoints) || (dive>=maxDives))
         return -1;
     if (outputProfileDepth[index][dive]==-1)
         return -1;
     return outputProfileGas[index][dive];  
 }
 
-public int calculate()
+public int getCriticalVolumeIterations(int dive)
 {
+// returnes the number of passes through the critical volume loop for a dive and -1 if not
+//          calculated
+    if ((decoProfileCalculated==false) || (dive<0) || (dive>=maxDives))
+        return -1;
+    return cvIterations[dive];
+}
+
+public int getCriticalVolumeIterations()
+{
+// returnes the number of passes through the critical volume loop
+//          for the first dive - FUNCTION FOR BACK COMPATIBILITY
+    return getCriticalVolumeIterations(0);
+}
 
 /* =============================================================================== */
-/*     ASSIGN HALF-TIME VALUES TO BUHLMANN COMPARTMENT ARRAYS */
+/*     Checks the program settings and initialises the constants, critical */
+/*     radii and gas loadings for the first dive.  Returns 0 if OK, -1 if not. */
 /* =============================================================================== */
-    /* Initialized data */
-
-    double helium_half_time[] = 
-        {  1.88,   3.02,   4.72,   6.99,
-          10.21,  14.48,  20.53,  29.11,
-          41.2,   55.19,  70.69,  90.34,
-         115.29, 147.42, 188.24, 240.03 };
-    double nitrogen_half_time[] = 
-        { 5.,    8.,  12.5, 18.5,
-          27.,  38.3, 54.3, 77.,
-          109.,146., 187.,  239.,
-          305.,390., 498.,  635. };
-
-    int i1;
-    double    r1;
+private int start_calculation()
+{
+    int i;
     double    critical_radius_n2_microns=critical_radius_n2_microns_basic+conservatism/20;
     double    critical_radius_he_microns=critical_radius_he_microns_basic+conservatism/20;
-
-    /* Local variables */
-    double    fraction_oxygen[]=new double[10];
-    double    run_time_end_of_segment, 
-            rate, 
-	        n2_pressure_start_of_ascent[]=new double[16];
-    double    depth_change[]=new double[10];
     boolean altitude_dive_algorithm_off;
-    double    ending_depth;
-    double    run_time_start_of_deco_zone;
-    double    deepest_possible_stop_depth, 
-            he_pressure_start_of_ascent[]=new double[16], 
-            altitude_of_dive, 
-            step_size_change[]=new double[10];
-    int i,j;
-    double    first_stop_depth;
-    double    depth, depth_start_of_deco_zone;
-    double    run_time_start_of_ascent;
-    int number_of_changes;
-    double    stop_time;
-    double    step_size,
-            next_stop, 
-            last_run_time, 
-	        phase_volume_time[]=new double[16], 
-            surface_interval_time;
-    int mix_change[]=new int[10];
-              
-    boolean critical_volume_algorithm_off;
-    boolean schedule_converged;
-    double    starting_depth, 
-	      deco_phase_volume_time;
-    double    rate_change[]=new double[10],  
-	        last_phase_volume_time[]=new double[16], 
-            n2_pressure_start_of_deco_zone[]=new double[16];
-    double    critical_volume_comparison;
-    int segment_number_start_of_ascent;
-    double    rounding_operation, 
-            rounding_operation2, 
-	        he_pressure_start_of_deco_zone[]=new double[16];
-
-    double lastDivePointDepth=0;
-    int noOfDecoMixes, noOfBottomMixes;
-    double min_deco_stop_time=0; 
-    int dive_number=0;
-    // JURE multilevel START
-    int decoDivePoints;
-    boolean checkForDecoMix=true;
-    // JURE multilevel END
+    double    altitude_of_dive;
 
 /* =============================================================================== */
 /*     READ IN PROGRAM SETTINGS AND CHECK FOR ERRORS */
@@ -567,6 +698,64 @@ public int calculate()
     } else {
 	    vpm_altitude_dive_algorithm();  
     }
+    return 0;
+}
+
+public int calculate()
+{
+
+/* =============================================================================== */
+/*     ASSIGN HALF-TIME VALUES TO BUHLMANN COMPARTMENT ARRAYS */
+/* =============================================================================== */
+    int i1;
+    double    r1;
+
+    /* Local variables */
+    double    fraction_oxygen[]=ws.fraction_oxygen;
+    double    run_time_end_of_segment, 
+            rate, 
+	        n2_pressure_start_of_ascent[]=ws.n2_pressure_start_of_ascent;
+    double    depth_change[]=ws.depth_change;
+    double    ending_depth;
+    double    run_time_start_of_deco_zone;
+    double    deepest_possible_stop_depth, 
+            he_pressure_start_of_ascent[]=ws.he_pressure_start_of_ascent, 
+            step_size_change[]=ws.step_size_change;
+    int i,j;
+    double    first_stop_depth;
+    double    depth, depth_start_of_deco_zone;
+    double    run_time_start_of_ascent;
+    int number_of_changes;
+    double    stop_time;
+    double    step_size,
+            next_stop, 
+            last_run_time, 
+	        phase_volume_time[]=ws.phase_volume_time;
+    int mix_change[]=ws.mix_change;
+              
+    boolean schedule_converged;
+    double    starting_depth, 
+	      deco_phase_volume_time;
+    double    rate_change[]=ws.rate_change,  
+	        last_phase_volume_time[]=ws.last_phase_volume_time, 
+            n2_pressure_start_of_deco_zone[]=ws.n2_pressure_start_of_deco_zone;
+    double    critical_volume_comparison;
+    int segment_number_start_of_ascent;
+    double    rounding_operation, 
+            rounding_operation2, 
+	        he_pressure_start_of_deco_zone[]=ws.he_pressure_start_of_deco_zone;
+
+    double lastDivePointDepth=0;
+    int noOfDecoMixes, noOfBottomMixes;
+    int dive_number=0;
+    // JURE multilevel START
+    int decoDivePoints;
+    boolean checkForDecoMix=true;
+    // JURE multilevel END
+    double min_deco_stop_time=0;
+
+    if (start_calculation() != 0)
+        return -1;
 
 /* =============================================================================== */
 /*     START OF REPETITIVE DIVE LOOP */
@@ -579,6 +768,7 @@ public int calculate()
                                         /* loop will run continuous */
           outputProfileCounter=0;
           run_time_end_of_segment=0;
+          loadDiveProfile(dive_number);
 /* =============================================================================== */
 /*     INPUT DIVE DESCRIPTION AND GAS MIX DATA FROM ASCII TEXT INPUT FILE */
 /*     BEGIN WRITING HEADINGS/OUTPUT TO ASCII TEXT OUTPUT FILE */
@@ -622,44 +812,45 @@ public int calculate()
         i=0;
         deepest_possible_stop_depth=-1; // JURE multilevel
 	while(true) {          /* until there is an exit statement loop will run continuous */
-            if (profileDepth[i][dive_number]<0)
+            if (diveProfileDepth[i]<0)
                 break;
             // JURE multilevel START - end when the first dive shalower then deepest possible deco stop
-            if (profileDepth[i][dive_number]<deepest_possible_stop_depth)
+            if (diveProfileDepth[i]<deepest_possible_stop_depth)
                 break;            
             // JURE multilevel END
             
             /* Ascent - Descent */  
             if (i==0)
             {
-            	  mix_number=profileMix[i][dive_number]+1;
+            	  mix_number=diveProfileMix[i]+1;
                 starting_depth=0;
             }
             else
             {
-            	  mix_number=profileMix[i-1][dive_number]+1;
-                starting_depth=profileDepth[i-1][dive_number];
+            	  mix_number=diveProfileMix[i-1]+1;
+                starting_depth=diveProfileDepth[i-1];
             }
-            ending_depth=profileDepth[i][dive_number];
-            rate=profileDecAccSpeed[i][dive_number];
+            ending_depth=diveProfileDepth[i];
+            rate=diveProfileDecAccSpeed[i];
 
             gas_loadings_ascent_descen(starting_depth, 
                                        ending_depth, 
                                        rate);           
 	    if (ending_depth > starting_depth) {
-		        calc_crushing_pressure(starting_depth, 
-                                    ending_depth, rate);       
+		        if (calc_crushing_pressure(starting_depth, 
+                                    ending_depth, rate) != 0)
+		            return -1;
 	    }
 
             /* Constant Depth */  
-            depth=profileDepth[i][dive_number];
-            run_time_end_of_segment+=profileTime[i][dive_number];
+            depth=diveProfileDepth[i];
+            run_time_end_of_segment+=diveProfileTime[i];
             if (i>0)
             {   // if ascend add ascend time
-            	  if(profileDepth[i][dive_number]<profileDepth[i-1][dive_number])
-            	      run_time_end_of_segment+=Math.floor((profileDepth[i][dive_number]-profileDepth[i-1][dive_number])/profileDecAccSpeed[i][dive_number]);
+            	  if(diveProfileDepth[i]<diveProfileDepth[i-1])
+            	      run_time_end_of_segment+=Math.floor((diveProfileDepth[i]-diveProfileDepth[i-1])/diveProfileDecAccSpeed[i]);
             }
-            mix_number=profileMix[i][dive_number]+1;
+            mix_number=diveProfileMix[i]+1;
 	    gas_loadings_constant_depth(depth, 
                                         run_time_end_of_segment);       
             lastDivePointDepth=ending_depth;
@@ -692,9 +883,9 @@ public int calculate()
 	              }
 	          }     
             // JURE multilevel END 
-            outputProfileCounter++;
+            next_output_point();
 	}
-  firstDecoProfilePoint=outputProfileCounter;
+  firstDecoProfilePoint=i;
 /* =============================================================================== */
 /*     BEGIN PROCESS OF ASCENT AND DECOMPRESSION */
 /*     First, calculate the regeneration of critical radii that takes place over */
@@ -835,6 +1026,7 @@ public int calculate()
 		    nitrogen_pressure[i - 1];
 	    max_actual_gradient[i - 1] = 0.;
 	}
+	cvIterations[dive_number] = 0;
 /* =============================================================================== */
 /*     START OF CRITICAL VOLUME LOOP */
 /*     This loop operates between Lines 50 and 100.  If the Critical Volume */
@@ -852,6 +1044,7 @@ public int calculate()
 /* L50: */
 
 	while(true) {          /* loop will run continuous there is an exit stateme */
+	    cvIterations[dive_number]++;
 
 /* =============================================================================== */
 /*     CALCULATE CURRENT ASCENT CEILING BASED ON ALLOWABLE SUPERSATURATION */
@@ -920,12 +1113,12 @@ public int calculate()
 	    starting_depth = depth_start_of_deco_zone;
 	    // JURE multilevel START
 	    decoDivePoints=0;
-	    if ( (profileDepth[firstDecoProfilePoint][dive_number]>=deco_stop_depth) && (profileDepth[firstDecoProfilePoint][dive_number]>0))
+	    if ( (diveProfileDepth[firstDecoProfilePoint]>=deco_stop_depth) && (diveProfileDepth[firstDecoProfilePoint]>0))
 	    {
-	    	  deco_stop_depth=profileDepth[firstDecoProfilePoint][dive_number];
-	    	  min_deco_stop_time=profileTime[firstDecoProfilePoint][dive_number];
-	    	  mix_number=profileMix[firstDecoProfilePoint][dive_number]+1;
-	    	  rate=profileDecAccSpeed[firstDecoProfilePoint][dive_number];
+	    	  deco_stop_depth=diveProfileDepth[firstDecoProfilePoint];
+	    	  min_deco_stop_time=diveProfileTime[firstDecoProfilePoint];
+	    	  mix_number=diveProfileMix[firstDecoProfilePoint]+1;
+	    	  rate=diveProfileDecAccSpeed[firstDecoProfilePoint];
 	    	  decoDivePoints++;
 	    	  checkForDecoMix=false;
 	    }
@@ -972,24 +1165,26 @@ public int calculate()
          next_deco_stop_depth = deco_stop_depth - step_size;
          next_deco_stop_depth=roundDecoStop(next_deco_stop_depth, step_size); 
 
-         if ( (profileDepth[firstDecoProfilePoint+decoDivePoints][dive_number]>=(next_deco_stop_depth-step_size/2)) && (profileDepth[firstDecoProfilePoint+decoDivePoints][dive_number]>0))
+         if ( (diveProfileDepth[firstDecoProfilePoint+decoDivePoints]>=(next_deco_stop_depth-step_size/2)) && (diveProfileDepth[firstDecoProfilePoint+decoDivePoints]>0))
          {
-              if (profileDepth[firstDecoProfilePoint+decoDivePoints][dive_number]>profileDepth[firstDecoProfilePoint+decoDivePoints-1][dive_number])
+              if (diveProfileDepth[firstDecoProfilePoint+decoDivePoints]>diveProfileDepth[firstDecoProfilePoint+decoDivePoints-1])
                   return ( -((firstDecoProfilePoint+decoDivePoints)+100*dive_number) );  // no recompression after start of deco
-              next_deco_stop_depth=profileDepth[firstDecoProfilePoint+decoDivePoints][dive_number];
+              next_deco_stop_depth=diveProfileDepth[firstDecoProfilePoint+decoDivePoints];
                           
-              boyles_law_compensation(first_stop_depth, deco_stop_depth, deco_stop_depth-next_deco_stop_depth);      
+              if (boyles_law_compensation(first_stop_depth, deco_stop_depth, deco_stop_depth-next_deco_stop_depth) != 0)
+                  return -1;
               decompression_stop(deco_stop_depth, deco_stop_depth-next_deco_stop_depth, 0, min_deco_stop_time);
                
-              min_deco_stop_time=profileTime[firstDecoProfilePoint+decoDivePoints][dive_number];             
-              mix_number=profileMix[firstDecoProfilePoint+decoDivePoints][dive_number]+1;
-              rate=profileDecAccSpeed[firstDecoProfilePoint+decoDivePoints][dive_number];
+              min_deco_stop_time=diveProfileTime[firstDecoProfilePoint+decoDivePoints];             
+              mix_number=diveProfileMix[firstDecoProfilePoint+decoDivePoints]+1;
+              rate=diveProfileDecAccSpeed[firstDecoProfilePoint+decoDivePoints];
               decoDivePoints++;
               checkForDecoMix=false;    
           }
           else
           {          
-              boyles_law_compensation(first_stop_depth, deco_stop_depth, deco_stop_depth-next_deco_stop_depth);      
+              if (boyles_law_compensation(first_stop_depth, deco_stop_depth, deco_stop_depth-next_deco_stop_depth) != 0)
+                  return -1;
               decompression_stop(deco_stop_depth, deco_stop_depth-next_deco_stop_depth, 0, min_deco_stop_time);
               min_deco_stop_time=0;
           }
@@ -1072,11 +1267,11 @@ public int calculate()
 		    last_run_time = 0.;		    
 	      // JURE multilevel START
 	      decoDivePoints=0;
-	      if (profileDepth[firstDecoProfilePoint][dive_number]==deco_stop_depth) 
+	      if (diveProfileDepth[firstDecoProfilePoint]==deco_stop_depth) 
 	      {
-	      	  min_deco_stop_time=profileTime[firstDecoProfilePoint][dive_number];
-	      	  mix_number=profileMix[firstDecoProfilePoint][dive_number]+1;
-	      	  rate=profileDecAccSpeed[firstDecoProfilePoint][dive_number];
+	      	  min_deco_stop_time=diveProfileTime[firstDecoProfilePoint];
+	      	  mix_number=diveProfileMix[firstDecoProfilePoint]+1;
+	      	  rate=diveProfileDecAccSpeed[firstDecoProfilePoint];
 	      	  decoDivePoints++;
 	      	  checkForDecoMix=false;
 	      }
@@ -1118,16 +1313,17 @@ public int calculate()
          next_deco_stop_depth = deco_stop_depth - step_size;
          next_deco_stop_depth=roundDecoStop(next_deco_stop_depth, step_size); 
 
-         if ( (profileDepth[firstDecoProfilePoint+decoDivePoints][dive_number]>=(next_deco_stop_depth-step_size/2)) && (profileDepth[firstDecoProfilePoint+decoDivePoints][dive_number]>0))
+         if ( (diveProfileDepth[firstDecoProfilePoint+decoDivePoints]>=(next_deco_stop_depth-step_size/2)) && (diveProfileDepth[firstDecoProfilePoint+decoDivePoints]>0))
          {
-              if (profileDepth[firstDecoProfilePoint+decoDivePoints][dive_number]>profileDepth[firstDecoProfilePoint+decoDivePoints-1][dive_number])
+              if (diveProfileDepth[firstDecoProfilePoint+decoDivePoints]>diveProfileDepth[firstDecoProfilePoint+decoDivePoints-1])
                   return ( -((firstDecoProfilePoint+decoDivePoints)+100*dive_number) );  // no recompression after start of deco
-              next_deco_stop_depth=profileDepth[firstDecoProfilePoint+decoDivePoints][dive_number];
+              next_deco_stop_depth=diveProfileDepth[firstDecoProfilePoint+decoDivePoints];
                            
-              boyles_law_compensation(first_stop_depth, deco_stop_depth, deco_stop_depth-next_deco_stop_depth);      
+              if (boyles_law_compensation(first_stop_depth, deco_stop_depth, deco_stop_depth-next_deco_stop_depth) != 0)
+                  return -1;
               decompression_stop(deco_stop_depth, deco_stop_depth-next_deco_stop_depth, 0, min_deco_stop_time);
               
-              min_deco_stop_time=profileTime[firstDecoProfilePoint+decoDivePoints][dive_number];              
+              min_deco_stop_time=diveProfileTime[firstDecoProfilePoint+decoDivePoints];              
               /* =============================================================================== */
               /*     This next bit justs rounds up the stop time at the first stop to be in */
               /*     whole increments of the minimum stop time (to make for a nice deco table). */
@@ -1142,15 +1338,16 @@ public int calculate()
               outputProfileMixHe[outputProfileCounter][dive_number]=fraction_helium[mix_number-1];
               outputProfileGas[outputProfileCounter][dive_number]=mix_number-1;
               		                                     
-              mix_number=profileMix[firstDecoProfilePoint+decoDivePoints][dive_number]+1;
-              rate=profileDecAccSpeed[firstDecoProfilePoint+decoDivePoints][dive_number];
+              mix_number=diveProfileMix[firstDecoProfilePoint+decoDivePoints]+1;
+              rate=diveProfileDecAccSpeed[firstDecoProfilePoint+decoDivePoints];
               decoDivePoints++;
               checkForDecoMix=false;    
           }
           else
           {
           
-              boyles_law_compensation(first_stop_depth, deco_stop_depth, deco_stop_depth-next_deco_stop_depth);      
+              if (boyles_law_compensation(first_stop_depth, deco_stop_depth, deco_stop_depth-next_deco_stop_depth) != 0)
+                  return -1;
               decompression_stop(deco_stop_depth, deco_stop_depth-next_deco_stop_depth, 0, min_deco_stop_time);
               min_deco_stop_time=0;              
               /* =============================================================================== */
@@ -1171,7 +1368,7 @@ public int calculate()
           outputProfileDepth[outputProfileCounter][dive_number]=deco_stop_depth;
           outputProfileTime[outputProfileCounter][dive_number]=run_time;
           outputProfileSegmentTime[outputProfileCounter][dive_number]=stop_time;      
-          outputProfileCounter++;
+          next_output_point();
           outputProfileDepth[outputProfileCounter][dive_number]=-1;
                        
           starting_depth = deco_stop_depth;
@@ -1224,7 +1421,25 @@ public int calculate()
 /*     REPETITIVE LOOP AT LINE 30. */
 /* =============================================================================== */
 
-      surface_interval_time=surfaceIntervals[dive_number];
+      repetitive_surface_interval(surfaceIntervals[dive_number]);
+    }
+
+/* =============================================================================== */
+/*     FINAL WRITES TO OUTPUT AND CLOSE PROGRAM FILES */
+/* =============================================================================== */
+/* End of repetit */
+
+    decoProfileCalculated=true;
+    return 0;
+} /* MAIN__ */
+
+/* =============================================================================== */
+/*     Off-gassing and adjustment of the critical radii over a surface interval */
+/*     between repetitive dives. */
+/* =============================================================================== */
+private void repetitive_surface_interval(double surface_interval_time)
+{
+    int i;
 
 	    gas_loadings_surface_interval(surface_interval_time);
 
@@ -1237,16 +1452,18 @@ public int calculate()
 	    }
 	    run_time = 0.;
 	    segment_number = 0;
-    }
+}
 
 /* =============================================================================== */
-/*     FINAL WRITES TO OUTPUT AND CLOSE PROGRAM FILES */
+/*     Finishes a point of the dive-deco profile. */
 /* =============================================================================== */
-/* End of repetit */
-
-    decoProfileCalculated=true;
-    return 0;
-} /* MAIN__ */
+private void next_output_point()
+{
+    outputProfileCounter++;
+    if (outputProfileCounter>outputPointsUsed)
+        outputPointsUsed=outputProfileCounter;
+    ensureOutputPoints(outputProfileCounter+1);
+}
 
 /* =============================================================================== */
 /*     NOTE ABOUT PRESSURE UNITS USED IN CALCULATIONS: */
@@ -1412,19 +1629,13 @@ private int calc_crushing_pressure(double starting_depth,
     /* System generated locals */
     double r1, r2;
 
-    double low_bound_n2, 
-                ending_radius_n2, 
-                ending_ambient_pressure,
+    double ending_ambient_pressure,
 	            gradient_onset_of_imperm_pa;
-    double low_bound_he, 
-                ending_radius_he, 
-                high_bound_n2, 
-	            crushing_pressure_n2=0;
+    double crushing_pressure_n2=0;
     int i;
     double crushing_pressure_pascals_n2, 
                 gradient_onset_of_imperm, 
 	            starting_gas_tension, 
-                high_bound_he, 
                 crushing_pressure_he=0, 
 	            amb_press_onset_of_imperm_pa, 
                 crushing_pressure_pascals_he, 
@@ -1442,6 +1653,10 @@ private int calc_crushing_pressure(double starting_depth,
                 gas_tension_onset_of_imperm_pa, 
                 a_he, 
 	            b_he, c_he;
+    int result;
+    double root_a[]=ws.root_a, root_b[]=ws.root_b, root_c[]=ws.root_c;
+    double root_low_bound[]=ws.root_low_bound, root_high_bound[]=ws.root_high_bound;
+    boolean root_solve[]=ws.root_solve;
 
 /* loop */
 /* =============================================================================== */
@@ -1463,6 +1678,8 @@ private int calc_crushing_pressure(double starting_depth,
 
     starting_ambient_pressure = starting_depth + barometric_pressure;
     ending_ambient_pressure = ending_depth + barometric_pressure;
+    ending_ambient_pressure_pa = ending_ambient_pressure / 
+	    units_factor * 101325.;
 
 /* =============================================================================== */
 /*     MAIN LOOP WITH NESTED DECISION TREE */
@@ -1546,16 +1763,15 @@ private int calc_crushing_pressure(double starting_depth,
 /*     to do this efficiently, the equations are placed in the form */
 /*     Ar^3 - Br^2 - C = 0, where r is the ending radius after impermeable */
 /*     compression.  The coefficients A, B, and C for helium and nitrogen are */
-/*     computed and passed to the subroutine as arguments.  The high and low */
-/*     bounds to be used by the numerical method of the subroutine are also */
-/*     computed (see separate page posted on Deco List ftp site entitled */
-/*     "VPM: Solving for radius in the impermeable regime").  The subprogram */
-/*     will return the value of the ending radius and then the crushing */
-/*     pressures for helium and nitrogen can be calculated. */
+/*     computed and passed to the subroutine in arrays, helium in elements 0-15 */
+/*     and nitrogen in 16-31, so that all compartments are solved in one call. */
+/*     The high and low bounds to be used by the numerical method of the */
+/*     subroutine are also computed (see separate page posted on Deco List ftp */
+/*     site entitled "VPM: Solving for radius in the impermeable regime"). */
+/*     The subprogram will return the values of the ending radius and then the */
+/*     crushing pressures for helium and nitrogen can be calculated. */
 /* =============================================================================== */
 
-	    ending_ambient_pressure_pa = ending_ambient_pressure / 
-		    units_factor * 101325.;
 	    amb_press_onset_of_imperm_pa = 
 		    amb_pressure_onset_of_imperm[i - 1] / units_factor * 101325.;
 	    gas_tension_onset_of_imperm_pa = 
@@ -1571,21 +1787,12 @@ private int calc_crushing_pressure(double starting_depth,
 	    r1 = radius_onset_of_imperm_he;
 	    c_he = gas_tension_onset_of_imperm_pa * (r1 * (r1 * r1))
 		    ;
-	    high_bound_he = radius_onset_of_imperm_he;
-	    low_bound_he = b_he / a_he;
-	    ending_radius_he=radius_root_finder(a_he, b_he, c_he,low_bound_he, high_bound_he);
-        /* Computing 3rd power */
-	    r1 = radius_onset_of_imperm_he;
-        /* Computing 3rd power */
-	    r2 = ending_radius_he;
-	    crushing_pressure_pascals_he = 
-            gradient_onset_of_imperm_pa + 
-		        ending_ambient_pressure_pa - 
-		        amb_press_onset_of_imperm_pa + 
-		        gas_tension_onset_of_imperm_pa * 
-                (1. - r1 * (r1 * r1) / (r2 * (r2 * r2)));
-	    crushing_pressure_he = 
-            crushing_pressure_pascals_he / 101325. * units_factor;
+	    root_a[i - 1] = a_he;
+	    root_b[i - 1] = b_he;
+	    root_c[i - 1] = c_he;
+	    root_high_bound[i - 1] = radius_onset_of_imperm_he;
+	    root_low_bound[i - 1] = b_he / a_he;
+	    root_solve[i - 1] = true;
 	    b_n2 = (skin_compression_gammac - surface_tension_gamma) * 2.;
 	    a_n2 = ending_ambient_pressure_pa - 
 		        amb_press_onset_of_imperm_pa + 
@@ -1596,13 +1803,60 @@ private int calc_crushing_pressure(double starting_depth,
 	    r1 = radius_onset_of_imperm_n2;
 	    c_n2 = gas_tension_onset_of_imperm_pa * (r1 * (r1 * r1))
 		    ;
-	    high_bound_n2 = radius_onset_of_imperm_n2;
-	    low_bound_n2 = b_n2 / a_n2;
-	    ending_radius_n2=radius_root_finder(a_n2, b_n2, c_n2, low_bound_n2, high_bound_n2);
+	    root_a[i + 15] = a_n2;
+	    root_b[i + 15] = b_n2;
+	    root_c[i + 15] = c_n2;
+	    root_high_bound[i + 15] = radius_onset_of_imperm_n2;
+	    root_low_bound[i + 15] = b_n2 / a_n2;
+	    root_solve[i + 15] = true;
+	} else {
+	    root_solve[i - 1] = false;
+	    root_solve[i + 15] = false;
+
+/* =============================================================================== */
+/*     UPDATE VALUES OF MAX CRUSHING PRESSURE IN GLOBAL ARRAYS */
+/* =============================================================================== */
+
+        /* Computing MAX */
+	    r1 = max_crushing_pressure_he[i - 1];
+	    max_crushing_pressure_he[i - 1] = Math.max(r1, crushing_pressure_he);
+        /* Computing MAX */
+	    r1 = max_crushing_pressure_n2[i - 1];
+	    max_crushing_pressure_n2[i - 1] = Math.max(r1, crushing_pressure_n2);
+	}
+    }
+
+/* =============================================================================== */
+/*     Solve for the ending radii of the impermeable compartments.  Each root is */
+/*     seeded with the ending radius of the last descent, which is usually close. */
+/* =============================================================================== */
+
+    result = radius_root_finder(root_a, root_b, root_c, 
+                                root_low_bound, root_high_bound, 
+                                root_solve, ws.crushing_radius);
+
+    for (i = 1; i <= 16; ++i) {
+	if (root_solve[i - 1]) {
+	    amb_press_onset_of_imperm_pa = 
+		    amb_pressure_onset_of_imperm[i - 1] / units_factor * 101325.;
+	    gas_tension_onset_of_imperm_pa = 
+		    gas_tension_onset_of_imperm[i - 1] / units_factor * 101325.;
         /* Computing 3rd power */
-	    r1 = radius_onset_of_imperm_n2;
+	    r1 = root_high_bound[i - 1];
         /* Computing 3rd power */
-	    r2 = ending_radius_n2;
+	    r2 = ws.crushing_radius[i - 1];
+	    crushing_pressure_pascals_he = 
+            gradient_onset_of_imperm_pa + 
+		        ending_ambient_pressure_pa - 
+		        amb_press_onset_of_imperm_pa + 
+		        gas_tension_onset_of_imperm_pa * 
+                (1. - r1 * (r1 * r1) / (r2 * (r2 * r2)));
+	    crushing_pressure_he = 
+            crushing_pressure_pascals_he / 101325. * units_factor;
+        /* Computing 3rd power */
+	    r1 = root_high_bound[i + 15];
+        /* Computing 3rd power */
+	    r2 = ws.crushing_radius[i + 15];
 	    crushing_pressure_pascals_n2 = 
             gradient_onset_of_imperm_pa + 
 		    ending_ambient_pressure_pa - 
@@ -1610,7 +1864,6 @@ private int calc_crushing_pressure(double starting_depth,
 		    gas_tension_onset_of_imperm_pa * (1. - r1 * 
 		    (r1 * r1) / (r2 * (r2 * r2)));
 	    crushing_pressure_n2 = crushing_pressure_pascals_n2 / 101325. * units_factor;
-	}
 
 /* =============================================================================== */
 /*     UPDATE VALUES OF MAX CRUSHING PRESSURE IN GLOBAL ARRAYS */
@@ -1622,8 +1875,9 @@ private int calc_crushing_pressure(double starting_depth,
         /* Computing MAX */
 	    r1 = max_crushing_pressure_n2[i - 1];
 	    max_crushing_pressure_n2[i - 1] = Math.max(r1, crushing_pressure_n2);
+	}
     }
-    return 0;
+    return result;
 } /* calc_crushing_pressure */
 
 /* =============================================================================== */
@@ -1799,69 +2053,87 @@ private int onset_of_impermeability(double starting_ambient_pressure,
 /*     take the solution out of bounds, or whenever Newton-Raphson is not */
 /*     converging fast enough.  Source:  "Numerical Recipes in Fortran 77", */
 /*     Cambridge University Press, 1992. */
-/* =============================================================================== */
-
-private double radius_root_finder (double a, 
-                        double b, 
-                        double c, 
-                        double low_bound, 
-                        double high_bound)
+/*     It solves every element of the arrays for which solve is true.  The */
+/*     ending radius array holds the first estimate of each root on entry and */
+/*     the root on exit.  Returns 0 if OK, or RADIUS_ROOT_NOT_BRACKETED or */
+/*     RADIUS_ROOT_NOT_CONVERGED if any element failed. */
+/* =============================================================================== */
+
+int radius_root_finder (double a[], 
+                        double b[], 
+                        double c[], 
+                        double low_bound[], 
+                        double high_bound[], 
+                        boolean solve[], 
+                        double ending_radius[])
 {
     /* System generated locals */
     double r1, r2;
-    double ending_radius;
 
     /* Local variables */
     double radius_at_low_bound, 
                 last_diff_change, 
                 function, 
 	            radius_at_high_bound;
-    int i;
+    int i, k, result=0;
     double function_at_low_bound, 
                 last_ending_radius, 
 	            function_at_high_bound, 
                 derivative_of_function, 
-	            differential_change;
+	            differential_change, 
+                radius;
+    boolean converged;
 
 /* loop */
+    for (k = 0; k < solve.length; ++k) {
+        if (!solve[k]) {
+            continue;
+        }
+
 /* =============================================================================== */
 /*     BEGIN CALCULATIONS BY MAKING SURE THAT THE ROOT LIES WITHIN BOUNDS */
 /*     In this case we are solving for radius in a cubic equation of the form, */
 /*     Ar^3 - Br^2 - C = 0.  The coefficients A, B, and C were passed to this */
-/*     subroutine as arguments. */
+/*     subroutine as arguments.  If it does not, the bound nearer the root is */
+/*     returned with a failure code. */
 /* =============================================================================== */
 
     function_at_low_bound = 
-        low_bound * (low_bound * (a * low_bound - b)) - c;
+        low_bound[k] * (low_bound[k] * (a[k] * low_bound[k] - b[k])) - c[k];
     function_at_high_bound = 
-        high_bound * (high_bound * (a * high_bound - b)) - c;
-    if (function_at_low_bound > 0. && function_at_high_bound > 0.) { 
-        pause();
+        high_bound[k] * (high_bound[k] * (a[k] * high_bound[k] - b[k])) - c[k];
+    if ((function_at_low_bound > 0. && function_at_high_bound > 0.) || 
+        (function_at_low_bound < 0. && function_at_high_bound < 0.)) { 
+        ending_radius[k] = Math.abs(function_at_low_bound) < Math.abs(function_at_high_bound) ? 
+            low_bound[k] : high_bound[k];
+        if (result == 0) result = RADIUS_ROOT_NOT_BRACKETED;
+        continue;
     }
 
 /* =============================================================================== */
 /*     Next the algorithm checks for special conditions and then prepares for */
-/*     the first bisection. */
+/*     the first bisection.  The first estimate is the last root found for this */
+/*     element, when it lies within the bounds, or else the middle of the bounds. */
 /* =============================================================================== */
 
-    if (function_at_low_bound < 0. && function_at_high_bound < 0.) { 
-        pause();
-    }
     if (function_at_low_bound == 0.) {
-	    ending_radius = low_bound;
-	    return(ending_radius);
+	    ending_radius[k] = low_bound[k];
+	    continue;
     } else if (function_at_high_bound == 0.) {
-	    ending_radius = high_bound;
-	    return(ending_radius);
+	    ending_radius[k] = high_bound[k];
+	    continue;
     } else if (function_at_low_bound < 0.) {
-	    radius_at_low_bound = low_bound;
-	    radius_at_high_bound = high_bound;
+	    radius_at_low_bound = low_bound[k];
+	    radius_at_high_bound = high_bound[k];
     } else {
-	    radius_at_high_bound = low_bound;
-	    radius_at_low_bound = high_bound;
+	    radius_at_high_bound = low_bound[k];
+	    radius_at_low_bound = high_bound[k];
     }
-    ending_radius = (low_bound + high_bound) * .5;
-    last_diff_change = Math.abs(r1 = high_bound - low_bound);
+    radius = ending_radius[k];
+    if (!(radius > Math.min(low_bound[k], high_bound[k]) && radius < Math.max(low_bound[k], high_bound[k]))) {
+        radius = (low_bound[k] + high_bound[k]) * .5;
+    }
+    last_diff_change = Math.abs(r1 = high_bound[k] - low_bound[k]);
     differential_change = last_diff_change;
 
 /* =============================================================================== */
@@ -1869,52 +2141,58 @@ private double radius_root_finder (double a,
 /*     and its first derivative to rapidly converge upon a solution. */
 /*     Note: the program allows for up to 100 iterations.  Normally an exit will */
 /*     be made from the loop well before that number.  If, for some reason, the */
-/*     program exceeds 100 iterations, there will be a pause to alert the user. */
-/*     When a solution with the desired accuracy is found, exit is made from the */
-/*     loop by returning to the calling program.  The last value of ending */
+/*     program exceeds 100 iterations, the last estimate is returned with a */
+/*     failure code.  When a solution with the desired accuracy is found, exit is */
+/*     made from the loop to the next element.  The last value of ending */
 /*     radius has been assigned as the solution. */
 /* =============================================================================== */
 
     function = 
-        ending_radius * (ending_radius * (a * ending_radius - b)) - c;
+        radius * (radius * (a[k] * radius - b[k])) - c[k];
     derivative_of_function = 
-        ending_radius * (ending_radius *  3. * a - b * 2.);
-    for (i = 1; i <= 100; ++i) {
-	    if (((ending_radius - radius_at_high_bound) * derivative_of_function - function) * 
-		        ((ending_radius - radius_at_low_bound) * derivative_of_function - function) >= 0. 
+        radius * (radius *  3. * a[k] - b[k] * 2.);
+    converged = false;
+    for (i = 1; i <= 100 && !converged; ++i) {
+	    if (((radius - radius_at_high_bound) * derivative_of_function - function) * 
+		        ((radius - radius_at_low_bound) * derivative_of_function - function) >= 0. 
           || ( Math.abs(r1 = function * 2.)) > 
                 ( Math.abs(r2 = last_diff_change * derivative_of_function))) {
 	        last_diff_change = differential_change;
 	        differential_change = 
                 (radius_at_high_bound - radius_at_low_bound) * .5;
-	        ending_radius = radius_at_low_bound + differential_change;
-	        if (radius_at_low_bound == ending_radius) {
-		    return(ending_radius);
+	        radius = radius_at_low_bound + differential_change;
+	        if (radius_at_low_bound == radius) {
+		    converged = true;
 	        }
 	    } else {
 	        last_diff_change = differential_change;
 	        differential_change = function / derivative_of_function;
-	        last_ending_radius = ending_radius;
-	        ending_radius -= differential_change;
-	        if (last_ending_radius == ending_radius) {
-		        return(ending_radius);
+	        last_ending_radius = radius;
+	        radius -= differential_change;
+	        if (last_ending_radius == radius) {
+		        converged = true;
 	        }
 	    }
-	    if (Math.abs(differential_change) < 1e-12) {
-	        return(ending_radius);
+	    if (converged || Math.abs(differential_change) < 1e-12) {
+	        converged = true;
+	        break;
 	    }
 	    function = 
-            ending_radius * (ending_radius * (a * ending_radius - b)) - c;
+            radius * (radius * (a[k] * radius - b[k])) - c[k];
 	    derivative_of_function = 
-            ending_radius * (ending_radius * 3. * a - b * 2.);
+            radius * (radius * 3. * a[k] - b[k] * 2.);
 	    if (function < 0.) {
-	        radius_at_low_bound = ending_radius;
+	        radius_at_low_bound = radius;
 	    } else {
-	        radius_at_high_bound = ending_radius;
+	        radius_at_high_bound = radius;
 	    }
     } 
-    pause();
-    return 0;
+    ending_radius[k] = radius;
+    if (!converged && result == 0) {
+        result = RADIUS_ROOT_NOT_CONVERGED;
+    }
+    }
+    return result;
 } /* radius_root_finder */
 
 /* =============================================================================== */
@@ -2142,7 +2420,7 @@ private int calc_ascent_ceiling()
     /* Local variables */
     double weighted_allowable_gradient;
     int i;
-    double compartment_ascent_ceiling[]=new double[16], 
+    double compartment_ascent_ceiling[]=ws.compartment_ceiling, 
                 gas_loading, 
 	            tolerated_ambient_pressure;
 
@@ -2354,7 +2632,7 @@ private int critical_volume(double deco_phase_volume_time)
 	            c;
     int i;
     double new_allowable_grad_n2_pascals, 
-                phase_volume_time[]=new double[16], 
+                phase_volume_time[]=ws.critical_phase_volume_time, 
 	            new_allowable_grad_he_pascals, 
                 adj_crush_pressure_n2_pascals, 
 	            adj_crush_pressure_he_pascals;
@@ -2619,18 +2897,18 @@ private int projected_ascent(double starting_depth,
     /* Local variables */
     double weighted_allowable_gradient, 
                 ending_ambient_pressure, 
-	            initial_helium_pressure[]=new double[16], 
-                temp_gas_loading[]=new double[16], 
+	            initial_helium_pressure[]=ws.initial_helium_pressure, 
+                temp_gas_loading[]=ws.temp_gas_loading, 
 	            segment_time;
     int i;
     double initial_inspired_n2_pressure, 
                 new_ambient_pressure, 
 	            temp_helium_pressure, 
                 initial_inspired_he_pressure, 
-	            allowable_gas_loading[]=new double[16], 
+	            allowable_gas_loading[]=ws.allowable_gas_loading, 
                 nitrogen_rate, 
 	            starting_ambient_pressure, 
-                initial_nitrogen_pressure[]=new double[16];
+                initial_nitrogen_pressure[]=ws.initial_nitrogen_pressure;
 
     double helium_rate, 
                 temp_nitrogen_pressure;
@@ -2723,13 +3001,15 @@ private int boyles_law_compensation(double first_stop_depth,
     double next_stop;
     double ambient_pressure_first_stop, ambient_pressure_next_stop;
     double amb_press_first_stop_pascals, amb_press_next_stop_pascals;
-    double a, b, c, low_bound, high_bound, ending_radius;
     double deco_gradient_pascals;
     double allow_grad_first_stop_he_pa, radius_first_stop_he;
     double allow_grad_first_stop_n2_pa, radius_first_stop_n2;
+    double root_a[]=ws.root_a, root_b[]=ws.root_b, root_c[]=ws.root_c;
+    double root_low_bound[]=ws.root_low_bound, root_high_bound[]=ws.root_high_bound;
+    boolean root_solve[]=ws.root_solve;
+    double ending_radius[]=ws.boyle_radius;
+    int result;
     
-    double radius1_he[]=new double[16], radius2_he[]=new double[16];
-    double radius1_n2[]=new double[16], radius2_n2[]=new double[16];
 
 /* =============================================================================== */
 /*      CALCULATIONS */
@@ -2740,43 +3020,48 @@ private int boyles_law_compensation(double first_stop_depth,
     amb_press_first_stop_pascals = (ambient_pressure_first_stop/units_factor) * 101325.0;
     amb_press_next_stop_pascals =(ambient_pressure_next_stop/units_factor) * 101325.0;
        
+/* =============================================================================== */
+/*      Set up the cubic for each radius, helium in elements 0-15 and nitrogen */
+/*      in 16-31, and solve them all in one call seeded with the radii of the */
+/*      last stop. */
+/* =============================================================================== */
     for (i = 1; i <= 16; ++i) {
 	allow_grad_first_stop_he_pa = (allowable_gradient_he[i - 1]/units_factor) * 101325.0;	
 	radius_first_stop_he = (2.0 * surface_tension_gamma) / allow_grad_first_stop_he_pa;
-	radius1_he[i - 1] = radius_first_stop_he;
-	a = amb_press_next_stop_pascals;
-	b = -2.0 * surface_tension_gamma;
-	c = (amb_press_first_stop_pascals + (2.0*surface_tension_gamma)/
+	root_a[i - 1] = amb_press_next_stop_pascals;
+	root_b[i - 1] = -2.0 * surface_tension_gamma;
+	root_c[i - 1] = (amb_press_first_stop_pascals + (2.0*surface_tension_gamma)/
 	    radius_first_stop_he)* radius_first_stop_he*
 	    (radius_first_stop_he*(radius_first_stop_he));
-	low_bound = radius_first_stop_he;
-	high_bound = radius_first_stop_he*cbrtf((amb_press_first_stop_pascals/amb_press_next_stop_pascals)); /* JURE  ** */
-	ending_radius=radius_root_finder (a, b, c, low_bound, high_bound);
-	radius2_he[i - 1] = ending_radius;
-	deco_gradient_pascals = (2.0 * surface_tension_gamma) / ending_radius;
-	deco_gradient_he[i - 1] = (deco_gradient_pascals / 101325.0) * units_factor;
-    }
+	root_low_bound[i - 1] = radius_first_stop_he;
+	root_high_bound[i - 1] = radius_first_stop_he*cbrtf((amb_press_first_stop_pascals/amb_press_next_stop_pascals)); /* JURE  ** */
+	root_solve[i - 1] = true;
 
-    for (i = 1; i <= 16; ++i) {
 	allow_grad_first_stop_n2_pa = (allowable_gradient_n2[i - 1]/units_factor) * 101325.0;
 	radius_first_stop_n2 = (2.0 * surface_tension_gamma) / allow_grad_first_stop_n2_pa;	
-	radius1_n2[i - 1] = radius_first_stop_n2;
-	a = amb_press_next_stop_pascals;
-	b = -2.0 * surface_tension_gamma;
-	c = (amb_press_first_stop_pascals + (2.0*surface_tension_gamma)/
+	root_a[i + 15] = amb_press_next_stop_pascals;
+	root_b[i + 15] = -2.0 * surface_tension_gamma;
+	root_c[i + 15] = (amb_press_first_stop_pascals + (2.0*surface_tension_gamma)/
 	     radius_first_stop_n2)* radius_first_stop_n2*
 	    (radius_first_stop_n2*(radius_first_stop_n2));
-	low_bound = radius_first_stop_n2;
-	high_bound = radius_first_stop_n2*cbrtf((amb_press_first_stop_pascals/amb_press_next_stop_pascals));	
-	ending_radius=radius_root_finder (a, b, c, low_bound, high_bound);	
-	radius2_n2[i - 1] = ending_radius;
-	deco_gradient_pascals = (2.0 * surface_tension_gamma) / ending_radius;
+	root_low_bound[i + 15] = radius_first_stop_n2;
+	root_high_bound[i + 15] = radius_first_stop_n2*cbrtf((amb_press_first_stop_pascals/amb_press_next_stop_pascals));	
+	root_solve[i + 15] = true;
+    }
+    result = radius_root_finder(root_a, root_b, root_c, 
+                                root_low_bound, root_high_bound, 
+                                root_solve, ending_radius);
+
+    for (i = 1; i <= 16; ++i) {
+	deco_gradient_pascals = (2.0 * surface_tension_gamma) / ending_radius[i - 1];
+	deco_gradient_he[i - 1] = (deco_gradient_pascals / 101325.0) * units_factor;
+	deco_gradient_pascals = (2.0 * surface_tension_gamma) / ending_radius[i + 15];
 	deco_gradient_n2[i - 1] = (deco_gradient_pascals / 101325.0) * units_factor;
     }
 /* =============================================================================== */
 /*      END OF SUBROUTINE */
 /* =============================================================================== */
-    return 0;
+    return result;
 }
 
 /* =============================================================================== */
@@ -2796,7 +3081,7 @@ private int decompression_stop(double deco_stop_depth, double step_size, double
     double inspired_nitrogen_pressure;
     int last_segment_number;
     double weighted_allowable_gradient, 
-                initial_helium_pressure[]=new double[16];
+                initial_helium_pressure[]=ws.initial_helium_pressure;
 
     double time_counter;
     int i;
@@ -2805,7 +3090,7 @@ private int decompression_stop(double deco_stop_depth, double step_size, double
                 next_stop, last_run_time, 
 	            temp_segment_time;
 
-    double initial_nitrogen_pressure[]=new double[16], 
+    double initial_nitrogen_pressure[]=ws.initial_nitrogen_pressure, 
 	            round_up_operation;
 
 /* loop */
@@ -2943,7 +3228,7 @@ private int calc_deco_ceiling ()
     int i;
     double gas_loading, weighted_allowable_gradient;
     double tolerated_ambient_pressure;
-    double compartment_deco_ceiling[]=new double[16];
+    double compartment_deco_ceiling[]=ws.compartment_ceiling;
 
 /* =============================================================================== */
 /*      CALCULATIONS */
@@ -3374,6 +3659,286 @@ private int vpm_altitude_dive_algorithm()
     return 0;
 } // vpm_altitude_dive_algorithm
 
+/* =============================================================================== */
+/*     INCREMENTAL INTERFACE FOR VpmB */
+/*     VpmB tracks the dissolved gas tensions itself, segment by segment, as the */
+/*     Buhlmann models do.  These methods apply the VPM-B subroutines above to */
+/*     its bubble model state: crushing pressure on each descent, the critical */
+/*     volume algorithm at the start of the final ascent, Boyle's law */
+/*     compensation at each stop and the repetitive algorithm after a surface */
+/*     interval.  Each method loads the state, runs and stores the result. */
+/* =============================================================================== */
+
+/* Initialises the state for a new dive series at the given surface pressure */
+void initState(VpmBState s, boolean fsw, double pAmb, double pH2O)
+{
+    int i;
+    double critical_radius_n2_microns=critical_radius_n2_microns_basic+conservatism/20;
+    double critical_radius_he_microns=critical_radius_he_microns_basic+conservatism/20;
+
+    s.unitsFactor = fsw ? 33. : 10.1325;
+    s.pAmb = pAmb;
+    s.pH2O = pH2O;
+    s.otherGases = pressure_other_gases_mmhg / 760. * s.unitsFactor;
+    s.gasSwitchTime = deco_gas_switch_time;
+    for (i = 1; i <= 16; ++i) {
+        s.initialRadiusN2[i - 1] = critical_radius_n2_microns * 1e-6;
+        s.initialRadiusHe[i - 1] = critical_radius_he_microns * 1e-6;
+        s.adjustedRadiusN2[i - 1] = s.initialRadiusN2[i - 1];
+        s.adjustedRadiusHe[i - 1] = s.initialRadiusHe[i - 1];
+    }
+    resetDive(s);
+}
+
+/* Records the crushing pressure of a descent. Tensions are at the start and end of the segment */
+/* Returns 0 if OK, or the radius_root_finder() failure code, in which case the best estimates are used */
+int descent(VpmBState s, double[] start_he, double[] start_n2, double[] end_he, double[] end_n2,
+        double starting_depth, double ending_depth, double rate, double f_he, double f_n2)
+{
+    int result;
+
+    loadState(s);
+    System.arraycopy(start_he, 0, initial_helium_pressure, 0, 16);
+    System.arraycopy(start_n2, 0, initial_nitrogen_pressure, 0, 16);
+    System.arraycopy(end_he, 0, helium_pressure, 0, 16);
+    System.arraycopy(end_n2, 0, nitrogen_pressure, 0, 16);
+    fraction_helium[0] = f_he;
+    fraction_nitrogen[0] = f_n2;
+    mix_number = 1;
+    result = calc_crushing_pressure(starting_depth, ending_depth, rate);
+    nuclear_regeneration(0.);
+    calc_initial_allowable_gradient();
+    s.ascentPlanned = false;
+    s.decoGradientDepth = Double.NaN;
+    storeState(s);
+    return result;
+}
+
+/* =============================================================================== */
+/*     Runs the critical volume loop of calculate() from the given tensions and */
+/*     depth, without the multilevel deco points.  The mixes are used in order, */
+/*     each from its switch depth; the first from the starting depth.  A stop */
+/*     where a mix is switched to lasts at least deco_gas_switch_time.  Run times */
+/*     are from the start of the dive, so stops are rounded as in calculate(). */
+/*     Leaves the relaxed allowable gradients and the first stop depth in the */
+/*     state. */
+/*     Returns 0 if OK, -1 if the first stop is below the deco zone, in which */
+/*     case the initial allowable gradients are kept, or -2 if Boyle's law */
+/*     compensation failed to find a radius. */
+/* =============================================================================== */
+int planAscent(VpmBState s, double[] he, double[] n2, double depth, double dive_time,
+        double rate, double step_size, double[] f_he, double[] f_n2, double[] switch_depth, int mixes)
+{
+    int i, k;
+    double first_stop_depth, depth_start_of_deco_zone, starting_depth;
+    double run_time_start_of_deco_zone, deco_phase_volume_time;
+    double rounding_operation2;
+    double min_stop_time;
+    boolean schedule_converged;
+    double phase_volume_time[]=ws.phase_volume_time;
+    double last_phase_volume_time[]=ws.last_phase_volume_time;
+    double he_pressure_start_of_deco_zone[]=ws.he_pressure_start_of_deco_zone;
+    double n2_pressure_start_of_deco_zone[]=ws.n2_pressure_start_of_deco_zone;
+
+    loadState(s);
+    if (mixes > fraction_helium.length)
+        mixes = fraction_helium.length;
+    for (k = 0; k < mixes; k++) {
+        fraction_helium[k] = f_he[k];
+        fraction_nitrogen[k] = f_n2[k];
+    }
+    System.arraycopy(he, 0, helium_pressure, 0, 16);
+    System.arraycopy(n2, 0, nitrogen_pressure, 0, 16);
+    nuclear_regeneration(dive_time);
+    calc_initial_allowable_gradient();
+    run_time = dive_time;
+    segment_number = 0;
+    mix_number = 1;
+    s.ascentPlanned = false;
+    s.firstStopDepth = 0.;
+    s.firstStopMade = false;
+    s.decoGradientDepth = Double.NaN;
+    s.criticalVolumeIterations = 0;
+
+    depth_start_of_deco_zone=calc_start_of_deco_zone(depth, rate);
+    gas_loadings_ascent_descen(depth, depth_start_of_deco_zone, rate);
+    run_time_start_of_deco_zone = run_time;
+    schedule_converged = false;
+    for (i = 1; i <= 16; ++i) {
+        last_phase_volume_time[i - 1] = 0.;
+        he_pressure_start_of_deco_zone[i - 1] = helium_pressure[i - 1];
+        n2_pressure_start_of_deco_zone[i - 1] = nitrogen_pressure[i - 1];
+    }
+
+    while(true) {
+        s.criticalVolumeIterations++;
+        calc_ascent_ceiling();
+        if (ascent_ceiling_depth <= 0.) {
+            deco_stop_depth = 0.;
+        } else {
+            rounding_operation2 = ascent_ceiling_depth / step_size + .5;
+            deco_stop_depth = Math.rint(rounding_operation2) * step_size;
+        }
+        if (deco_stop_depth > depth_start_of_deco_zone) {
+            storeState(s);
+            return -1;
+        }
+        projected_ascent(depth_start_of_deco_zone, rate, step_size);
+        if (deco_stop_depth > depth_start_of_deco_zone) {
+            storeState(s);
+            return -1;
+        }
+        if (deco_stop_depth == 0.) {
+            break;      /* no stops needed */
+        }
+
+        /* Trial schedule from the start of the deco zone to the surface */
+        starting_depth = depth_start_of_deco_zone;
+        first_stop_depth = deco_stop_depth;
+        s.firstStopDepth = first_stop_depth;
+        while(true) {
+            gas_loadings_ascent_descen(starting_depth, deco_stop_depth, rate);
+            if (deco_stop_depth <= 0.) {
+                break;
+            }
+            min_stop_time = 0.;
+            for (k = 1; k < mixes; k++) {
+                if (switch_depth[k] >= deco_stop_depth) {
+                    /* Switched at this stop, not on the way up to it */
+                    if (mix_number < k + 1 && switch_depth[k] < deco_stop_depth + step_size)
+                        min_stop_time = deco_gas_switch_time;
+                    mix_number = k + 1;
+                }
+            }
+            next_deco_stop_depth = roundDecoStop(deco_stop_depth - step_size, step_size);
+            if (boyles_law_compensation(first_stop_depth, deco_stop_depth, deco_stop_depth-next_deco_stop_depth) != 0) {
+                storeState(s);
+                return -2;
+            }
+            decompression_stop(deco_stop_depth, deco_stop_depth-next_deco_stop_depth, 0, min_stop_time);
+            if (next_deco_stop_depth<0) next_deco_stop_depth=0;
+            starting_depth = deco_stop_depth;
+            deco_stop_depth = next_deco_stop_depth;
+        }
+
+        /* Critical volume comparison */
+        deco_phase_volume_time = run_time - run_time_start_of_deco_zone;
+        calc_surface_phase_volume_time();
+        for (i = 1; i <= 16; ++i) {
+            phase_volume_time[i - 1] = deco_phase_volume_time + surface_phase_volume_time[i - 1];
+            if (Math.abs(phase_volume_time[i - 1] - last_phase_volume_time[i - 1]) <= 1.) {
+                schedule_converged = true;
+            }
+        }
+        if (schedule_converged || critical_volume_algorithm.equalsIgnoreCase("off"))
+            break;
+
+        critical_volume(deco_phase_volume_time);
+        run_time = run_time_start_of_deco_zone;
+        mix_number = 1;
+        for (i = 1; i <= 16; ++i) {
+            last_phase_volume_time[i - 1] = phase_volume_time[i - 1];
+            helium_pressure[i - 1] = he_pressure_start_of_deco_zone[i - 1];
+            nitrogen_pressure[i - 1] = n2_pressure_start_of_deco_zone[i - 1];
+        }
+    }
+    s.ascentPlanned = true;
+    storeState(s);
+    return 0;
+}
+
+/* Sets the deco gradients for a stop at deco_stop_depth with the next stop step_size above it */
+/* Returns 0 if OK, or the radius_root_finder() failure code, in which case the best estimates are used */
+int decoGradients(VpmBState s, double deco_stop_depth, double step_size)
+{
+    int result = 0;
+
+    loadState(s);
+    if (s.ascentPlanned && s.firstStopDepth > 0. && deco_stop_depth > 0. && deco_stop_depth <= s.firstStopDepth) {
+        result = boyles_law_compensation(s.firstStopDepth, deco_stop_depth, step_size);
+        System.arraycopy(deco_gradient_he, 0, s.decoGradientHe, 0, 16);
+        System.arraycopy(deco_gradient_n2, 0, s.decoGradientN2, 0, 16);
+    } else {
+        System.arraycopy(allowable_gradient_he, 0, s.decoGradientHe, 0, 16);
+        System.arraycopy(allowable_gradient_n2, 0, s.decoGradientN2, 0, 16);
+    }
+    s.decoGradientDepth = deco_stop_depth;
+    return result;
+}
+
+/* Adjusts the critical radii for a repetitive dive after a surface interval */
+void surfaceInterval(VpmBState s, double surface_interval_time)
+{
+    loadState(s);
+    vpm_repetitive_algorithm(surface_interval_time);
+    storeState(s);
+    resetDive(s);
+}
+
+/* Starts a new dive: no crushing pressure yet, so initial gradients from the adjusted radii */
+private void resetDive(VpmBState s)
+{
+    int i;
+
+    for (i = 1; i <= 16; ++i) {
+        s.maxCrushingHe[i - 1] = 0.;
+        s.maxCrushingN2[i - 1] = 0.;
+        s.maxActualGradient[i - 1] = 0.;
+    }
+    loadState(s);
+    nuclear_regeneration(0.);
+    calc_initial_allowable_gradient();
+    s.ascentPlanned = false;
+    s.firstStopDepth = 0.;
+    s.firstStopMade = false;
+    s.decoGradientDepth = Double.NaN;
+    storeState(s);
+}
+
+private void loadState(VpmBState s)
+{
+    int i;
+
+    if (helium_time_constant[0] == 0.) {
+        for (i = 1; i <= 16; ++i) {
+            helium_time_constant[i - 1] = Math.log(2.) / helium_half_time[i - 1];
+            nitrogen_time_constant[i - 1] = Math.log(2.) / nitrogen_half_time[i - 1];
+        }
+    }
+    units_factor = s.unitsFactor;
+    barometric_pressure = s.pAmb;
+    water_vapor_pressure = s.pH2O;
+    constant_pressure_other_gases = s.otherGases;
+    System.arraycopy(s.initialRadiusHe, 0, initial_critical_radius_he, 0, 16);
+    System.arraycopy(s.initialRadiusN2, 0, initial_critical_radius_n2, 0, 16);
+    System.arraycopy(s.adjustedRadiusHe, 0, adjusted_critical_radius_he, 0, 16);
+    System.arraycopy(s.adjustedRadiusN2, 0, adjusted_critical_radius_n2, 0, 16);
+    System.arraycopy(s.maxCrushingHe, 0, max_crushing_pressure_he, 0, 16);
+    System.arraycopy(s.maxCrushingN2, 0, max_crushing_pressure_n2, 0, 16);
+    System.arraycopy(s.adjustedCrushingHe, 0, adjusted_crushing_pressure_he, 0, 16);
+    System.arraycopy(s.adjustedCrushingN2, 0, adjusted_crushing_pressure_n2, 0, 16);
+    System.arraycopy(s.initialGradientHe, 0, initial_allowable_gradient_he, 0, 16);
+    System.arraycopy(s.initialGradientN2, 0, initial_allowable_gradient_n2, 0, 16);
+    System.arraycopy(s.allowableGradientHe, 0, allowable_gradient_he, 0, 16);
+    System.arraycopy(s.allowableGradientN2, 0, allowable_gradient_n2, 0, 16);
+    System.arraycopy(s.maxActualGradient, 0, max_actual_gradient, 0, 16);
+}
+
+private void storeState(VpmBState s)
+{
+    System.arraycopy(adjusted_critical_radius_he, 0, s.adjustedRadiusHe, 0, 16);
+    System.arraycopy(adjusted_critical_radius_n2, 0, s.adjustedRadiusN2, 0, 16);
+    System.arraycopy(max_crushing_pressure_he, 0, s.maxCrushingHe, 0, 16);
+    System.arraycopy(max_crushing_pressure_n2, 0, s.maxCrushingN2, 0, 16);
+    System.arraycopy(adjusted_crushing_pressure_he, 0, s.adjustedCrushingHe, 0, 16);
+    System.arraycopy(adjusted_crushing_pressure_n2, 0, s.adjustedCrushingN2, 0, 16);
+    System.arraycopy(initial_allowable_gradient_he, 0, s.initialGradientHe, 0, 16);
+    System.arraycopy(initial_allowable_gradient_n2, 0, s.initialGradientN2, 0, 16);
+    System.arraycopy(allowable_gradient_he, 0, s.allowableGradientHe, 0, 16);
+    System.arraycopy(allowable_gradient_n2, 0, s.allowableGradientN2, 0, 16);
+    System.arraycopy(max_actual_gradient, 0, s.maxActualGradient, 0, 16);
+}
+
 private void exit(int a)
 {
 }
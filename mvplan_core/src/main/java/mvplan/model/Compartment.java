@@ -2,6 +2,8 @@
  * Compartment.java
  *
  * Defines a single Buhlmann compartment.
+ * The Buhlmann models hold their tissues in arrays (see AbstractZHL16Model) and use
+ * Compartment as the bean view of a tissue for XML persistence and display.
  * 
  *   @author Guy Wittig
  *   @version 1-Jun-2009
@@ -47,6 +49,18 @@ public class Compartment implements Serializable
         factorComp=MvplanInstance.getPrefs().getFactorComp();
         factorDecomp=MvplanInstance.getPrefs().getFactorDecomp();
     }
+
+    /**
+     * Constructor for Compartments with given conservatism factors. Initialises partial pressures to zero.
+     * @param factorComp Conservatism factor on compression
+     * @param factorDecomp Conservatism factor on decompression
+     */
+    public Compartment(double factorComp, double factorDecomp) {
+        ppHe=0.0d;
+        ppN2=0.0d;
+        this.factorComp=factorComp;
+        this.factorDecomp=factorDecomp;
+    }
         
     /**
      * Sets compartment's time constants
@@ -169,33 +183,123 @@ public class Compartment implements Serializable
      * @return Maximum tolerated pressure in mws (fws)
      */
     public double getMaxAmb(double gf)
+    {
+        return maxAmb(ppHe,ppN2,aHe,bHe,aN2,bN2,gf);
+    }
+
+    /**
+     * Gets M-Value for a compartment, given an ambient pressure
+     * @param pAmb Ambient pressure
+     * @return M-Value
+     */
+    public double getMV(double pAmb)
     {
         double aHeN2,bHeN2;
         double pHeN2;
-
         pHeN2 = ppHe + ppN2;    // Sum partial pressures
         // Calculate adjusted a, b coefficients based on those of He and N2
         aHeN2 = ((aHe * ppHe) + (aN2 * ppN2)) / pHeN2;
         bHeN2 = ((bHe * ppHe) + (bN2 * ppN2)) / pHeN2;
-        
-        return (pHeN2 - aHeN2*gf)/(gf/bHeN2-gf+1.0);
+
+        return pHeN2 / (pAmb/bHeN2 + aHeN2);
+    }
+    
+    /**
+     * Gets the time at constant depth for the compartment to off-gas until its tolerated
+     * ambient pressure (see getMaxAmb()) falls to the target pressure.
+     * Solves the Haldane equation P = Pi + (Po - Pi)e^-kt directly. If only one inert gas is
+     * present the equation is inverted in closed form, otherwise the root is bracketed and bisected.
+     * The estimate is only made when both inert gases are off-gassing and no conservatism factors
+     * are applied, as the stepwise application of those factors has no closed form.
+     * @param ppHeInspired Partial pressure of inspired helium
+     * @param ppN2Inspired Partial pressure of inspired Nitrogen
+     * @param pTarget Target tolerated ambient pressure, absolute in msw (fsw)
+     * @param gf Gradient factor, 0.1 to 1.0
+     * @param maxTime Longest time to consider in minutes
+     * @return Time in minutes, 0.0 if already tolerated, Double.POSITIVE_INFINITY if not reached
+     *         within maxTime or Double.NaN if no estimate can be made.
+     */
+    public double getTimeToMaxAmb(double ppHeInspired, double ppN2Inspired, double pTarget, double gf, double maxTime)
+    {
+        if(factorComp != 1.0 || factorDecomp != 1.0)
+            return (getMaxAmb(gf) <= pTarget) ? 0.0 : Double.NaN;
+        return timeToMaxAmb(ppHe,ppN2,kHe,kN2,aHe,bHe,aN2,bN2,ppHeInspired,ppN2Inspired,pTarget,gf,maxTime);
     }
 
     /**
-     * Gets M-Value for a compartment, given an ambient pressure
-     * @param pAmb Ambient pressure
-     * @return M-Value
+     * Solver for getTimeToMaxAmb(). Takes the compartment state as arguments so that it can
+     * be shared with models holding their tissues in arrays.
      */
-    public double getMV(double pAmb)
+    static double timeToMaxAmb(double ppHe, double ppN2, double kHe, double kN2,
+            double aHe, double bHe, double aN2, double bN2,
+            double ppHeInspired, double ppN2Inspired, double pTarget, double gf, double maxTime)
+    {
+        double pAllowed;    // Allowed tissue pressure for a single inert gas
+        double lo,hi,mid;   // Bisection bounds (mins)
+        int i;
+
+        if(maxAmb(ppHe,ppN2,aHe,bHe,aN2,bN2,gf) <= pTarget)
+            return 0.0;
+        if(ppHeInspired > ppHe || ppN2Inspired > ppN2)
+            return Double.NaN;
+
+        if(ppHe == 0.0 && ppHeInspired == 0.0) {
+            // Nitrogen only - invert P = Pi + (Po - Pi)e^-kt
+            pAllowed = pTarget*(gf/bN2-gf+1.0) + aN2*gf;
+            if(pAllowed <= ppN2Inspired) return Double.POSITIVE_INFINITY;
+            return -Math.log((pAllowed-ppN2Inspired)/(ppN2-ppN2Inspired))/kN2;
+        }
+        if(ppN2 == 0.0 && ppN2Inspired == 0.0) {
+            // Helium only
+            pAllowed = pTarget*(gf/bHe-gf+1.0) + aHe*gf;
+            if(pAllowed <= ppHeInspired) return Double.POSITIVE_INFINITY;
+            return -Math.log((pAllowed-ppHeInspired)/(ppHe-ppHeInspired))/kHe;
+        }
+
+        // Mixed gas - blended a and b change with time so bracket the root then bisect
+        lo=0.0;
+        hi=1.0;
+        while(maxAmbAt(ppHe,ppN2,kHe,kN2,aHe,bHe,aN2,bN2,ppHeInspired,ppN2Inspired,hi,gf) > pTarget) {
+            lo=hi;
+            hi=hi*2.0;
+            if(lo > maxTime) return Double.POSITIVE_INFINITY;
+        }
+        for(i=0; i<40 && (hi-lo)>1.0e-6; i++) {
+            mid=(lo+hi)/2.0;
+            if(maxAmbAt(ppHe,ppN2,kHe,kN2,aHe,bHe,aN2,bN2,ppHeInspired,ppN2Inspired,mid,gf) > pTarget)
+                lo=mid;
+            else
+                hi=mid;
+        }
+        return hi;
+    }
+
+    /**
+     * Gets Tolerated Absolute Pressure after a constant depth segment without updating any state
+     */
+    private static double maxAmbAt(double ppHe, double ppN2, double kHe, double kN2,
+            double aHe, double bHe, double aN2, double bN2,
+            double ppHeInspired, double ppN2Inspired, double segTime, double gf)
+    {
+        return maxAmb(ppHeInspired + (ppHe-ppHeInspired)*Math.exp(-kHe*segTime),
+                      ppN2Inspired + (ppN2-ppN2Inspired)*Math.exp(-kN2*segTime),
+                      aHe,bHe,aN2,bN2,gf);
+    }
+
+    /**
+     * Gets Tolerated Absolute Pressure for the given compartment state. See getMaxAmb()
+     */
+    static double maxAmb(double ppHe, double ppN2, double aHe, double bHe, double aN2, double bN2, double gf)
     {
         double aHeN2,bHeN2;
         double pHeN2;
+
         pHeN2 = ppHe + ppN2;    // Sum partial pressures
         // Calculate adjusted a, b coefficients based on those of He and N2
         aHeN2 = ((aHe * ppHe) + (aN2 * ppN2)) / pHeN2;
         bHeN2 = ((bHe * ppHe) + (bN2 * ppN2)) / pHeN2;
 
-        return pHeN2 / (pAmb/bHeN2 + aHeN2);
+        return (pHeN2 - aHeN2*gf)/(gf/bHeN2-gf+1.0);
     }
     
     /************************* ACCESSORS AND MUTATORS *****************/
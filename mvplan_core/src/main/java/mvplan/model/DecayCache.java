@@ -0,0 +1,104 @@
+/**
+ * DecayCache.java
+ *
+ * Caches the exponential decay factors e^-kt of a model's compartments for recently used
+ * segment times. Deco stops are multiples of the stop time increment and ascents between
+ * stops repeat the same few segment times, so most calls to constDepth() and ascDec()
+ * can reuse factors calculated earlier instead of calling Math.exp() for every compartment.
+ *
+ * Factors are calculated exactly as the model would, so results are unchanged. Any other
+ * segment time is calculated on demand and replaces the oldest entry.
+ * The cache must be cleared when the time constants change.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2010 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.model;
+
+import java.io.Serializable;
+
+public class DecayCache implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int SLOTS=8;   // Number of segment times held
+
+    private final double[] times = new double[SLOTS];     // Segment time for each slot
+    final double[][] he;                // e^-kHe.t for each slot and compartment
+    final double[][] n2;                // e^-kN2.t for each slot and compartment
+    private int next;                   // Next slot to replace
+    private int hits;
+    private int misses;
+
+    /**
+     * Constructor for DecayCache
+     * @param comps Number of compartments
+     */
+    public DecayCache(int comps) {
+        he = new double[SLOTS][comps];
+        n2 = new double[SLOTS][comps];
+        clear();
+    }
+
+    /**
+     * Empties the cache. Call whenever the time constants change.
+     */
+    public void clear() {
+        int i;
+        for (i=0;i<SLOTS;i++)
+            times[i]=Double.NaN;    // Never matches
+        next=0;
+    }
+
+    /**
+     * Finds the slot holding the decay factors for a segment time, calculating them if needed.
+     * Factors are in he[slot][c] and n2[slot][c].
+     * @param segTime Segment time in minutes
+     * @param kHe Helium time constants for each compartment
+     * @param kN2 Nitrogen time constants for each compartment
+     * @return Slot index
+     */
+    public int find(double segTime, double[] kHe, double[] kN2) {
+        int slot;
+        int c;
+
+        for (slot=0;slot<SLOTS;slot++) {
+            if(times[slot]==segTime) {
+                hits++;
+                return slot;
+            }
+        }
+        misses++;
+        slot=next;
+        next=(next+1)%SLOTS;
+        for (c=0;c<he[slot].length;c++) {
+            he[slot][c]=Math.exp(-kHe[c]*segTime);
+            n2[slot][c]=Math.exp(-kN2[c]*segTime);
+        }
+        times[slot]=segTime;
+        return slot;
+    }
+
+    /**
+     * Gets number of lookups answered from the cache
+     * @return Hits
+     */
+    public int getHits()    { return hits; }
+    /**
+     * Gets number of lookups that had to be calculated
+     * @return Misses
+     */
+    public int getMisses()  { return misses; }
+}
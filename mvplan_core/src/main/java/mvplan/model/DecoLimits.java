@@ -0,0 +1,62 @@
+/**
+ * DecoLimits.java
+ *
+ * Holds the decompression limits of a model at a given depth: ceiling, maximum M-Value
+ * and controlling compartment. Filled in by AbstractModel.decoLimits() so that one
+ * instance can be reused for every query in a profile.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2010 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.model;
+
+public class DecoLimits {
+    double ceiling;             // Ceiling depth msw (fsw)
+    double mValue;              // Maximum M-Value at the queried depth
+    int controlCompartment;     // Controlling compartment (1-16)
+
+    /**
+     * Gets ceiling depth
+     * @return Ceiling depth msw (fsw)
+     */
+    public double getCeiling()          { return ceiling; }
+    /**
+     * Gets maximum M-Value at the queried depth
+     * @return Maximum M-Value
+     */
+    public double getMValue()           { return mValue; }
+    /**
+     * Gets controlling compartment at ceiling
+     * @return Controlling compartment (1-16)
+     */
+    public int getControlCompartment()  { return controlCompartment; }
+
+    /**
+     * Sets all limits
+     * @param ceiling Ceiling depth msw (fsw)
+     * @param mValue Maximum M-Value
+     * @param controlCompartment Controlling compartment (1-16)
+     */
+    public void set(double ceiling, double mValue, int controlCompartment) {
+        this.ceiling=ceiling;
+        this.mValue=mValue;
+        this.controlCompartment=controlCompartment;
+    }
+
+    public String toString() {
+        return "Ceiling: "+ceiling+" MV: "+mValue+" Control: "+controlCompartment;
+    }
+}
@@ -28,13 +28,14 @@
 package mvplan.model;
 import java.io.*;
 
-public class Gradient implements Serializable
+public class Gradient implements Serializable, Cloneable
 {
     // instance variables
     private double gfHigh,gfLow;    // GF high and low settings
     private double gf;              // Current GF
     private double gfSlope;         // Slope of the linear equation
     private boolean gfSet;        // Indicates that gf Slope has been initialised
+    static final int SNAPSHOT_SIZE=5;   // Values copied by snapshot()
 
     /** Empty constructor for Bean compliance
      */
@@ -55,6 +56,42 @@ public class Gradient implements Serializable
         gfSet=false;
     }
 
+    /**
+     * Override the clone method to return a copy of this object
+     * @return Gradient object
+     */
+    public Object clone(){
+        try {
+            return super.clone();   // Fields are all primitives
+        } catch (CloneNotSupportedException e) {
+            throw new Error("Never happens");
+        }
+    }
+
+    /**
+     * Copies the state into a model snapshot, see AbstractModel.snapshot()
+     * @param s ModelSnapshot
+     */
+    public void snapshot(ModelSnapshot s) {
+        s.put(gfHigh);
+        s.put(gfLow);
+        s.put(gf);
+        s.put(gfSlope);
+        s.put(gfSet);
+    }
+
+    /**
+     * Copies the state from a model snapshot, see AbstractModel.restore()
+     * @param s ModelSnapshot
+     */
+    public void restore(ModelSnapshot s) {
+        gfHigh=s.getDouble();
+        gfLow=s.getDouble();
+        gf=s.getDouble();
+        gfSlope=s.getDouble();
+        gfSet=s.getBoolean();
+    }
+
     /**
      * Returns current GF with bounds checking. If GF < GLLow, returns GFLow.
      * @return Current GF
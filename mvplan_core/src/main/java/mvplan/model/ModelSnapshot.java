@@ -0,0 +1,110 @@
+/**
+ * ModelSnapshot.java
+ *
+ * Preallocated copy of the changing state of a model, from AbstractModel.snapshot().
+ *
+ * The tissue tensions, gradient factor state, oxygen toxicity and any state a model adds are
+ * copied into one array of doubles, in an order fixed by the model class. Constants such as the
+ * Buhlmann coefficients and the metadata are not copied. A snapshot is created once with
+ * AbstractModel.newSnapshot() and then reused: snapshot() and restore() copy into and out of
+ * it without allocating, so bailout, TTS or contingency calculations can branch from the same
+ * state any number of times. A snapshot can be restored into any model of the same class
+ * that uses the same planning settings.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2010 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.model;
+
+public final class ModelSnapshot {
+    private final Class<?> modelClass;  // Class of the models it holds
+    private final double[] values;      // State in the order written by the model
+    private int position;               // Next value to put or get
+    private boolean taken;              // Holds a state
+
+    /**
+     * Package only, created by AbstractModel.newSnapshot()
+     * @param modelClass Class of the model
+     * @param size Number of values
+     */
+    ModelSnapshot(Class<?> modelClass, int size) {
+        this.modelClass = modelClass;
+        values = new double[size];
+    }
+
+    /**
+     * Starts copying the state of a model into or out of the snapshot
+     * @param model Model
+     * @param restoring true to restore from the snapshot
+     * @throws IllegalArgumentException if the snapshot is for another model class, or empty
+     */
+    void start(AbstractModel model, boolean restoring) {
+        if (model.getClass() != modelClass)
+            throw new IllegalArgumentException("Snapshot of "+modelClass.getName()+" used for "+model.getClass().getName());
+        if (restoring && !taken)
+            throw new IllegalArgumentException("Snapshot holds no state");
+        position = 0;
+    }
+
+    /** Ends copying, checks that every value was copied */
+    void end() {
+        if (position != values.length)
+            throw new IllegalStateException("Snapshot size "+values.length+", copied "+position);
+        taken = true;
+    }
+
+    void put(double d) {
+        values[position++] = d;
+    }
+
+    void put(boolean b) {
+        values[position++] = b ? 1.0 : 0.0;
+    }
+
+    void put(double[] a) {
+        System.arraycopy(a,0,values,position,a.length);
+        position += a.length;
+    }
+
+    double getDouble() {
+        return values[position++];
+    }
+
+    boolean getBoolean() {
+        return values[position++] != 0.0;
+    }
+
+    void get(double[] a) {
+        System.arraycopy(values,position,a,0,a.length);
+        position += a.length;
+    }
+
+    /**
+     * Gets the class of the models the snapshot is for
+     * @return Model class
+     */
+    public Class<?> getModelClass() {
+        return modelClass;
+    }
+
+    /**
+     * Gets whether the snapshot holds a state
+     * @return true once snapshot() has been called
+     */
+    public boolean isTaken() {
+        return taken;
+    }
+}
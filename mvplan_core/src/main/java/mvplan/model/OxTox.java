@@ -24,15 +24,49 @@
 
 package mvplan.model;
 
-public class OxTox {
+import java.io.Serializable;
+
+public class OxTox implements Serializable, Cloneable {
+    private static final long serialVersionUID = 1L;
+
     private double cns;
     private double otu;
     private double maxOx;
+    static final int SNAPSHOT_SIZE=3;   // Values copied by snapshot()
     
     
     /** Creates a new instance of OxTox */
     public OxTox() {
     }
+    /**
+     * Override the clone method to return a copy of this object
+     * @return OxTox object
+     */
+    public Object clone(){
+        try {
+            return super.clone();   // Fields are all primitives
+        } catch (CloneNotSupportedException e) {
+            throw new Error("Never happens");
+        }
+    }
+    /**
+     * Copies the state into a model snapshot, see AbstractModel.snapshot()
+     * @param s ModelSnapshot
+     */
+    public void snapshot(ModelSnapshot s) {
+        s.put(cns);
+        s.put(otu);
+        s.put(maxOx);
+    }
+    /**
+     * Copies the state from a model snapshot, see AbstractModel.restore()
+     * @param s ModelSnapshot
+     */
+    public void restore(ModelSnapshot s) {
+        cns=s.getDouble();
+        otu=s.getDouble();
+        maxOx=s.getDouble();
+    }
     /** Initialise OxTox model */
     public void initOxTox(){
         cns=0.0;
@@ -0,0 +1,430 @@
+/**
+ * VpmB.java <br/>
+ *
+ * Represents the Varying Permeability Model with Boyle's law compensation (VPM-B).<br/>
+ * Dissolved gas is tracked in the Buhlmann ZH-L16 compartments exactly as ZHL16B does, with the<br/>
+ * same half-times as Baker's VPM-B. Ceilings come from the VPM-B allowable supersaturation<br/>
+ * gradients instead of the M-Values, which are only kept for display.<br/>
+ *
+ * The bubble model is calculated by BakerVpmB: crushing pressure on each descent, the critical<br/>
+ * volume algorithm when Profile calls startAscent() for the final ascent, Boyle's law compensation<br/>
+ * at each stop and the repetitive algorithm after a surface interval. A BakerVpmB is taken from<br/>
+ * a shared pool for each of these calls and returned straight after.<br/>
+ *
+ * The planned ascent follows BakerVpmB.calculate(): the first stop is the one planned, the ascent<br/>
+ * between stops, which Profile does not make, is made out of the stop time and a stop where the<br/>
+ * gas is switched lasts the gas switch time. With the water vapour pressure of Baker's program,<br/>
+ * 0.493 msw, the stops are those of calculate().<br/>
+ *
+ * Gradient factors are not used. A closed circuit ascent without open circuit deco is not planned<br/>
+ * by the critical volume algorithm and uses the initial allowable gradients.<br/>
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2010 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.model;
+
+import java.io.Serializable;
+import java.util.List;
+import mvplan.gas.Gas;
+import mvplan.prefs.PlanParameters;
+
+public class VpmB extends ZHL16B implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private static final double TIME_TOLERANCE = 1e-6;  // Run times are sums of fractions of minutes
+
+    // Engines shared by the models of all threads, one is checked out for each calculation
+    static final VpmBEnginePool engines = new VpmBEnginePool(Runtime.getRuntime().availableProcessors());
+
+    VpmBState bubbles;                  // Bubble model state
+    double depth;                       // Current depth msw (fsw)
+    double diveTime;                    // Time since the start of the dive
+    private double tissueDepth;         // Depth at the end of the last segment calculated
+    private double lastFHe;             // Gas of the last segment calculated
+    private double lastFN2;
+    private double lastPO2;
+    private boolean atStop;             // Last segment was a stop of the planned ascent
+    private double stopStart;           // Whole minute of diveTime on arriving at that stop
+    private boolean gasSwitchStop;      // The gas was switched on arriving at that stop
+    private int control;                // Controlling compartment (0-15) of the last ceiling
+    private transient double[] startHe; // Tensions at the start of a descent
+    private transient double[] startN2;
+
+    /**
+     * Initialise a new model
+     */
+    @Override
+    public void initModel() {
+        super.initModel();
+        modelName="VPM-B";
+        initBubbles();
+    }
+
+    /**
+     * Validate model. A model loaded from XML has no bubble state, so it starts from the
+     * initial critical radii.
+     * @return Validation result: MODEL_VALIDATION_SUCCESS or MODEL_VALIDATION_FAILED
+     */
+    @Override
+    public int validateModel() {
+        int result = super.validateModel();
+        if (bubbles == null)
+            initBubbles();
+        return result;
+    }
+
+    private void initBubbles() {
+        PlanParameters prefs = context().getParameters();
+        BakerVpmB engine = engines.checkOut();
+
+        bubbles = new VpmBState();
+        try {
+            engine.initState(bubbles,units==IMPERIAL,prefs.getPAmb(),prefs.getPH2O());
+        } finally {
+            engines.checkIn(engine);
+        }
+        depth=0.0;
+        diveTime=0.0;
+        tissueDepth=0.0;
+        atStop=false;
+    }
+
+    /**
+     * Override the clone method for deep cloning of the bubble state
+     * @return VpmB object
+     */
+    @Override
+    public Object clone() {
+        VpmB copy = (VpmB)super.clone();
+        copy.bubbles = (VpmBState)bubbles.clone();
+        copy.startHe = null;
+        copy.startN2 = null;
+        return copy;
+    }
+
+    /**
+     * Adds the bubble model to the snapshot size
+     * @return Number of values
+     */
+    @Override
+    protected int snapshotSize() {
+        return super.snapshotSize()+VpmBState.SNAPSHOT_SIZE+10;
+    }
+
+    /**
+     * Copies the tissues and the bubble model into a snapshot
+     * @param s ModelSnapshot
+     */
+    @Override
+    protected void saveState(ModelSnapshot s) {
+        super.saveState(s);
+        bubbles.snapshot(s);
+        s.put(depth);
+        s.put(diveTime);
+        s.put(tissueDepth);
+        s.put(lastFHe);
+        s.put(lastFN2);
+        s.put(lastPO2);
+        s.put(atStop);
+        s.put(stopStart);
+        s.put(gasSwitchStop);
+        s.put(control);
+    }
+
+    /**
+     * Copies the tissues and the bubble model from a snapshot
+     * @param s ModelSnapshot
+     */
+    @Override
+    protected void loadState(ModelSnapshot s) {
+        super.loadState(s);
+        bubbles.restore(s);
+        depth=s.getDouble();
+        diveTime=s.getDouble();
+        tissueDepth=s.getDouble();
+        lastFHe=s.getDouble();
+        lastFN2=s.getDouble();
+        lastPO2=s.getDouble();
+        atStop=s.getBoolean();
+        stopStart=s.getDouble();
+        gasSwitchStop=s.getBoolean();
+        control=(int)s.getDouble();
+    }
+
+    /**
+     * Constant depth profile. A segment at the surface is taken as a surface interval and the
+     * critical radii are adjusted for a repetitive dive. On a planned ascent, a segment shallower
+     * than the last one is a stop: the ascent to it is made first, at the ascent rate on the gas
+     * of the last segment, and takes its time out of the stop.
+     * @param depth Depth of segment in metres
+     * @param segTime Time of segment in minutes
+     * @param fHe Fraction of inert gas Helium in inspired gas mix
+     * @param fN2 Fraction of inert gas Nitrogen in inspired gas mix
+     * @param pO2 For CCR mode, partial pressure of oxygen in bar. If == 0.0, then open circuit
+     * @throws mvplan.model.ModelStateException Throws ModelStateException if partial pressures are < 0.0 or time < 0.0
+     */
+    @Override
+    public void constDepth(double depth, double segTime, double fHe, double fN2, double pO2) throws ModelStateException
+    {
+        double rate;
+        double transit;
+
+        if(bubbles.ascentPlanned && depth > 0.0 && !(atStop && depth == tissueDepth)) {
+            // Arriving at a stop
+            if(depth < tissueDepth) {
+                rate = context().getParameters().getAscentRate();
+                transit = (depth-tissueDepth)/rate;
+                super.ascDec(tissueDepth,depth,rate,lastFHe,lastFN2,lastPO2);
+                diveTime+=transit;
+                segTime=Math.max(0.0,segTime-transit);
+            }
+            stopStart=Math.floor(diveTime);
+            gasSwitchStop= fHe!=lastFHe || fN2!=lastFN2 || pO2!=lastPO2;
+            atStop=true;
+        } else if(bubbles.ascentPlanned && depth <= 0.0 && depth < tissueDepth) {
+            // Surfacing before the interval
+            super.ascDec(tissueDepth,depth,context().getParameters().getAscentRate(),lastFHe,lastFN2,lastPO2);
+        }
+        if(bubbles.ascentPlanned && segTime > 0.0 && depth <= bubbles.firstStopDepth)
+            bubbles.firstStopMade=true;
+        super.constDepth(depth,segTime,fHe,fN2,pO2);
+        setLastSegment(depth,fHe,fN2,pO2);
+        this.depth=depth;
+        if(depth <= 0.0 && segTime > 0.0) {
+            BakerVpmB engine = engines.checkOut();
+            try {
+                engine.surfaceInterval(bubbles,segTime);
+            } finally {
+                engines.checkIn(engine);
+            }
+            diveTime=0.0;
+        } else
+            diveTime+=segTime;
+    }
+
+    /**
+     * Ascend/Descend in profile. A descent also updates the crushing pressures.
+     * @param start - Start depth of segment in metres
+     * @param finish - Finish depth of segment in metres
+     * @param rate - Rate of ascent (-ve) or descent (+ve) in m/min
+     * @param fHe Fraction of inert gas Helium in inspired gas mix
+     * @param fN2 Fraction of inert gas Nitrogen in inspired gas mix
+     * @param pO2 For CCR mode, partial pressure of oxygen in bar. If == 0.0, then open circuit
+     * @throws mvplan.model.ModelStateException Throws ModelStateException if partial pressures are < 0.0 or time < 0.0,
+     *         or if the crushing pressure of a descent can not be found
+     */
+    @Override
+    public void ascDec(double start, double finish, double rate, double fHe, double fN2, double pO2) throws ModelStateException
+    {
+        PlanParameters prefs = context().getParameters();
+        double pAmb;
+        double fInert;
+        BakerVpmB engine;
+        int result;
+
+        if(finish <= start) {
+            super.ascDec(start,finish,rate,fHe,fN2,pO2);
+        } else {
+            if(startHe == null) {
+                startHe = new double[COMPS];
+                startN2 = new double[COMPS];
+            }
+            System.arraycopy(ppHe,0,startHe,0,COMPS);
+            System.arraycopy(ppN2,0,startN2,0,COMPS);
+            super.ascDec(start,finish,rate,fHe,fN2,pO2);
+            engine = engines.checkOut();
+            try {
+                if(pO2 > 0.0 && (fHe+fN2) > 0.0) {
+                    // Rebreather - use the inert fraction of the loop at the finish depth
+                    pAmb = finish+prefs.getPAmb();
+                    fInert = (pAmb - pO2*prefs.getPConversion() - prefs.getPH2O())/(pAmb-prefs.getPH2O());
+                    if(fInert < 0.0) fInert=0.0;
+                    result = engine.descent(bubbles,startHe,startN2,ppHe,ppN2,start,finish,rate,
+                            fInert*fHe/(fHe+fN2),fInert*fN2/(fHe+fN2));
+                } else
+                    result = engine.descent(bubbles,startHe,startN2,ppHe,ppN2,start,finish,rate,fHe,fN2);
+            } finally {
+                engines.checkIn(engine);
+            }
+            if(result != 0)
+                throw new ModelStateException("VPM-B: no crushing pressure for descent from "+start+" to "+finish);
+        }
+        diveTime+=(finish-start)/rate;
+        setLastSegment(finish,fHe,fN2,pO2);
+        atStop=false;
+        depth=finish;
+    }
+
+    private void setLastSegment(double depth, double fHe, double fN2, double pO2) {
+        tissueDepth=depth;
+        lastFHe=fHe;
+        lastFN2=fN2;
+        lastPO2=pO2;
+    }
+
+    /**
+     * Runs the critical volume algorithm for the ascent from the current tissue state
+     * @param depth Depth at the start of the ascent in msw (fsw)
+     * @param gases Open circuit gases in order of use
+     */
+    @Override
+    public void startAscent(double depth, List<Gas> gases) {
+        PlanParameters prefs = context().getParameters();
+        int n=gases.size();
+        double[] fHe = new double[n];
+        double[] fN2 = new double[n];
+        double[] switchDepth = new double[n];
+        BakerVpmB engine;
+        int i;
+        int result;
+
+        for (i=0;i<n;i++) {
+            fHe[i]=gases.get(i).getFHe();
+            fN2[i]=gases.get(i).getFN2();
+            switchDepth[i]= i==0 ? depth : Math.min(depth,gases.get(i).getMod());
+        }
+        this.depth=depth;
+        atStop=false;
+        engine=engines.checkOut();
+        try {
+            result=engine.planAscent(bubbles,ppHe,ppN2,depth,diveTime,prefs.getAscentRate(),prefs.getStopDepthIncrement(),
+                    fHe,fN2,switchDepth,n);
+        } finally {
+            engines.checkIn(engine);
+        }
+        if(result == -1) {
+            if(context().getDebug() > 0) context().getTrace().println("VPM-B: first stop is below the deco zone, using initial gradients");
+        } else if(result != 0) {
+            if(context().getDebug() > 0) context().getTrace().println("VPM-B: Boyle's law compensation failed, ascent not planned");
+        }
+    }
+
+    /**
+     * Passes through the critical volume loop for the last planned ascent
+     * @return Number of passes, 0 if no ascent has been planned
+     */
+    public int getCriticalVolumeIterations() {
+        return bubbles.criticalVolumeIterations;
+    }
+
+    /**
+     * Estimates are not available for the VPM-B
+     * @return 0.0
+     */
+    @Override
+    public double timeToCeiling(double depth, double ceilingDepth, double fHe, double fN2, double pO2, double maxTime) {
+        return 0.0;
+    }
+
+    /**
+     * Determine the current ceiling depth from the allowable gradients at the current depth
+     * @return Ceiling depth msw (fsw)
+     */
+    @Override
+    public double ceiling() {
+        return bubbleCeiling();
+    }
+
+    /**
+     * Determine the controlling compartment at ceiling (1-16)
+     * @return Controlling compartment (1-16)
+     */
+    @Override
+    public int controlCompartment() {
+        bubbleCeiling();
+        return control+1;
+    }
+
+    /**
+     * Determines ceiling and controlling compartment from the allowable gradients and the Buhlmann
+     * M-Value for display. Also records the actual gradient for the repetitive algorithm.
+     * @param depth Depth in msw (fsw), the depth the model is at
+     * @param limits Result holder, overwritten with the current limits
+     */
+    @Override
+    public void decoLimits(double depth, DecoLimits limits) {
+        double ceiling;
+        double gradient;
+        int c;
+
+        this.depth=depth;
+        if(bubbles.ascentPlanned) {
+            for (c=0;c<COMPS;c++) {
+                gradient = ppHe[c]+ppN2[c]+bubbles.otherGases-(depth+bubbles.pAmb);
+                if(gradient > bubbles.maxActualGradient[c])
+                    bubbles.maxActualGradient[c]=gradient;
+            }
+        }
+        ceiling = bubbleCeiling();
+        limits.set(ceiling,mValue(depth),control+1);
+    }
+
+    /**
+     * Ceiling from the deco gradients for the current depth, see BakerVpmB.calc_deco_ceiling().
+     * Also sets the controlling compartment. On a planned ascent the ceiling is held at the first
+     * stop until a stop is made there, and at a stop where the gas was switched until the gas
+     * switch time is up.
+     * @return Ceiling depth msw (fsw)
+     */
+    private double bubbleCeiling() {
+        PlanParameters prefs = context().getParameters();
+        double step;
+        double ceiling=0.0;
+        double loading;
+        double gradient;
+        double tolerated;
+        BakerVpmB engine;
+        int result;
+        int c;
+
+        if(bubbles.decoGradientDepth != depth) {
+            // Next stop is one increment up, or the surface from the last stop
+            step = depth <= prefs.getLastStopDepth() ? depth : prefs.getStopDepthIncrement();
+            engine = engines.checkOut();
+            try {
+                result = engine.decoGradients(bubbles,depth,step);
+            } finally {
+                engines.checkIn(engine);
+            }
+            if(result != 0 && context().getDebug() > 0)
+                context().getTrace().println("VPM-B: Boyle's law compensation failed at "+depth);
+        }
+        control=0;
+        for (c=0;c<COMPS;c++) {
+            loading = ppHe[c]+ppN2[c];
+            if(loading > 0.0)
+                gradient = (bubbles.decoGradientHe[c]*ppHe[c] + bubbles.decoGradientN2[c]*ppN2[c])/loading;
+            else
+                gradient = Math.min(bubbles.decoGradientHe[c],bubbles.decoGradientN2[c]);
+            tolerated = loading + bubbles.otherGases - gradient;
+            if(tolerated < 0.0) tolerated=0.0;
+            if(tolerated - bubbles.pAmb > ceiling) {
+                ceiling = tolerated - bubbles.pAmb;
+                control=c;
+            }
+        }
+        if(bubbles.ascentPlanned) {
+            if(!bubbles.firstStopMade && ceiling < bubbles.firstStopDepth)
+                ceiling = bubbles.firstStopDepth;
+            if(atStop && gasSwitchStop && depth == tissueDepth && ceiling < depth
+                    && diveTime-stopStart < bubbles.gasSwitchTime-TIME_TOLERANCE)
+                ceiling = depth;
+        }
+        return ceiling;
+    }
+}
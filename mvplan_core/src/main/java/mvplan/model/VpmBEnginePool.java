@@ -0,0 +1,102 @@
+/**
+ * VpmBEnginePool.java
+ *
+ * Pool of BakerVpmB engines for planning on several threads at once.
+ *
+ * A BakerVpmB keeps all of its state in instance fields, so it can only calculate one mission
+ * at a time, and a new one allocates all of its profile and output arrays. An engine checked out
+ * of the pool belongs to the calling thread until it is checked back in. It is then reset() and
+ * kept for the next caller, so table generation or a planning service reuses warm engines
+ * instead of creating one per plan.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2010 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class VpmBEnginePool {
+    private final List<BakerVpmB> idle = new ArrayList<BakerVpmB>();
+    private final int maxIdle;          // Engines kept when checked in, others are dropped
+    private int created;                // Engines created by the pool
+    private int checkedOut;             // Engines not yet checked in
+
+    /**
+     * Constructor for VpmBEnginePool
+     * @param maxIdle Most engines to keep for reuse, usually the number of planning threads
+     */
+    public VpmBEnginePool(int maxIdle) {
+        if (maxIdle < 0)
+            throw new IllegalArgumentException("maxIdle must be >= 0: "+maxIdle);
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Takes an engine from the pool, or creates one if none is idle. The engine is ready for a
+     * new mission and must only be used by the calling thread until it is checked in.
+     * @return BakerVpmB engine
+     */
+    public BakerVpmB checkOut() {
+        synchronized (idle) {
+            checkedOut++;
+            if (!idle.isEmpty())
+                return idle.remove(idle.size()-1);
+            created++;
+        }
+        return new BakerVpmB();
+    }
+
+    /**
+     * Returns an engine to the pool. It must not be used by the caller afterwards.
+     * @param engine Engine from checkOut()
+     * @throws IllegalStateException if the engine is already checked in
+     */
+    public void checkIn(BakerVpmB engine) {
+        // Reset outside the lock, the engine still belongs to the caller
+        engine.reset();
+        synchronized (idle) {
+            for (int i = 0; i < idle.size(); i++)
+                if (idle.get(i) == engine)
+                    throw new IllegalStateException("Engine is already checked in");
+            checkedOut--;
+            if (idle.size() < maxIdle)
+                idle.add(engine);
+        }
+    }
+
+    /** @return Number of idle engines */
+    public int getIdleCount() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    /** @return Number of engines checked out and not yet checked in */
+    public int getCheckedOutCount() {
+        synchronized (idle) {
+            return checkedOut;
+        }
+    }
+
+    /** @return Number of engines the pool has created */
+    public int getCreatedCount() {
+        synchronized (idle) {
+            return created;
+        }
+    }
+}
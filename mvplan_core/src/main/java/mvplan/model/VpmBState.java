@@ -0,0 +1,164 @@
+/**
+ * VpmBState.java
+ *
+ * Bubble model state of a VpmB model between calls to BakerVpmB.
+ *
+ * The dissolved gas tensions are held by the model itself, as for the Buhlmann models. This holds
+ * what the VPM-B adds to them: the crushing pressures reached on descent, the critical radii,
+ * the allowable supersaturation gradients and the first stop of the planned ascent. BakerVpmB
+ * loads the state, runs one of its subroutines on it and stores the result, so one BakerVpmB
+ * can serve any number of models.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2010 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.model;
+
+import java.io.Serializable;
+
+class VpmBState implements Serializable, Cloneable {
+    private static final long serialVersionUID = 1L;
+
+    static final int COMPS=16;
+
+    // Settings, msw (fsw)
+    double unitsFactor;                 // Pressure of one atmosphere
+    double pAmb;                        // Surface pressure
+    double pH2O;                        // Water vapour pressure
+    double otherGases;                  // Pressure of O2, CO2 and H2O in the tissues
+    double gasSwitchTime;               // Shortest stop where the gas is switched, minutes
+
+    // Critical radii, metres
+    double[] initialRadiusHe = new double[COMPS];
+    double[] initialRadiusN2 = new double[COMPS];
+    double[] adjustedRadiusHe = new double[COMPS];
+    double[] adjustedRadiusN2 = new double[COMPS];
+    // Crushing pressures, msw (fsw)
+    double[] maxCrushingHe = new double[COMPS];
+    double[] maxCrushingN2 = new double[COMPS];
+    double[] adjustedCrushingHe = new double[COMPS];
+    double[] adjustedCrushingN2 = new double[COMPS];
+    // Supersaturation gradients, msw (fsw)
+    double[] initialGradientHe = new double[COMPS];
+    double[] initialGradientN2 = new double[COMPS];
+    double[] allowableGradientHe = new double[COMPS];
+    double[] allowableGradientN2 = new double[COMPS];
+    double[] decoGradientHe = new double[COMPS];
+    double[] decoGradientN2 = new double[COMPS];
+    double[] maxActualGradient = new double[COMPS];
+
+    boolean ascentPlanned;              // Allowable gradients are from planAscent()
+    double firstStopDepth;              // First stop of the planned ascent
+    boolean firstStopMade;              // A stop has been made at or above firstStopDepth
+    double decoGradientDepth=Double.NaN;    // Stop depth of the deco gradients, NaN if not set
+
+    int criticalVolumeIterations;       // Passes through the critical volume loop for the last ascent, 0 if none
+
+    // Values copied by snapshot()
+    static final int SNAPSHOT_SIZE = 5 + 15*COMPS + 4 + 1;
+
+    /**
+     * Copies the state into a model snapshot, see AbstractModel.snapshot()
+     * @param s ModelSnapshot
+     */
+    void snapshot(ModelSnapshot s) {
+        s.put(unitsFactor);
+        s.put(pAmb);
+        s.put(pH2O);
+        s.put(otherGases);
+        s.put(gasSwitchTime);
+        s.put(initialRadiusHe);
+        s.put(initialRadiusN2);
+        s.put(adjustedRadiusHe);
+        s.put(adjustedRadiusN2);
+        s.put(maxCrushingHe);
+        s.put(maxCrushingN2);
+        s.put(adjustedCrushingHe);
+        s.put(adjustedCrushingN2);
+        s.put(initialGradientHe);
+        s.put(initialGradientN2);
+        s.put(allowableGradientHe);
+        s.put(allowableGradientN2);
+        s.put(decoGradientHe);
+        s.put(decoGradientN2);
+        s.put(maxActualGradient);
+        s.put(ascentPlanned);
+        s.put(firstStopDepth);
+        s.put(firstStopMade);
+        s.put(decoGradientDepth);
+        s.put(criticalVolumeIterations);
+    }
+
+    /**
+     * Copies the state from a model snapshot, see AbstractModel.restore()
+     * @param s ModelSnapshot
+     */
+    void restore(ModelSnapshot s) {
+        unitsFactor = s.getDouble();
+        pAmb = s.getDouble();
+        pH2O = s.getDouble();
+        otherGases = s.getDouble();
+        gasSwitchTime = s.getDouble();
+        s.get(initialRadiusHe);
+        s.get(initialRadiusN2);
+        s.get(adjustedRadiusHe);
+        s.get(adjustedRadiusN2);
+        s.get(maxCrushingHe);
+        s.get(maxCrushingN2);
+        s.get(adjustedCrushingHe);
+        s.get(adjustedCrushingN2);
+        s.get(initialGradientHe);
+        s.get(initialGradientN2);
+        s.get(allowableGradientHe);
+        s.get(allowableGradientN2);
+        s.get(decoGradientHe);
+        s.get(decoGradientN2);
+        s.get(maxActualGradient);
+        ascentPlanned = s.getBoolean();
+        firstStopDepth = s.getDouble();
+        firstStopMade = s.getBoolean();
+        decoGradientDepth = s.getDouble();
+        criticalVolumeIterations = (int)s.getDouble();
+    }
+
+    /**
+     * Deep copy
+     * @return VpmBState
+     */
+    public Object clone() {
+        try {
+            VpmBState copy = (VpmBState)super.clone();
+            copy.initialRadiusHe = initialRadiusHe.clone();
+            copy.initialRadiusN2 = initialRadiusN2.clone();
+            copy.adjustedRadiusHe = adjustedRadiusHe.clone();
+            copy.adjustedRadiusN2 = adjustedRadiusN2.clone();
+            copy.maxCrushingHe = maxCrushingHe.clone();
+            copy.maxCrushingN2 = maxCrushingN2.clone();
+            copy.adjustedCrushingHe = adjustedCrushingHe.clone();
+            copy.adjustedCrushingN2 = adjustedCrushingN2.clone();
+            copy.initialGradientHe = initialGradientHe.clone();
+            copy.initialGradientN2 = initialGradientN2.clone();
+            copy.allowableGradientHe = allowableGradientHe.clone();
+            copy.allowableGradientN2 = allowableGradientN2.clone();
+            copy.decoGradientHe = decoGradientHe.clone();
+            copy.decoGradientN2 = decoGradientN2.clone();
+            copy.maxActualGradient = maxActualGradient.clone();
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new Error("Never happens");
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * VpmBWorkspace.java
+ *
+ * Scratch arrays used by BakerVpmB while it calculates a schedule.
+ *
+ * BakerVpmB.calculate() and its subroutines used to allocate these as local arrays on every
+ * call. They hold nothing between calls, so a workspace can be kept and handed to each new
+ * BakerVpmB, or the same BakerVpmB used for many plans, without creating garbage. The only
+ * exception is the last radii found by radius_root_finder(), which seed the next call and
+ * do not change its result beyond rounding.
+ * A workspace must only be used by one calculation at a time.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2010 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.model;
+
+public final class VpmBWorkspace {
+    static final int COMPS=16;      // Number of compartments
+    static final int MIXES=10;      // Number of gas mixes and ascent parameter changes
+
+    // calculate()
+    final double[] fraction_oxygen = new double[MIXES];
+    final double[] depth_change = new double[MIXES];
+    final double[] rate_change = new double[MIXES];
+    final double[] step_size_change = new double[MIXES];
+    final int[] mix_change = new int[MIXES];
+    final double[] he_pressure_start_of_ascent = new double[COMPS];
+    final double[] n2_pressure_start_of_ascent = new double[COMPS];
+    final double[] he_pressure_start_of_deco_zone = new double[COMPS];
+    final double[] n2_pressure_start_of_deco_zone = new double[COMPS];
+    final double[] phase_volume_time = new double[COMPS];
+    final double[] last_phase_volume_time = new double[COMPS];
+
+    // critical_volume()
+    final double[] critical_phase_volume_time = new double[COMPS];
+
+    // radius_root_finder(), helium radii in elements 0-15 and nitrogen in 16-31
+    final double[] root_a = new double[2*COMPS];
+    final double[] root_b = new double[2*COMPS];
+    final double[] root_c = new double[2*COMPS];
+    final double[] root_low_bound = new double[2*COMPS];
+    final double[] root_high_bound = new double[2*COMPS];
+    final boolean[] root_solve = new boolean[2*COMPS];
+    final double[] crushing_radius = new double[2*COMPS];   // Last roots of calc_crushing_pressure()
+    final double[] boyle_radius = new double[2*COMPS];      // Last roots of boyles_law_compensation()
+
+    // calc_ascent_ceiling() and calc_deco_ceiling()
+    final double[] compartment_ceiling = new double[COMPS];
+
+    // projected_ascent() and decompression_stop()
+    final double[] initial_helium_pressure = new double[COMPS];
+    final double[] initial_nitrogen_pressure = new double[COMPS];
+    final double[] temp_gas_loading = new double[COMPS];
+    final double[] allowable_gas_loading = new double[COMPS];
+
+    /**
+     * Constructor for VpmBWorkspace
+     */
+    public VpmBWorkspace() {
+    }
+}
@@ -50,7 +50,7 @@ public class ZHL16C extends AbstractZHL16Model implements Serializable
     }
 
     /**
-     * Initialise time constants in Buhlmann tissue array
+     * Initialise time constants in Buhlmann tissue arrays
      */
     protected void setTimeConstants(){
 
@@ -60,40 +60,40 @@ public class ZHL16C extends AbstractZHL16Model implements Serializable
             // a = intercept at zero ambient pressure
             // b = reciprocal of slope of m-value line
             // public Compartment                  (hHe,    hN2,    aHe,    bHe,    aN2,    bN2
-            tissues[0].setCompartmentTimeConstants(1.88,    5.0,    16.189, 0.4770, 11.696, 0.5578);         
-            tissues[1].setCompartmentTimeConstants(3.02,    8.0,    13.83,  0.5747, 10.0,   0.6514);
-            tissues[2].setCompartmentTimeConstants(4.72,    12.5,   11.919, 0.6527, 8.618,  0.7222);
-            tissues[3].setCompartmentTimeConstants(6.99,    18.5,   10.458, 0.7223, 7.562,  0.7825);
-            tissues[4].setCompartmentTimeConstants(10.21,   27.0,   9.220,  0.7582, 6.200,  0.8126);
-            tissues[5].setCompartmentTimeConstants(14.48,   38.3,   8.205,  0.7957, 5.043,   0.8434);
-            tissues[6].setCompartmentTimeConstants(20.53,   54.3,   7.305,  0.8279, 4.410,  0.8693);
-            tissues[7].setCompartmentTimeConstants(29.11,   77.0,   6.502,  0.8553, 4.000,    0.8910);
-            tissues[8].setCompartmentTimeConstants(41.20,   109.0,  5.950,  0.8757, 3.750,  0.9092);
-            tissues[9].setCompartmentTimeConstants(55.19,   146.0,  5.545,  0.8903, 3.500,  0.9222);
-            tissues[10].setCompartmentTimeConstants(70.69,  187.0,  5.333,  0.8997, 3.295,  0.9319);
-            tissues[11].setCompartmentTimeConstants(90.34,  239.0,  5.189,  0.9073, 3.065,  0.9403);
-            tissues[12].setCompartmentTimeConstants(115.29, 305.0,  5.181,  0.9122, 2.835,  0.9477);
-            tissues[13].setCompartmentTimeConstants(147.42, 390.0,  5.176,  0.9171, 2.610,  0.9544);
-            tissues[14].setCompartmentTimeConstants(188.24, 498.0,  5.172,  0.9217, 2.480,  0.9602);
-            tissues[15].setCompartmentTimeConstants(240.03, 635.0,  5.119,  0.9267, 2.327,  0.9653);
+            setCompartmentTimeConstants(0, 1.88,    5.0,    16.189, 0.4770, 11.696, 0.5578);         
+            setCompartmentTimeConstants(1, 3.02,    8.0,    13.83,  0.5747, 10.0,   0.6514);
+            setCompartmentTimeConstants(2, 4.72,    12.5,   11.919, 0.6527, 8.618,  0.7222);
+            setCompartmentTimeConstants(3, 6.99,    18.5,   10.458, 0.7223, 7.562,  0.7825);
+            setCompartmentTimeConstants(4, 10.21,   27.0,   9.220,  0.7582, 6.200,  0.8126);
+            setCompartmentTimeConstants(5, 14.48,   38.3,   8.205,  0.7957, 5.043,   0.8434);
+            setCompartmentTimeConstants(6, 20.53,   54.3,   7.305,  0.8279, 4.410,  0.8693);
+            setCompartmentTimeConstants(7, 29.11,   77.0,   6.502,  0.8553, 4.000,    0.8910);
+            setCompartmentTimeConstants(8, 41.20,   109.0,  5.950,  0.8757, 3.750,  0.9092);
+            setCompartmentTimeConstants(9, 55.19,   146.0,  5.545,  0.8903, 3.500,  0.9222);
+            setCompartmentTimeConstants(10, 70.69,  187.0,  5.333,  0.8997, 3.295,  0.9319);
+            setCompartmentTimeConstants(11, 90.34,  239.0,  5.189,  0.9073, 3.065,  0.9403);
+            setCompartmentTimeConstants(12, 115.29, 305.0,  5.181,  0.9122, 2.835,  0.9477);
+            setCompartmentTimeConstants(13, 147.42, 390.0,  5.176,  0.9171, 2.610,  0.9544);
+            setCompartmentTimeConstants(14, 188.24, 498.0,  5.172,  0.9217, 2.480,  0.9602);
+            setCompartmentTimeConstants(15, 240.03, 635.0,  5.119,  0.9267, 2.327,  0.9653);
         } else if(units == IMPERIAL) {            
             // public Compartment                  (hHe,    hN2,    aHe,    bHe,    aN2,    bN2
-            tissues[0].setCompartmentTimeConstants(1.88,    5.0,    52.73,  0.4770, 38.09,  0.5578); 
-            tissues[1].setCompartmentTimeConstants(3.02,    8.0,    45.04,  0.5747, 32.57,  0.6514);
-            tissues[2].setCompartmentTimeConstants(4.72,    12.5,   38.82,  0.6527, 28.07,  0.7222);
-            tissues[3].setCompartmentTimeConstants(6.99,    18.5,   34.06,  0.7223, 24.63,  0.7825);            
-            tissues[4].setCompartmentTimeConstants(10.21,   27.0,   30.03,  0.7582, 21.71,  0.8126);
-            tissues[5].setCompartmentTimeConstants(14.48,   38.3,   26.72,  0.7957, 18.24,  0.8434);
-            tissues[6].setCompartmentTimeConstants(20.53,   54.3,   23.79,  0.8279, 16.11,  0.8693);
-            tissues[7].setCompartmentTimeConstants(29.11,   77.0,   21.18,  0.8553, 14.66,  0.8910);
-            tissues[8].setCompartmentTimeConstants(41.20,   109.0,  19.38,  0.8757, 13.64,  0.9092);
-            tissues[9].setCompartmentTimeConstants(55.19,   146.0,  18.06,  0.8903, 12.37,  0.9222);
-            tissues[10].setCompartmentTimeConstants(70.69,  187.0,  17.37,  0.8997, 11.39,  0.9319);
-            tissues[11].setCompartmentTimeConstants(90.34,  239.0,  16.90,  0.9073, 10.50,  0.9403);
-            tissues[12].setCompartmentTimeConstants(115.29, 305.0,  16.87,  0.9122, 9.280,  0.9477);
-            tissues[13].setCompartmentTimeConstants(147.42, 390.0,  16.86,  0.9171, 8.910,  0.9544);
-            tissues[14].setCompartmentTimeConstants(188.24, 498.0,  16.84,  0.9217, 8.220,  0.9602);
-            tissues[15].setCompartmentTimeConstants(240.03, 635.0,  16.67,  0.9267, 7.580,  0.9653);            
+            setCompartmentTimeConstants(0, 1.88,    5.0,    52.73,  0.4770, 38.09,  0.5578); 
+            setCompartmentTimeConstants(1, 3.02,    8.0,    45.04,  0.5747, 32.57,  0.6514);
+            setCompartmentTimeConstants(2, 4.72,    12.5,   38.82,  0.6527, 28.07,  0.7222);
+            setCompartmentTimeConstants(3, 6.99,    18.5,   34.06,  0.7223, 24.63,  0.7825);            
+            setCompartmentTimeConstants(4, 10.21,   27.0,   30.03,  0.7582, 21.71,  0.8126);
+            setCompartmentTimeConstants(5, 14.48,   38.3,   26.72,  0.7957, 18.24,  0.8434);
+            setCompartmentTimeConstants(6, 20.53,   54.3,   23.79,  0.8279, 16.11,  0.8693);
+            setCompartmentTimeConstants(7, 29.11,   77.0,   21.18,  0.8553, 14.66,  0.8910);
+            setCompartmentTimeConstants(8, 41.20,   109.0,  19.38,  0.8757, 13.64,  0.9092);
+            setCompartmentTimeConstants(9, 55.19,   146.0,  18.06,  0.8903, 12.37,  0.9222);
+            setCompartmentTimeConstants(10, 70.69,  187.0,  17.37,  0.8997, 11.39,  0.9319);
+            setCompartmentTimeConstants(11, 90.34,  239.0,  16.90,  0.9073, 10.50,  0.9403);
+            setCompartmentTimeConstants(12, 115.29, 305.0,  16.87,  0.9122, 9.280,  0.9477);
+            setCompartmentTimeConstants(13, 147.42, 390.0,  16.86,  0.9171, 8.910,  0.9544);
+            setCompartmentTimeConstants(14, 188.24, 498.0,  16.84,  0.9217, 8.220,  0.9602);
+            setCompartmentTimeConstants(15, 240.03, 635.0,  16.67,  0.9267, 7.580,  0.9653);            
         }
     }
     
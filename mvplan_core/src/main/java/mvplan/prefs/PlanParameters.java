@@ -0,0 +1,221 @@
+/*
+ * PlanParameters.java
+ *
+ *  Immutable copy of the preferences that determine a dive plan.
+ *
+ *  Prefs also holds GUI state and is edited while the application runs. A PlanParameters
+ *  object is taken from Prefs when a plan starts and is never changed, so it can be shared
+ *  between threads and used as a key for plans. Two PlanParameters are equal when every
+ *  value is equal.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+package mvplan.prefs;
+
+import java.io.Serializable;
+
+public final class PlanParameters implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final double gfLow;                 // Gradient factors
+    private final double gfHigh;
+    private final boolean gfMultilevelMode;
+    private final double ascentRate;            // m/min (ft/min), -ve
+    private final double descentRate;
+    private final double lastStopDepth;         // Deco stops
+    private final double stopDepthIncrement;
+    private final double stopTimeIncrement;
+    private final boolean forceAllStops;
+    private final boolean runtimeFlag;          // First segment time is runtime
+    private final double pAmb;                  // Surface pressure msw (fsw)
+    private final double pH2O;                  // Water vapour pressure msw (fsw)
+    private final double pConversion;           // msw (fsw) per bar
+    private final double factorComp;            // Conservatism factors
+    private final double factorDecomp;
+    private final boolean ocMode;               // Ignore setpoints
+    private final boolean ocDeco;               // Open circuit deco gases
+    private final double diveRMV;               // Gas consumption
+    private final double decoRMV;
+    private final int units;                    // Prefs.METRIC or Prefs.IMPERIAL
+    private final String modelClass;            // Decompression model
+
+    /**
+     * Creates PlanParameters from the current values of Prefs
+     * @param prefs Prefs
+     */
+    public PlanParameters(Prefs prefs)
+    {
+        gfLow = prefs.getGfLow();
+        gfHigh = prefs.getGfHigh();
+        gfMultilevelMode = prefs.getGfMultilevelMode();
+        ascentRate = prefs.getAscentRate();
+        descentRate = prefs.getDescentRate();
+        lastStopDepth = prefs.getLastStopDepth();
+        stopDepthIncrement = prefs.getStopDepthIncrement();
+        stopTimeIncrement = prefs.getStopTimeIncrement();
+        forceAllStops = prefs.getForceAllStops();
+        runtimeFlag = prefs.getRuntimeFlag();
+        pAmb = prefs.getPAmb();
+        pH2O = prefs.getPH2O();
+        pConversion = prefs.getPConversion();
+        factorComp = prefs.getFactorComp();
+        factorDecomp = prefs.getFactorDecomp();
+        ocMode = prefs.isOcMode();
+        ocDeco = prefs.getOcDeco();
+        diveRMV = prefs.getDiveRMV();
+        decoRMV = prefs.getDecoRMV();
+        units = prefs.getUnits();
+        modelClass = prefs.getModelClass();
+    }
+
+    /**
+     * Creates a copy of PlanParameters with different gradient factors
+     * @param p PlanParameters to copy
+     * @param gfLow Low gradient factor (0.0 - 1.0)
+     * @param gfHigh High gradient factor (0.0 - 1.0)
+     */
+    private PlanParameters(PlanParameters p, double gfLow, double gfHigh)
+    {
+        this.gfLow = gfLow;
+        this.gfHigh = gfHigh;
+        gfMultilevelMode = p.gfMultilevelMode;
+        ascentRate = p.ascentRate;
+        descentRate = p.descentRate;
+        lastStopDepth = p.lastStopDepth;
+        stopDepthIncrement = p.stopDepthIncrement;
+        stopTimeIncrement = p.stopTimeIncrement;
+        forceAllStops = p.forceAllStops;
+        runtimeFlag = p.runtimeFlag;
+        pAmb = p.pAmb;
+        pH2O = p.pH2O;
+        pConversion = p.pConversion;
+        factorComp = p.factorComp;
+        factorDecomp = p.factorDecomp;
+        ocMode = p.ocMode;
+        ocDeco = p.ocDeco;
+        diveRMV = p.diveRMV;
+        decoRMV = p.decoRMV;
+        units = p.units;
+        modelClass = p.modelClass;
+    }
+
+    /**
+     * Gets a copy of these PlanParameters with different gradient factors
+     * @param gfLow Low gradient factor (0.0 - 1.0)
+     * @param gfHigh High gradient factor (0.0 - 1.0)
+     * @return PlanParameters
+     */
+    public PlanParameters withGradientFactors(double gfLow, double gfHigh)
+    {
+        return new PlanParameters(this, gfLow, gfHigh);
+    }
+
+    /*************** ACCESSORS ****************/
+    public double getGfLow()                { return gfLow; }
+    public double getGfHigh()               { return gfHigh; }
+    public boolean getGfMultilevelMode()    { return gfMultilevelMode; }
+    public double getAscentRate()           { return ascentRate; }
+    public double getDescentRate()          { return descentRate; }
+    public double getLastStopDepth()        { return lastStopDepth; }
+    public double getStopDepthIncrement()   { return stopDepthIncrement; }
+    public double getStopTimeIncrement()    { return stopTimeIncrement; }
+    public boolean getForceAllStops()       { return forceAllStops; }
+    public boolean getRuntimeFlag()         { return runtimeFlag; }
+    public double getPAmb()                 { return pAmb; }
+    public double getPH2O()                 { return pH2O; }
+    public double getPConversion()          { return pConversion; }
+    public double getFactorComp()           { return factorComp; }
+    public double getFactorDecomp()         { return factorDecomp; }
+    public boolean isUsingFactors()         { return !( Double.compare(factorComp, 1.0d)==0  && Double.compare(factorDecomp,1.0d)==0); }
+    public boolean isOcMode()               { return ocMode; }
+    public boolean getOcDeco()              { return ocDeco; }
+    public double getDiveRMV()              { return diveRMV; }
+    public double getDecoRMV()              { return decoRMV; }
+    public int getUnits()                   { return units; }
+    public String getModelClass()           { return modelClass; }
+
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (!(o instanceof PlanParameters)) return false;
+        PlanParameters p = (PlanParameters)o;
+        return Double.compare(gfLow, p.gfLow)==0
+            && Double.compare(gfHigh, p.gfHigh)==0
+            && gfMultilevelMode == p.gfMultilevelMode
+            && Double.compare(ascentRate, p.ascentRate)==0
+            && Double.compare(descentRate, p.descentRate)==0
+            && Double.compare(lastStopDepth, p.lastStopDepth)==0
+            && Double.compare(stopDepthIncrement, p.stopDepthIncrement)==0
+            && Double.compare(stopTimeIncrement, p.stopTimeIncrement)==0
+            && forceAllStops == p.forceAllStops
+            && runtimeFlag == p.runtimeFlag
+            && Double.compare(pAmb, p.pAmb)==0
+            && Double.compare(pH2O, p.pH2O)==0
+            && Double.compare(pConversion, p.pConversion)==0
+            && Double.compare(factorComp, p.factorComp)==0
+            && Double.compare(factorDecomp, p.factorDecomp)==0
+            && ocMode == p.ocMode
+            && ocDeco == p.ocDeco
+            && Double.compare(diveRMV, p.diveRMV)==0
+            && Double.compare(decoRMV, p.decoRMV)==0
+            && units == p.units
+            && (modelClass == null ? p.modelClass == null : modelClass.equals(p.modelClass));
+    }
+
+    public int hashCode()
+    {
+        int h = 17;
+        h = 31*h + hash(gfLow);
+        h = 31*h + hash(gfHigh);
+        h = 31*h + (gfMultilevelMode ? 1 : 0);
+        h = 31*h + hash(ascentRate);
+        h = 31*h + hash(descentRate);
+        h = 31*h + hash(lastStopDepth);
+        h = 31*h + hash(stopDepthIncrement);
+        h = 31*h + hash(stopTimeIncrement);
+        h = 31*h + (forceAllStops ? 1 : 0);
+        h = 31*h + (runtimeFlag ? 1 : 0);
+        h = 31*h + hash(pAmb);
+        h = 31*h + hash(pH2O);
+        h = 31*h + hash(pConversion);
+        h = 31*h + hash(factorComp);
+        h = 31*h + hash(factorDecomp);
+        h = 31*h + (ocMode ? 1 : 0);
+        h = 31*h + (ocDeco ? 1 : 0);
+        h = 31*h + hash(diveRMV);
+        h = 31*h + hash(decoRMV);
+        h = 31*h + units;
+        h = 31*h + (modelClass == null ? 0 : modelClass.hashCode());
+        return h;
+    }
+
+    private static int hash(double d)
+    {
+        long bits = Double.doubleToLongBits(d);
+        return (int)(bits ^ (bits >>> 32));
+    }
+
+    public String toString()
+    {
+        return "PlanParameters[gf="+gfLow+"/"+gfHigh+(gfMultilevelMode?" multilevel":"")+
+                ", rates="+ascentRate+"/"+descentRate+
+                ", stops="+lastStopDepth+"/"+stopDepthIncrement+"/"+stopTimeIncrement+(forceAllStops?" forced":"")+
+                ", runtime="+runtimeFlag+", pAmb="+pAmb+", pH2O="+pH2O+", pConversion="+pConversion+
+                ", factors="+factorComp+"/"+factorDecomp+", ocMode="+ocMode+", ocDeco="+ocDeco+
+                ", rmv="+diveRMV+"/"+decoRMV+", units="+units+", model="+modelClass+"]";
+    }
+}
@@ -27,7 +27,8 @@ package mvplan.segments;
 import java.io.*;
 import mvplan.gas.Gas;
 import mvplan.main.MvplanInstance;
-import mvplan.prefs.Prefs;
+import mvplan.main.PlanningContext;
+import mvplan.prefs.PlanParameters;
 
 public abstract class SegmentAbstract implements Serializable, Cloneable , Comparable<SegmentAbstract>
 {
@@ -76,10 +77,10 @@ public abstract class SegmentAbstract implements Serializable, Cloneable , Compa
     }
 
     /** Gets Equivalent Narcosis Depth (END) in msw (fsw)
+     *  @param prefs Settings of the plan
      *  @return Equivalent Narcosis Depth (END) in msw (fsw)
     */
-    public double getEnd() {        
-    	Prefs prefs = MvplanInstance.getMvplan().getPrefs();
+    public double getEnd(PlanParameters prefs) {
         double pAbsolute = depth + prefs.getPAmb();  // msw (fsw)
         boolean ocMode = prefs.isOcMode();
         
@@ -96,7 +97,7 @@ public abstract class SegmentAbstract implements Serializable, Cloneable , Compa
         } else 
             // Open circuit mode
             ppN2Inspired = (pAbsolute )*fN2;                                            
-        double end = ppN2Inspired /0.79 - MvplanInstance.getMvplan().getPrefs().getPAmb();
+        double end = ppN2Inspired /0.79 - prefs.getPAmb();
         return end > 0.0 ? end : 0.0;       // Only return positive numbers.
     }
     
@@ -209,14 +210,16 @@ public abstract class SegmentAbstract implements Serializable, Cloneable , Compa
     
     /**
      * Gets string representation of segment
+     * @param context Settings of the plan
      * @return String representation of segment
      */
-    public abstract String toStringLong();    
+    public abstract String toStringLong(PlanningContext context);    
     /**
      * Gets volume of gas used in litres (cuft)
+     * @param prefs Settings of the plan
      * @return Volume of gas used
      */
-    public abstract double gasUsed();
+    public abstract double gasUsed(PlanParameters prefs);
     
     public int compareTo(SegmentAbstract o) {
 		int compare = Double.compare(depth, o.depth);
@@ -25,8 +25,8 @@
 package mvplan.segments;
 
 import mvplan.gas.Gas;
-import mvplan.main.MvplanInstance;
-import mvplan.prefs.Prefs;
+import mvplan.main.PlanningContext;
+import mvplan.prefs.PlanParameters;
 
 public class SegmentAscDec extends SegmentAbstract
 {
@@ -60,9 +60,8 @@ public class SegmentAscDec extends SegmentAbstract
     /** Override gasUsed() to determine the gas used in this segment  
      *  @return Gas Used in litres (cuft)
      */
-    public double gasUsed()
+    public double gasUsed(PlanParameters prefs)
     {
-    	Prefs prefs = MvplanInstance.getPrefs();
 		boolean ocMode = prefs.isOcMode();
         if(setpoint>0.0 && !ocMode) return(0.0);
         
@@ -83,9 +82,10 @@ public class SegmentAscDec extends SegmentAbstract
     public double   getRate()   { return rate; }
 
     /** Override toString to return String representation of AscDecSegment
+     * @param context Settings of the plan
      * @return String representation of AscDEcSegment
      */
-    public String toStringLong()
+    public String toStringLong(PlanningContext context)
     {   
         String s;
         int timeMins,timeSeconds;
@@ -94,8 +94,8 @@ public class SegmentAscDec extends SegmentAbstract
         
         if (super.type == ASCENT)  s="ASC "; else s="DESC";
         
-        return String.format("%1$4s:%2$3.0f"+MvplanInstance.getMvplan().getPrefs().getDepthShortString()+" for %3$02d:%4$02d [%5$3.0f] on %6$s, SP: %7$3.1f, END:%8$3.0f"+MvplanInstance.getMvplan().getPrefs().getDepthShortString(),
-              s, depth, timeMins, timeSeconds ,  runTime,  gas.toString(), setpoint, getEnd());
+        return String.format("%1$4s:%2$3.0f"+context.getPrefs().getDepthShortString()+" for %3$02d:%4$02d [%5$3.0f] on %6$s, SP: %7$3.1f, END:%8$3.0f"+context.getPrefs().getDepthShortString(),
+              s, depth, timeMins, timeSeconds ,  runTime,  gas.toString(), setpoint, getEnd(context.getParameters()));
 
     }
 
@@ -25,8 +25,8 @@
 package mvplan.segments;
 
 import mvplan.gas.Gas;
-import mvplan.main.MvplanInstance;
-import mvplan.prefs.Prefs;
+import mvplan.main.PlanningContext;
+import mvplan.prefs.PlanParameters;
 
 /**
  * Segment - describes a Deco Segment, a specialisation of AbstractSegment
@@ -65,9 +65,8 @@ public class SegmentDeco extends SegmentAbstract
     /** Override gasUsed() to determine the gas used in this segment 
      *  @return Gas Used in litres (cuft)
      */
-    public double gasUsed()
+    public double gasUsed(PlanParameters prefs)
     {	
-    	Prefs prefs = MvplanInstance.getPrefs();
 		boolean ocMode = prefs.isOcMode();
         if(setpoint>0.0 && !ocMode) return(0.0);   // No gas used for closed circuit        
         double p;   // pressure
@@ -77,16 +76,17 @@ public class SegmentDeco extends SegmentAbstract
 
 
     /** Override toString to return String representation of DecoSegment
+     * @param context Settings of the plan
      * @return String representation of DecoSegment
      */
-    public String toStringLong()
+    public String toStringLong(PlanningContext context)
     {
         int timeMins,timeSeconds;
         timeMins=(int)time;
         timeSeconds = (int)((time - (double)timeMins)*60.0);
         
-        return String.format("DECO:%1$3.0f"+MvplanInstance.getMvplan().getPrefs().getDepthShortString()+" for %2$02d:%3$02d [%4$3.0f] on %5$s, SP: %6$3.1f, END:%7$3.0f"+MvplanInstance.getMvplan().getPrefs().getDepthShortString()+" M-Value: %8$02.0f%% [%9$02d], GF: %10$02.0f%%",
-                    depth,  timeMins,  timeSeconds,  runTime,  gas.toString(), setpoint, getEnd(), mvMax*100, controlCompartment, gfUsed*100);
+        return String.format("DECO:%1$3.0f"+context.getPrefs().getDepthShortString()+" for %2$02d:%3$02d [%4$3.0f] on %5$s, SP: %6$3.1f, END:%7$3.0f"+context.getPrefs().getDepthShortString()+" M-Value: %8$02.0f%% [%9$02d], GF: %10$02.0f%%",
+                    depth,  timeMins,  timeSeconds,  runTime,  gas.toString(), setpoint, getEnd(context.getParameters()), mvMax*100, controlCompartment, gfUsed*100);
         
     }
     
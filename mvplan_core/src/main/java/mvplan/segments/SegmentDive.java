@@ -25,8 +25,8 @@
 package mvplan.segments;
 
 import mvplan.gas.Gas;
-import mvplan.main.MvplanInstance;
-import mvplan.prefs.Prefs;
+import mvplan.main.PlanningContext;
+import mvplan.prefs.PlanParameters;
 
 public class SegmentDive extends SegmentAbstract 
 {
@@ -58,9 +58,8 @@ public class SegmentDive extends SegmentAbstract
     /** Override gasUsed() to determine the gas used in this segment 
      *  @return gasUsed in litres (cuft)
      */
-    public double gasUsed()
+    public double gasUsed(PlanParameters prefs)
     {
-    	Prefs prefs = MvplanInstance.getPrefs();
 		boolean ocMode = prefs.isOcMode();
         if(setpoint>0.0 && !ocMode) return(0.0);
         double p;   // pressure
@@ -70,16 +69,17 @@ public class SegmentDive extends SegmentAbstract
 
 
     /** Override toString to return text value 
+     * @param context Settings of the plan
      * @return String representation of Dive Segment
      */
-    public String toStringLong()
+    public String toStringLong(PlanningContext context)
     {
         int timeMins,timeSeconds;
         timeMins=(int)time;
         timeSeconds = (int)((time - (double)timeMins)*60.0);
 
-        return String.format("DIVE:%1$3.0f"+MvplanInstance.getMvplan().getPrefs().getDepthShortString()+" for %2$02d:%3$02d [%4$3.0f] on %5$s, SP: %6$3.1f, END:%7$3.0f"+MvplanInstance.getMvplan().getPrefs().getDepthShortString(),
-                    depth,  timeMins,  timeSeconds,  runTime,  gas.toString(), setpoint, getEnd());
+        return String.format("DIVE:%1$3.0f"+context.getPrefs().getDepthShortString()+" for %2$02d:%3$02d [%4$3.0f] on %5$s, SP: %6$3.1f, END:%7$3.0f"+context.getPrefs().getDepthShortString(),
+                    depth,  timeMins,  timeSeconds,  runTime,  gas.toString(), setpoint, getEnd(context.getParameters()));
         
     }
 
@@ -33,7 +33,21 @@ public class GasUtils {
 	 *            for calculations;
 	 */
 	public static double calculateEND(Gas g, double depth) {
-		Prefs p = MvplanInstance.getPrefs();
+		return calculateEND(g, depth, MvplanInstance.getPrefs());
+	}
+
+	/**
+	 * Calculate equivalent narcosis depth (END) of gas at depth using the
+	 * given prefs
+	 * 
+	 * @param g
+	 *            gas that is to be calculated
+	 * @param depth
+	 *            for calculations;
+	 * @param p
+	 *            prefs of the plan
+	 */
+	public static double calculateEND(Gas g, double depth, Prefs p) {
 		double ppAir = .79 + (.21 * p.getOxygenNarcoticLevel());
 
 		double ppF = g.getFN2() + (g.getFO2() * p.getOxygenNarcoticLevel())
@@ -123,7 +137,13 @@ public class GasUtils {
 	 * Method to get a maximum MOD based on O2 fraction
 	 */
 	public static double getMaxMod(double o) {
-		Prefs prefs = MvplanInstance.getPrefs();
+		return getMaxMod(o, MvplanInstance.getPrefs());
+	}
+
+	/**
+	 * Method to get a maximum MOD based on O2 fraction using the given prefs
+	 */
+	public static double getMaxMod(double o, Prefs prefs) {
 		return (prefs.getMaxMOD() / o * prefs.getPConversion())
 				- prefs.getPConversion();
 	}
@@ -132,7 +152,14 @@ public class GasUtils {
 	 * Method to get a MOD based on O2 fraction and maximum ppO2
 	 */
 	public static double getMod(double fO2, double ppO2) {
-		Prefs prefs = MvplanInstance.getPrefs();
+		return getMod(fO2, ppO2, MvplanInstance.getPrefs());
+	}
+
+	/**
+	 * Method to get a MOD based on O2 fraction and maximum ppO2 using the
+	 * given prefs
+	 */
+	public static double getMod(double fO2, double ppO2, Prefs prefs) {
 		return (ppO2 / fO2 * prefs.getPConversion()) - prefs.getPConversion();
 	}
 
@@ -140,7 +167,13 @@ public class GasUtils {
 	 * Method to get a ppO2 based on O2 fraction and MOD
 	 */
 	public static double getppO2(double f, double m) {
-		Prefs prefs = MvplanInstance.getPrefs();
+		return getppO2(f, m, MvplanInstance.getPrefs());
+	}
+
+	/**
+	 * Method to get a ppO2 based on O2 fraction and MOD using the given prefs
+	 */
+	public static double getppO2(double f, double m, Prefs prefs) {
 		return ((m + prefs.getPConversion()) * f / prefs.getPConversion());
 	}
 
@@ -0,0 +1,86 @@
+package mvplan.dive;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mvplan.gas.Gas;
+import mvplan.main.PlanningContext;
+import mvplan.prefs.Prefs;
+import mvplan.segments.SegmentAbstract;
+import mvplan.segments.SegmentDive;
+
+/**
+ * Air dives, with any deco gases, planned in one context. Shared by the dive tests.
+ */
+public class DiveFixture {
+	public final Gas air = new Gas(0.0, 0.21, 56.0);
+	public final List<Gas> gases = new ArrayList<Gas>();
+	public final PlanningContext context;
+
+	public DiveFixture(Prefs prefs, Gas... decoGases) {
+		this(new PlanningContext(prefs), decoGases);
+	}
+
+	public DiveFixture(PlanningContext context, Gas... decoGases) {
+		gases.add(air);
+		for (Gas g : decoGases)
+			gases.add(g);
+		this.context = context;
+	}
+
+	public static Prefs newPrefs() {
+		Prefs p = new Prefs();
+		p.setDefaultPrefs();
+		return p;
+	}
+
+	public static Gas ean50() {
+		return new Gas(0.0, 0.5, 21.0);
+	}
+
+	public static Gas oxygen() {
+		return new Gas(0.0, 1.0, 6.0);
+	}
+
+	/** One level on air */
+	public List<SegmentAbstract> bottom(double depth, double time) {
+		List<SegmentAbstract> segments = new ArrayList<SegmentAbstract>();
+		segments.add(new SegmentDive(depth, time, air, 0.0));
+		return segments;
+	}
+
+	/** 45m for 20 minutes then 30m for 15 minutes on air */
+	public List<SegmentAbstract> multiLevel() {
+		List<SegmentAbstract> segments = bottom(45.0, 20.0);
+		segments.add(new SegmentDive(30.0, 15.0, air, 0.0));
+		return segments;
+	}
+
+	/** 50m, 40m and 30m then 21m for lastTime on air */
+	public List<SegmentAbstract> fourLevels(double lastTime) {
+		List<SegmentAbstract> segments = bottom(50.0, 15.0);
+		segments.add(new SegmentDive(40.0, 10.0, air, 0.0));
+		segments.add(new SegmentDive(30.0, 10.0, air, 0.0));
+		segments.add(new SegmentDive(21.0, lastTime, air, 0.0));
+		return segments;
+	}
+
+	/** Profile of the segments on the gases of the fixture, not yet planned */
+	public Profile profile(List<SegmentAbstract> segments) {
+		return new Profile(segments, gases, null, context);
+	}
+
+	/** Plans the segments, which must succeed */
+	public Profile plan(List<SegmentAbstract> segments) {
+		Profile profile = profile(segments);
+		assertEquals(Profile.SUCCESS, profile.doDive());
+		return profile;
+	}
+
+	public static double runTime(Profile profile) {
+		List<SegmentAbstract> segments = profile.getProfile();
+		return segments.get(segments.size() - 1).getRunTime();
+	}
+}
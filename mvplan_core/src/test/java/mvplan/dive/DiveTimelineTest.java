@@ -0,0 +1,84 @@
+package mvplan.dive;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import static mvplan.dive.DiveFixture.*;
+
+import java.util.List;
+
+import mvplan.main.IMvplan;
+import mvplan.main.MvplanInstance;
+import mvplan.prefs.Prefs;
+import mvplan.segments.SegmentAbstract;
+import mvplan.segments.SegmentDive;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class DiveTimelineTest {
+
+	@Mock IMvplan mv;
+	Prefs appPrefs;
+
+	@Before
+	public void prepeare(){
+		MockitoAnnotations.initMocks(this);
+		MvplanInstance.setMvplan(mv);
+		appPrefs = newPrefs();
+		when(mv.getPrefs()).thenReturn(appPrefs);
+	}
+
+	@Test
+	public void testSamples() {
+		DiveFixture f = new DiveFixture(appPrefs);
+
+		DiveTimeline timeline = new DiveTimeline(f.bottom(40.0, 30.0), f.gases, f.context);
+		assertEquals(Profile.SUCCESS, timeline.calculate());
+		int n = timeline.getNumSamples();
+		// Arrive at 2 minutes, then every minute to a runtime of 30
+		assertEquals(29, n);
+		assertEquals(2.0, timeline.getRunTime(0), 1e-9);
+		assertEquals(30.0, timeline.getRunTime(n - 1), 1e-9);
+		assertTrue(timeline.isWaypoint(0));
+		assertFalse(timeline.isWaypoint(n - 1));
+		assertEquals(40.0, timeline.getDepth(n - 1), 0.0);
+		assertTrue(timeline.getNdl(0) > 0.0);
+		assertEquals(0.0, timeline.getNdl(n - 1), 0.0);
+		for (int i = 1; i < n; i++) {
+			assertTrue(timeline.getRunTime(i) > timeline.getRunTime(i - 1));
+			assertTrue(timeline.getNdl(i) <= timeline.getNdl(i - 1));
+			assertTrue(timeline.getTtsPlus(i) >= timeline.getTts(i));
+		}
+	}
+
+	@Test
+	public void testTtsIsAscentOfPlan() {
+		DiveFixture f = new DiveFixture(appPrefs, ean50());
+		List<SegmentAbstract> segments = f.bottom(40.0, 30.0);
+		segments.add(new SegmentDive(21.0, 10.0, f.air, 0.0));
+
+		DiveTimeline timeline = new DiveTimeline(segments, f.gases, f.context);
+		assertEquals(Profile.SUCCESS, timeline.calculate());
+		int n = timeline.getNumSamples();
+
+		// TTS at the end of the dive is the ascent of the plan
+		Profile plan = f.plan(segments);
+		double end = timeline.getRunTime(n - 1);
+		assertEquals(runTime(plan) - end, timeline.getTts(n - 1), 1e-6);
+
+		// TTS+ is the ascent of the plan with a longer last level
+		segments = f.bottom(40.0, 30.0);
+		segments.add(new SegmentDive(21.0, 10.0 + DiveTimeline.TTS_EXTRA_TIME, f.air, 0.0));
+		Profile longer = f.plan(segments);
+		assertEquals(runTime(longer) - end - DiveTimeline.TTS_EXTRA_TIME, timeline.getTtsPlus(n - 1), 1e-6);
+
+		// The TTS at the end of the bottom time is that of the ascent of a dive ended there
+		Profile bottom = f.plan(f.bottom(40.0, 30.0));
+		for (int i = 0; i < n; i++) {
+			if (timeline.getDepth(i) == 40.0 && Math.abs(timeline.getRunTime(i) - 30.0) < 1e-9)
+				assertEquals(runTime(bottom) - 30.0, timeline.getTts(i), 1e-6);
+		}
+	}
+}
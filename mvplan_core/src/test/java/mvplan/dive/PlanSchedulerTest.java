@@ -0,0 +1,128 @@
+package mvplan.dive;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class PlanSchedulerTest {
+
+	PlanScheduler scheduler;
+	List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+	@After
+	public void stop() {
+		if (scheduler != null)
+			scheduler.shutdown();
+	}
+
+	/** Plan that records its name when run, after waiting for a latch */
+	private Callable<String> plan(final String name, final CountDownLatch wait) {
+		return new Callable<String>() {
+			public String call() throws InterruptedException {
+				if (wait != null)
+					wait.await();
+				order.add(name);
+				return name;
+			}
+		};
+	}
+
+	private void waitRunning(int priority, int n) throws InterruptedException {
+		while (scheduler.getRunning(priority) < n)
+			Thread.sleep(5);
+	}
+
+	@Test
+	public void testInteractiveFirst() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		scheduler = new PlanScheduler(1, 1, 1);
+
+		// Hold the only worker, then queue bulk plans ahead of interactive ones
+		scheduler.submit(PlanScheduler.BULK, plan("hold", release));
+		waitRunning(PlanScheduler.BULK, 1);
+		scheduler.submit(PlanScheduler.BULK, plan("b1", null));
+		Future<String> b2 = scheduler.submit(PlanScheduler.BULK, plan("b2", null));
+		scheduler.submit(PlanScheduler.INTERACTIVE, plan("i1", null));
+		Future<String> last = scheduler.submit(PlanScheduler.INTERACTIVE, plan("i2", null));
+		assertEquals(2, scheduler.getQueued(PlanScheduler.BULK));
+		assertEquals(2, scheduler.getQueued(PlanScheduler.INTERACTIVE));
+
+		release.countDown();
+		assertEquals("i2", last.get());
+		assertEquals(2, scheduler.getCompleted(PlanScheduler.INTERACTIVE));
+		assertEquals("b2", b2.get());
+		assertEquals(3, scheduler.getCompleted(PlanScheduler.BULK));
+		assertEquals("[hold, i1, i2, b1, b2]", order.toString());
+		assertTrue(scheduler.getMaxWaitMillis(PlanScheduler.BULK) >= scheduler.getMeanWaitMillis(PlanScheduler.BULK));
+		assertTrue(scheduler.getMeanWaitMillis(PlanScheduler.INTERACTIVE) > 0.0);
+	}
+
+	@Test
+	public void testBulkProgress() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		scheduler = new PlanScheduler(1, 1, 1);
+
+		scheduler.submit(PlanScheduler.INTERACTIVE, plan("hold", release));
+		waitRunning(PlanScheduler.INTERACTIVE, 1);
+		Future<String> bulk = scheduler.submit(PlanScheduler.BULK, plan("bulk", null));
+		Future<String> last = null;
+		for (int i = 0; i < 20; i++)
+			last = scheduler.submit(PlanScheduler.INTERACTIVE, plan("i" + i, null));
+
+		// A burst of interactive plans, then the bulk plan before the rest
+		release.countDown();
+		bulk.get();
+		last.get();
+		assertEquals(9, order.indexOf("bulk"));
+	}
+
+	@Test
+	public void testLimits() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		scheduler = new PlanScheduler(2);
+
+		// Bulk is held to one worker, the other is free for interactive plans
+		scheduler.submit(PlanScheduler.BULK, plan("b1", release));
+		Future<String> b2 = scheduler.submit(PlanScheduler.BULK, plan("b2", null));
+		waitRunning(PlanScheduler.BULK, 1);
+		assertEquals("i1", scheduler.submit(PlanScheduler.INTERACTIVE, plan("i1", null)).get());
+		assertEquals(1, scheduler.getRunning(PlanScheduler.BULK));
+		assertEquals(1, scheduler.getQueued(PlanScheduler.BULK));
+
+		release.countDown();
+		assertEquals("b2", b2.get());
+		assertEquals("[i1, b1, b2]", order.toString());
+	}
+
+	@Test
+	public void testNestedAndShutdown() throws Exception {
+		scheduler = new PlanScheduler(1);
+
+		// A plan that queues and waits for another runs it on its own worker
+		Future<String> outer = scheduler.submit(PlanScheduler.INTERACTIVE, new Callable<String>() {
+			public String call() throws Exception {
+				return scheduler.submit(PlanScheduler.BULK, plan("inner", null)).get();
+			}
+		});
+		assertEquals("inner", outer.get());
+		assertEquals(1, scheduler.getCompleted(PlanScheduler.INTERACTIVE));
+		assertEquals(1, scheduler.getCompleted(PlanScheduler.BULK));
+		assertEquals(0, scheduler.getRunning(PlanScheduler.BULK));
+
+		scheduler.shutdown();
+		try {
+			scheduler.submit(PlanScheduler.BULK, plan("late", null));
+			fail("Shut down");
+		} catch (RejectedExecutionException e) {
+		}
+	}
+}
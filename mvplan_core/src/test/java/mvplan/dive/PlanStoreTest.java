@@ -0,0 +1,152 @@
+package mvplan.dive;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import static mvplan.dive.DiveFixture.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import mvplan.main.IMvplan;
+import mvplan.main.MvplanInstance;
+import mvplan.prefs.Prefs;
+import mvplan.segments.SegmentAbstract;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class PlanStoreTest {
+
+	@Mock IMvplan mv;
+	Prefs appPrefs;
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void prepeare(){
+		MockitoAnnotations.initMocks(this);
+		MvplanInstance.setMvplan(mv);
+		appPrefs = newPrefs();
+		when(mv.getPrefs()).thenReturn(appPrefs);
+	}
+
+	/** Plans the segments with a plan cache of its own, in front of the store */
+	private Profile plan(DiveFixture f, List<SegmentAbstract> segments, PlanStore store) {
+		PlanCache cache = new PlanCache(10);
+		cache.setStore(store);
+		Profile profile = f.profile(segments);
+		profile.setPlanCache(cache);
+		assertEquals(Profile.SUCCESS, profile.doDive());
+		return profile;
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		DiveFixture f = new DiveFixture(appPrefs, oxygen());
+		File dir = new File(folder.getRoot(), "plans");
+
+		Profile first = plan(f, f.multiLevel(), new PlanStore(dir, 2, 1000000L));
+
+		// A new run finds the plan on disk
+		PlanCache cold = new PlanCache(10);
+		PlanStore store = new PlanStore(dir, 2, 1000000L);
+		assertEquals(1, store.size());
+		cold.setStore(store);
+		Profile second = f.profile(f.multiLevel());
+		second.setPlanCache(cold);
+		assertTrue(second.restoreCachedDive());
+		assertEquals(1, store.getHits());
+		List<SegmentAbstract> expected = first.getProfile();
+		List<SegmentAbstract> actual = second.getProfile();
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getType(), actual.get(i).getType());
+			assertEquals(expected.get(i).getDepth(), actual.get(i).getDepth(), 0.0);
+			assertEquals(expected.get(i).getRunTime(), actual.get(i).getRunTime(), 0.0);
+		}
+		assertSame(f.air, actual.get(actual.size() - 1).getGas());
+		assertEquals(first.getModel().getOxTox().getCns(), second.getModel().getOxTox().getCns(), 0.0);
+		assertEquals(first.getModel().ceiling(), second.getModel().ceiling(), 0.0);
+	}
+
+	@Test
+	public void testEvictionAndDamagedPlans() throws IOException {
+		DiveFixture f = new DiveFixture(appPrefs, oxygen());
+		File dir = new File(folder.getRoot(), "plans");
+		PlanStore store = new PlanStore(dir, 2, 1000000L);
+
+		// Least recently used plan is dropped
+		Profile first = plan(f, f.multiLevel(), store);
+		Profile other = plan(f, f.fourLevels(10.0), store);
+		Profile deeper = plan(f, f.fourLevels(20.0), store);
+		assertEquals(2, store.size());
+		assertNull(store.get(first.getFingerprint()));
+
+		// A damaged plan is not used
+		File[] files = dir.listFiles();
+		for (int i = 0; i < files.length; i++) {
+			if (files[i].getName().endsWith(".plan")) {
+				FileOutputStream out = new FileOutputStream(files[i]);
+				out.write(new byte[] { 1, 2, 3 });
+				out.close();
+			}
+		}
+		assertNull(store.get(other.getFingerprint()));
+		assertNull(store.get(deeper.getFingerprint()));
+		assertEquals(0, store.size());
+		assertEquals(0, store.getTotalBytes());
+	}
+
+	@Test
+	public void testOtherVersionMisses() throws IOException {
+		DiveFixture f = new DiveFixture(appPrefs);
+		File dir = new File(folder.getRoot(), "plans");
+
+		Profile first = plan(f, f.multiLevel(), new PlanStore(dir, 2, 1000000L, "1.6 TEST"));
+		assertNotNull(new PlanStore(dir, 2, 1000000L, "1.6 TEST").get(first.getFingerprint()));
+
+		// Plans of another version are not used and are deleted
+		PlanStore store = new PlanStore(dir, 2, 1000000L, "1.7 TEST");
+		assertEquals(1, store.size());
+		assertNull(store.get(first.getFingerprint()));
+		assertEquals(1, store.getMisses());
+		assertEquals(0, store.size());
+		store.flush();
+		assertNull(new PlanStore(dir, 2, 1000000L, "1.6 TEST").get(first.getFingerprint()));
+	}
+
+	@Test
+	public void testIndex() throws IOException {
+		DiveFixture f = new DiveFixture(appPrefs);
+		File dir = new File(folder.getRoot(), "plans");
+		File index = new File(dir, "plans.idx");
+
+		PlanStore written = new PlanStore(dir, 2, 1000000L);
+		Profile first = plan(f, f.multiLevel(), written);
+		Profile second = plan(f, f.fourLevels(10.0), written);
+		assertFalse(index.exists());
+
+		// Plans put since the last flush are found in the directory
+		PlanStore store = new PlanStore(dir, 2, 1000000L);
+		assertEquals(2, store.size());
+		assertEquals(written.getTotalBytes(), store.getTotalBytes());
+		assertNotNull(store.get(first.getFingerprint()));
+		store.flush();
+		assertTrue(index.exists());
+
+		// Order of use comes from the index, the first plan was used last
+		store = new PlanStore(dir, 1, 1000000L);
+		assertNotNull(store.get(first.getFingerprint()));
+		assertNull(store.get(second.getFingerprint()));
+
+		// The index still lists the dropped plan, its missing file drops it
+		store = new PlanStore(dir, 2, 1000000L);
+		assertEquals(1, store.size());
+		assertNotNull(store.get(first.getFingerprint()));
+	}
+}
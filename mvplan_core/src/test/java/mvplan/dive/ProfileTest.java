@@ -0,0 +1,223 @@
+package mvplan.dive;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import static mvplan.dive.DiveFixture.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mvplan.gas.Gas;
+import mvplan.main.IMvplan;
+import mvplan.main.MvplanInstance;
+import mvplan.main.PlanningContext;
+import mvplan.prefs.Prefs;
+import mvplan.segments.SegmentAbstract;
+import mvplan.segments.SegmentDive;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class ProfileTest {
+
+	@Mock IMvplan mv;
+	Prefs appPrefs;
+
+	@Before
+	public void prepeare(){
+		MockitoAnnotations.initMocks(this);
+		MvplanInstance.setMvplan(mv);
+		appPrefs = newPrefs();
+		when(mv.getPrefs()).thenReturn(appPrefs);
+	}
+
+	private Profile dive(DiveFixture f) {
+		Profile profile = f.plan(f.bottom(40.0, 30.0));
+		profile.doGasCalcs();
+		return profile;
+	}
+
+	@Test
+	public void testContextPrefsUsed() {
+		Prefs prefs = newPrefs();
+		prefs.setGfLow(0.2);
+		prefs.setGfHigh(0.6);
+		Profile conservative = dive(new DiveFixture(prefs));
+		Profile standard = dive(new DiveFixture(appPrefs));
+
+		assertSame(prefs, conservative.getPrefs());
+		assertEquals(0.6, conservative.getModel().getGradient().getGfHigh(), 0.0);
+		assertTrue(runTime(conservative) > runTime(standard));
+
+		// Same result as taking the prefs from MvplanInstance
+		assertEquals(runTime(standard), runTime(dive(new DiveFixture(PlanningContext.getDefault()))), 0.0);
+	}
+
+	@Test
+	public void testCheckpoint() {
+		DiveFixture f = new DiveFixture(appPrefs, DiveFixture.oxygen());
+
+		Profile whole = f.plan(f.multiLevel());
+
+		Profile start = f.profile(f.multiLevel());
+		assertEquals(Profile.SUCCESS, start.doDiveTo(1));
+		ProfileCheckpoint checkpoint = start.checkpoint();
+		assertEquals(30.0, checkpoint.getDepth(), 0.0);
+
+		Profile restored = f.profile(f.multiLevel());
+		restored.restore(checkpoint);
+		assertEquals(Profile.SUCCESS, restored.continueDive());
+
+		List<SegmentAbstract> expected = whole.getProfile();
+		List<SegmentAbstract> actual = restored.getProfile();
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getDepth(), actual.get(i).getDepth(), 0.0);
+			assertEquals(expected.get(i).getRunTime(), actual.get(i).getRunTime(), 0.0);
+			assertEquals(expected.get(i).getGas().getFO2(), actual.get(i).getGas().getFO2(), 0.0);
+		}
+		assertEquals(whole.getModel().getOxTox().getCns(), restored.getModel().getOxTox().getCns(), 0.0);
+	}
+
+	@Test
+	public void testReplanFromUnchangedSegments() {
+		DiveFixture f = new DiveFixture(appPrefs, DiveFixture.ean50());
+
+		Profile previous = f.profile(f.fourLevels(10.0));
+		previous.setSegmentCheckpoints(true);
+		assertEquals(Profile.SUCCESS, previous.doDive(null));
+		assertEquals(0, previous.getReusedSegments());
+
+		// Only the last level has changed
+		Profile replanned = f.profile(f.fourLevels(25.0));
+		replanned.setSegmentCheckpoints(true);
+		assertEquals(Profile.SUCCESS, replanned.doDive(previous));
+		assertEquals(3, replanned.getReusedSegments());
+
+		Profile whole = f.plan(f.fourLevels(25.0));
+		List<SegmentAbstract> expected = whole.getProfile();
+		List<SegmentAbstract> actual = replanned.getProfile();
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getDepth(), actual.get(i).getDepth(), 0.0);
+			assertEquals(expected.get(i).getRunTime(), actual.get(i).getRunTime(), 0.0);
+			assertEquals(expected.get(i).getGas().getFO2(), actual.get(i).getGas().getFO2(), 0.0);
+		}
+		assertEquals(whole.getModel().getOxTox().getCns(), replanned.getModel().getOxTox().getCns(), 0.0);
+
+		// The replanned profile has checkpoints for every segment, so an unchanged dive
+		// only needs the ascent
+		Profile again = f.profile(f.fourLevels(25.0));
+		assertEquals(Profile.SUCCESS, again.doDive(replanned));
+		assertEquals(4, again.getReusedSegments());
+		assertEquals(runTime(whole), runTime(again), 0.0);
+
+		// Other settings start from the surface
+		Prefs prefs = newPrefs();
+		prefs.setGfHigh(0.7);
+		Profile changed = new Profile(f.fourLevels(25.0), f.gases, null, new PlanningContext(prefs));
+		assertEquals(Profile.SUCCESS, changed.doDive(replanned));
+		assertEquals(0, changed.getReusedSegments());
+	}
+
+	@Test
+	public void testPlanCache() {
+		DiveFixture f = new DiveFixture(appPrefs, DiveFixture.oxygen());
+		PlanCache cache = new PlanCache(2);
+
+		Profile first = f.profile(f.multiLevel());
+		first.setPlanCache(cache);
+		assertEquals(Profile.SUCCESS, first.doDive());
+		assertEquals(0, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.size());
+
+		// Gas consumption does not change the schedule
+		Prefs prefs = newPrefs();
+		prefs.setDiveRMV(30.0);
+		Profile second = new Profile(f.multiLevel(), f.gases, null, new PlanningContext(prefs));
+		second.setPlanCache(cache);
+		assertEquals(first.getFingerprint(), second.getFingerprint());
+		assertEquals(Profile.SUCCESS, second.doDive());
+		assertEquals(1, cache.getHits());
+		List<SegmentAbstract> expected = first.getProfile();
+		List<SegmentAbstract> actual = second.getProfile();
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertNotSame(expected.get(i), actual.get(i));
+			assertEquals(expected.get(i).getDepth(), actual.get(i).getDepth(), 0.0);
+			assertEquals(expected.get(i).getRunTime(), actual.get(i).getRunTime(), 0.0);
+		}
+		assertNotSame(first.getModel(), second.getModel());
+		assertEquals(first.getModel().getOxTox().getCns(), second.getModel().getOxTox().getCns(), 0.0);
+
+		// Least recently used plan is dropped
+		Profile other = f.profile(f.fourLevels(10.0));
+		other.setPlanCache(cache);
+		assertEquals(Profile.SUCCESS, other.doDive());
+		Profile deeper = f.profile(f.fourLevels(20.0));
+		deeper.setPlanCache(cache);
+		assertEquals(Profile.SUCCESS, deeper.doDive());
+		assertEquals(2, cache.size());
+		Profile again = f.profile(f.multiLevel());
+		again.setPlanCache(cache);
+		assertFalse(again.restoreCachedDive());
+		assertEquals(1, cache.getHits());
+		assertEquals(4, cache.getMisses());
+	}
+
+	/** Checks the deco stops of a plan as {depth, time, fO2} and its runtime */
+	private void assertStops(double[][] expected, double expectedRunTime, Profile profile) {
+		List<double[]> stops = new ArrayList<double[]>();
+		for (SegmentAbstract s : profile.getProfile()) {
+			if (s.getType() == SegmentAbstract.DECO)
+				stops.add(new double[] { s.getDepth(), s.getTime(), s.getGas().getFO2() });
+		}
+		assertEquals(expected.length, stops.size());
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i][0], stops.get(i)[0], 0.0);
+			assertEquals(expected[i][1], stops.get(i)[1], 1e-9);
+			assertEquals(expected[i][2], stops.get(i)[2], 0.0);
+		}
+		assertEquals(expectedRunTime, runTime(profile), 1e-9);
+	}
+
+	// Stops of the one minute stop loop that the analytic stop length replaced
+
+	@Test
+	public void testTrimixStops() {
+		Prefs prefs = newPrefs();
+		prefs.setOcDeco(true);
+		Gas tx = new Gas(0.45, 0.18, 70.0);
+		List<SegmentAbstract> segments = new ArrayList<SegmentAbstract>();
+		List<Gas> gases = new ArrayList<Gas>();
+		segments.add(new SegmentDive(60.0, 25.0, tx, 0.0));
+		gases.add(tx);
+		gases.add(new Gas(0.0, 0.5, 21.0));
+		gases.add(new Gas(0.0, 1.0, 6.0));
+		Profile profile = new Profile(segments, gases, null, new PlanningContext(prefs));
+		assertEquals(Profile.SUCCESS, profile.doDive());
+
+		assertStops(new double[][] {
+				{ 33.0, 0.3, 0.18 }, { 30.0, 1.0, 0.18 }, { 27.0, 2.0, 0.18 }, { 24.0, 2.0, 0.18 },
+				{ 21.0, 2.0, 0.5 }, { 18.0, 2.0, 0.5 }, { 15.0, 2.0, 0.5 }, { 12.0, 5.0, 0.5 },
+				{ 9.0, 6.0, 0.5 }, { 6.0, 8.0, 1.0 }, { 3.0, 15.0, 1.0 } }, 73.0, profile);
+	}
+
+	@Test
+	public void testGfMultilevelStops() {
+		Prefs prefs = newPrefs();
+		prefs.setOcDeco(true);
+		prefs.setGfMultilevelMode(true);
+		DiveFixture f = new DiveFixture(prefs, DiveFixture.oxygen());
+		List<SegmentAbstract> segments = f.multiLevel();
+		segments.add(new SegmentDive(12.0, 10.0, f.air, 0.0));
+		Profile profile = f.plan(segments);
+
+		assertStops(new double[][] {
+				{ 18.0, 1.3, 0.21 }, { 15.0, 7.0, 0.21 }, { 12.0, 1.0, 0.21 }, { 9.0, 2.0, 0.21 },
+				{ 6.0, 6.0, 1.0 }, { 3.0, 8.0, 1.0 } }, 73.0, profile);
+	}
+}
@@ -0,0 +1,102 @@
+package mvplan.dive;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mvplan.gas.Gas;
+import mvplan.main.IMvplan;
+import mvplan.main.MvplanInstance;
+import mvplan.prefs.Prefs;
+import mvplan.segments.SegmentAbstract;
+import mvplan.segments.SegmentDive;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class TableGeneratorModelTest {
+
+	@Mock IMvplan mv;
+
+	@Before
+	public void prepeare(){
+		MockitoAnnotations.initMocks(this);
+		MvplanInstance.setMvplan(mv);
+		Prefs prefs = new Prefs();
+		prefs.setDefaultPrefs();
+		when(mv.getPrefs()).thenReturn(prefs);
+	}
+
+	private TableGeneratorModel table(int threads) {
+		return table(threads, null);
+	}
+
+	private TableGeneratorModel table(int threads, PlanCache cache) {
+		return table(threads, cache, null);
+	}
+
+	private TableGeneratorModel table(int threads, PlanCache cache, PlanScheduler scheduler) {
+		Gas tx = new Gas(0.45, 0.18, 70.0);
+		List<SegmentAbstract> segments = new ArrayList<SegmentAbstract>();
+		List<Gas> gases = new ArrayList<Gas>();
+		segments.add(new SegmentDive(70.0, 20.0, tx, 0.0));
+		gases.add(tx);
+		gases.add(new Gas(0.0, 0.5, 21.0));
+		gases.add(new Gas(0.0, 1.0, 6.0));
+		TableGeneratorModel t = new TableGeneratorModel(segments, gases, new int[] {0, 2, 4, 6, 8, 10});
+		t.setThreads(threads);
+		t.setPlanCache(cache);
+		t.setScheduler(scheduler);
+		assertEquals(Profile.SUCCESS, t.doMultiDive());
+		return t;
+	}
+
+	private void assertSameTable(TableGeneratorModel sequential, TableGeneratorModel parallel) {
+		assertEquals(sequential.getAscentRow(), parallel.getAscentRow());
+		assertEquals(sequential.getMaxCNS(), parallel.getMaxCNS(), 0.0);
+		assertEquals(sequential.getMaxPO2(), parallel.getMaxPO2(), 0.0);
+		SegmentAbstract[][] expected = sequential.getSegmentArray();
+		SegmentAbstract[][] actual = parallel.getSegmentArray();
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i].length, actual[i].length);
+			for (int j = 0; j < expected[i].length; j++) {
+				if (expected[i][j] == null) {
+					assertNull(actual[i][j]);
+				} else {
+					assertEquals(expected[i][j].getDepth(), actual[i][j].getDepth(), 0.0);
+					assertEquals(expected[i][j].getRunTime(), actual[i][j].getRunTime(), 0.0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testParallelSameAsSequential() {
+		assertSameTable(table(1), table(4));
+	}
+
+	@Test
+	public void testCachedTable() {
+		PlanCache cache = new PlanCache(10);
+		TableGeneratorModel first = table(4, cache);
+		assertEquals(6, cache.getMisses());
+		assertEquals(6, cache.size());
+		TableGeneratorModel second = table(4, cache);
+		assertEquals(6, cache.getHits());
+		assertSameTable(first, second);
+	}
+
+	@Test
+	public void testScheduledSameAsSequential() {
+		PlanScheduler scheduler = new PlanScheduler(3);
+		assertSameTable(table(1), table(1, null, scheduler));
+		assertEquals(6, scheduler.getCompleted(PlanScheduler.BULK));
+		assertEquals(0, scheduler.getCompleted(PlanScheduler.INTERACTIVE));
+		scheduler.shutdown();
+	}
+}
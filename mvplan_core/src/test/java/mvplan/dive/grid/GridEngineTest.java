@@ -0,0 +1,176 @@
+package mvplan.dive.grid;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import mvplan.dive.DiveFixture;
+import mvplan.dive.PlanCache;
+import mvplan.dive.PlanScheduler;
+import mvplan.dive.Profile;
+import mvplan.gas.Gas;
+import mvplan.main.IMvplan;
+import mvplan.main.MvplanInstance;
+import mvplan.main.PlanningContext;
+import mvplan.prefs.Prefs;
+import mvplan.segments.SegmentAbstract;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class GridEngineTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+	@Mock IMvplan mv;
+	Prefs prefs;
+
+	@Before
+	public void prepeare(){
+		MockitoAnnotations.initMocks(this);
+		MvplanInstance.setMvplan(mv);
+		prefs = DiveFixture.newPrefs();
+		when(mv.getPrefs()).thenReturn(prefs);
+	}
+
+	private GridSpec spec() {
+		GridSpec spec = new GridSpec();
+		spec.setDepths(GridSpec.range(30.0, 50.0, 10.0));
+		spec.setTimes(GridSpec.range(10.0, 30.0, 10.0));
+		spec.addBottomGas(new Gas(0.0, 0.21, 56.0));
+		spec.addBottomGas(new Gas(0.0, 0.32, 33.0));
+		spec.addDecoGas(new Gas(0.0, 0.5, 21.0));
+		spec.addDecoGas(new Gas(0.0, 1.0, 6.0));
+		spec.addGradientFactors(0.3, 0.8);
+		spec.addGradientFactors(0.5, 0.9);
+		return spec;
+	}
+
+	@Test
+	public void testRange() {
+		double[] r = GridSpec.range(10.0, 30.0, 5.0);
+		assertEquals(5, r.length);
+		assertEquals(30.0, r[4], 0.0);
+		assertEquals(0, GridSpec.range(10.0, 5.0, 5.0).length);
+	}
+
+	@Test
+	public void testSameAsProfile() {
+		GridSpec spec = spec();
+		GridResult result = new GridEngine(new PlanningContext(prefs)).run(spec);
+		assertEquals(36, result.getNumCells());
+
+		// 40m for 20min on air at 50/90
+		int cell = spec.cellIndex(1, 1, 0, 1);
+		Gas ean50 = DiveFixture.ean50();
+		prefs.setGfLow(0.5);
+		prefs.setGfHigh(0.9);
+		DiveFixture f = new DiveFixture(prefs, ean50, DiveFixture.oxygen());
+		Profile p = f.plan(f.bottom(40.0, 20.0));
+		p.doGasCalcs();
+
+		List<SegmentAbstract> out = p.getProfile();
+		assertEquals(Profile.SUCCESS, result.getReturnCode(cell));
+		assertEquals(out.get(out.size()-1).getRunTime(), result.getRunTime(cell), 0.0);
+		assertEquals(p.getModel().getOxTox().getCns(), result.getCns(cell), 0.0);
+		assertEquals(f.air.getVolume(), result.getGasVolume(cell, 0), 0.0);
+		assertEquals(ean50.getVolume(), result.getGasVolume(cell, 1), 0.0);
+		int stop = 0;
+		for (SegmentAbstract s : out) {
+			if (s.getType() == SegmentAbstract.DECO) {
+				assertEquals(s.getDepth(), result.getStopDepth(cell, stop), 0.0);
+				assertEquals(s.getTime(), result.getStopTime(cell, stop), 0.0);
+				stop++;
+			}
+		}
+		assertEquals(stop, result.getNumStops(cell));
+		assertTrue(result.getTts(cell) > 0.0);
+	}
+
+	@Test
+	public void testThreadsSameAsSequential() {
+		GridEngine engine = new GridEngine(new PlanningContext(prefs));
+		engine.setThreads(1);
+		GridResult sequential = engine.run(spec());
+		engine.setThreads(4);
+		assertSameGrid(sequential, engine.run(spec()));
+
+		PlanScheduler scheduler = new PlanScheduler(3);
+		engine.setScheduler(scheduler);
+		assertSameGrid(sequential, engine.run(spec()));
+		assertEquals(sequential.getNumCells(), scheduler.getCompleted(PlanScheduler.BULK));
+		scheduler.shutdown();
+	}
+
+	private void assertSameGrid(GridResult sequential, GridResult parallel) {
+		for (int i = 0; i < sequential.getNumCells(); i++) {
+			assertEquals(sequential.getReturnCode(i), parallel.getReturnCode(i));
+			assertEquals(sequential.getRunTime(i), parallel.getRunTime(i), 0.0);
+			assertEquals(sequential.getTts(i), parallel.getTts(i), 0.0);
+			assertEquals(sequential.getNumStops(i), parallel.getNumStops(i));
+			assertEquals(sequential.getGasVolume(i, 2), parallel.getGasVolume(i, 2), 0.0);
+		}
+	}
+
+	@Test
+	public void testJournal() throws IOException {
+		File file = new File(folder.getRoot(), "grid.journal");
+		GridEngine engine = new GridEngine(new PlanningContext(prefs));
+		engine.setThreads(2);
+		engine.setJournal(file);
+		GridResult first = engine.run(spec());
+		long complete = file.length();
+
+		// All cells restored from the journal, none planned
+		PlanCache cache = new PlanCache(100);
+		engine.setPlanCache(cache);
+		assertSameGrid(first, engine.run(spec()));
+		assertEquals(0, cache.getMisses());
+		assertEquals(complete, file.length());
+
+		// Stopped while writing the last record, only that cell is planned again
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(complete - 10);
+		raf.close();
+		assertSameGrid(first, engine.run(spec()));
+		assertEquals(1, cache.getMisses());
+		assertEquals(complete, file.length());
+
+		// A different grid starts the journal afresh
+		GridSpec other = spec();
+		other.addGradientFactors(0.2, 0.7);
+		cache = new PlanCache(100);
+		engine.setPlanCache(cache);
+		assertEquals(Profile.SUCCESS, engine.run(other).getReturnCode(0));
+		assertEquals(other.getNumCells(), cache.getMisses());
+	}
+
+	@Test
+	public void testScheduledCellError() {
+		GridSpec spec = spec();
+		spec.addBottomGas(new Gas(0.0, 0.28, 40.0) {
+			private static final long serialVersionUID = 1L;
+			public Object clone() {
+				throw new AssertionError("Broken gas");
+			}
+		});
+		GridEngine engine = new GridEngine(new PlanningContext(prefs));
+		PlanScheduler scheduler = new PlanScheduler(2);
+		engine.setScheduler(scheduler);
+		GridResult result = engine.run(spec);
+		scheduler.shutdown();
+
+		// Cells of the broken gas fail, the others are all planned
+		for (int i = 0; i < result.getNumCells(); i++) {
+			int gas = (i / spec.getNumGradientFactors()) % spec.getBottomGases().size();
+			assertEquals(gas == 2 ? Profile.PROCESSING_ERROR : Profile.SUCCESS, result.getReturnCode(i));
+		}
+	}
+}
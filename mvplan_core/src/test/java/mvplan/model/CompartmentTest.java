@@ -0,0 +1,73 @@
+package mvplan.model;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import mvplan.main.IMvplan;
+import mvplan.main.MvplanInstance;
+import mvplan.prefs.Prefs;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class CompartmentTest {
+
+	@Mock IMvplan mv;
+	@Mock Prefs p;
+
+	@Before
+	public void prepeare(){
+		MockitoAnnotations.initMocks(this);
+		when(mv.getPrefs()).thenReturn(p);
+		when(p.getFactorComp()).thenReturn(1.0);
+		when(p.getFactorDecomp()).thenReturn(1.0);
+		MvplanInstance.setMvplan(mv);
+	}
+
+	private Compartment compartment(double ppHe, double ppN2) {
+		Compartment c = new Compartment();
+		c.setCompartmentTimeConstants(10.21, 27.0, 9.220, 0.7582, 6.667, 0.8126);
+		c.setPpHe(ppHe);
+		c.setPpN2(ppN2);
+		return c;
+	}
+
+	private void assertCrossing(double ppHe, double ppN2, double ppHeInspired, double ppN2Inspired, double pTarget, double gf)
+			throws ModelStateException {
+		double t = compartment(ppHe, ppN2).getTimeToMaxAmb(ppHeInspired, ppN2Inspired, pTarget, gf, 5000.0);
+		assertTrue(t > 0.0 && !Double.isInfinite(t));
+		Compartment before = compartment(ppHe, ppN2);
+		before.constDepth(ppHeInspired, ppN2Inspired, t - 0.001);
+		assertTrue(before.getMaxAmb(gf) > pTarget);
+		Compartment after = compartment(ppHe, ppN2);
+		after.constDepth(ppHeInspired, ppN2Inspired, t + 0.001);
+		assertTrue(after.getMaxAmb(gf) <= pTarget);
+	}
+
+	@Test
+	public void testTimeToMaxAmbNitrogen() throws ModelStateException {
+		assertCrossing(0.0, 40.0, 0.0, 10.0, 20.0, 0.8);
+	}
+
+	@Test
+	public void testTimeToMaxAmbMixed() throws ModelStateException {
+		assertCrossing(25.0, 30.0, 5.0, 12.0, 24.0, 0.5);
+	}
+
+	@Test
+	public void testTimeToMaxAmbAlreadyTolerated() {
+		assertEquals(0.0, compartment(0.0, 10.0).getTimeToMaxAmb(0.0, 7.9, 10.0, 0.8, 5000.0), 0.0);
+	}
+
+	@Test
+	public void testTimeToMaxAmbNeverReached() {
+		assertTrue(Double.isInfinite(compartment(0.0, 40.0).getTimeToMaxAmb(0.0, 30.0, 12.0, 0.3, 5000.0)));
+	}
+
+	@Test
+	public void testTimeToMaxAmbOnGassing() {
+		assertTrue(Double.isNaN(compartment(0.0, 40.0).getTimeToMaxAmb(10.0, 30.0, 20.0, 0.8, 5000.0)));
+	}
+}
@@ -0,0 +1,361 @@
+package mvplan.model;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mvplan.dive.Profile;
+import mvplan.gas.Gas;
+import mvplan.main.IMvplan;
+import mvplan.main.MvplanInstance;
+import mvplan.main.PlanningContext;
+import mvplan.prefs.Prefs;
+import mvplan.segments.SegmentAbstract;
+import mvplan.segments.SegmentDeco;
+import mvplan.segments.SegmentDive;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class VpmBTest {
+
+	@Mock IMvplan mv;
+	Prefs prefs;
+
+	@Before
+	public void prepeare(){
+		MockitoAnnotations.initMocks(this);
+		MvplanInstance.setMvplan(mv);
+		prefs = newPrefs("mvplan.model.ZHL16B");
+		when(mv.getPrefs()).thenReturn(prefs);
+	}
+
+	private Prefs newPrefs(String modelClass) {
+		Prefs p = new Prefs();
+		p.setDefaultPrefs();
+		p.setModelClass(modelClass);
+		p.setGfLow(1.0);
+		p.setGfHigh(1.0);
+		return p;
+	}
+
+	private Profile dive(String modelClass) {
+		Gas tx = new Gas(0.35, 0.21, 66.0);
+		List<SegmentAbstract> segments = new ArrayList<SegmentAbstract>();
+		List<Gas> gases = new ArrayList<Gas>();
+		segments.add(new SegmentDive(60.0, 25.0, tx, 0.0));
+		gases.add(tx);
+		gases.add(new Gas(0.0, 0.5, 21.0));
+		gases.add(new Gas(0.0, 1.0, 6.0));
+		Profile profile = new Profile(segments, gases, null, new PlanningContext(newPrefs(modelClass)));
+		assertEquals(Profile.SUCCESS, profile.doDive());
+		return profile;
+	}
+
+	private double firstStop(Profile profile) {
+		for (SegmentAbstract s : profile.getProfile())
+			if (s instanceof SegmentDeco)
+				return s.getDepth();
+		return 0.0;
+	}
+
+	private double runTime(Profile profile) {
+		List<SegmentAbstract> segments = profile.getProfile();
+		return segments.get(segments.size() - 1).getRunTime();
+	}
+
+	@Test
+	public void testDeeperStopsThanBuhlmann() {
+		Profile vpm = dive("mvplan.model.VpmB");
+		Profile zhl = dive("mvplan.model.ZHL16B");
+
+		assertTrue(vpm.getModel() instanceof VpmB);
+		assertEquals("VPM-B", vpm.getModel().getModelName());
+		assertTrue(firstStop(vpm) > firstStop(zhl));
+		assertTrue(runTime(vpm) > 0.0);
+		// Surfaced clear of the bubble model ceiling
+		assertEquals(0.0, vpm.getModel().ceiling(), 0.0);
+	}
+
+	@Test
+	public void testRepeatable() {
+		// The engine and its workspace are reused for the second plan
+		Profile first = dive("mvplan.model.VpmB");
+		Profile second = dive("mvplan.model.VpmB");
+		List<SegmentAbstract> expected = first.getProfile();
+		List<SegmentAbstract> actual = second.getProfile();
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getDepth(), actual.get(i).getDepth(), 0.0);
+			assertEquals(expected.get(i).getRunTime(), actual.get(i).getRunTime(), 0.0);
+		}
+	}
+
+	@Test
+	public void testCloneIsIndependent() throws ModelStateException {
+		PlanningContext context = new PlanningContext(newPrefs("mvplan.model.VpmB"));
+		VpmB model = new VpmB();
+		model.setContext(context);
+		model.initModel();
+		model.ascDec(0.0, 50.0, 20.0, 0.0, 0.79, 0.0);
+		VpmB copy = (VpmB)model.clone();
+		model.ascDec(50.0, 80.0, 20.0, 0.0, 0.79, 0.0);
+		assertFalse(copy.bubbles.maxCrushingN2[0] == model.bubbles.maxCrushingN2[0]);
+	}
+
+	@Test
+	public void testCalculateSchedule() {
+		// Trimix dive and a repetitive nitrox dive, as planned before the radii were solved together
+		double[][] expected = {
+			{ 70, 4, 0.5, 0.18 }, { 70, 29, 25, 0.18 }, { 45, 32, 1, 0.18 }, { 42, 33, 1, 0.18 },
+			{ 39, 34, 1, 0.18 }, { 36, 36, 2, 0.18 }, { 33, 38, 2, 0.18 }, { 30, 41, 3, 0.18 },
+			{ 27, 45, 4, 0.18 }, { 24, 49, 4, 0.18 }, { 21, 52, 3, 0.5 }, { 18, 55, 3, 0.5 },
+			{ 15, 60, 5, 0.5 }, { 12, 67, 7, 0.5 }, { 9, 76, 9, 0.5 }, { 6, 88, 12, 1.0 },
+			{ 3, 109, 21, 1.0 },
+			{ 30, 2, 0.5, 0.32 }, { 30, 32, 30, 0.32 }, { 6, 36, 2, 0.8 }, { 3, 40, 4, 0.8 } };
+		BakerVpmB engine = new BakerVpmB();
+		engine.addBottomMix(0.18, 0.45);
+		engine.addDecoMix(0.5, 0.0, 21);
+		engine.addDecoMix(1.0, 0.0, 6);
+		engine.addProfilePoint(70, 4, 20, 0);
+		engine.addProfilePoint(70, 25, 20, 0);
+		engine.addSurfaceInterval(120);
+		addRepetitiveDive(engine, 30, 30);
+		assertEquals(0, engine.calculate());
+
+		int n = 0;
+		for (int dive = 0; dive < 2; dive++) {
+			for (int i = 0; engine.getProfilePoint(i, 1, dive) >= 0; i++, n++) {
+				for (int p = 0; p < 4; p++)
+					assertEquals(expected[n][p], engine.getProfilePoint(i, p+1, dive), 0.0);
+			}
+		}
+		assertEquals(expected.length, n);
+	}
+
+	@Test
+	public void testProfileFollowsCalculate() {
+		// The trimix dive of testCalculateSchedule, planned by Profile with Baker's water vapour pressure
+		for (double rate : new double[] { -10.0, -9.0 }) {
+			Prefs p = newPrefs("mvplan.model.VpmB");
+			p.setOcDeco(true);
+			p.setPH2O(0.493);
+			p.setAscentRate(rate);
+			Gas tx = new Gas(0.45, 0.18, 70.0);
+			List<SegmentAbstract> segments = new ArrayList<SegmentAbstract>();
+			List<Gas> gases = new ArrayList<Gas>();
+			segments.add(new SegmentDive(70.0, 29.0, tx, 0.0));
+			gases.add(tx);
+			gases.add(new Gas(0.0, 0.5, 21.0));
+			gases.add(new Gas(0.0, 1.0, 6.0));
+			Profile profile = new Profile(segments, gases, null, new PlanningContext(p));
+			assertEquals(Profile.SUCCESS, profile.doDive());
+
+			BakerVpmB engine = new BakerVpmB();
+			engine.finalAscentSpeed = rate;
+			engine.addBottomMix(0.18, 0.45);
+			engine.addDecoMix(0.5, 0.0, 21);
+			engine.addDecoMix(1.0, 0.0, 6);
+			engine.addProfilePoint(70, 4, 20, 0);
+			engine.addProfilePoint(70, 25, 20, 0);
+			assertEquals(0, engine.calculate());
+
+			int i = 2;      // Descent and bottom time
+			for (SegmentAbstract s : profile.getProfile()) {
+				if (!(s instanceof SegmentDeco))
+					continue;
+				assertEquals("depth of stop "+i, engine.getProfilePoint(i, 1, 0), s.getDepth(), 0.0);
+				assertEquals("run time at "+s.getDepth(), engine.getProfilePoint(i, 2, 0), s.getRunTime(), 1e-6);
+				i++;
+			}
+			assertEquals(-1.0, engine.getProfilePoint(i, 1, 0), 0.0);
+		}
+	}
+
+	@Test
+	public void testRadiusRootFinder() {
+		BakerVpmB engine = new BakerVpmB();
+		// r^3 - 8 = 0 in [1,3], and the element not solved is left alone
+		double[] radius = { 2.5, 7.0 };
+		assertEquals(0, engine.radius_root_finder(new double[] { 1, 1 }, new double[] { 0, 0 }, new double[] { 8, 8 },
+				new double[] { 1, 1 }, new double[] { 3, 3 }, new boolean[] { true, false }, radius));
+		assertEquals(2.0, radius[0], 1e-12);
+		assertEquals(7.0, radius[1], 0.0);
+
+		// No root in [3,4], the nearer bound is the estimate
+		assertEquals(BakerVpmB.RADIUS_ROOT_NOT_BRACKETED, engine.radius_root_finder(new double[] { 1 }, new double[] { 0 },
+				new double[] { 8 }, new double[] { 3 }, new double[] { 4 }, new boolean[] { true }, radius));
+		assertEquals(3.0, radius[0], 0.0);
+
+		assertEquals(BakerVpmB.RADIUS_ROOT_NOT_CONVERGED, engine.radius_root_finder(new double[] { 1 }, new double[] { 0 },
+				new double[] { Double.NaN }, new double[] { 1 }, new double[] { 3 }, new boolean[] { true }, radius));
+	}
+
+	@Test
+	public void testRadiusRootFailures() throws ModelStateException {
+		// A critical radius that is not a number leaves Boyle's law compensation without a root
+		BakerVpmB engine = new BakerVpmB();
+		engine.conservatism = Double.NaN;
+		engine.addBottomMix(0.18, 0.45);
+		engine.addProfilePoint(70, 4, 20, 0);
+		engine.addProfilePoint(70, 25, 20, 0);
+		assertEquals(-1, engine.calculate());
+
+		VpmB model = new VpmB();
+		model.setContext(new PlanningContext(newPrefs("mvplan.model.VpmB")));
+		model.initModel();
+		model.ascDec(0.0, 60.0, 20.0, 0.35, 0.44, 0.0);
+		model.constDepth(60.0, 25.0, 0.35, 0.44, 0.0);
+		double[] fHe = { 0.35 };
+		double[] fN2 = { 0.44 };
+		double[] switchDepth = { 60.0 };
+		engine = new BakerVpmB();
+		VpmBState state = (VpmBState)model.bubbles.clone();
+		assertEquals(0, engine.planAscent(state, model.ppHe, model.ppN2, 60.0, model.diveTime, -10.0, 3.0, fHe, fN2, switchDepth, 1));
+		assertTrue(state.ascentPlanned);
+		state = (VpmBState)model.bubbles.clone();
+		state.adjustedRadiusN2[0] = Double.NaN;
+		assertEquals(-2, engine.planAscent(state, model.ppHe, model.ppN2, 60.0, model.diveTime, -10.0, 3.0, fHe, fN2, switchDepth, 1));
+		assertFalse(state.ascentPlanned);
+	}
+
+	@Test
+	public void testCriticalVolumeIterations() {
+		BakerVpmB engine = new BakerVpmB();
+		engine.addBottomMix(0.21, 0.35);
+		engine.addDecoMix(0.5, 0.0, 21);
+		engine.addDecoMix(1.0, 0.0, 6);
+		engine.addProfilePoint(60, 3, 20, 0);
+		engine.addProfilePoint(60, 24, 20, 0);
+		assertEquals(-1, engine.getCriticalVolumeIterations());
+		assertEquals(0, engine.calculate());
+		assertTrue(engine.getCriticalVolumeIterations() > 1);
+		assertEquals(-1, engine.getCriticalVolumeIterations(1));
+
+		VpmB model = new VpmB();
+		model.setContext(new PlanningContext(newPrefs("mvplan.model.VpmB")));
+		model.initModel();
+		assertEquals(0, model.getCriticalVolumeIterations());
+		assertTrue(((VpmB)dive("mvplan.model.VpmB").getModel()).getCriticalVolumeIterations() > 1);
+	}
+
+	@Test
+	public void testMissionBeyondFirstSizes() {
+		// Sawtooth dive of 40 points and 14 repetitive dives, more than the arrays start with
+		BakerVpmB engine = new BakerVpmB();
+		engine.addBottomMix(0.21, 0.0);
+		engine.addDecoMix(0.5, 0.0, 21);
+		for (int i = 0; i < 40; i++)
+			assertEquals(i, engine.addProfilePoint(depth(i), 1, i % 2 == 0 ? 20 : -10, 0));
+		for (int dive = 1; dive <= 14; dive++) {
+			assertEquals(dive, engine.addSurfaceInterval(60));
+			addRepetitiveDive(engine, 30, 20);
+		}
+		assertEquals(0, engine.calculate());
+
+		int points = 0;
+		for (int i = 0; engine.getProfilePoint(i, 1, 0) >= 0; i++)
+			points++;
+		assertTrue(points > 40);
+		for (int i = 0; i < 40; i++)
+			assertEquals(depth(i), engine.getProfilePoint(i, 1, 0), 0.0);
+		assertEquals(30.0, engine.getProfilePoint(0, 1, 14), 0.0);
+		assertEquals(-1.0, engine.getProfilePoint(0, 1, 15), 0.0);
+
+		// The same engine, reset for a one dive mission, plans it as a new engine does
+		engine.reset();
+		BakerVpmB fresh = new BakerVpmB();
+		for (BakerVpmB e : new BakerVpmB[] { engine, fresh }) {
+			addRepetitiveDive(e, 30, 20);
+			assertEquals(0, e.calculate());
+		}
+		for (int i = 0; fresh.getProfilePoint(i, 1, 0) >= 0; i++)
+			assertEquals(fresh.getProfilePoint(i, 2, 0), engine.getProfilePoint(i, 2, 0), 0.0);
+		assertEquals(-1.0, engine.getProfilePoint(0, 1, 1), 0.0);
+	}
+
+	private static double depth(int point) {
+		return point % 2 == 0 ? 30 : 27;
+	}
+
+	private void addRepetitiveDive(BakerVpmB engine, double depth, double bottomTime) {
+		engine.addBottomMix(0.32, 0.0);
+		engine.addDecoMix(0.8, 0.0, 9);
+		engine.addProfilePoint(depth, 2, 20, 0);
+		engine.addProfilePoint(depth, bottomTime, 20, 0);
+	}
+
+	@Test
+	public void testPooledEngineIsReset() {
+		VpmBEnginePool pool = new VpmBEnginePool(1);
+		BakerVpmB engine = pool.checkOut();
+		addRepetitiveDive(engine, 35, 40);
+		engine.addSurfaceInterval(90);
+		addRepetitiveDive(engine, 30, 30);
+		assertEquals(0, engine.calculate());
+		double runTime = engine.getProfilePoint(5, 2, 0);
+		pool.checkIn(engine);
+		assertEquals(1, pool.getIdleCount());
+		assertEquals(0, pool.getCheckedOutCount());
+
+		// The same engine comes back with an empty mission
+		BakerVpmB reused = pool.checkOut();
+		assertSame(engine, reused);
+		assertEquals(-1, reused.getProfilePoint(0, 1, 0), 0.0);
+		addRepetitiveDive(reused, 35, 40);
+		assertEquals(0, reused.calculate());
+		assertEquals(runTime, reused.getProfilePoint(5, 2, 0), 0.0);
+		assertEquals(-1, reused.getProfilePoint(0, 1, 1), 0.0);
+		assertEquals(-1, reused.getProfilePoint(6, 1, 0), 0.0);
+		assertEquals(1, pool.getCreatedCount());
+		pool.checkIn(reused);
+	}
+
+	@Test
+	public void testModelsShareEngines() throws Exception {
+		dive("mvplan.model.VpmB");
+		int created = VpmB.engines.getCreatedCount();
+
+		// A plan on a new thread takes a warm engine from the pool
+		final Profile[] planned = new Profile[1];
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				planned[0] = dive("mvplan.model.VpmB");
+			}
+		});
+		thread.start();
+		thread.join();
+		assertNotNull(planned[0]);
+		assertEquals(created, VpmB.engines.getCreatedCount());
+		assertEquals(0, VpmB.engines.getCheckedOutCount());
+	}
+
+	@Test
+	public void testSnapshotRestoresBubbles() throws ModelStateException {
+		VpmB model = new VpmB();
+		model.setContext(new PlanningContext(newPrefs("mvplan.model.VpmB")));
+		model.initModel();
+		model.ascDec(0.0, 60.0, 20.0, 0.35, 0.44, 0.0);
+		model.constDepth(60.0, 25.0, 0.35, 0.44, 0.0);
+		ModelSnapshot snapshot = model.newSnapshot();
+		List<Gas> gases = new ArrayList<Gas>();
+		gases.add(new Gas(0.35, 0.21, 66.0));
+		model.startAscent(60.0, gases);
+		double firstStop = model.bubbles.firstStopDepth;
+
+		// A deeper excursion changes the crushing pressures, the snapshot brings them back
+		model.restore(snapshot);
+		double crushing = model.bubbles.maxCrushingN2[15];
+		model.ascDec(60.0, 80.0, 20.0, 0.35, 0.44, 0.0);
+		assertTrue(model.bubbles.maxCrushingN2[15] > crushing);
+		model.restore(snapshot);
+		assertEquals(crushing, model.bubbles.maxCrushingN2[15], 0.0);
+		assertFalse(model.bubbles.ascentPlanned);
+		model.startAscent(60.0, gases);
+		assertEquals(firstStop, model.bubbles.firstStopDepth, 0.0);
+	}
+}
@@ -0,0 +1,97 @@
+package mvplan.model;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import mvplan.main.IMvplan;
+import mvplan.main.MvplanInstance;
+import mvplan.prefs.Prefs;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class ZHL16BTest {
+
+	@Mock IMvplan mv;
+	@Mock Prefs p;
+
+	@Before
+	public void prepeare(){
+		MockitoAnnotations.initMocks(this);
+		when(mv.getPrefs()).thenReturn(p);
+		when(p.getFactorComp()).thenReturn(1.0);
+		when(p.getFactorDecomp()).thenReturn(1.0);
+		when(p.getPAmb()).thenReturn(10.0);
+		when(p.getPH2O()).thenReturn(0.627);
+		when(p.getPConversion()).thenReturn(10.0);
+		when(p.getGfLow()).thenReturn(0.3);
+		when(p.getGfHigh()).thenReturn(0.8);
+		MvplanInstance.setMvplan(mv);
+	}
+
+	private void assertLimits(AbstractModel model, DecoLimits limits, double depth) {
+		model.decoLimits(depth, limits);
+		assertEquals(model.ceiling(), limits.getCeiling(), 0.0);
+		assertEquals(model.mValue(depth), limits.getMValue(), 0.0);
+		assertEquals(model.controlCompartment(), limits.getControlCompartment());
+	}
+
+	@Test
+	public void testDecoLimits() throws ModelStateException {
+		ZHL16B model = new ZHL16B();
+		DecoLimits limits = new DecoLimits();
+		model.initModel();
+		model.getGradient().setGfAtDepth(0.0);
+		assertLimits(model, limits, 0.0);
+
+		model.ascDec(0.0, 60.0, 20.0, 0.3, 0.49, 0.0);
+		model.constDepth(60.0, 25.0, 0.3, 0.49, 0.0);
+		assertLimits(model, limits, 60.0);
+		assertTrue(limits.getCeiling() > 0.0);
+
+		// Limits must follow the tissues as they off-gas
+		model.ascDec(60.0, 21.0, -10.0, 0.3, 0.49, 0.0);
+		model.constDepth(21.0, 5.0, 0.0, 0.5, 0.0);
+		assertLimits(model, limits, 21.0);
+	}
+
+	@Test
+	public void testSnapshotRestore() throws ModelStateException {
+		ZHL16B model = new ZHL16B();
+		model.initModel();
+		model.ascDec(0.0, 60.0, 20.0, 0.3, 0.49, 0.0);
+		model.constDepth(60.0, 25.0, 0.3, 0.49, 0.0);
+		model.getOxTox().addO2(25.0, 1.3);
+		model.getGradient().setGfSlopeAtDepth(30.0);
+		ModelSnapshot snapshot = model.newSnapshot();
+		double ceiling = model.ceiling();
+		double cns = model.getOxTox().getCns();
+		double gf = model.getGradient().getGradientFactor();
+
+		// Branch and come back, twice, to the same state
+		for (int i = 0; i < 2; i++) {
+			model.ascDec(60.0, 21.0, -10.0, 0.3, 0.49, 0.0);
+			model.constDepth(21.0, 5.0, 0.0, 0.5, 0.0);
+			model.getOxTox().addO2(5.0, 1.4);
+			model.getGradient().setGfAtDepth(21.0);
+			assertFalse(ceiling == model.ceiling());
+			model.restore(snapshot);
+			assertEquals(ceiling, model.ceiling(), 0.0);
+			assertEquals(cns, model.getOxTox().getCns(), 0.0);
+			assertEquals(gf, model.getGradient().getGradientFactor(), 0.0);
+		}
+
+		// Another model of the same class continues from the snapshot
+		ZHL16B other = new ZHL16B();
+		other.initModel();
+		other.restore(snapshot);
+		assertEquals(ceiling, other.ceiling(), 0.0);
+		try {
+			new ZHL16C().restore(snapshot);
+			fail("Restored into another model class");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+}
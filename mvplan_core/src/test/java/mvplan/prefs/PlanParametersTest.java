@@ -0,0 +1,52 @@
+package mvplan.prefs;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import mvplan.main.IMvplan;
+import mvplan.main.MvplanInstance;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class PlanParametersTest {
+
+	@Mock IMvplan mv;
+	Prefs prefs;
+
+	@Before
+	public void prepeare(){
+		MockitoAnnotations.initMocks(this);
+		MvplanInstance.setMvplan(mv);
+		prefs = new Prefs();
+		prefs.setDefaultPrefs();
+		when(mv.getPrefs()).thenReturn(prefs);
+	}
+
+	@Test
+	public void testEquals() {
+		PlanParameters a = new PlanParameters(prefs);
+		PlanParameters b = new PlanParameters(prefs);
+		assertEquals(a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+
+		// GUI only settings do not matter
+		prefs.setFrameSizeX(prefs.getFrameSizeX() + 100);
+		assertEquals(a, new PlanParameters(prefs));
+
+		prefs.setGfHigh(0.7);
+		PlanParameters c = new PlanParameters(prefs);
+		assertFalse(a.equals(c));
+		assertEquals(0.7, c.getGfHigh(), 0.0);
+	}
+
+	@Test
+	public void testSnapshot() {
+		PlanParameters a = new PlanParameters(prefs);
+		double stopTimeIncrement = a.getStopTimeIncrement();
+		prefs.setStopTimeIncrement(stopTimeIncrement + 1.0);
+		assertEquals(stopTimeIncrement, a.getStopTimeIncrement(), 0.0);
+	}
+}
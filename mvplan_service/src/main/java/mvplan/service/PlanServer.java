@@ -0,0 +1,285 @@
+/*
+ * PlanServer.java
+ *
+ *  Local HTTP front end of a PlanService, on the JDK's com.sun.net.httpserver, so that tools
+ *  can have dives planned by one running JVM.
+ *
+ *      POST /plan      JSON plan request, see PlanService. Returns 200 with the schedule,
+ *                      400 for an invalid request, 422 if it can not be planned, 503 with
+ *                      Retry-After when the queue is full and 504 if planning takes too long.
+ *      GET  /status    Counts of active, queued, completed, rejected and coalesced plans.
+ *
+ *  Binds to the loopback address unless told otherwise. Connections are served by a fixed
+ *  pool of threads, one for each plan the service holds and a few more for the status and
+ *  refused requests. They only wait for the planning workers, so a full queue is answered at
+ *  once, and connections beyond the pool wait for a thread.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import mvplan.cli.CliMvplan;
+import mvplan.cli.PlanFile;
+import mvplan.cli.PlanFileException;
+import mvplan.dive.PlanCache;
+import mvplan.dive.PlanStore;
+import mvplan.prefs.PrefsException;
+import mvplan.prefs.PrefsXStreamDAO;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class PlanServer {
+    public static final int DEFAULT_PORT = 8047;
+    private static final int MAX_REQUEST_BYTES = 1024*1024;
+    private static final String JSON_TYPE = "application/json; charset=UTF-8";
+    private static final int PLAN_CACHE_SIZE = 200;             // Finished plans kept in memory
+    private static final int PLAN_STORE_SIZE = 50000;           // Finished plans kept on disk
+    private static final long PLAN_STORE_BYTES = 500L*1024*1024;
+    private static final int SPARE_CONNECTIONS = 4;             // Connection threads beyond the plans held
+
+    private final PlanService service;
+    private final HttpServer server;
+    private final ExecutorService connections;
+    private long timeoutMillis = 60000;     // Longest wait for a plan
+
+    /**
+     * Constructor for PlanServer, not yet started
+     * @param service Service that plans the requests
+     * @param address Address to bind, port 0 for any free port
+     * @throws IOException if the address can not be bound
+     */
+    public PlanServer(PlanService service, InetSocketAddress address) throws IOException {
+        this.service = service;
+        server = HttpServer.create(address, 0);
+        server.createContext("/plan", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                handlePlan(exchange);
+            }
+        });
+        server.createContext("/status", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                handleStatus(exchange);
+            }
+        });
+        connections = Executors.newFixedThreadPool(service.getCapacity()+SPARE_CONNECTIONS);
+        server.setExecutor(connections);
+    }
+
+    /**
+     * Constructor for PlanServer on the loopback address
+     * @param service Service that plans the requests
+     * @param port Port, 0 for any free port
+     * @throws IOException if the port can not be bound
+     */
+    public PlanServer(PlanService service, int port) throws IOException {
+        this(service, new InetSocketAddress(InetAddress.getByName(null), port));
+    }
+
+    /**
+     * Sets the longest time a request waits for its plan
+     * @param millis Timeout in milliseconds
+     */
+    public void setTimeout(long millis) {
+        timeoutMillis = millis;
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /** Stops the server and the service, waiting up to a second for open exchanges */
+    public void stop() {
+        server.stop(1);
+        connections.shutdownNow();
+        service.shutdown();
+    }
+
+    /** @return Port the server is bound to */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handlePlan(HttpExchange exchange) throws IOException {
+        PlanFile plan;
+        Future<PlanService.Response> future;
+
+        try {
+            if (!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                send(exchange, PlanService.Response.error(405, "Use POST"));
+                return;
+            }
+            try {
+                plan = service.read(readBody(exchange.getRequestBody()));
+            } catch (PlanFileException e) {
+                send(exchange, PlanService.Response.error(PlanService.BAD_REQUEST, e.getMessage()));
+                return;
+            }
+            try {
+                future = service.submit(plan);
+            } catch (RejectedExecutionException e) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, PlanService.Response.error(503, "Busy, try again later"));
+                return;
+            }
+            try {
+                send(exchange, future.get(timeoutMillis, TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                // Not cancelled, as identical requests may be waiting for the same plan
+                send(exchange, PlanService.Response.error(504, "Planning timed out"));
+            } catch (ExecutionException e) {
+                send(exchange, PlanService.Response.error(500, String.valueOf(e.getCause())));
+            } catch (InterruptedException e) {
+                send(exchange, PlanService.Response.error(503, "Shutting down"));
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleStatus(HttpExchange exchange) throws IOException {
+        StringBuffer sb = new StringBuffer("{");
+
+        try {
+            Json.number(Json.name(sb, "active"), service.getActive()).append(',');
+            Json.number(Json.name(sb, "queued"), service.getQueued()).append(',');
+            Json.number(Json.name(sb, "completed"), service.getCompleted()).append(',');
+            Json.number(Json.name(sb, "rejected"), service.getRejected()).append(',');
+            Json.number(Json.name(sb, "coalesced"), service.getCoalesced());
+            send(exchange, new PlanService.Response(PlanService.OK, sb.append('}').toString()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String readBody(InputStream in) throws IOException, PlanFileException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+
+        while ((n = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, n);
+            if (bytes.size() > MAX_REQUEST_BYTES)
+                throw new PlanFileException("Request too large");
+        }
+        return bytes.toString("UTF-8");
+    }
+
+    private static void send(HttpExchange exchange, PlanService.Response r) throws IOException {
+        byte[] body = r.body.getBytes("UTF-8");
+        OutputStream out;
+
+        exchange.getResponseHeaders().set("Content-Type", JSON_TYPE);
+        exchange.sendResponseHeaders(r.status, body.length);
+        out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    private static final String USAGE =
+        "Usage: mvplan_service [options]\n"+
+        "  -port n        port on the loopback address, default "+DEFAULT_PORT+"\n"+
+        "  -threads n     plans in parallel, default one per processor\n"+
+        "  -queue n       most plans waiting, default 4 per thread\n"+
+        "  -timeout s     longest wait for a plan in seconds, default 60\n"+
+        "  -prefs file    base settings, an mvplan.xml saved by MV-Plan\n"+
+        "  -cache dir     keep finished plans in dir and reuse them\n";
+
+    /**
+     * Runs the server until the JVM is stopped
+     * @param args Options
+     */
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT, threads = Runtime.getRuntime().availableProcessors(), queue = -1;
+        long timeout = 60;
+        String prefsFile = null, cacheDir = null;
+        final PlanServer server;
+        CliMvplan mvplan;
+        PlanService service;
+        final PlanCache cache;
+
+        try {
+            for (int i=0; i<args.length; i++) {
+                if (args[i].equals("-port"))
+                    port = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-threads"))
+                    threads = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-queue"))
+                    queue = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-timeout"))
+                    timeout = Long.parseLong(args[++i]);
+                else if (args[i].equals("-prefs"))
+                    prefsFile = args[++i];
+                else if (args[i].equals("-cache"))
+                    cacheDir = args[++i];
+                else {
+                    System.err.print(USAGE);
+                    System.exit(2);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.print(USAGE);
+            System.exit(2);
+        }
+
+        mvplan = CliMvplan.install(Locale.ENGLISH, 0);
+        if (prefsFile != null) {
+            try {
+                mvplan.setPrefs(new PrefsXStreamDAO(prefsFile).loadPrefs());
+            } catch (PrefsException e) {
+                System.err.println("Can not load "+prefsFile+": "+e.getMessage());
+                System.exit(2);
+            }
+        }
+        service = new PlanService(mvplan, threads, queue < 0 ? 4*threads : queue);
+        if (cacheDir != null) {
+            cache = new PlanCache(PLAN_CACHE_SIZE);
+            cache.setStore(new PlanStore(new File(cacheDir), PLAN_STORE_SIZE, PLAN_STORE_BYTES));
+            service.setPlanCache(cache);
+        } else
+            cache = null;
+        server = new PlanServer(service, port);
+        server.setTimeout(timeout*1000);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                server.stop();
+                if (cache != null)
+                    cache.getStore().flush();
+            }
+        });
+        server.start();
+        System.err.println(mvplan.getAppName()+" planning service on port "+server.getPort());
+    }
+}
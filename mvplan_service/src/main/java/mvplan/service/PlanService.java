@@ -0,0 +1,442 @@
+/*
+ * PlanService.java
+ *
+ *  Plans dives sent as JSON on the workers of a PlanScheduler and returns the schedules as
+ *  JSON. Used by PlanServer, and usable directly in the same JVM. Single dives are planned as
+ *  INTERACTIVE plans and tables as BULK ones, so a burst of tables does not hold up single
+ *  dives. The profiles of a table are planned on the worker of the table.
+ *
+ *  A request is a plan file (see mvplan.cli.PlanFile) written as a JSON object, e.g.
+ *
+ *      {"name":"deep40", "gases":["18/45","50@21","100@6"],
+ *       "segments":[{"depth":40,"time":25,"gas":"18/45"}], "modifiers":[0,5,10],
+ *       "gfLow":0.2}
+ *
+ *  Lists may also be given as the comma separated text of a plan file, and settings may be
+ *  grouped in a "prefs" object. With modifiers a table is planned, otherwise a single dive.
+ *  Only the deco and gas settings in SETTINGS may be given. Other Prefs settings, such as the
+ *  model class, the proxy or the update URL, are kept from the base prefs and refused.
+ *
+ *  At most a fixed number of the plans of the service wait for a worker. Once the queue is full
+ *  submit() throws RejectedExecutionException straight away, so callers are told to back off
+ *  instead of piling up.
+ *
+ *  Identical requests that arrive while one of them is being planned share its result. They
+ *  are matched by the PlanFingerprint of the plan with the table modifiers and the gas
+ *  consumption settings, which is everything that shows in the response but the name. Each
+ *  request gets the shared response with its own name. A burst of clients asking for the same
+ *  table then costs one plan.
+ *
+ *   This program is part of MV-Plan
+ *   Copywrite 2006 Guy Wittig
+ *
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   The GNU General Public License can be read at http://www.gnu.org/licenses/licenses.html
+ */
+
+package mvplan.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mvplan.cli.BatchPlanner;
+import mvplan.cli.CliMvplan;
+import mvplan.cli.PlanFile;
+import mvplan.cli.PlanFileException;
+import mvplan.dive.PlanCache;
+import mvplan.dive.PlanFingerprint;
+import mvplan.dive.PlanScheduler;
+import mvplan.dive.Profile;
+import mvplan.dive.TableGeneratorModel;
+import mvplan.gas.Gas;
+import mvplan.main.PlanningContext;
+import mvplan.prefs.PlanParameters;
+import mvplan.segments.SegmentAbstract;
+
+public class PlanService {
+    /** HTTP style status of a response */
+    public static final int OK = 200;
+    public static final int BAD_REQUEST = 400;
+    public static final int UNPROCESSABLE = 422;
+
+    /** Fields of a plan in a request */
+    private static final Set<String> FIELDS = new HashSet<String>(Arrays.asList(new String[] {
+        "name", "gases", "segments", "modifiers" }));
+    /** Prefs settings a request may change */
+    public static final Set<String> SETTINGS = new HashSet<String>(Arrays.asList(new String[] {
+        "gfLow", "gfHigh", "gfMultilevelMode", "factorComp", "factorDecomp",
+        "ascentRate", "descentRate", "stopDepthIncrement", "lastStopDepth", "stopTimeIncrement",
+        "forceAllStops", "ocDeco", "altitude", "diveRMV", "decoRMV",
+        "heliumNarcoticLevel", "oxygenNarcoticLevel" }));
+
+    private final CliMvplan mvplan;
+    private final PlanScheduler scheduler;
+    private final boolean ownScheduler;     // Started by the service, so shut down with it
+    private final int capacity;             // Plans running or queued at most
+    private int pending;                    // Plans running or queued, guarded by inFlight
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final Map<String,Future<Response>> inFlight = new HashMap<String,Future<Response>>();  // Plans queued or running, by key()
+    private PlanCache planCache;            // Finished plans, null if not used
+
+    /** Status and JSON body of a planned request */
+    public static class Response {
+        public final int status;
+        public final String body;
+
+        public Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        static Response error(int status, String message) {
+            StringBuffer sb = new StringBuffer("{");
+            Json.string(Json.name(sb, "error"), message);
+            return new Response(status, sb.append('}').toString());
+        }
+    }
+
+    /** Response of a plan, shared by identical requests, with the name of one of them */
+    private static class NamedResponse implements Future<Response> {
+        private final Future<Response> plan;
+        private final String name;
+
+        NamedResponse(Future<Response> plan, String name) {
+            this.plan = plan;
+            this.name = name;
+        }
+
+        public boolean cancel(boolean mayInterrupt)     { return plan.cancel(mayInterrupt); }
+        public boolean isCancelled()                    { return plan.isCancelled(); }
+        public boolean isDone()                         { return plan.isDone(); }
+
+        public Response get() throws InterruptedException, ExecutionException {
+            return named(plan.get());
+        }
+
+        public Response get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return named(plan.get(timeout, unit));
+        }
+
+        /** Puts the name first in the schedule, errors have none */
+        private Response named(Response r) {
+            StringBuffer sb = new StringBuffer("{");
+
+            if (r.status != OK)
+                return r;
+            Json.string(Json.name(sb, "name"), name).append(',');
+            return new Response(r.status, sb.append(r.body.substring(1)).toString());
+        }
+    }
+
+    /**
+     * Constructor for PlanService
+     * @param mvplan Installed CliMvplan, holding the base prefs
+     * @param threads Number of worker threads of a scheduler of its own
+     * @param queueSize Most plans waiting for a worker, 0 for none
+     */
+    public PlanService(CliMvplan mvplan, int threads, int queueSize) {
+        this(mvplan, newScheduler(threads), queueSize, true);
+    }
+
+    /**
+     * Constructor for PlanService on a shared scheduler, which shutdown() leaves running
+     * @param mvplan Installed CliMvplan, holding the base prefs
+     * @param scheduler Scheduler of the plans
+     * @param queueSize Most plans of the service waiting for a worker, 0 for none
+     */
+    public PlanService(CliMvplan mvplan, PlanScheduler scheduler, int queueSize) {
+        this(mvplan, scheduler, queueSize, false);
+    }
+
+    private PlanService(CliMvplan mvplan, PlanScheduler scheduler, int queueSize, boolean ownScheduler) {
+        if (queueSize < 0)
+            throw new IllegalArgumentException("Invalid queue size: "+queueSize);
+        this.mvplan = mvplan;
+        this.scheduler = scheduler;
+        this.ownScheduler = ownScheduler;
+        capacity = scheduler.getThreads()+queueSize;
+    }
+
+    private static PlanScheduler newScheduler(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Invalid pool size: "+threads);
+        return new PlanScheduler(threads);
+    }
+
+    /**
+     * Sets the cache of finished plans, which may have a PlanStore behind it
+     * @param cache PlanCache, or null for none
+     */
+    public void setPlanCache(PlanCache cache) {
+        planCache = cache;
+    }
+
+    /**
+     * Reads a plan request
+     * @param json JSON object of the plan
+     * @return PlanFile with the base prefs and the settings of the request
+     * @throws PlanFileException if the request is not a valid plan or has a setting not in SETTINGS
+     */
+    public PlanFile read(String json) throws PlanFileException {
+        Object doc;
+        Properties p = new Properties();
+        Map.Entry<String,Object> e;
+
+        try {
+            doc = Json.parse(json);
+        } catch (IllegalArgumentException ex) {
+            throw new PlanFileException("Invalid JSON: "+ex.getMessage());
+        }
+        if (!(doc instanceof Map))
+            throw new PlanFileException("Plan must be a JSON object");
+        for (Iterator<Map.Entry<String,Object>> it = map(doc).entrySet().iterator(); it.hasNext();) {
+            e = it.next();
+            if (e.getKey().equals("prefs") && e.getValue() instanceof Map) {
+                for (Iterator<Map.Entry<String,Object>> ip = map(e.getValue()).entrySet().iterator(); ip.hasNext();) {
+                    Map.Entry<String,Object> s = ip.next();
+                    if (!SETTINGS.contains(s.getKey()))
+                        throw new PlanFileException("Setting not allowed: "+s.getKey());
+                    p.setProperty(s.getKey(), text(s.getValue()));
+                }
+            } else if (e.getValue() != null) {
+                if (!FIELDS.contains(e.getKey()) && !SETTINGS.contains(e.getKey()))
+                    throw new PlanFileException("Setting not allowed: "+e.getKey());
+                p.setProperty(e.getKey(), text(e.getValue()));
+            }
+        }
+        return new PlanFile("plan", p, mvplan.getPrefs());
+    }
+
+    /**
+     * Queues a plan for a worker, or joins an identical plan already queued or running
+     * @param plan Plan from read()
+     * @return Future response with the name of the plan, sharing the plan of identical requests
+     *      so it must not be cancelled
+     * @throws RejectedExecutionException if the queue is full or the service is shut down
+     */
+    public Future<Response> submit(final PlanFile plan) {
+        final String key = key(plan);
+        Future<Response> task;
+        Future<Response> running;
+
+        synchronized (inFlight) {
+            running = inFlight.get(key);
+            if (running != null) {
+                coalesced.incrementAndGet();
+                return new NamedResponse(running, plan.getName());
+            }
+            if (pending >= capacity) {
+                rejected.incrementAndGet();
+                throw new RejectedExecutionException("Plan queue is full");
+            }
+            try {
+                task = scheduler.submit(plan.isTable() ? PlanScheduler.BULK : PlanScheduler.INTERACTIVE,
+                        new Callable<Response>() {
+                    public Response call() {
+                        try {
+                            return plan(plan);
+                        } finally {
+                            completed.incrementAndGet();
+                            // Before the result is set, so later requests plan again or use the cache
+                            synchronized (inFlight) {
+                                inFlight.remove(key);
+                                pending--;
+                            }
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                rejected.incrementAndGet();
+                throw e;
+            }
+            pending++;
+            inFlight.put(key, task);
+            return new NamedResponse(task, plan.getName());
+        }
+    }
+
+    /** Text that is equal for requests with equal responses, but for their names */
+    private static String key(PlanFile plan) {
+        StringBuffer sb = new StringBuffer();
+        int i;
+
+        sb.append(new PlanFingerprint(plan.getSegments(), plan.getGases(), new PlanParameters(plan.getPrefs())).getKey());
+        sb.append('|');
+        if (plan.isTable()) {
+            for (i=0; i<plan.getModifiers().length; i++)
+                sb.append(plan.getModifiers()[i]).append(',');
+        }
+        sb.append('|').append(plan.getPrefs().getDiveRMV()).append(',').append(plan.getPrefs().getDecoRMV());
+        return sb.toString();
+    }
+
+    /** Stops the workers of a scheduler of its own, plans already queued are dropped */
+    public void shutdown() {
+        if (ownScheduler)
+            scheduler.shutdown();
+    }
+
+    /** @return Most plans running or waiting for a worker at the same time */
+    public int getCapacity()        { return capacity; }
+    /** @return Plans being planned on the scheduler */
+    public int getActive()          { return scheduler.getRunning(PlanScheduler.INTERACTIVE)+scheduler.getRunning(PlanScheduler.BULK); }
+    /** @return Plans waiting for a worker of the scheduler */
+    public int getQueued()          { return scheduler.getQueued(PlanScheduler.INTERACTIVE)+scheduler.getQueued(PlanScheduler.BULK); }
+    /** @return Plans finished, successfully or not */
+    public long getCompleted()      { return completed.get(); }
+    /** @return Plans refused as the queue was full */
+    public long getRejected()       { return rejected.get(); }
+    /** @return Requests that shared the plan of an identical request */
+    public long getCoalesced()      { return coalesced.get(); }
+
+    /**
+     * Plans on the current thread
+     * @param plan Plan
+     * @return Response with the schedule, without the name of the plan, or the reason it could
+     *      not be planned
+     */
+    protected Response plan(PlanFile plan) {
+        PlanningContext context = new PlanningContext(plan.getPrefs(), mvplan.getDebug(), System.err);
+        StringBuffer sb = new StringBuffer("{");
+        int returnCode;
+        int i;
+
+        if (plan.isTable()) {
+            TableGeneratorModel tm = new TableGeneratorModel(plan.getSegments(), plan.getGases(), plan.getModifiers(), context);
+            tm.setScheduler(scheduler);     // Run on the worker of the table
+            tm.setPlanCache(planCache);
+            returnCode = tm.doMultiDive();
+            if (returnCode != Profile.SUCCESS)
+                return Response.error(UNPROCESSABLE, BatchPlanner.describe(returnCode));
+            Json.string(Json.name(sb, "model"), tm.getModelName()).append(',');
+            Json.number(Json.name(sb, "maxCns"), tm.getMaxCNS()).append(',');
+            Json.number(Json.name(sb, "maxPO2"), tm.getMaxPO2()).append(',');
+            Json.name(sb, "profiles").append('[');
+            for (i=0; i<tm.getNumProfiles(); i++) {
+                if (i > 0) sb.append(',');
+                sb.append('{');
+                Json.number(Json.name(sb, "modifier"), tm.getModifiers()[i]).append(',');
+                Json.name(sb, "segments");
+                segments(sb, tm.getSegmentArray()[i]);
+                sb.append('}');
+            }
+            sb.append(']');
+        } else {
+            Profile p = new Profile(plan.getSegments(), plan.getGases(), null, context);
+            p.setPlanCache(planCache);
+            returnCode = p.doDive();
+            if (returnCode != Profile.SUCCESS)
+                return Response.error(UNPROCESSABLE, BatchPlanner.describe(returnCode));
+            p.doGasCalcs();
+            List<SegmentAbstract> segments = p.getProfile();
+            Json.string(Json.name(sb, "model"), p.getModel().getModelName()).append(',');
+            Json.number(Json.name(sb, "runtime"), segments.get(segments.size()-1).getRunTime()).append(',');
+            Json.number(Json.name(sb, "cns"), p.getModel().getOxTox().getCns()).append(',');
+            Json.number(Json.name(sb, "otu"), p.getModel().getOxTox().getOtu()).append(',');
+            Json.number(Json.name(sb, "maxPO2"), p.getModel().getOxTox().getMaxOx()).append(',');
+            Json.name(sb, "segments");
+            segments(sb, segments.toArray(new SegmentAbstract[segments.size()]));
+            sb.append(',');
+            Json.name(sb, "gases").append('[');
+            for (i=0; i<plan.getGases().size(); i++) {
+                Gas g = plan.getGases().get(i);
+                if (i > 0) sb.append(',');
+                sb.append('{');
+                Json.string(Json.name(sb, "gas"), g.getShortName().trim()).append(',');
+                Json.number(Json.name(sb, "volume"), g.getVolume());
+                sb.append('}');
+            }
+            sb.append(']');
+        }
+        return new Response(OK, sb.append('}').toString());
+    }
+
+    /** Appends the segments as an array, skipping the nulls that pad table profiles */
+    private static void segments(StringBuffer sb, SegmentAbstract[] segments) {
+        boolean first = true;
+
+        sb.append('[');
+        for (int i=0; i<segments.length; i++) {
+            SegmentAbstract s = segments[i];
+            if (s == null)
+                continue;
+            if (!first) sb.append(',');
+            first = false;
+            sb.append('{');
+            Json.string(Json.name(sb, "type"), type(s.getType())).append(',');
+            Json.number(Json.name(sb, "depth"), s.getDepth()).append(',');
+            Json.number(Json.name(sb, "time"), s.getTime()).append(',');
+            Json.number(Json.name(sb, "runtime"), s.getRunTime()).append(',');
+            Json.string(Json.name(sb, "gas"), s.getGas().getShortName().trim()).append(',');
+            Json.number(Json.name(sb, "setpoint"), s.getSetpoint());
+            sb.append('}');
+        }
+        sb.append(']');
+    }
+
+    private static String type(int type) {
+        switch (type) {
+            case SegmentAbstract.DESCENT:   return "descent";
+            case SegmentAbstract.ASCENT:    return "ascent";
+            case SegmentAbstract.DECO:      return "deco";
+            case SegmentAbstract.WAYPOINT:  return "waypoint";
+            case SegmentAbstract.SURFACE:   return "surface";
+            default:                        return "level";
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String,Object> map(Object o) {
+        return (Map<String,Object>)o;
+    }
+
+    /** Text of a JSON value in plan file form: lists comma separated, segments as depth:time:gas:setpoint */
+    private static String text(Object value) throws PlanFileException {
+        StringBuffer sb;
+
+        if (value instanceof Double) {
+            double d = ((Double)value).doubleValue();
+            return d == Math.rint(d) ? String.valueOf((long)d) : String.valueOf(d);
+        }
+        if (value instanceof Map) {
+            Map<String,Object> s = map(value);
+            if (s.get("depth") == null || s.get("time") == null || s.get("gas") == null)
+                throw new PlanFileException("Segment needs depth, time and gas: "+s);
+            return text(s.get("depth"))+":"+text(s.get("time"))+":"+text(s.get("gas"))+
+                    (s.get("setpoint") != null ? ":"+text(s.get("setpoint")) : "");
+        }
+        if (value instanceof List) {
+            sb = new StringBuffer();
+            for (Iterator<?> it = ((List<?>)value).iterator(); it.hasNext();) {
+                if (sb.length() > 0) sb.append(',');
+                sb.append(text(it.next()));
+            }
+            return sb.toString();
+        }
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,226 @@
+package mvplan.service;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mvplan.cli.CliMvplan;
+import mvplan.cli.PlanFile;
+import mvplan.dive.PlanScheduler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PlanServerTest {
+
+	CliMvplan mvplan;
+	PlanServer server;
+
+	@Before
+	public void prepeare() {
+		mvplan = CliMvplan.install(Locale.ENGLISH, 0);
+	}
+
+	@After
+	public void stop() {
+		if (server != null)
+			server.stop();
+	}
+
+	private void start(PlanService service) throws IOException {
+		server = new PlanServer(service, 0);
+		server.start();
+	}
+
+	/** Status and body of a request, the body is null for a GET */
+	private Object[] request(String path, String body) throws IOException {
+		HttpURLConnection c = (HttpURLConnection)new URL("http://localhost:" + server.getPort() + path).openConnection();
+		if (body != null) {
+			c.setRequestMethod("POST");
+			c.setDoOutput(true);
+			OutputStream out = c.getOutputStream();
+			out.write(body.getBytes("UTF-8"));
+			out.close();
+		}
+		int status = c.getResponseCode();
+		InputStream in = status < 400 ? c.getInputStream() : c.getErrorStream();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		int b;
+		while ((b = in.read()) >= 0)
+			bytes.write(b);
+		in.close();
+		return new Object[] { Integer.valueOf(status), Json.parse(bytes.toString("UTF-8")), c.getHeaderField("Retry-After") };
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> map(Object o) {
+		return (Map<String, Object>)o;
+	}
+
+	@Test
+	public void testPlan() throws IOException {
+		start(new PlanService(mvplan, 2, 4));
+
+		Object[] r = request("/plan", "{\"name\":\"deep\",\"gases\":[\"18/45\",\"50@21\",\"100@6\"],\"ocDeco\":true,"
+				+ "\"segments\":[{\"depth\":50,\"time\":20,\"gas\":\"18/45\"}],\"prefs\":{\"gfLow\":0.2}}");
+		assertEquals(200, r[0]);
+		Map<String, Object> plan = map(r[1]);
+		assertEquals("deep", plan.get("name"));
+		List<Object> segments = (List<Object>)plan.get("segments");
+		Map<String, Object> last = map(segments.get(segments.size() - 1));
+		assertEquals("deco", last.get("type"));
+		assertEquals("100", last.get("gas"));
+		assertEquals(plan.get("runtime"), last.get("runtime"));
+		assertEquals(3, ((List<Object>)plan.get("gases")).size());
+
+		r = request("/plan", "{\"segments\":\"40:20:21\",\"modifiers\":[0,5,10]}");
+		assertEquals(200, r[0]);
+		assertEquals(3, ((List<Object>)map(r[1]).get("profiles")).size());
+
+		assertEquals(2.0, map(request("/status", null)[1]).get("completed"));
+	}
+
+	@Test
+	public void testErrors() throws IOException {
+		start(new PlanService(mvplan, 1, 1));
+
+		assertEquals(400, request("/plan", "{\"segments\":")[0]);
+		assertEquals(400, request("/plan", "{\"segments\":\"40:20:21\",\"noSuchSetting\":1}")[0]);
+		assertEquals(400, request("/plan", "[]")[0]);
+		assertEquals(405, request("/plan", null)[0]);
+		assertEquals(400, request("/plan", "{\"gases\":\"21\"}")[0]);
+	}
+
+	@Test
+	public void testSettingsNotAllowed() throws IOException {
+		start(new PlanService(mvplan, 1, 1));
+
+		Object[] r = request("/plan", "{\"segments\":\"40:20:21\",\"modelClass\":\"java.lang.Object\"}");
+		assertEquals(400, r[0]);
+		assertEquals("Setting not allowed: modelClass", map(r[1]).get("error"));
+		assertEquals(400, request("/plan", "{\"segments\":\"40:20:21\",\"prefs\":{\"proxyHost\":\"example.org\"}}")[0]);
+		assertEquals(400, request("/plan", "{\"segments\":\"40:20:21\",\"prefs\":{\"name\":\"x\"}}")[0]);
+		assertEquals(200, request("/plan", "{\"segments\":\"40:20:21\",\"prefs\":{\"gfHigh\":0.7,\"diveRMV\":18}}")[0]);
+	}
+
+	@Test
+	public void testBackpressure() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final PlanService service = new PlanService(mvplan, 1, 1) {
+			protected Response plan(PlanFile plan) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.plan(plan);
+			}
+		};
+		start(service);
+
+		// One plan on the worker and one queued, different plans so they are not coalesced
+		final Object[][] held = new Object[2][];
+		Thread[] clients = new Thread[2];
+		for (int i = 0; i < 2; i++) {
+			final int n = i;
+			clients[i] = new Thread() {
+				public void run() {
+					try {
+						held[n] = request("/plan", "{\"name\":\"held" + n + "\",\"segments\":\"30:2" + n + ":21\"}");
+					} catch (IOException e) {
+						fail(e.toString());
+					}
+				}
+			};
+			clients[i].start();
+		}
+		while (service.getActive() + service.getQueued() < 2)
+			Thread.sleep(10);
+
+		// Full, so refused straight away
+		Object[] r = request("/plan", "{\"name\":\"refused\",\"segments\":\"30:25:21\"}");
+		assertEquals(503, r[0]);
+		assertEquals("1", r[2]);
+		assertEquals(1.0, map(request("/status", null)[1]).get("rejected"));
+
+		release.countDown();
+		for (int i = 0; i < 2; i++) {
+			clients[i].join();
+			assertEquals(200, held[i][0]);
+		}
+		assertEquals(200, request("/plan", "{\"segments\":\"30:20:21\"}")[0]);
+	}
+
+	@Test
+	public void testCoalescing() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger planned = new AtomicInteger();
+		PlanService service = new PlanService(mvplan, 2, 4) {
+			protected Response plan(PlanFile plan) {
+				planned.incrementAndGet();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.plan(plan);
+			}
+		};
+
+		// Four identical plans share one, each with its own name, other settings are planned on their own
+		Future<PlanService.Response> a = service.submit(service.read("{\"segments\":\"30:20:21\"}"));
+		Future<PlanService.Response> b = service.submit(service.read("{\"segments\":[{\"depth\":30,\"time\":20,\"gas\":\"21\"}]}"));
+		Future<PlanService.Response> c = service.submit(service.read("{\"segments\":\"30:20:21\"}"));
+		Future<PlanService.Response> d = service.submit(service.read("{\"name\":\"other\",\"segments\":\"30:20:21\"}"));
+		Future<PlanService.Response> e = service.submit(service.read("{\"segments\":\"30:20:21\",\"gfHigh\":0.7}"));
+		assertEquals(3, service.getCoalesced());
+
+		release.countDown();
+		assertEquals(200, a.get().status);
+		assertEquals(a.get().body, b.get().body);
+		assertEquals(a.get().body, c.get().body);
+		assertEquals("plan", map(Json.parse(a.get().body)).get("name"));
+		Map<String, Object> other = map(Json.parse(d.get().body));
+		assertEquals("other", other.get("name"));
+		other.put("name", "plan");
+		assertEquals(Json.parse(a.get().body), other);
+		assertEquals(200, e.get().status);
+		assertEquals(2, planned.get());
+
+		// Finished plans are not joined
+		assertEquals(200, service.submit(service.read("{\"segments\":\"30:20:21\"}")).get().status);
+		assertEquals(3, service.getCoalesced());
+		assertEquals(3, planned.get());
+		service.shutdown();
+	}
+
+	@Test
+	public void testSharedScheduler() throws Exception {
+		PlanScheduler scheduler = new PlanScheduler(2);
+		PlanService service = new PlanService(mvplan, scheduler, 1);
+		assertEquals(3, service.getCapacity());
+
+		// A single dive is an interactive plan
+		assertEquals(200, service.submit(service.read("{\"segments\":\"30:20:21\"}")).get().status);
+		assertEquals(1, scheduler.getCompleted(PlanScheduler.INTERACTIVE));
+		assertEquals(0, scheduler.getCompleted(PlanScheduler.BULK));
+
+		// The scheduler is left running for its other users
+		service.shutdown();
+		assertEquals(200, new PlanService(mvplan, scheduler, 1).submit(service.read("{\"segments\":\"30:25:21\"}")).get().status);
+		assertEquals(2, scheduler.getCompleted(PlanScheduler.INTERACTIVE));
+		scheduler.shutdown();
+	}
+}